@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared;
+
+import java.util.List;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Evaluates Heimdall filters for many artifacts against many remote repositories at once, ahead of resolution. The
+ * verdicts of filters evaluating rules are kept in session: filters answer from them once resolution asks for the same
+ * artifacts, recording them as decisions then.
+ */
+public interface BatchEvaluator {
+    /**
+     * Returns verdicts {@code [artifact][repository]} of given artifacts against given remote repositories, in order
+     * of given lists: {@code true} if all filters accept the artifact from the repository.
+     */
+    boolean[][] evaluate(
+            RepositorySystemSession session, List<Artifact> artifacts, List<RemoteRepository> remoteRepositories);
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Rules content provided by {@link RuleSource}: either text rules (UTF-8, one rule per line), or compiled rules.
+ * Text rules may have a delta (lines {@code +rule} and {@code -rule}) published next to them, that is applied on top of
+ * them when rules are refreshed incrementally.
+ */
+public final class RuleContent {
+    /**
+     * Opens the content stream.
+     */
+    @FunctionalInterface
+    public interface Opener {
+        InputStream open() throws IOException;
+    }
+
+    private final String origin;
+    private final boolean compiled;
+    private final Opener opener;
+    private final Path path;
+    private final Opener delta;
+
+    private RuleContent(String origin, boolean compiled, Opener opener, Path path, Opener delta) {
+        this.origin = requireNonNull(origin, "origin");
+        this.compiled = compiled;
+        this.opener = requireNonNull(opener, "opener");
+        this.path = path;
+        this.delta = delta;
+    }
+
+    /**
+     * Content backed by a file.
+     */
+    public static RuleContent ofPath(Path path, boolean compiled) {
+        requireNonNull(path, "path");
+        return new RuleContent(path.toString(), compiled, () -> Files.newInputStream(path), path, null);
+    }
+
+    /**
+     * Content backed by an opener, origin is used for logging only.
+     */
+    public static RuleContent ofOpener(String origin, boolean compiled, Opener opener) {
+        return new RuleContent(origin, compiled, opener, null, null);
+    }
+
+    /**
+     * Returns this content with delta. The delta opener is invoked lazily, and may return {@code null} if there is no
+     * delta.
+     */
+    public RuleContent withDelta(Opener delta) {
+        if (compiled) {
+            throw new IllegalStateException("Compiled rules cannot have delta");
+        }
+        return new RuleContent(origin, false, opener, path, requireNonNull(delta, "delta"));
+    }
+
+    /**
+     * The origin of content, like file path or URL.
+     */
+    public String origin() {
+        return origin;
+    }
+
+    /**
+     * Is content compiled (binary) rules?
+     */
+    public boolean compiled() {
+        return compiled;
+    }
+
+    /**
+     * Opens a new stream of content, caller must close it.
+     */
+    public InputStream openStream() throws IOException {
+        return opener.open();
+    }
+
+    /**
+     * Opens a new stream of delta, if present, caller must close it.
+     */
+    public Optional<InputStream> openDelta() throws IOException {
+        return delta == null ? Optional.empty() : Optional.ofNullable(delta.open());
+    }
+
+    /**
+     * The file backing the content, if any.
+     */
+    public Optional<Path> path() {
+        return Optional.ofNullable(path);
+    }
+
+    @Override
+    public String toString() {
+        return origin + (compiled ? " (compiled)" : "");
+    }
+}
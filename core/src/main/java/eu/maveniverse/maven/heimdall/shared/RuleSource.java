@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Source of filter rules. Implementations are components, and filters consult all of them in order of descending
+ * {@link #priority()}: the first source providing content for given filter and remote repository wins.
+ * <p>
+ * Extensions may provide their own sources, for example to ship (precompiled) rules within their JAR.
+ */
+public interface RuleSource {
+    /**
+     * The priority of this source, sources with higher priority are consulted first.
+     */
+    int priority();
+
+    /**
+     * Loads the rules for given filter (the filter name, like {@code groupId} or {@code prefixes}) and remote
+     * repository. The returned future completes with empty optional if this source has no rules for them. Must not
+     * block the caller on I/O.
+     */
+    CompletableFuture<Optional<RuleContent>> load(
+            RepositorySystemSession session, String filter, RemoteRepository remoteRepository);
+}
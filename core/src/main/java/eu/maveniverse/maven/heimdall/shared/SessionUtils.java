@@ -34,7 +34,7 @@ public final class SessionUtils {
     /**
      * Returns Heimdall session instance, if initialized in this Repository Session.
      */
-    public static synchronized Optional<Session> mayGetSession(RepositorySystemSession repositorySystemSession) {
+    public static Optional<Session> mayGetSession(RepositorySystemSession repositorySystemSession) {
         requireNonNull(repositorySystemSession, "repositorySystemSession");
         return Optional.ofNullable((Session) repositorySystemSession.getData().get(Session.class.getName()));
     }
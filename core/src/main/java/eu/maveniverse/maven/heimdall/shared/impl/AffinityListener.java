@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.impl.RemoteRepositoryFilterManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+
+/**
+ * Repository listener feeding {@link AffinityRemoteRepositoryFilterSource} with downloads from remote repositories:
+ * served ones are hits, "not found" ones are misses, and other failures (like transport errors) are not scored.
+ * Root metadata (having no group ID) is not scored either.
+ * <p>
+ * Resolver reports downloads rejected by remote repository filter as "not found", so failed downloads are checked
+ * against session filter (as a {@link Recheck}), and those filtered out (by this or other filters) are not misses.
+ */
+@Singleton
+@Named
+public final class AffinityListener extends AbstractRepositoryListener {
+    private final Provider<AffinityRemoteRepositoryFilterSource> affinity;
+    private final Provider<RemoteRepositoryFilterManager> remoteRepositoryFilterManager;
+
+    @Inject
+    public AffinityListener(
+            Provider<AffinityRemoteRepositoryFilterSource> affinity,
+            Provider<RemoteRepositoryFilterManager> remoteRepositoryFilterManager) {
+        this.affinity = requireNonNull(affinity);
+        this.remoteRepositoryFilterManager = requireNonNull(remoteRepositoryFilterManager);
+    }
+
+    @Override
+    public void artifactDownloaded(RepositoryEvent event) {
+        if (event.getRepository() instanceof RemoteRepository && affinity.get().isEnabled(event.getSession())) {
+            RemoteRepository remoteRepository = (RemoteRepository) event.getRepository();
+            String groupId = event.getArtifact().getGroupId();
+            if (event.getException() == null) {
+                affinity.get().served(event.getSession(), remoteRepository, groupId);
+            } else if (event.getException() instanceof ArtifactNotFoundException
+                    && Recheck.accepted(
+                            remoteRepositoryFilterManager.get(),
+                            event.getSession(),
+                            remoteRepository,
+                            event.getArtifact())) {
+                affinity.get().missed(event.getSession(), remoteRepository, groupId);
+            }
+        }
+    }
+
+    @Override
+    public void metadataDownloaded(RepositoryEvent event) {
+        if (event.getRepository() instanceof RemoteRepository
+                && !event.getMetadata().getGroupId().isEmpty()
+                && affinity.get().isEnabled(event.getSession())) {
+            RemoteRepository remoteRepository = (RemoteRepository) event.getRepository();
+            String groupId = event.getMetadata().getGroupId();
+            if (event.getException() == null) {
+                affinity.get().served(event.getSession(), remoteRepository, groupId);
+            } else if (event.getException() instanceof MetadataNotFoundException
+                    && Recheck.accepted(
+                            remoteRepositoryFilterManager.get(),
+                            event.getSession(),
+                            remoteRepository,
+                            event.getMetadata())) {
+                affinity.get().missed(event.getSession(), remoteRepository, groupId);
+            }
+        }
+    }
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.Session;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.heimdall.shared.SessionUtils;
+import eu.maveniverse.maven.shared.core.fs.FileUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
+import org.eclipse.aether.util.ConfigUtils;
+
+/**
+ * Remote repository filter source that learns which group prefixes remote repositories do not serve, without any
+ * rules. Downloads from remote repositories (see {@link AffinityListener}) are scored per remote repository and group
+ * prefix (first {@code heimdall.affinity.depth} elements of group ID, defaults to 2, like "org.springframework"): once
+ * a group prefix was not found {@code heimdall.affinity.missThreshold} times (defaults to 5) and was never served, the
+ * remote repository is not asked for it anymore. It is probed again once in {@code heimdall.affinity.probeInterval}
+ * millis (defaults to a day) since its last miss or probe, so repositories that start serving it are noticed.
+ * Downloads rejected by filters are not misses.
+ * <p>
+ * Scores are kept across builds in "${basedir}/affinity-${repository.id}.bin" files: hits, misses (as variable length
+ * integers) and time of last miss per group prefix. On session close, scores of the session are merged into them,
+ * holding the lock shared with other processes (see {@link SharedRules}).
+ * <p>
+ * Unlike other filters, this filter is disabled by default, enable it with {@code heimdall.affinity} property.
+ */
+@Singleton
+@Named
+public final class AffinityRemoteRepositoryFilterSource extends RemoteRepositoryFilterSourceSupport {
+    public static final String NAME = "affinity";
+
+    private static final String CONF_NAME_DEPTH = "depth";
+
+    private static final String CONF_NAME_MISS_THRESHOLD = "missThreshold";
+
+    private static final String CONF_NAME_PROBE_INTERVAL = "probeInterval";
+
+    private static final int DEFAULT_DEPTH = 2;
+
+    private static final int DEFAULT_MISS_THRESHOLD = 5;
+
+    private static final long DEFAULT_PROBE_INTERVAL = 24L * 60L * 60L * 1000L;
+
+    private static final int MAGIC = 0x484D4441;
+
+    private static final byte VERSION = 1;
+
+    private static final String SUFFIX = ".bin";
+
+    private final ConcurrentHashMap<String, Scores> scores;
+
+    @Inject
+    public AffinityRemoteRepositoryFilterSource() {
+        super(NAME);
+        this.scores = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns enabled state of filter.
+     * <p>
+     * Default is {@code false}.
+     */
+    @Override
+    protected boolean isEnabled(RepositorySystemSession session) {
+        return ConfigUtils.getBoolean(session, false, SessionConfig.KEY_PREFIX + NAME);
+    }
+
+    @Override
+    public RemoteRepositoryFilter getRemoteRepositoryFilter(RepositorySystemSession session) {
+        Optional<Session> so = SessionUtils.mayGetSession(session);
+        if (so.isPresent() && isEnabled(session)) {
+            Session heimdallSession = so.orElseThrow(J8Utils.OET);
+            heimdallSession
+                    .config()
+                    .session()
+                    .getData()
+                    .computeIfAbsent(AffinityRemoteRepositoryFilterSource.class, () -> {
+                        heimdallSession.registerOnCloseHook(() -> save(session));
+                        return Boolean.TRUE;
+                    });
+            return new AffinityFilter(session);
+        }
+        return null;
+    }
+
+    /**
+     * Records download of given group ID served by remote repository.
+     */
+    void served(RepositorySystemSession session, RemoteRepository remoteRepository, String groupId) {
+        if (isEnabled(session) && SessionUtils.mayGetSession(session).isPresent()) {
+            scores(session, remoteRepository).score(prefix(session, groupId)).hit();
+        }
+    }
+
+    /**
+     * Records download of given group ID not found in remote repository. Downloads filtered out (by this or other
+     * filters) must not be recorded: they are not misses, and would postpone next probe.
+     */
+    void missed(RepositorySystemSession session, RemoteRepository remoteRepository, String groupId) {
+        if (isEnabled(session) && SessionUtils.mayGetSession(session).isPresent()) {
+            scores(session, remoteRepository).score(prefix(session, groupId)).miss(System.currentTimeMillis());
+        }
+    }
+
+    private String prefix(RepositorySystemSession session, String groupId) {
+        int depth = ConfigUtils.getInteger(session, DEFAULT_DEPTH, configPropKey(CONF_NAME_DEPTH));
+        int end = -1;
+        for (int i = 0; i < depth; i++) {
+            end = groupId.indexOf('.', end + 1);
+            if (end < 0) {
+                return groupId;
+            }
+        }
+        return groupId.substring(0, end);
+    }
+
+    private Scores scores(RepositorySystemSession session, RemoteRepository remoteRepository) {
+        return scores.computeIfAbsent(remoteRepository.getId(), id -> {
+            Scores result = new Scores(remoteRepository);
+            Path file = file(session, remoteRepository);
+            try {
+                if (Files.isReadable(file)) {
+                    for (Map.Entry<String, Stored> entry : read(file).entrySet()) {
+                        result.score(entry.getKey()).restore(entry.getValue());
+                    }
+                    logger.debug(
+                            "Heimdall loaded {} affinity scores for remote repository {}",
+                            result.scores.size(),
+                            remoteRepository.getId());
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Heimdall could not load affinity scores from {}: {}", file, e.toString());
+            }
+            return result;
+        });
+    }
+
+    private Path file(RepositorySystemSession session, RemoteRepository remoteRepository) {
+        return getBasedir(session, false).resolve(NAME + "-" + remoteRepository.getId() + SUFFIX);
+    }
+
+    /**
+     * Merges scores of this session into stored ones, holding the lock of remote repository.
+     */
+    private void save(RepositorySystemSession session) {
+        for (Scores repositoryScores : scores.values()) {
+            HashMap<String, Stored> delta = new HashMap<>();
+            for (Map.Entry<String, Score> entry : repositoryScores.scores.entrySet()) {
+                Stored stored = entry.getValue().flush();
+                if (stored != null) {
+                    delta.put(entry.getKey(), stored);
+                }
+            }
+            if (delta.isEmpty()) {
+                continue;
+            }
+            RemoteRepository remoteRepository = repositoryScores.remoteRepository;
+            Path file = file(session, remoteRepository);
+            try {
+                SharedRules.locked(session, NAME, remoteRepository, () -> {
+                    Map<String, Stored> stored = Files.isReadable(file) ? read(file) : new HashMap<>();
+                    for (Map.Entry<String, Stored> entry : delta.entrySet()) {
+                        stored.merge(entry.getKey(), entry.getValue(), Stored::merge);
+                    }
+                    Files.createDirectories(file.getParent());
+                    FileUtils.writeFile(file, p -> write(p, stored));
+                    logger.debug(
+                            "Heimdall saved {} affinity scores for remote repository {}",
+                            stored.size(),
+                            remoteRepository.getId());
+                    return null;
+                });
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Heimdall could not save affinity scores to {}: {}", file, e.toString());
+            }
+        }
+    }
+
+    static Map<String, Stored> read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException("Not affinity scores: " + file);
+            }
+            int count = readVarInt(in);
+            HashMap<String, Stored> result = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                result.put(in.readUTF(), new Stored(readVarInt(in), readVarInt(in), readVarLong(in)));
+            }
+            return result;
+        }
+    }
+
+    static void write(Path file, Map<String, Stored> stored) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeVarLong(out, stored.size());
+            for (Map.Entry<String, Stored> entry : stored.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeVarLong(out, entry.getValue().hits);
+                writeVarLong(out, entry.getValue().misses);
+                writeVarLong(out, entry.getValue().lastMiss);
+            }
+        }
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        return saturated(readVarLong(in));
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int saturated(long value) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, value));
+    }
+
+    /**
+     * Evaluates scores of each remote repository directly: group prefixes learned missing are rejected, without
+     * consuming probes (a batch is not a download), and without recording events.
+     */
+    @Override
+    protected void acceptArtifacts(
+            RepositorySystemSession session,
+            List<RemoteRepository> remoteRepositories,
+            List<Artifact> artifacts,
+            boolean[][] verdicts) {
+        if (!SessionUtils.mayGetSession(session).isPresent() || !isEnabled(session)) {
+            return;
+        }
+        int missThreshold =
+                ConfigUtils.getInteger(session, DEFAULT_MISS_THRESHOLD, configPropKey(CONF_NAME_MISS_THRESHOLD));
+        String[] prefixes = new String[artifacts.size()];
+        for (int a = 0; a < prefixes.length; a++) {
+            String groupId = artifacts.get(a).getGroupId();
+            // artifacts are sorted: neighbours mostly share group ID
+            prefixes[a] = a > 0 && groupId.equals(artifacts.get(a - 1).getGroupId())
+                    ? prefixes[a - 1]
+                    : prefix(session, groupId);
+        }
+        for (int r = 0; r < remoteRepositories.size(); r++) {
+            Map<String, Score> repositoryScores = scores(session, remoteRepositories.get(r)).scores;
+            for (int a = 0; a < prefixes.length; a++) {
+                if (verdicts[a][r]) {
+                    Score score = repositoryScores.get(prefixes[a]);
+                    verdicts[a][r] = score == null || !score.learned(missThreshold);
+                }
+            }
+        }
+    }
+
+    private class AffinityFilter implements RemoteRepositoryFilter {
+        private final RepositorySystemSession repoSession;
+        private final int missThreshold;
+        private final long probeInterval;
+
+        private AffinityFilter(RepositorySystemSession repoSession) {
+            this.repoSession = repoSession;
+            this.missThreshold = ConfigUtils.getInteger(
+                    repoSession, DEFAULT_MISS_THRESHOLD, configPropKey(CONF_NAME_MISS_THRESHOLD));
+            this.probeInterval =
+                    ConfigUtils.getLong(repoSession, DEFAULT_PROBE_INTERVAL, configPropKey(CONF_NAME_PROBE_INTERVAL));
+        }
+
+        @Override
+        public Result acceptArtifact(RemoteRepository remoteRepository, Artifact artifact) {
+            return acceptGroupId(remoteRepository, artifact.getGroupId());
+        }
+
+        @Override
+        public Result acceptMetadata(RemoteRepository remoteRepository, Metadata metadata) {
+            if (metadata.getGroupId().isEmpty()) {
+                return NO_GROUP_RESULT;
+            }
+            return acceptGroupId(remoteRepository, metadata.getGroupId());
+        }
+
+        private Result acceptGroupId(RemoteRepository remoteRepository, String groupId) {
+            if (!isEnabled(repoSession)) {
+                return DISABLED_RESULT;
+            }
+            Object event = HeimdallEvents.beginDecision();
+            String prefix = prefix(repoSession, groupId);
+            Score score = scores(repoSession, remoteRepository).scores.get(prefix);
+            boolean accepted;
+            if (score == null) {
+                accepted = true;
+            } else if (Recheck.active()) {
+                // a recheck must not consume a probe: probes are rechecked as rejected, next probe waits anyway
+                accepted = !score.learned(missThreshold);
+            } else {
+                accepted = score.accepted(missThreshold, probeInterval, System.currentTimeMillis());
+            }
+            HeimdallEvents.endDecision(event, NAME, remoteRepository.getId(), groupId, accepted);
+            if (accepted) {
+                return new SimpleResult(true, "G:" + groupId + " not known missing from " + remoteRepository);
+            } else {
+                return new SimpleResult(
+                        false, "G:" + groupId + " learned missing (" + prefix + ") from " + remoteRepository);
+            }
+        }
+    }
+
+    /**
+     * Scores of a remote repository, per group prefix.
+     */
+    private static final class Scores {
+        private final RemoteRepository remoteRepository;
+        private final ConcurrentHashMap<String, Score> scores;
+
+        private Scores(RemoteRepository remoteRepository) {
+            this.remoteRepository = remoteRepository;
+            this.scores = new ConcurrentHashMap<>();
+        }
+
+        private Score score(String prefix) {
+            return scores.computeIfAbsent(prefix, k -> new Score());
+        }
+    }
+
+    /**
+     * Score of a group prefix: stored counts, counts of this session (not stored yet), time of last miss and time of
+     * last probe of this process.
+     */
+    static final class Score {
+        private volatile int storedHits;
+        private volatile int storedMisses;
+        private final AtomicInteger hits = new AtomicInteger();
+        private final AtomicInteger misses = new AtomicInteger();
+        private final AtomicLong lastMiss = new AtomicLong();
+        private final AtomicLong lastProbe = new AtomicLong();
+
+        void hit() {
+            hits.incrementAndGet();
+        }
+
+        void miss(long now) {
+            misses.incrementAndGet();
+            lastMiss.accumulateAndGet(now, Math::max);
+        }
+
+        /**
+         * Returns {@code true} if group prefix was never served, and was not found at least given times.
+         */
+        boolean learned(int missThreshold) {
+            return storedHits == 0 && hits.get() == 0 && (long) storedMisses + misses.get() >= missThreshold;
+        }
+
+        /**
+         * Returns {@code true} if group prefix is not learned missing, or if it is probed: once per given interval
+         * since last miss or probe, the thread winning the race probes, others keep rejecting.
+         */
+        boolean accepted(int missThreshold, long probeInterval, long now) {
+            if (!learned(missThreshold)) {
+                return true;
+            }
+            long probe = lastProbe.get();
+            return now - Math.max(lastMiss.get(), probe) >= probeInterval && lastProbe.compareAndSet(probe, now);
+        }
+
+        /**
+         * Restores stored score.
+         */
+        void restore(Stored stored) {
+            storedHits = stored.hits;
+            storedMisses = stored.misses;
+            lastMiss.accumulateAndGet(stored.lastMiss, Math::max);
+        }
+
+        /**
+         * Moves counts of this session into stored ones, and returns them, or {@code null} if there were none.
+         */
+        Stored flush() {
+            int hits = this.hits.getAndSet(0);
+            int misses = this.misses.getAndSet(0);
+            if (hits == 0 && misses == 0) {
+                return null;
+            }
+            storedHits = saturated((long) storedHits + hits);
+            storedMisses = saturated((long) storedMisses + misses);
+            return new Stored(hits, misses, lastMiss.get());
+        }
+    }
+
+    /**
+     * Stored score of a group prefix.
+     */
+    static final class Stored {
+        final int hits;
+        final int misses;
+        final long lastMiss;
+
+        Stored(int hits, int misses, long lastMiss) {
+            this.hits = hits;
+            this.misses = misses;
+            this.lastMiss = lastMiss;
+        }
+
+        Stored merge(Stored other) {
+            return new Stored(
+                    saturated((long) hits + other.hits),
+                    saturated((long) misses + other.misses),
+                    Math.max(lastMiss, other.lastMiss));
+        }
+    }
+
+    private static final RemoteRepositoryFilter.Result DISABLED_RESULT =
+            new SimpleResult(true, "Affinity filter disabled");
+
+    private static final RemoteRepositoryFilter.Result NO_GROUP_RESULT =
+            new SimpleResult(true, "Metadata without group is not scored");
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.RuleSource;
+import eu.maveniverse.maven.heimdall.shared.Session;
+import eu.maveniverse.maven.heimdall.shared.SessionUtils;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.ArtifactTree;
+import java.io.BufferedReader;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
+
+/**
+ * Remote repository filter source filtering on full artifact coordinates (G:A:V:C:E). It is backed by a file that
+ * lists rules, see {@link ArtifactTree} for rule format. Using it one can express things like "this repository
+ * serves only {@code com.acme:special-lib}" or "never ask this repository for {@code sources} classifier".
+ * <p>
+ * The file can be authored manually: format is one rule per line, comments starting with "#" (hash) and empty lines
+ * for structuring are supported.
+ * <p>
+ * The artifact file is expected on path "${basedir}/artifact-${repository.id}.txt". Rules are loaded from
+ * {@link RuleSource}s, so other sources may provide them as well.
+ * <p>
+ * The artifact file once loaded are cached in component, so in-flight artifact file change during component
+ * existence are NOT noticed.
+ */
+@Singleton
+@Named
+public final class ArtifactRemoteRepositoryFilterSource extends RemoteRepositoryFilterSourceSupport {
+    public static final String NAME = "artifact";
+
+    private final RuleLoader<ArtifactTree> rules;
+
+    @Inject
+    public ArtifactRemoteRepositoryFilterSource(List<RuleSource> ruleSources) {
+        super(NAME, ruleSources);
+        this.rules = new RuleLoader<>(ArtifactTree.SENTINEL);
+    }
+
+    @Override
+    public RemoteRepositoryFilter getRemoteRepositoryFilter(RepositorySystemSession session) {
+        Optional<Session> so = SessionUtils.mayGetSession(session);
+        if (so.isPresent() && isEnabled(session)) {
+            Session heimdallSession = so.orElseThrow(J8Utils.OET);
+            preloadOnce(session, () -> {
+                for (RemoteRepository remoteRepository :
+                        heimdallSession.config().remoteRepositories()) {
+                    rules.preload(remoteRepository, r -> loadRepositoryRules(session, r));
+                }
+            });
+            return new ArtifactFilter(heimdallSession, session);
+        }
+        return null;
+    }
+
+    private ArtifactTree cacheRules(RepositorySystemSession session, RemoteRepository remoteRepository) {
+        return rules.get(
+                remoteRepository,
+                r -> loadRepositoryRules(session, r),
+                () -> failurePolicy(session, ArtifactTree.SENTINEL, FAILED));
+    }
+
+    private CompletableFuture<ArtifactTree> loadRepositoryRules(
+            RepositorySystemSession session, RemoteRepository remoteRepository) {
+        return loadRules(session, remoteRepository, ArtifactTree.SENTINEL, content -> {
+            if (content.compiled()) {
+                throw new IllegalArgumentException("Compiled artifact rules are not supported: " + content);
+            }
+            try (BufferedReader reader = textRules(content)) {
+                ArtifactTree artifactTree = new ArtifactTree();
+                int rules = artifactTree.loadNodes(reader.lines());
+                HeimdallEvents.ruleCounts(rules, 0);
+                logger.info(
+                        "Heimdall loaded {} artifact rules for remote repository {} from {}",
+                        rules,
+                        remoteRepository.getId(),
+                        content);
+                if (logger.isDebugEnabled()) {
+                    artifactTree.dump("");
+                }
+                return artifactTree;
+            }
+        });
+    }
+
+    /**
+     * Evaluates rules of each remote repository directly, without recording decision traces nor events, keeping
+     * verdicts in session.
+     */
+    @Override
+    protected void acceptArtifacts(
+            RepositorySystemSession session,
+            List<RemoteRepository> remoteRepositories,
+            List<Artifact> artifacts,
+            boolean[][] verdicts) {
+        if (!SessionUtils.mayGetSession(session).isPresent() || !isEnabled(session)) {
+            return;
+        }
+        ArtifactVerdicts prewarmed = ArtifactVerdicts.get(session);
+        for (int r = 0; r < remoteRepositories.size(); r++) {
+            RemoteRepository remoteRepository = remoteRepositories.get(r);
+            ArtifactTree artifactTree = cacheRules(session, remoteRepository);
+            if (ArtifactTree.SENTINEL == artifactTree) {
+                continue;
+            }
+            for (int a = 0; a < artifacts.size(); a++) {
+                if (verdicts[a][r]) {
+                    if (FAILED == artifactTree) {
+                        verdicts[a][r] = false;
+                        continue;
+                    }
+                    Artifact artifact = artifacts.get(a);
+                    verdicts[a][r] = artifactTree.acceptedArtifact(
+                            artifact.getGroupId(),
+                            artifact.getArtifactId(),
+                            artifact.getBaseVersion(),
+                            artifact.getClassifier(),
+                            artifact.getExtension());
+                    prewarmed.put(NAME, remoteRepository, artifactTree, artifact, verdicts[a][r]);
+                }
+            }
+        }
+    }
+
+    private class ArtifactFilter implements RemoteRepositoryFilter {
+        private final Session session;
+        private final RepositorySystemSession repoSession;
+        private final DecisionTrace trace;
+
+        private ArtifactFilter(Session session, RepositorySystemSession repoSession) {
+            this.session = session;
+            this.repoSession = repoSession;
+            this.trace = DecisionTrace.mayGetTrace(session);
+        }
+
+        @Override
+        public Result acceptArtifact(RemoteRepository remoteRepository, Artifact artifact) {
+            Object event = HeimdallEvents.beginDecision();
+            ArtifactTree artifactTree = cacheRules(repoSession, remoteRepository);
+            if (ArtifactTree.SENTINEL == artifactTree) {
+                return NOT_PRESENT_RESULT;
+            }
+            if (FAILED == artifactTree) {
+                return FAILED_RESULT;
+            }
+
+            ArtifactVerdicts prewarmed = ArtifactVerdicts.mayGet(repoSession);
+            Boolean cached = prewarmed != null ? prewarmed.get(NAME, remoteRepository, artifactTree, artifact) : null;
+            boolean accepted = cached != null
+                    ? cached
+                    : artifactTree.acceptedArtifact(
+                            artifact.getGroupId(),
+                            artifact.getArtifactId(),
+                            artifact.getBaseVersion(),
+                            artifact.getClassifier(),
+                            artifact.getExtension());
+            HeimdallEvents.endDecision(event, NAME, remoteRepository.getId(), artifact, accepted);
+            if (trace != null) {
+                trace.record(remoteRepository.getId(), DecisionTrace.FILTER_ARTIFACT, artifact.toString(), accepted);
+            }
+            if (accepted) {
+                return new SimpleResult(true, "Artifact " + artifact + " allowed from " + remoteRepository);
+            } else {
+                return new SimpleResult(false, "Artifact " + artifact + " NOT allowed from " + remoteRepository);
+            }
+        }
+
+        @Override
+        public Result acceptMetadata(RemoteRepository remoteRepository, Metadata metadata) {
+            Object event = HeimdallEvents.beginDecision();
+            ArtifactTree artifactTree = cacheRules(repoSession, remoteRepository);
+            if (ArtifactTree.SENTINEL == artifactTree) {
+                return NOT_PRESENT_RESULT;
+            }
+            if (FAILED == artifactTree) {
+                return FAILED_RESULT;
+            }
+
+            boolean accepted = artifactTree.acceptedMetadata(metadata.getGroupId(), metadata.getArtifactId());
+            HeimdallEvents.endDecision(event, NAME, remoteRepository.getId(), metadata, accepted);
+            if (trace != null) {
+                trace.record(remoteRepository.getId(), DecisionTrace.FILTER_ARTIFACT, metadata.toString(), accepted);
+            }
+            if (accepted) {
+                return new SimpleResult(true, "Metadata " + metadata + " allowed from " + remoteRepository);
+            } else {
+                return new SimpleResult(false, "Metadata " + metadata + " NOT allowed from " + remoteRepository);
+            }
+        }
+    }
+
+    private static final RemoteRepositoryFilter.Result NOT_PRESENT_RESULT =
+            new SimpleResult(true, "Artifact rules not present");
+
+    /**
+     * Rules served while their load is failing, if configured to reject all.
+     */
+    private static final ArtifactTree FAILED = new ArtifactTree();
+
+    private static final RemoteRepositoryFilter.Result FAILED_RESULT =
+            new SimpleResult(false, "Artifact rules failed to load");
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Verdicts of artifacts evaluated in batch (see {@link DefaultBatchEvaluator}), per filter, remote repository and
+ * rules instance (so reloaded rules start over). Kept in session data once batch evaluation ran, and filters answer
+ * from it: cached verdicts are recorded as decisions (into decision trace and shadow rules of session) by filters,
+ * the same as decided ones.
+ */
+final class ArtifactVerdicts {
+    /**
+     * Count of verdicts cached per session: once reached, least recently used ones are evicted.
+     */
+    static final int MAX_VERDICTS = 16384;
+
+    private final LruCache<String, Verdict> verdicts;
+
+    ArtifactVerdicts(int capacity) {
+        this.verdicts = new LruCache<>(capacity);
+    }
+
+    /**
+     * Returns verdicts of given session, or {@code null} if there was no batch evaluation in it.
+     */
+    static ArtifactVerdicts mayGet(RepositorySystemSession session) {
+        return (ArtifactVerdicts) session.getData().get(ArtifactVerdicts.class);
+    }
+
+    /**
+     * Returns verdicts of given session, creating them if needed.
+     */
+    static ArtifactVerdicts get(RepositorySystemSession session) {
+        return (ArtifactVerdicts)
+                session.getData().computeIfAbsent(ArtifactVerdicts.class, () -> new ArtifactVerdicts(MAX_VERDICTS));
+    }
+
+    /**
+     * Returns cached verdict of given artifact by given filter and rules instance, or {@code null}.
+     */
+    Boolean get(String filter, RemoteRepository remoteRepository, Object rules, Artifact artifact) {
+        Verdict verdict = verdicts.get(key(filter, remoteRepository, artifact));
+        return verdict != null && verdict.rules == rules ? verdict.accepted : null;
+    }
+
+    /**
+     * Caches verdict of given artifact by given filter and rules instance.
+     */
+    void put(String filter, RemoteRepository remoteRepository, Object rules, Artifact artifact, boolean accepted) {
+        verdicts.put(key(filter, remoteRepository, artifact), new Verdict(rules, accepted));
+    }
+
+    int size() {
+        return verdicts.size();
+    }
+
+    private static String key(String filter, RemoteRepository remoteRepository, Artifact artifact) {
+        return filter + " " + remoteRepository.getId() + " " + artifact;
+    }
+
+    private static final class Verdict {
+        private final Object rules;
+        private final boolean accepted;
+
+        private Verdict(Object rules, boolean accepted) {
+            this.rules = rules;
+            this.accepted = accepted;
+        }
+    }
+}
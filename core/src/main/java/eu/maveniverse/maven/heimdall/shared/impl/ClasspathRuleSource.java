@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.RuleSource;
+import java.net.URL;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Rule source of class path resources: "META-INF/heimdall/${filter}-${repository.id}.bin" compiled rules, or if not
+ * present, "META-INF/heimdall/${filter}-${repository.id}.txt" text rules. This source has lowest priority, and serves
+ * as "built-in defaults". Text rules may have delta "META-INF/heimdall/${filter}-${repository.id}.delta" next to them.
+ * <p>
+ * By default, resources are looked up using the class loader of Heimdall. An extension willing to ship rules within
+ * its JAR may provide a component extending this class, passing in its own class loader (and possibly higher
+ * priority).
+ */
+@Singleton
+@Named(ClasspathRuleSource.NAME)
+public class ClasspathRuleSource implements RuleSource {
+    public static final String NAME = "classpath";
+
+    public static final int PRIORITY = 10;
+
+    static final String RESOURCE_PREFIX = "META-INF/heimdall/";
+
+    private final ClassLoader classLoader;
+
+    private final int priority;
+
+    @Inject
+    public ClasspathRuleSource() {
+        this(ClasspathRuleSource.class.getClassLoader(), PRIORITY);
+    }
+
+    protected ClasspathRuleSource(ClassLoader classLoader, int priority) {
+        this.classLoader = requireNonNull(classLoader);
+        this.priority = priority;
+    }
+
+    @Override
+    public int priority() {
+        return priority;
+    }
+
+    @Override
+    public CompletableFuture<Optional<RuleContent>> load(
+            RepositorySystemSession session, String filter, RemoteRepository remoteRepository) {
+        return RuleLoader.supplyAsync(() -> {
+            String name = RESOURCE_PREFIX + filter + "-" + remoteRepository.getId();
+            URL compiled = classLoader.getResource(name + FileRuleSource.COMPILED_SUFFIX);
+            if (compiled != null) {
+                return Optional.of(RuleContent.ofOpener(compiled.toExternalForm(), true, compiled::openStream));
+            }
+            URL text = classLoader.getResource(name + FileRuleSource.TEXT_SUFFIX);
+            if (text != null) {
+                return Optional.of(RuleContent.ofOpener(text.toExternalForm(), false, text::openStream)
+                        .withDelta(() -> {
+                            URL delta = classLoader.getResource(name + FileRuleSource.DELTA_SUFFIX);
+                            return delta != null ? delta.openStream() : null;
+                        }));
+            }
+            return Optional.empty();
+        });
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.Session;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.shared.core.fs.FileUtils;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opt-in trace of filter decisions: compact binary records written into a preallocated lock-free ring buffer. When
+ * the buffer wraps around, oldest records are overwritten. On {@link Session} close, the buffer is dumped to
+ * "${heimdall.basedir}/trace/trace-${timestamp}.bin" file, that can be read by {@link DecisionTraceDecoder}.
+ * <p>
+ * Each record is two longs: timestamp (nanos) and packed data of thread (16 bits), repository slot (12 bits), filter
+ * id (4 bits), verdict (1 bit) and interned coordinate id (31 bits). Strings (thread names, repository IDs and
+ * coordinates) are interned into tables that are dumped along with records. Tables are bounded: once full, new
+ * strings are not interned anymore, but recorded with the id of "&lt;overflow&gt;" string.
+ * <p>
+ * Tracing is disabled by default, enable it with {@code heimdall.trace.enabled} property. Buffer capacity (count of
+ * records, rounded up to power of two) is set with {@code heimdall.trace.capacity}, and defaults to 65536. Count of
+ * interned coordinates is set with {@code heimdall.trace.maxCoordinates}, and defaults to 262144.
+ */
+public final class DecisionTrace {
+    public static final String CONFIG_ENABLED = SessionConfig.KEY_PREFIX + "trace.enabled";
+
+    public static final String CONFIG_CAPACITY = SessionConfig.KEY_PREFIX + "trace.capacity";
+
+    public static final String CONFIG_MAX_COORDINATES = SessionConfig.KEY_PREFIX + "trace.maxCoordinates";
+
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    public static final int DEFAULT_MAX_COORDINATES = 1 << 18;
+
+    public static final int FILTER_GROUP_ID = 0;
+
+    public static final int FILTER_PREFIXES = 1;
+
+    public static final int FILTER_ARTIFACT = 2;
+
+    static final String[] FILTERS = {
+        GroupIdRemoteRepositoryFilterSource.NAME,
+        PrefixesRemoteRepositoryFilterSource.NAME,
+        ArtifactRemoteRepositoryFilterSource.NAME
+    };
+
+    static final int MAGIC = 0x484D4454;
+
+    static final byte VERSION = 1;
+
+    static final int MAX_THREADS = 1 << 16;
+
+    static final int MAX_REPOSITORIES = 1 << 12;
+
+    static final int MAX_COORDINATES = Integer.MAX_VALUE;
+
+    static final String OVERFLOW = "<overflow>";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DecisionTrace.class);
+
+    private final long startMillis;
+    private final long startNanos;
+    private final int mask;
+    private final AtomicLongArray records;
+    private final AtomicLong cursor;
+    private final Interner threads;
+    private final Interner repositories;
+    private final Interner coordinates;
+    private final ThreadLocal<Integer> threadSlot;
+
+    DecisionTrace(int capacity, int maxCoordinates) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.mask = size - 1;
+        this.records = new AtomicLongArray(size * 2);
+        this.cursor = new AtomicLong();
+        this.threads = new Interner(MAX_THREADS);
+        this.repositories = new Interner(MAX_REPOSITORIES);
+        this.coordinates = new Interner(Math.max(1, Math.min(maxCoordinates, MAX_COORDINATES)));
+        this.threadSlot = ThreadLocal.withInitial(() -> threads.intern(
+                Thread.currentThread().getName() + "#" + Thread.currentThread().getId()));
+    }
+
+    /**
+     * Returns the trace of given Heimdall session, creating it if needed, or {@code null} if tracing is disabled.
+     */
+    public static DecisionTrace mayGetTrace(Session session) {
+        requireNonNull(session, "session");
+        Map<String, String> properties = session.config().effectiveProperties();
+        if (!Boolean.parseBoolean(properties.getOrDefault(CONFIG_ENABLED, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        return (DecisionTrace) session.config().session().getData().computeIfAbsent(DecisionTrace.class, () -> {
+            DecisionTrace trace = new DecisionTrace(
+                    Integer.parseInt(properties.getOrDefault(CONFIG_CAPACITY, Integer.toString(DEFAULT_CAPACITY))),
+                    Integer.parseInt(properties.getOrDefault(
+                            CONFIG_MAX_COORDINATES, Integer.toString(DEFAULT_MAX_COORDINATES))));
+            session.registerOnCloseHook(
+                    () -> trace.dump(session.config().basedir().resolve("trace")));
+            return trace;
+        });
+    }
+
+    /**
+     * Records a decision, unless it is a {@link Recheck}. This method is lock-free, and performs no allocation once
+     * thread, repository and coordinate are interned.
+     */
+    public void record(String repositoryId, int filter, String coordinate, boolean accepted) {
+        if (Recheck.active()) {
+            return;
+        }
+        long data = ((long) threadSlot.get() << 48)
+                | ((long) repositories.intern(repositoryId) << 36)
+                | ((long) filter << 32)
+                | (accepted ? 1L << 31 : 0L)
+                | coordinates.intern(coordinate);
+        int index = (int) (cursor.getAndIncrement() & mask) << 1;
+        records.lazySet(index, System.nanoTime());
+        records.lazySet(index + 1, data);
+    }
+
+    /**
+     * Dumps the trace into a new file in given directory, and returns the path of file.
+     */
+    Path dump(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve("trace-"
+                    + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+                            .withZone(ZoneOffset.UTC)
+                            .format(Instant.ofEpochMilli(startMillis))
+                    + ".bin");
+            FileUtils.writeFile(file, p -> {
+                try (OutputStream outputStream = Files.newOutputStream(p)) {
+                    write(outputStream);
+                }
+            });
+            LOGGER.info("Heimdall dumped {} decision records to {}", Math.min(cursor.get(), mask + 1L), file);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the trace: header, string tables and records in order they were recorded.
+     */
+    void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        long end = cursor.get();
+        long count = Math.min(end, mask + 1L);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(startMillis);
+        out.writeLong(startNanos);
+        out.writeLong(end);
+        writeTable(out, FILTERS);
+        writeTable(out, threads.table());
+        writeTable(out, repositories.table());
+        writeTable(out, coordinates.table());
+        out.writeInt((int) count);
+        for (long i = end - count; i < end; i++) {
+            int index = (int) (i & mask) << 1;
+            out.writeLong(records.get(index));
+            out.writeLong(records.get(index + 1));
+        }
+        out.flush();
+    }
+
+    private static void writeTable(DataOutputStream out, String[] table) throws IOException {
+        out.writeInt(table.length);
+        for (String string : table) {
+            out.writeUTF(string);
+        }
+    }
+
+    /**
+     * Lock-free string to id interning, with ids assigned in order of appearance. The last id ({@code limit - 1}) is
+     * reserved for overflow: once all other ids are assigned, new strings are not interned (so the table does not grow
+     * anymore), and overflow id is used for them.
+     */
+    private static final class Interner {
+        private final int limit;
+        private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicInteger counter = new AtomicInteger();
+        private volatile boolean overflow;
+
+        private Interner(int limit) {
+            this.limit = limit;
+        }
+
+        private int intern(String string) {
+            Integer id = ids.get(string);
+            if (id == null && counter.get() < limit - 1) {
+                id = ids.computeIfAbsent(string, s -> {
+                    int next = counter.getAndIncrement();
+                    return next < limit - 1 ? next : null;
+                });
+            }
+            if (id == null) {
+                overflow = true;
+                return limit - 1;
+            }
+            return id;
+        }
+
+        private String[] table() {
+            String[] result = new String[overflow ? limit : Math.min(counter.get(), limit - 1)];
+            ids.forEach((s, id) -> {
+                if (id < result.length) {
+                    result[id] = s;
+                }
+            });
+            if (overflow) {
+                result[limit - 1] = OVERFLOW;
+            }
+            for (int i = 0; i < result.length; i++) {
+                if (result[i] == null) {
+                    result[i] = "?";
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Decoder of {@link DecisionTrace} dump files. Can be used from command line as well:
+ * {@code java -cp core.jar eu.maveniverse.maven.heimdall.shared.impl.DecisionTraceDecoder trace-xxx.bin}
+ * prints decoded records, one per line.
+ */
+public final class DecisionTraceDecoder {
+    private DecisionTraceDecoder() {}
+
+    /**
+     * Decoded trace record.
+     */
+    public static final class Record {
+        private final Instant timestamp;
+        private final String thread;
+        private final String filter;
+        private final String repositoryId;
+        private final String coordinate;
+        private final boolean accepted;
+
+        private Record(
+                Instant timestamp,
+                String thread,
+                String filter,
+                String repositoryId,
+                String coordinate,
+                boolean accepted) {
+            this.timestamp = timestamp;
+            this.thread = thread;
+            this.filter = filter;
+            this.repositoryId = repositoryId;
+            this.coordinate = coordinate;
+            this.accepted = accepted;
+        }
+
+        public Instant getTimestamp() {
+            return timestamp;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public String getFilter() {
+            return filter;
+        }
+
+        public String getRepositoryId() {
+            return repositoryId;
+        }
+
+        public String getCoordinate() {
+            return coordinate;
+        }
+
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        @Override
+        public String toString() {
+            return timestamp + " [" + thread + "] " + filter + " " + repositoryId + " "
+                    + (accepted ? "ACCEPTED " : "REJECTED ") + coordinate;
+        }
+    }
+
+    /**
+     * Decodes trace dump from input stream, and passes records to consumer in order they were recorded. Returns the
+     * total count of records recorded, that may be greater than count of decoded records, if buffer wrapped around.
+     */
+    public static long decode(InputStream inputStream, Consumer<Record> consumer) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != DecisionTrace.MAGIC) {
+            throw new IOException("Not a decision trace");
+        }
+        byte version = in.readByte();
+        if (version != DecisionTrace.VERSION) {
+            throw new IOException("Unsupported decision trace version " + version);
+        }
+        long startMillis = in.readLong();
+        long startNanos = in.readLong();
+        long total = in.readLong();
+        String[] filters = readTable(in);
+        String[] threads = readTable(in);
+        String[] repositories = readTable(in);
+        String[] coordinates = readTable(in);
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long nanos = in.readLong();
+            long data = in.readLong();
+            long offset = nanos - startNanos;
+            consumer.accept(new Record(
+                    Instant.ofEpochMilli(startMillis).plusNanos(offset),
+                    lookup(threads, (int) (data >>> 48)),
+                    lookup(filters, (int) (data >>> 32) & 0xF),
+                    lookup(repositories, (int) (data >>> 36) & 0xFFF),
+                    lookup(coordinates, (int) data & Integer.MAX_VALUE),
+                    (data & (1L << 31)) != 0));
+        }
+        return total;
+    }
+
+    private static String[] readTable(DataInputStream in) throws IOException {
+        String[] result = new String[in.readInt()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = in.readUTF();
+        }
+        return result;
+    }
+
+    private static String lookup(String[] table, int id) {
+        return id < table.length ? table[id] : "?";
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: DecisionTraceDecoder <trace-file>...");
+            System.exit(1);
+        }
+        for (String arg : args) {
+            try (InputStream inputStream = Files.newInputStream(Paths.get(arg))) {
+                long total = decode(inputStream, System.out::println);
+                System.out.println("# " + arg + ": " + total + " records recorded in total");
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.BatchEvaluator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilterSource;
+
+/**
+ * Evaluates Heimdall filters in batch: artifacts are sorted by coordinates, so that filters may share work between
+ * neighbours (like trie descents of common group ID prefix). Filters evaluating rules keep their verdicts in
+ * {@link ArtifactVerdicts} of session.
+ * <p>
+ * Batch evaluation does not record decision traces nor events: it is meant to warm up rules ahead of resolution.
+ */
+@Singleton
+@Named
+public final class DefaultBatchEvaluator implements BatchEvaluator {
+    private static final Comparator<Artifact> COORDINATES = Comparator.comparing(Artifact::getGroupId)
+            .thenComparing(Artifact::getArtifactId)
+            .thenComparing(Artifact::getBaseVersion);
+
+    private final List<RemoteRepositoryFilterSourceSupport> filterSources;
+
+    @Inject
+    public DefaultBatchEvaluator(List<RemoteRepositoryFilterSource> filterSources) {
+        requireNonNull(filterSources, "filterSources");
+        this.filterSources = new ArrayList<>();
+        for (RemoteRepositoryFilterSource filterSource : filterSources) {
+            if (filterSource instanceof RemoteRepositoryFilterSourceSupport) {
+                this.filterSources.add((RemoteRepositoryFilterSourceSupport) filterSource);
+            }
+        }
+    }
+
+    @Override
+    public boolean[][] evaluate(
+            RepositorySystemSession session, List<Artifact> artifacts, List<RemoteRepository> remoteRepositories) {
+        requireNonNull(session, "session");
+        requireNonNull(artifacts, "artifacts");
+        requireNonNull(remoteRepositories, "remoteRepositories");
+        Integer[] order = new Integer[artifacts.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(artifacts::get, COORDINATES));
+        List<Artifact> sorted = new ArrayList<>(order.length);
+        boolean[][] verdicts = new boolean[order.length][];
+        for (int i = 0; i < order.length; i++) {
+            sorted.add(artifacts.get(order[i]));
+            verdicts[i] = new boolean[remoteRepositories.size()];
+            Arrays.fill(verdicts[i], true);
+        }
+        for (RemoteRepositoryFilterSourceSupport filterSource : filterSources) {
+            filterSource.acceptArtifacts(session, remoteRepositories, sorted, verdicts);
+        }
+        boolean[][] result = new boolean[order.length][];
+        for (int i = 0; i < order.length; i++) {
+            result[order[i]] = verdicts[i];
+        }
+        return result;
+    }
+}
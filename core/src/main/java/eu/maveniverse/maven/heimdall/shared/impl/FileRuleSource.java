@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.RuleSource;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+
+/**
+ * Rule source of local files: "${basedir}/${filter}-${repository.id}.bin" compiled rules, or if not present,
+ * "${basedir}/${filter}-${repository.id}.txt" text rules. The basedir is the filter basedir, see
+ * {@link RemoteRepositoryFilterSourceSupport#getBasedir(RepositorySystemSession, boolean)}. Text rules may have delta
+ * "${basedir}/${filter}-${repository.id}.delta" next to them.
+ */
+@Singleton
+@Named(FileRuleSource.NAME)
+public final class FileRuleSource implements RuleSource {
+    public static final String NAME = "file";
+
+    public static final int PRIORITY = 20;
+
+    static final String TEXT_SUFFIX = ".txt";
+
+    static final String COMPILED_SUFFIX = ".bin";
+
+    static final String DELTA_SUFFIX = ".delta";
+
+    @Override
+    public int priority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public CompletableFuture<Optional<RuleContent>> load(
+            RepositorySystemSession session, String filter, RemoteRepository remoteRepository) {
+        return RuleLoader.supplyAsync(() -> {
+            Path basedir = RemoteRepositoryFilterSourceSupport.getBasedir(session, filter, false);
+            Path compiled = basedir.resolve(filter + "-" + remoteRepository.getId() + COMPILED_SUFFIX);
+            if (Files.isReadable(compiled)) {
+                return Optional.of(RuleContent.ofPath(compiled, true));
+            }
+            Path text = basedir.resolve(filter + "-" + remoteRepository.getId() + TEXT_SUFFIX);
+            if (Files.isReadable(text)) {
+                Path delta = basedir.resolve(filter + "-" + remoteRepository.getId() + DELTA_SUFFIX);
+                return Optional.of(RuleContent.ofPath(text, false)
+                        .withDelta(() -> Files.isReadable(delta) ? Files.newInputStream(delta) : null));
+            }
+            return Optional.empty();
+        });
+    }
+}
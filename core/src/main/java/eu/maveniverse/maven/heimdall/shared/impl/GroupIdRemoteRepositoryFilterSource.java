@@ -18,17 +18,19 @@
  */
 package eu.maveniverse.maven.heimdall.shared.impl;
 
+import eu.maveniverse.maven.heimdall.shared.RuleSource;
 import eu.maveniverse.maven.heimdall.shared.Session;
 import eu.maveniverse.maven.heimdall.shared.SessionUtils;
 import eu.maveniverse.maven.heimdall.shared.impl.ruletree.GroupTree;
-import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleLines;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeCodec;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeStats;
+import java.io.BufferedReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -47,10 +49,17 @@ import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
  * When "recording", this filter will not filter out anything, but will instead populate the file with all encountered
  * groupIds.
  * <p>
- * The groupId file is expected on path "${basedir}/groupId-${repository.id}.txt".
+ * The groupId file is expected on path "${basedir}/groupId-${repository.id}.txt". If compiled rules (see
+ * {@link RuleTreeCodec}) are present on path "${basedir}/groupId-${repository.id}.bin", they are used instead. Rules
+ * are loaded from {@link RuleSource}s, so other sources may provide them as well.
  * <p>
  * The groupId file once loaded are cached in component, so in-flight groupId file change during component existence
- * are NOT noticed.
+ * are NOT noticed, unless refresh is enabled: then rules are reloaded for every session, and text rules are updated
+ * incrementally (see {@link IncrementalRules}), with delta published next to them applied as well. Rules not
+ * refreshed may be served by local {@link RuleDaemon} instead, shared by all processes of the host, see
+ * {@link RuleDaemonClient}.
+ * <p>
+ * Verdicts of group and artifact level metadata are cached per rules instance, see {@link MetadataVerdicts}.
  *
  * @since 1.9.0
  */
@@ -59,89 +68,252 @@ import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
 public final class GroupIdRemoteRepositoryFilterSource extends RemoteRepositoryFilterSourceSupport {
     public static final String NAME = "groupId";
 
-    static final String GROUP_ID_FILE_PREFIX = "groupId-";
+    private final RuleLoader<GroupTree> rules;
 
-    static final String GROUP_ID_FILE_SUFFIX = ".txt";
+    private final IncrementalRules<GroupTree> incremental;
 
-    private final ConcurrentHashMap<RemoteRepository, GroupTree> rules;
+    private final MetadataVerdicts metadataVerdicts;
 
     @Inject
-    public GroupIdRemoteRepositoryFilterSource() {
-        super(NAME);
-        this.rules = new ConcurrentHashMap<>();
+    public GroupIdRemoteRepositoryFilterSource(List<RuleSource> ruleSources) {
+        super(NAME, ruleSources);
+        this.rules = new RuleLoader<>(GroupTree.SENTINEL);
+        this.incremental = new IncrementalRules<>(
+                NAME,
+                RuleLines::ofGroupIds,
+                lines -> {
+                    GroupTree groupTree = new GroupTree("");
+                    groupTree.loadNodes(lines.lines());
+                    return groupTree;
+                },
+                GroupTree::update,
+                RuleTreeStats::of);
+        this.metadataVerdicts = new MetadataVerdicts(NAME);
     }
 
     @Override
     public RemoteRepositoryFilter getRemoteRepositoryFilter(RepositorySystemSession session) {
         Optional<Session> so = SessionUtils.mayGetSession(session);
         if (so.isPresent() && isEnabled(session)) {
-            return new GroupIdFilter(so.orElseThrow(J8Utils.OET), session);
+            Session heimdallSession = so.orElseThrow(J8Utils.OET);
+            preloadOnce(session, () -> {
+                boolean refresh = isRefresh(session);
+                for (RemoteRepository remoteRepository :
+                        heimdallSession.config().remoteRepositories()) {
+                    if (refresh) {
+                        rules.refresh(remoteRepository, r -> loadRepositoryRules(session, r));
+                    } else {
+                        rules.preload(remoteRepository, r -> loadRepositoryRules(session, r));
+                    }
+                }
+            });
+            return new GroupIdFilter(heimdallSession, session);
         }
         return null;
     }
 
-    /**
-     * Returns the groupId path. The file and parents may not exist, this method merely calculate the path.
-     */
-    private Path filePath(Path basedir, String remoteRepositoryId) {
-        return basedir.resolve(GROUP_ID_FILE_PREFIX + remoteRepositoryId + GROUP_ID_FILE_SUFFIX);
+    private GroupTree cacheRules(RepositorySystemSession session, RemoteRepository remoteRepository) {
+        return rules.get(
+                remoteRepository,
+                r -> loadRepositoryRules(session, r),
+                () -> failurePolicy(session, GroupTree.SENTINEL, FAILED));
     }
 
-    private GroupTree cacheRules(RepositorySystemSession session, RemoteRepository remoteRepository) {
-        return rules.computeIfAbsent(remoteRepository, r -> loadRepositoryRules(session, r));
+    private CompletableFuture<GroupTree> loadRepositoryRules(
+            RepositorySystemSession session, RemoteRepository remoteRepository) {
+        boolean refresh = isRefresh(session);
+        boolean minimize = isMinimize(session);
+        RuleDaemonClient daemon = refresh ? null : RuleDaemonClient.mayGetClient(session);
+        return loadRules(session, remoteRepository, GroupTree.SENTINEL, content -> {
+            if (daemon != null && content.path().isPresent()) {
+                Optional<GroupTree> served = daemon.groupTree(
+                        remoteRepository,
+                        content,
+                        cause -> rules.invalidate(
+                                remoteRepository, cause, () -> failurePolicy(session, GroupTree.SENTINEL, FAILED)));
+                if (served.isPresent()) {
+                    return served.get();
+                }
+            }
+            if (refresh && !content.compiled()) {
+                return incremental.load(
+                        remoteRepository,
+                        content,
+                        (tree, stats, count) -> fitMemoryBudget(
+                                session,
+                                remoteRepository,
+                                content,
+                                tree,
+                                stats,
+                                () -> RuleTreeCodec.encode(tree, count),
+                                RuleTreeCodec::groupTreeView));
+            }
+            GroupTree groupTree;
+            int rules;
+            if (content.compiled()) {
+                ByteBuffer buffer = compiledRules(content);
+                groupTree = RuleTreeCodec.decodeGroupTree(buffer);
+                rules = RuleTreeCodec.ruleCount(buffer);
+            } else {
+                try (BufferedReader reader = textRules(content)) {
+                    groupTree = new GroupTree("");
+                    rules = groupTree.loadNodes(reader.lines());
+                }
+            }
+            if (minimize) {
+                groupTree.minimize();
+            }
+            RuleTreeStats stats = RuleTreeStats.of(groupTree);
+            HeimdallEvents.ruleCounts(rules, stats.getNodes());
+            logger.info(
+                    "Heimdall loaded {} group rules for remote repository {} from {}",
+                    rules,
+                    remoteRepository.getId(),
+                    content);
+            if (logger.isDebugEnabled()) {
+                groupTree.dump("");
+            }
+            GroupTree loaded = groupTree;
+            int count = rules;
+            return fitMemoryBudget(
+                    session,
+                    remoteRepository,
+                    content,
+                    loaded,
+                    stats,
+                    () -> RuleTreeCodec.encode(loaded, count),
+                    RuleTreeCodec::groupTreeView);
+        });
     }
 
-    private GroupTree loadRepositoryRules(RepositorySystemSession session, RemoteRepository remoteRepository) {
-        Path filePath = filePath(getBasedir(session, false), remoteRepository.getId());
-        if (Files.isReadable(filePath)) {
-            try (Stream<String> lines = Files.lines(filePath, StandardCharsets.UTF_8)) {
-                GroupTree groupTree = new GroupTree("");
-                int rules = groupTree.loadNodes(lines);
-                logger.info("Heimdall loaded {} group rules for remote repository {}", rules, remoteRepository.getId());
-                if (logger.isDebugEnabled()) {
-                    groupTree.dump("");
+    /**
+     * Evaluates rules of each remote repository once per distinct group ID, keeping verdicts in session.
+     */
+    @Override
+    protected void acceptArtifacts(
+            RepositorySystemSession session,
+            List<RemoteRepository> remoteRepositories,
+            List<Artifact> artifacts,
+            boolean[][] verdicts) {
+        if (!SessionUtils.mayGetSession(session).isPresent() || !isEnabled(session)) {
+            return;
+        }
+        List<String> groupIds = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            groupIds.add(artifact.getGroupId());
+        }
+        ArtifactVerdicts prewarmed = ArtifactVerdicts.get(session);
+        for (int r = 0; r < remoteRepositories.size(); r++) {
+            RemoteRepository remoteRepository = remoteRepositories.get(r);
+            GroupTree groupTree = cacheRules(session, remoteRepository);
+            if (FAILED == groupTree) {
+                for (boolean[] row : verdicts) {
+                    row[r] = false;
+                }
+            } else if (GroupTree.SENTINEL != groupTree) {
+                boolean[] accepted = groupTree.acceptedGroupIds(groupIds);
+                for (int a = 0; a < accepted.length; a++) {
+                    prewarmed.put(NAME, remoteRepository, groupTree, artifacts.get(a), accepted[a]);
+                    verdicts[a][r] &= accepted[a];
                 }
-                return groupTree;
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
             }
         }
-        return GroupTree.SENTINEL;
     }
 
     private class GroupIdFilter implements RemoteRepositoryFilter {
         private final Session session;
         private final RepositorySystemSession repoSession;
+        private final DecisionTrace trace;
+        private final ShadowRules shadow;
+        private final List<String> pluginGroups;
 
         private GroupIdFilter(Session session, RepositorySystemSession repoSession) {
             this.session = session;
             this.repoSession = repoSession;
+            this.trace = DecisionTrace.mayGetTrace(session);
+            this.shadow = ShadowRules.mayGetShadow(session);
+            this.pluginGroups = MetadataVerdicts.pluginGroups(repoSession);
         }
 
         @Override
         public Result acceptArtifact(RemoteRepository remoteRepository, Artifact artifact) {
+            ArtifactVerdicts prewarmed = ArtifactVerdicts.mayGet(repoSession);
+            if (prewarmed != null) {
+                Object event = HeimdallEvents.beginDecision();
+                Boolean accepted =
+                        prewarmed.get(NAME, remoteRepository, cacheRules(repoSession, remoteRepository), artifact);
+                if (accepted != null) {
+                    HeimdallEvents.endDecision(event, NAME, remoteRepository.getId(), artifact.getGroupId(), accepted);
+                    record(remoteRepository, artifact.getGroupId(), accepted);
+                    return result(remoteRepository, artifact.getGroupId(), accepted);
+                }
+            }
             return acceptGroupId(remoteRepository, artifact.getGroupId());
         }
 
         @Override
         public Result acceptMetadata(RemoteRepository remoteRepository, Metadata metadata) {
+            GroupTree groupIds = cacheRules(repoSession, remoteRepository);
+            if (GroupTree.SENTINEL != groupIds && FAILED != groupIds) {
+                Result result = metadataVerdicts.accept(
+                        remoteRepository,
+                        groupIds,
+                        pluginGroups,
+                        metadata,
+                        m -> acceptGroupId(remoteRepository, m.getGroupId()),
+                        (m, accepted) -> record(remoteRepository, m.getGroupId(), accepted));
+                if (result != null) {
+                    return result;
+                }
+            }
             return acceptGroupId(remoteRepository, metadata.getGroupId());
         }
 
         private Result acceptGroupId(RemoteRepository remoteRepository, String groupId) {
+            Object event = HeimdallEvents.beginDecision();
             GroupTree groupIds = cacheRules(repoSession, remoteRepository);
             if (GroupTree.SENTINEL == groupIds) {
+                if (shadow != null) {
+                    shadow.groupId(remoteRepository.getId(), groupId, true);
+                }
                 return NOT_PRESENT_RESULT;
             }
+            if (FAILED == groupIds) {
+                return FAILED_RESULT;
+            }
+
+            boolean accepted = groupIds.acceptedGroupId(groupId);
+            HeimdallEvents.endDecision(event, NAME, remoteRepository.getId(), groupId, accepted);
+            record(remoteRepository, groupId, accepted);
+            return result(remoteRepository, groupId, accepted);
+        }
 
-            if (groupIds.acceptedGroupId(groupId)) {
+        private Result result(RemoteRepository remoteRepository, String groupId, boolean accepted) {
+            if (accepted) {
                 return new SimpleResult(true, "G:" + groupId + " allowed from " + remoteRepository);
             } else {
                 return new SimpleResult(false, "G:" + groupId + " NOT allowed from " + remoteRepository);
             }
         }
+
+        private void record(RemoteRepository remoteRepository, String groupId, boolean accepted) {
+            if (trace != null) {
+                trace.record(remoteRepository.getId(), DecisionTrace.FILTER_GROUP_ID, groupId, accepted);
+            }
+            if (shadow != null) {
+                shadow.groupId(remoteRepository.getId(), groupId, accepted);
+            }
+        }
     }
 
     private static final RemoteRepositoryFilter.Result NOT_PRESENT_RESULT =
             new SimpleResult(true, "GroupId rules not present");
+
+    /**
+     * Rules served while their load is failing, if configured to reject all.
+     */
+    private static final GroupTree FAILED = new GroupTree("failed");
+
+    private static final RemoteRepositoryFilter.Result FAILED_RESULT =
+            new SimpleResult(false, "GroupId rules failed to load");
 }
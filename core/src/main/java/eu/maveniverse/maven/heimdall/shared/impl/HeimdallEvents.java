@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+/**
+ * Java Flight Recorder events of Heimdall: rule loads, rule fetches from remote repositories and filter decisions.
+ * <p>
+ * This is the Java 8 implementation, that does nothing. On Java 11 and later, the multi-release jar provides the
+ * implementation committing JFR events (see {@code src/main/java11}). Both implementations must have the same API.
+ * Events are begun (returning event handle, or {@code null} if event is not enabled) and ended with their fields, so
+ * fields are only computed when event is committed.
+ */
+final class HeimdallEvents {
+    private HeimdallEvents() {}
+
+    /**
+     * Begins rule load on current thread: it ends with {@link #endRuleLoad(Object)} on same thread.
+     */
+    static Object beginRuleLoad(String filter, String repository, String source) {
+        return null;
+    }
+
+    /**
+     * Sets counts of rules and nodes of rule load ongoing on current thread, if any.
+     */
+    static void ruleCounts(long rules, long nodes) {}
+
+    static void endRuleLoad(Object event) {}
+
+    static Object beginFetch() {
+        return null;
+    }
+
+    static void endFetch(Object event, String repository, String path, String outcome) {}
+
+    /**
+     * Begins filter decision: {@link Recheck rechecks} are not recorded, and begin no event.
+     */
+    static Object beginDecision() {
+        return null;
+    }
+
+    /**
+     * Ends filter decision: subject (artifact, metadata, group ID, or supplier of path) is turned into string only if
+     * event is committed.
+     */
+    static void endDecision(Object event, String filter, String repository, Object subject, boolean accepted) {}
+}
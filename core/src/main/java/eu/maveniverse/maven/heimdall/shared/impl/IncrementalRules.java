@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleLines;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeStats;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the last loaded text rules of remote repositories, to refresh them incrementally. On reload, the digests of
+ * content (and its delta) are compared first: if unchanged, the loaded tree is reused as is. Otherwise, the line level
+ * difference of rules is applied to a copy-on-write version of loaded tree (see {@link RuleLines}), so cost of tree
+ * update is proportional to the size of change. Rules with patterns, and trees moved off heap are rebuilt instead.
+ *
+ * @param <T> the type of rule tree
+ */
+final class IncrementalRules<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(IncrementalRules.class);
+
+    /**
+     * Applies rule line changes to tree, see {@link RuleLines}.
+     */
+    @FunctionalInterface
+    interface Updater<T> {
+        T update(T tree, RuleLines previous, RuleLines current);
+    }
+
+    /**
+     * Fits a newly built tree into memory budget, may return a view of it.
+     */
+    @FunctionalInterface
+    interface Fitter<T> {
+        T fit(T tree, RuleTreeStats stats, int rules) throws IOException;
+    }
+
+    private final String name;
+    private final Function<Stream<String>, RuleLines> parser;
+    private final Function<RuleLines, T> builder;
+    private final Updater<T> updater;
+    private final Function<T, RuleTreeStats> stats;
+    private final ConcurrentHashMap<RemoteRepository, State<T>> states;
+
+    IncrementalRules(
+            String name,
+            Function<Stream<String>, RuleLines> parser,
+            Function<RuleLines, T> builder,
+            Updater<T> updater,
+            Function<T, RuleTreeStats> stats) {
+        this.name = requireNonNull(name);
+        this.parser = requireNonNull(parser);
+        this.builder = requireNonNull(builder);
+        this.updater = requireNonNull(updater);
+        this.stats = requireNonNull(stats);
+        this.states = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Loads text rules of given content for remote repository, reusing or updating previously loaded tree if
+     * possible. Newly built trees are passed to fitter.
+     */
+    T load(RemoteRepository remoteRepository, RuleContent content, Fitter<T> fitter) throws IOException {
+        byte[] bytes;
+        try (InputStream inputStream = content.openStream()) {
+            bytes = readAll(inputStream);
+        }
+        byte[] deltaBytes = null;
+        Optional<InputStream> delta = content.openDelta();
+        if (delta.isPresent()) {
+            try (InputStream inputStream = delta.get()) {
+                deltaBytes = readAll(inputStream);
+            }
+        }
+        byte[] digest = digest(bytes);
+        byte[] deltaDigest = deltaBytes != null ? digest(deltaBytes) : null;
+
+        State<T> previous = states.get(remoteRepository);
+        boolean sameBase = previous != null && Arrays.equals(previous.digest, digest);
+        if (sameBase && Arrays.equals(previous.deltaDigest, deltaDigest)) {
+            LOGGER.debug("Heimdall {} rules of remote repository {} unchanged", name, remoteRepository.getId());
+            return previous.tree;
+        }
+        RuleLines base = sameBase ? previous.base : parser.apply(lines(bytes));
+        RuleLines rules = deltaBytes != null ? base.withDelta(lines(deltaBytes)) : base;
+
+        if (previous != null && previous.updatable && !previous.rules.hasPatterns() && !rules.hasPatterns()) {
+            T tree = updater.update(previous.tree, previous.rules, rules);
+            // previous tree is released once replaced, updated one shares most of it
+            RuleMemory.forceReserve(previous.heapBytes);
+            HeimdallEvents.ruleCounts(rules.size(), 0);
+            states.put(remoteRepository, new State<>(digest, deltaDigest, base, rules, tree, true, previous.heapBytes));
+            LOGGER.info(
+                    "Heimdall updated {} rules of remote repository {} from {}: {} changes, {} rules",
+                    name,
+                    remoteRepository.getId(),
+                    content,
+                    rules.changes(previous.rules),
+                    rules.size());
+            return tree;
+        }
+
+        T tree = builder.apply(rules);
+        RuleTreeStats treeStats = stats.apply(tree);
+        HeimdallEvents.ruleCounts(rules.size(), treeStats.getNodes());
+        T fitted = fitter.fit(tree, treeStats, rules.size());
+        boolean onHeap = fitted == tree;
+        states.put(
+                remoteRepository,
+                new State<>(
+                        digest, deltaDigest, base, rules, fitted, onHeap, onHeap ? treeStats.getEstimatedBytes() : 0));
+        LOGGER.info(
+                "Heimdall loaded {} {} rules for remote repository {} from {}",
+                rules.size(),
+                name,
+                remoteRepository.getId(),
+                content);
+        return fitted;
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        J8Utils.transferTo(inputStream, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private static Stream<String> lines(byte[] bytes) {
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8))
+                .lines();
+    }
+
+    private static byte[] digest(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class State<T> {
+        private final byte[] digest;
+        private final byte[] deltaDigest;
+        private final RuleLines base;
+        private final RuleLines rules;
+        private final T tree;
+        private final boolean updatable;
+        private final long heapBytes;
+
+        private State(
+                byte[] digest,
+                byte[] deltaDigest,
+                RuleLines base,
+                RuleLines rules,
+                T tree,
+                boolean updatable,
+                long heapBytes) {
+            this.digest = digest;
+            this.deltaDigest = deltaDigest;
+            this.base = base;
+            this.rules = rules;
+            this.tree = tree;
+            this.updatable = updatable;
+            this.heapBytes = heapBytes;
+        }
+    }
+}
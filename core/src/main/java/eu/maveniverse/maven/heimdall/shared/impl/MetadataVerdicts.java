@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
+import org.eclipse.aether.util.ConfigUtils;
+
+/**
+ * Verdicts of group level ("G") and artifact level ("GA") metadata, cached per remote repository and rules instance
+ * (so reloaded rules start over). These are asked for repeatedly, against every remote repository: by plugin prefix
+ * resolution (G level metadata of plugin groups), and by version range and meta version resolution (GA level). Version
+ * level metadata (like that of snapshots) is not cached: it is decided by filter on generic path.
+ * <p>
+ * Verdicts of G level "maven-metadata.xml" of plugin groups are computed once per rules instance and plugin groups
+ * (as a {@link Recheck}, as they were not asked for yet), and are answered from a map without rule evaluation. Maps
+ * of recently used plugin groups are kept, so sessions having different plugin groups do not recompute them. Plugin
+ * groups are set (comma separated) with {@code heimdall.pluginGroups} property, and default to the ones Maven always
+ * searches: {@code org.apache.maven.plugins,org.codehaus.mojo}.
+ * <p>
+ * Cached verdicts are recorded as decisions (into decision trace and shadow rules of session) by given recorder, the
+ * same as decided ones.
+ */
+final class MetadataVerdicts {
+    static final String CONFIG_PLUGIN_GROUPS = SessionConfig.KEY_PREFIX + "pluginGroups";
+
+    static final String DEFAULT_PLUGIN_GROUPS = "org.apache.maven.plugins,org.codehaus.mojo";
+
+    static final String MAVEN_METADATA_XML = "maven-metadata.xml";
+
+    /**
+     * Count of verdicts cached per remote repository: once reached, least recently used ones are evicted.
+     */
+    private static final int MAX_VERDICTS = 4096;
+
+    /**
+     * Count of plugin groups whose verdicts are kept per remote repository.
+     */
+    private static final int MAX_PLUGIN_GROUPS = 8;
+
+    /**
+     * Level of metadata, as laid out by {@code DefaultLocalPathComposer.getPathForMetadata()}: metadata of group,
+     * of artifact (its versions) or of version (its snapshots).
+     */
+    enum Level {
+        G,
+        GA,
+        GAV;
+
+        static Level of(Metadata metadata) {
+            if (isEmpty(metadata.getArtifactId())) {
+                return G;
+            } else if (isEmpty(metadata.getVersion())) {
+                return GA;
+            } else {
+                return GAV;
+            }
+        }
+
+        private static boolean isEmpty(String value) {
+            return value == null || value.isEmpty();
+        }
+    }
+
+    private final String filter;
+    private final ConcurrentHashMap<RemoteRepository, Verdicts> verdicts;
+
+    MetadataVerdicts(String filter) {
+        this.filter = requireNonNull(filter);
+        this.verdicts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns plugin groups configured in given session.
+     */
+    static List<String> pluginGroups(RepositorySystemSession session) {
+        List<String> result = new ArrayList<>();
+        for (String pluginGroup : ConfigUtils.getString(session, DEFAULT_PLUGIN_GROUPS, CONFIG_PLUGIN_GROUPS)
+                .split(",")) {
+            if (!pluginGroup.trim().isEmpty()) {
+                result.add(pluginGroup.trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns verdict of given G or GA level metadata of given remote repository, decided by given function once per
+     * rules instance, or {@code null} for version level metadata. Cached verdicts are passed to given recorder.
+     */
+    RemoteRepositoryFilter.Result accept(
+            RemoteRepository remoteRepository,
+            Object rules,
+            List<String> pluginGroups,
+            Metadata metadata,
+            Function<Metadata, RemoteRepositoryFilter.Result> decide,
+            Recorder recorder) {
+        Level level = Level.of(metadata);
+        if (level == Level.GAV) {
+            return null;
+        }
+        Verdicts current = verdicts.get(remoteRepository);
+        if (current == null || current.rules != rules) {
+            current = new Verdicts(rules);
+            verdicts.put(remoteRepository, current);
+        }
+        Object event = HeimdallEvents.beginDecision();
+        RemoteRepositoryFilter.Result result = null;
+        if (level == Level.G && MAVEN_METADATA_XML.equals(metadata.getType())) {
+            result = current.plugins(pluginGroups, decide).get(metadata.getGroupId());
+        }
+        if (result == null) {
+            String key = metadata.getGroupId() + ":" + metadata.getArtifactId() + ":" + metadata.getType();
+            result = current.metadata.get(key);
+            if (result == null) {
+                // decision emits its own event
+                result = decide.apply(metadata);
+                current.metadata.put(key, result);
+                return result;
+            }
+        }
+        HeimdallEvents.endDecision(event, filter, remoteRepository.getId(), metadata, result.isAccepted());
+        recorder.record(metadata, result.isAccepted());
+        return result;
+    }
+
+    /**
+     * Records cached verdict of metadata as decision.
+     */
+    @FunctionalInterface
+    interface Recorder {
+        void record(Metadata metadata, boolean accepted);
+    }
+
+    /**
+     * Verdicts of a rules instance.
+     */
+    private static final class Verdicts {
+        private final Object rules;
+        private final LruCache<List<String>, Map<String, RemoteRepositoryFilter.Result>> plugins;
+        private final LruCache<String, RemoteRepositoryFilter.Result> metadata;
+
+        private Verdicts(Object rules) {
+            this.rules = rules;
+            this.plugins = new LruCache<>(MAX_PLUGIN_GROUPS);
+            this.metadata = new LruCache<>(MAX_VERDICTS);
+        }
+
+        /**
+         * Returns verdicts of given plugin groups, computing them if not kept.
+         */
+        private Map<String, RemoteRepositoryFilter.Result> plugins(
+                List<String> pluginGroups, Function<Metadata, RemoteRepositoryFilter.Result> decide) {
+            Map<String, RemoteRepositoryFilter.Result> result = plugins.get(pluginGroups);
+            if (result == null) {
+                HashMap<String, RemoteRepositoryFilter.Result> computed = new HashMap<>();
+                for (String pluginGroup : pluginGroups) {
+                    computed.put(
+                            pluginGroup,
+                            Recheck.quietly(() -> decide.apply(new DefaultMetadata(
+                                    pluginGroup, MAVEN_METADATA_XML, Metadata.Nature.RELEASE_OR_SNAPSHOT))));
+                }
+                result = Collections.unmodifiableMap(computed);
+                plugins.put(new ArrayList<>(pluginGroups), result);
+            }
+            return result;
+        }
+    }
+}
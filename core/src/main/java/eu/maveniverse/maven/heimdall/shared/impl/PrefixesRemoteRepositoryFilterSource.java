@@ -20,34 +20,38 @@ package eu.maveniverse.maven.heimdall.shared.impl;
 
 import static java.util.Objects.requireNonNull;
 
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.RuleSource;
 import eu.maveniverse.maven.heimdall.shared.Session;
 import eu.maveniverse.maven.heimdall.shared.SessionUtils;
 import eu.maveniverse.maven.heimdall.shared.impl.ruletree.PrefixTree;
-import java.io.FileNotFoundException;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleLines;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeCodec;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeStats;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.SegmentedPrefixTree;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.util.Collections;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Stream;
+import java.util.function.Supplier;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import org.eclipse.aether.RepositorySystem;
 import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.metadata.DefaultMetadata;
 import org.eclipse.aether.metadata.Metadata;
 import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.resolution.MetadataRequest;
-import org.eclipse.aether.resolution.MetadataResult;
 import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
 import org.eclipse.aether.spi.connector.layout.RepositoryLayout;
 import org.eclipse.aether.spi.connector.layout.RepositoryLayoutProvider;
 import org.eclipse.aether.transfer.NoRepositoryLayoutException;
+import org.eclipse.aether.util.ConfigUtils;
 
 /**
  * Remote repository filter source filtering on path prefixes. It is backed by a file that lists all allowed path
@@ -58,10 +62,35 @@ import org.eclipse.aether.transfer.NoRepositoryLayoutException;
  * for structuring are supported, The "/" (slash) character is used as file separator. Some remote repositories and
  * MRMs publish these kind of files, they can be downloaded from corresponding URLs.
  * <p>
- * The prefix file is expected on path "${basedir}/prefixes-${repository.id}.txt".
+ * The prefix file is expected on path "${basedir}/prefixes-${repository.id}.txt". If compiled prefixes (see
+ * {@link RuleTreeCodec}) are present on path "${basedir}/prefixes-${repository.id}.bin", they are used instead of the
+ * local text file. Prefixes published by remote repository have precedence over both. Prefixes are loaded from
+ * {@link RuleSource}s, so other sources may provide them as well.
  * <p>
  * The prefixes file is once loaded and cached, so in-flight prefixes file change during component existence are not
- * noticed.
+ * noticed, unless refresh is enabled: then prefixes are reloaded for every session, and text prefixes are updated
+ * incrementally (see {@link IncrementalRules}), with delta published next to them applied as well.
+ * <p>
+ * For remote repositories having Maven 2 layout, prefixes are walked straight from coordinates ("groupId" segments,
+ * "artifactId" and "baseVersion"), without building the path: the path is built only when answer depends on the file
+ * name, or when decisions are traced. Other layouts are checked on the path. Verdicts of group and artifact level
+ * metadata are cached per prefixes instance, see {@link MetadataVerdicts}.
+ * <p>
+ * Processes sharing local repository may coordinate, if enabled (see {@link SharedRules}): text prefixes loaded whole
+ * (neither segmented nor refreshed) are compiled once into shared snapshot, that other processes load instead.
+ * Published prefixes are fetched and compiled holding the lock once, see {@link ResolverMetadataRuleSource}.
+ * <p>
+ * Deep prefixes may be truncated to trade precision for memory, by setting {@code heimdall.prefixes.maxDepth} (or
+ * {@code heimdall.prefixes.maxDepth.${repository.id}} for one remote repository) to count of path elements to keep:
+ * prefixes loaded whole are cut to that depth, hence filter accepts more, but never less. Segmented and refreshed
+ * prefixes are not truncated.
+ * <p>
+ * Prefixes loaded whole (neither truncated nor refreshed) may be served by local {@link RuleDaemon} instead, shared
+ * by all processes of the host, see {@link RuleDaemonClient}.
+ * <p>
+ * Huge prefix files (like the one of Central) may be loaded segmented, by setting {@code heimdall.prefixes.segmented}
+ * to {@code true}: text prefixes are then only indexed per first path segment, and subtrees are parsed on first use
+ * (see {@link SegmentedPrefixTree}). Segmented prefixes are rebuilt (not updated) on refresh.
  * <p>
  * Examples of published prefix files:
  * <ul>
@@ -77,35 +106,62 @@ import org.eclipse.aether.transfer.NoRepositoryLayoutException;
 public final class PrefixesRemoteRepositoryFilterSource extends RemoteRepositoryFilterSourceSupport {
     public static final String NAME = "prefixes";
 
-    static final String PREFIXES_FILE_PREFIX = "prefixes-";
-
-    static final String PREFIXES_FILE_SUFFIX = ".txt";
+    private static final String CONF_NAME_SEGMENTED = "segmented";
 
-    private static final String PREFIX_FILE_PATH = ".meta/prefixes.txt";
-
-    private final RepositorySystem repositorySystem;
+    private static final String CONF_NAME_MAX_DEPTH = "maxDepth";
 
     private final RepositoryLayoutProvider repositoryLayoutProvider;
 
-    private final ConcurrentHashMap<RemoteRepository, PrefixTree> prefixes;
+    private final RuleLoader<PrefixTree> prefixes;
+
+    private final IncrementalRules<PrefixTree> incremental;
 
     private final ConcurrentHashMap<RemoteRepository, RepositoryLayout> layouts;
 
+    private final ConcurrentHashMap<RemoteRepository, Boolean> maven2Layouts;
+
+    private final MetadataVerdicts metadataVerdicts;
+
     @Inject
     public PrefixesRemoteRepositoryFilterSource(
-            RepositorySystem repositorySystem, RepositoryLayoutProvider repositoryLayoutProvider) {
-        super(NAME);
-        this.repositorySystem = requireNonNull(repositorySystem);
+            RepositoryLayoutProvider repositoryLayoutProvider, List<RuleSource> ruleSources) {
+        super(NAME, ruleSources);
         this.repositoryLayoutProvider = requireNonNull(repositoryLayoutProvider);
-        this.prefixes = new ConcurrentHashMap<>();
+        this.prefixes = new RuleLoader<>(PrefixTree.SENTINEL);
+        this.incremental = new IncrementalRules<>(
+                NAME,
+                RuleLines::ofPrefixes,
+                lines -> {
+                    PrefixTree prefixTree = new PrefixTree("");
+                    prefixTree.loadNodes(lines.lines());
+                    return prefixTree;
+                },
+                PrefixTree::update,
+                RuleTreeStats::of);
         this.layouts = new ConcurrentHashMap<>();
+        this.maven2Layouts = new ConcurrentHashMap<>();
+        this.metadataVerdicts = new MetadataVerdicts(NAME);
     }
 
     @Override
     public RemoteRepositoryFilter getRemoteRepositoryFilter(RepositorySystemSession session) {
         Optional<Session> so = SessionUtils.mayGetSession(session);
         if (so.isPresent() && isEnabled(session)) {
-            return new PrefixesFilter(so.orElseThrow(J8Utils.OET), session, getBasedir(session, false));
+            Session heimdallSession = so.orElseThrow(J8Utils.OET);
+            preloadOnce(session, () -> {
+                boolean refresh = isRefresh(session);
+                for (RemoteRepository remoteRepository :
+                        heimdallSession.config().remoteRepositories()) {
+                    if (!remoteRepository.isBlocked()) {
+                        if (refresh) {
+                            prefixes.refresh(remoteRepository, r -> loadRepositoryPrefixes(session, r));
+                        } else {
+                            prefixes.preload(remoteRepository, r -> loadRepositoryPrefixes(session, r));
+                        }
+                    }
+                }
+            });
+            return new PrefixesFilter(heimdallSession, session);
         }
         return null;
     }
@@ -125,76 +181,239 @@ public final class PrefixesRemoteRepositoryFilterSource extends RemoteRepository
         });
     }
 
-    private final ConcurrentHashMap<RemoteRepository, Boolean> ongoingUpdates = new ConcurrentHashMap<>();
-
     /**
-     * Caches prefixes instances for remote repository.
+     * Tells whether remote repository layout is Maven 2 layout, that lays coordinates out as path prefix, so the
+     * prefixes may be walked from coordinates, without building the path. Layouts are probed once: custom layouts
+     * (or default layout doing anything else) use the path.
      */
-    private PrefixTree cacheNode(RepositorySystemSession session, Path basedir, RemoteRepository remoteRepository) {
-        if (!remoteRepository.isBlocked() && null == ongoingUpdates.putIfAbsent(remoteRepository, Boolean.TRUE)) {
+    private boolean isMaven2Layout(RemoteRepository remoteRepository, RepositoryLayout repositoryLayout) {
+        return maven2Layouts.computeIfAbsent(remoteRepository, r -> {
             try {
-                return prefixes.computeIfAbsent(
-                        remoteRepository, r -> loadRepositoryPrefixes(session, basedir, remoteRepository));
-            } finally {
-                ongoingUpdates.remove(remoteRepository);
+                return PROBE_ARTIFACT_PATH.equals(repositoryLayout
+                                .getLocation(PROBE_ARTIFACT, false)
+                                .getPath())
+                        && PROBE_METADATA_PATH.equals(repositoryLayout
+                                .getLocation(PROBE_METADATA, false)
+                                .getPath());
+            } catch (RuntimeException e) {
+                return false;
             }
+        });
+    }
+
+    /**
+     * Caches prefixes instances for remote repository.
+     */
+    private PrefixTree cacheNode(RepositorySystemSession session, RemoteRepository remoteRepository) {
+        if (remoteRepository.isBlocked()) {
+            return PrefixTree.SENTINEL;
         }
-        return PrefixTree.SENTINEL;
+        return prefixes.get(
+                remoteRepository,
+                r -> loadRepositoryPrefixes(session, r),
+                () -> failurePolicy(session, PrefixTree.SENTINEL, FAILED));
     }
 
     /**
-     * Loads prefixes file and preprocesses it into {@link PrefixTree} instance.
+     * Loads prefixes and preprocesses them into {@link PrefixTree} instance.
      */
-    private PrefixTree loadRepositoryPrefixes(
-            RepositorySystemSession session, Path baseDir, RemoteRepository remoteRepository) {
-        Path filePath = resolvePrefixesFromRemoteRepository(session, remoteRepository);
-        if (filePath == null) {
-            filePath = baseDir.resolve(PREFIXES_FILE_PREFIX + remoteRepository.getId() + PREFIXES_FILE_SUFFIX);
-        }
-        if (Files.isReadable(filePath)) {
-            logger.debug(
-                    "Loading prefixes for remote repository {} from file '{}'", remoteRepository.getId(), filePath);
-            try (Stream<String> lines = Files.lines(filePath, StandardCharsets.UTF_8)) {
-                PrefixTree prefixTree = new PrefixTree("");
-                int rules = prefixTree.loadNodes(lines);
+    private CompletableFuture<PrefixTree> loadRepositoryPrefixes(
+            RepositorySystemSession session, RemoteRepository remoteRepository) {
+        boolean refresh = isRefresh(session);
+        boolean segmented = ConfigUtils.getBoolean(session, false, configPropKey(CONF_NAME_SEGMENTED));
+        boolean minimize = isMinimize(session);
+        boolean shared = SharedRules.isEnabled(session);
+        int maxDepth = ConfigUtils.getInteger(
+                session,
+                0,
+                configPropKey(CONF_NAME_MAX_DEPTH) + "." + remoteRepository.getId(),
+                configPropKey(CONF_NAME_MAX_DEPTH));
+        RuleDaemonClient daemon = refresh || maxDepth > 0 ? null : RuleDaemonClient.mayGetClient(session);
+        return loadRules(session, remoteRepository, PrefixTree.SENTINEL, loaded -> {
+            logger.debug("Loading prefixes for remote repository {} from {}", remoteRepository.getId(), loaded);
+            if (daemon != null && loaded.path().isPresent()) {
+                Optional<PrefixTree> served = daemon.prefixTree(
+                        remoteRepository,
+                        loaded,
+                        cause -> prefixes.invalidate(
+                                remoteRepository, cause, () -> failurePolicy(session, PrefixTree.SENTINEL, FAILED)));
+                if (served.isPresent()) {
+                    return served.get();
+                }
+            }
+            RuleContent content = shared
+                            && !segmented
+                            && !refresh
+                            && !loaded.compiled()
+                            && loaded.path().isPresent()
+                    ? SharedRules.locked(
+                            session, NAME, remoteRepository, () -> sharedSnapshot(session, remoteRepository, loaded))
+                    : loaded;
+            if (segmented && !content.compiled()) {
+                ByteBuffer buffer = mappedRules(content);
+                Optional<SegmentedPrefixTree> segmentedTree =
+                        SegmentedPrefixTree.index(buffer, RuleMemory.forceReserver());
+                if (segmentedTree.isPresent()) {
+                    HeimdallEvents.ruleCounts(segmentedTree.get().rules(), 0);
+                    logger.info(
+                            "Heimdall indexed {} prefixes in {} segments for remote repository {}",
+                            segmentedTree.get().rules(),
+                            segmentedTree.get().segments(),
+                            remoteRepository.getId());
+                    return segmentedTree.get();
+                }
+                logger.info(
+                        "Heimdall prefixes of remote repository {} have pattern as first segment; not segmented",
+                        remoteRepository.getId());
+            }
+            if (refresh && !content.compiled()) {
+                return incremental.load(
+                        remoteRepository,
+                        content,
+                        (tree, stats, count) -> fitMemoryBudget(
+                                session,
+                                remoteRepository,
+                                content,
+                                tree,
+                                stats,
+                                () -> RuleTreeCodec.encode(tree, count),
+                                RuleTreeCodec::prefixTreeView));
+            }
+            PrefixTree prefixTree;
+            int rules;
+            if (content.compiled()) {
+                ByteBuffer buffer = compiledRules(content);
+                prefixTree = RuleTreeCodec.decodePrefixTree(buffer);
+                rules = RuleTreeCodec.ruleCount(buffer);
+            } else {
+                try (BufferedReader reader = textRules(content)) {
+                    prefixTree = new PrefixTree("");
+                    rules = prefixTree.loadNodes(reader.lines());
+                }
+            }
+            if (maxDepth > 0) {
+                prefixTree.truncate(maxDepth);
+            }
+            if (minimize) {
+                prefixTree.minimize();
+            }
+            PrefixTree tree = prefixTree;
+            int count = rules;
+            RuleTreeStats stats = RuleTreeStats.of(tree);
+            if (maxDepth > 0) {
+                logger.info(
+                        "Heimdall loaded {} prefixes for remote repository {} truncated to depth {}: {} nodes, ~{} KiB",
+                        rules,
+                        remoteRepository.getId(),
+                        maxDepth,
+                        stats.getNodes(),
+                        stats.getEstimatedBytes() / 1024);
+            } else {
                 logger.info("Heimdall loaded {} prefixes for remote repository {}", rules, remoteRepository.getId());
-                return prefixTree;
-            } catch (FileNotFoundException e) {
-                // strange: we tested for it above, still, we should not fail
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
             }
-        }
-        logger.debug("Prefix file for remote repository {} not found at '{}'", remoteRepository, filePath);
-        return PrefixTree.SENTINEL;
+            HeimdallEvents.ruleCounts(count, stats.getNodes());
+            return fitMemoryBudget(
+                    session,
+                    remoteRepository,
+                    // truncated tree is not the compiled content anymore: it is encoded, if moved off heap
+                    maxDepth > 0 ? RuleContent.ofOpener(content.origin(), false, content::openStream) : content,
+                    tree,
+                    stats,
+                    () -> RuleTreeCodec.encode(tree, count),
+                    RuleTreeCodec::prefixTreeView);
+        });
     }
 
-    private Path resolvePrefixesFromRemoteRepository(
-            RepositorySystemSession session, RemoteRepository remoteRepository) {
-        MetadataRequest request =
-                new MetadataRequest(new DefaultMetadata(PREFIX_FILE_PATH, Metadata.Nature.RELEASE_OR_SNAPSHOT));
-        request.setRepository(remoteRepository);
-        request.setDeleteLocalCopyIfMissing(true);
-        request.setFavorLocalRepository(true);
-        MetadataResult result = repositorySystem
-                .resolveMetadata(session, Collections.singleton(request))
-                .get(0);
-        if (result.isResolved()) {
-            return result.getMetadata().getFile().toPath();
-        } else {
+    /**
+     * Returns shared compiled snapshot of given text prefixes, compiling it if needed (see {@link SharedRules}).
+     */
+    private RuleContent sharedSnapshot(
+            RepositorySystemSession session, RemoteRepository remoteRepository, RuleContent text) throws IOException {
+        return SharedRules.snapshot(
+                session, NAME, remoteRepository, text, PrefixesRemoteRepositoryFilterSource::compile);
+    }
+
+    /**
+     * Returns compiler of shared snapshots of text prefixes loaded in given session, or {@code null} if they are not
+     * snapshotted (coordination is disabled, or prefixes are segmented or refreshed). Rule sources fetching prefixes
+     * holding the shared lock compile the snapshot holding the same lock, so other processes never find fetched
+     * prefixes with stale snapshot.
+     */
+    static SharedRules.Compiler sharedCompiler(RepositorySystemSession session) {
+        if (!SharedRules.isEnabled(session)
+                || ConfigUtils.getBoolean(session, false, CONFIG_PROP_PREFIX + NAME + "." + CONF_NAME_SEGMENTED)
+                || ConfigUtils.getBoolean(session, false, CONFIG_PROP_PREFIX + NAME + "." + CONF_NAME_REFRESH)) {
             return null;
         }
+        return PrefixesRemoteRepositoryFilterSource::compile;
+    }
+
+    private static byte[] compile(RuleContent text) throws IOException {
+        try (BufferedReader reader = textRules(text)) {
+            PrefixTree prefixTree = new PrefixTree("");
+            return RuleTreeCodec.encode(prefixTree, prefixTree.loadNodes(reader.lines()));
+        }
+    }
+
+    /**
+     * Evaluates prefixes of each remote repository having Maven 2 layout with shared descents (see
+     * {@link PrefixTree#acceptedCoordinates(List)}), and on paths otherwise, keeping verdicts in session.
+     */
+    @Override
+    protected void acceptArtifacts(
+            RepositorySystemSession session,
+            List<RemoteRepository> remoteRepositories,
+            List<Artifact> artifacts,
+            boolean[][] verdicts) {
+        if (!SessionUtils.mayGetSession(session).isPresent() || !isEnabled(session)) {
+            return;
+        }
+        List<String[]> coordinates = new ArrayList<>(artifacts.size());
+        for (Artifact artifact : artifacts) {
+            coordinates.add(new String[] {artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion()});
+        }
+        ArtifactVerdicts prewarmed = ArtifactVerdicts.get(session);
+        for (int r = 0; r < remoteRepositories.size(); r++) {
+            RemoteRepository remoteRepository = remoteRepositories.get(r);
+            RepositoryLayout repositoryLayout = cacheLayout(session, remoteRepository);
+            PrefixTree root = cacheNode(session, remoteRepository);
+            if (repositoryLayout == null || PrefixTree.SENTINEL == root) {
+                continue;
+            }
+            if (FAILED == root) {
+                for (boolean[] row : verdicts) {
+                    row[r] = false;
+                }
+                continue;
+            }
+            Boolean[] accepted = isMaven2Layout(remoteRepository, repositoryLayout)
+                    ? root.acceptedCoordinates(coordinates)
+                    : new Boolean[artifacts.size()];
+            for (int a = 0; a < accepted.length; a++) {
+                if (accepted[a] == null) {
+                    accepted[a] = root.acceptedPath(repositoryLayout
+                            .getLocation(artifacts.get(a), false)
+                            .getPath());
+                }
+                prewarmed.put(NAME, remoteRepository, root, artifacts.get(a), accepted[a]);
+                verdicts[a][r] &= accepted[a];
+            }
+        }
     }
 
     private class PrefixesFilter implements RemoteRepositoryFilter {
         private final Session session;
         private final RepositorySystemSession repoSession;
-        private final Path basedir;
+        private final DecisionTrace trace;
+        private final ShadowRules shadow;
+        private final List<String> pluginGroups;
 
-        private PrefixesFilter(Session session, RepositorySystemSession repoSession, Path basedir) {
+        private PrefixesFilter(Session session, RepositorySystemSession repoSession) {
             this.session = session;
             this.repoSession = repoSession;
-            this.basedir = basedir;
+            this.trace = DecisionTrace.mayGetTrace(session);
+            this.shadow = ShadowRules.mayGetShadow(session);
+            this.pluginGroups = MetadataVerdicts.pluginGroups(repoSession);
         }
 
         @Override
@@ -203,6 +422,34 @@ public final class PrefixesRemoteRepositoryFilterSource extends RemoteRepository
             if (repositoryLayout == null) {
                 return new SimpleResult(true, "Unsupported layout: " + remoteRepository);
             }
+            boolean maven2 = isMaven2Layout(remoteRepository, repositoryLayout);
+            ArtifactVerdicts prewarmed = ArtifactVerdicts.mayGet(repoSession);
+            if (prewarmed != null && isEnabled(repoSession)) {
+                Object event = HeimdallEvents.beginDecision();
+                Boolean accepted =
+                        prewarmed.get(NAME, remoteRepository, cacheNode(repoSession, remoteRepository), artifact);
+                if (accepted != null) {
+                    Supplier<String> path =
+                            () -> repositoryLayout.getLocation(artifact, false).getPath();
+                    HeimdallEvents.endDecision(event, NAME, remoteRepository.getId(), path, accepted);
+                    record(
+                            remoteRepository,
+                            maven2 ? artifact.getGroupId() : null,
+                            maven2 ? artifact.getArtifactId() : null,
+                            maven2 ? artifact.getBaseVersion() : null,
+                            path,
+                            accepted);
+                    return new PrefixResult(accepted, remoteRepository, path);
+                }
+            }
+            if (maven2) {
+                return acceptPrefix(
+                        remoteRepository,
+                        artifact.getGroupId(),
+                        artifact.getArtifactId(),
+                        artifact.getBaseVersion(),
+                        () -> repositoryLayout.getLocation(artifact, false).getPath());
+            }
             return acceptPrefix(
                     remoteRepository,
                     repositoryLayout.getLocation(artifact, false).getPath());
@@ -214,27 +461,163 @@ public final class PrefixesRemoteRepositoryFilterSource extends RemoteRepository
             if (repositoryLayout == null) {
                 return new SimpleResult(true, "Unsupported layout: " + remoteRepository);
             }
+            if (isMaven2Layout(remoteRepository, repositoryLayout)) {
+                if (isEnabled(repoSession)) {
+                    PrefixTree root = cacheNode(repoSession, remoteRepository);
+                    if (PrefixTree.SENTINEL != root && FAILED != root) {
+                        Result result = metadataVerdicts.accept(
+                                remoteRepository,
+                                root,
+                                pluginGroups,
+                                metadata,
+                                m -> acceptPrefix(
+                                        remoteRepository,
+                                        m.getGroupId(),
+                                        m.getArtifactId(),
+                                        m.getVersion(),
+                                        () -> repositoryLayout
+                                                .getLocation(m, false)
+                                                .getPath()),
+                                (m, accepted) -> record(
+                                        remoteRepository,
+                                        m.getGroupId(),
+                                        m.getArtifactId(),
+                                        m.getVersion(),
+                                        () -> repositoryLayout
+                                                .getLocation(m, false)
+                                                .getPath(),
+                                        accepted));
+                        if (result != null) {
+                            return result;
+                        }
+                    }
+                }
+                return acceptPrefix(
+                        remoteRepository,
+                        metadata.getGroupId(),
+                        metadata.getArtifactId(),
+                        metadata.getVersion(),
+                        () -> repositoryLayout.getLocation(metadata, false).getPath());
+            }
             return acceptPrefix(
                     remoteRepository,
                     repositoryLayout.getLocation(metadata, false).getPath());
         }
 
         private Result acceptPrefix(RemoteRepository remoteRepository, String path) {
+            return acceptPrefix(remoteRepository, null, null, null, () -> path);
+        }
+
+        /**
+         * Accepts by coordinates, if given (and answer does not depend on file name), or by path otherwise. The path
+         * is built only if needed: for the trace, or for the reasoning of result, when asked for.
+         */
+        private Result acceptPrefix(
+                RemoteRepository remoteRepository,
+                String groupId,
+                String artifactId,
+                String version,
+                Supplier<String> path) {
             if (!isEnabled(repoSession)) {
                 return NOT_PRESENT_RESULT;
             }
-            PrefixTree root = cacheNode(repoSession, basedir, remoteRepository);
+            Object event = HeimdallEvents.beginDecision();
+            PrefixTree root = cacheNode(repoSession, remoteRepository);
             if (PrefixTree.SENTINEL == root) {
+                if (shadow != null) {
+                    shadow.prefix(remoteRepository.getId(), groupId, artifactId, version, path, true);
+                }
                 return NOT_PRESENT_RESULT;
             }
-            if (root.acceptedPath(path)) {
-                return new SimpleResult(true, "Prefix " + path + " allowed from " + remoteRepository);
+            if (FAILED == root) {
+                return FAILED_RESULT;
+            }
+            Boolean accepted = null;
+            if (groupId != null && trace == null) {
+                accepted = root.acceptedCoordinates(groupId, artifactId, version);
+            }
+            if (accepted == null) {
+                String resolved = path.get();
+                accepted = root.acceptedPath(resolved);
+                if (trace != null) {
+                    trace.record(remoteRepository.getId(), DecisionTrace.FILTER_PREFIXES, resolved, accepted);
+                }
+                path = () -> resolved;
+            }
+            HeimdallEvents.endDecision(event, NAME, remoteRepository.getId(), path, accepted);
+            if (shadow != null) {
+                shadow.prefix(remoteRepository.getId(), groupId, artifactId, version, path, accepted);
+            }
+            return new PrefixResult(accepted, remoteRepository, path);
+        }
+
+        /**
+         * Records cached verdict (of artifact or metadata) as decision.
+         */
+        private void record(
+                RemoteRepository remoteRepository,
+                String groupId,
+                String artifactId,
+                String version,
+                Supplier<String> path,
+                boolean accepted) {
+            if (trace != null) {
+                trace.record(remoteRepository.getId(), DecisionTrace.FILTER_PREFIXES, path.get(), accepted);
+            }
+            if (shadow != null) {
+                shadow.prefix(remoteRepository.getId(), groupId, artifactId, version, path, accepted);
+            }
+        }
+    }
+
+    /**
+     * Result having reasoning built on demand: the reasoning is only asked for, if artifact is filtered out.
+     */
+    private static final class PrefixResult implements RemoteRepositoryFilter.Result {
+        private final boolean accepted;
+        private final RemoteRepository remoteRepository;
+        private final Supplier<String> path;
+
+        private PrefixResult(boolean accepted, RemoteRepository remoteRepository, Supplier<String> path) {
+            this.accepted = accepted;
+            this.remoteRepository = remoteRepository;
+            this.path = path;
+        }
+
+        @Override
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        @Override
+        public String reasoning() {
+            if (accepted) {
+                return "Prefix " + path.get() + " allowed from " + remoteRepository;
             } else {
-                return new SimpleResult(false, "Prefix " + path + " NOT allowed from " + remoteRepository);
+                return "Prefix " + path.get() + " NOT allowed from " + remoteRepository;
             }
         }
     }
 
+    private static final Artifact PROBE_ARTIFACT =
+            new DefaultArtifact("org.example", "probe", "tests", "jar", "1.0-20240101.120000-1");
+
+    private static final String PROBE_ARTIFACT_PATH =
+            "org/example/probe/1.0-SNAPSHOT/probe-1.0-20240101.120000-1-tests.jar";
+
+    private static final Metadata PROBE_METADATA = new DefaultMetadata(
+            "org.example", "probe", "1.0-SNAPSHOT", "maven-metadata.xml", Metadata.Nature.RELEASE_OR_SNAPSHOT);
+
+    private static final String PROBE_METADATA_PATH = "org/example/probe/1.0-SNAPSHOT/maven-metadata.xml";
+
     private static final RemoteRepositoryFilter.Result NOT_PRESENT_RESULT =
             new SimpleResult(true, "Prefix rules not present");
+
+    /**
+     * Rules served while their load is failing, if configured to reject all.
+     */
+    private static final PrefixTree FAILED = new PrefixTree("failed");
+
+    private static final RemoteRepositoryFilter.Result FAILED_RESULT =
+            new SimpleResult(false, "Prefix rules failed to load");
 }
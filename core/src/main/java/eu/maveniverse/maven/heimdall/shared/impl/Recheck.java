@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.util.function.Supplier;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.impl.RemoteRepositoryFilterManager;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
+
+/**
+ * Filter decisions evaluated again, after the fact: resolver reports downloads rejected by remote repository filter as
+ * "not found", so repository listeners ask session filter again to tell rejections from misses. Such decisions have
+ * no side effects: they are not recorded into decision trace, shadow rules nor events (each decision is recorded once,
+ * when resolver made it), and they do not consume probes of affinity filter.
+ */
+final class Recheck {
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    private Recheck() {}
+
+    /**
+     * Returns {@code true} if decision being made on current thread is a recheck.
+     */
+    static boolean active() {
+        return ACTIVE.get() != null;
+    }
+
+    /**
+     * Evaluates given decision as recheck on current thread.
+     */
+    static <T> T quietly(Supplier<T> decision) {
+        if (active()) {
+            return decision.get();
+        }
+        ACTIVE.set(Boolean.TRUE);
+        try {
+            return decision.get();
+        } finally {
+            ACTIVE.remove();
+        }
+    }
+
+    /**
+     * Rechecks given artifact against session filter: returns {@code true} if it was not filtered out.
+     */
+    static boolean accepted(
+            RemoteRepositoryFilterManager filterManager,
+            RepositorySystemSession session,
+            RemoteRepository remoteRepository,
+            Artifact artifact) {
+        RemoteRepositoryFilter filter = filterManager.getRemoteRepositoryFilter(session);
+        return filter == null
+                || quietly(() -> filter.acceptArtifact(remoteRepository, artifact))
+                        .isAccepted();
+    }
+
+    /**
+     * Rechecks given metadata against session filter: returns {@code true} if it was not filtered out.
+     */
+    static boolean accepted(
+            RemoteRepositoryFilterManager filterManager,
+            RepositorySystemSession session,
+            RemoteRepository remoteRepository,
+            Metadata metadata) {
+        RemoteRepositoryFilter filter = filterManager.getRemoteRepositoryFilter(session);
+        return filter == null
+                || quietly(() -> filter.acceptMetadata(remoteRepository, metadata))
+                        .isAccepted();
+    }
+}
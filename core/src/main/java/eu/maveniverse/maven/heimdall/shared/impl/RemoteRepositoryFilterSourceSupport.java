@@ -20,11 +20,31 @@ package eu.maveniverse.maven.heimdall.shared.impl;
 
 import static java.util.Objects.requireNonNull;
 
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.RuleSource;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeStats;
 import eu.maveniverse.maven.shared.core.component.ComponentSupport;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
 import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilterSource;
 import org.eclipse.aether.util.ConfigUtils;
@@ -42,22 +62,53 @@ import org.eclipse.aether.util.DirectoryUtils;
  *     <li><pre>heimdall.${id}.basedir</pre> (string, path) directory from where implementation
  *     can use files. If unset, default value is ".remoteRepositoryFilters/${id}" and is resolved from local
  *     repository basedir.</li>
+ *     <li><pre>heimdall.${id}.refresh</pre> (boolean) make filter reload rules for every session, instead of loading
+ *     them once. Text rules are refreshed incrementally, and their deltas are applied (defaults to {@code false})</li>
+ *     <li><pre>heimdall.${id}.minimize</pre> (boolean) make filter share identical subtrees of rules loaded whole
+ *     (not updated incrementally), trading load time for heap (defaults to {@code false})</li>
+ *     <li><pre>heimdall.${id}.acceptOnFailure</pre> (boolean) verdict of filter for remote repository which rules
+ *     failed to load: accept all (as if rules were not present) or reject all (defaults to {@code true})</li>
+ *     <li><pre>heimdall.${id}.failureBackoff</pre> (long, millis) delay before failed load of rules is retried, doubled
+ *     with each failed attempt (defaults to 1000)</li>
+ *     <li><pre>heimdall.${id}.failureMaxBackoff</pre> (long, millis) maximum delay before failed load of rules is
+ *     retried (defaults to 600000)</li>
  * </ul>
  *
  * @since 1.9.0
  */
 public abstract class RemoteRepositoryFilterSourceSupport extends ComponentSupport
         implements RemoteRepositoryFilterSource {
-    private static final String CONFIG_PROP_PREFIX = "heimdall.";
+    static final String CONFIG_PROP_PREFIX = "heimdall.";
 
     private static final String CONF_NAME_BASEDIR = "basedir";
 
+    static final String CONF_NAME_REFRESH = "refresh";
+
+    private static final String CONF_NAME_MINIMIZE = "minimize";
+
+    private static final String CONF_NAME_ACCEPT_ON_FAILURE = "acceptOnFailure";
+
+    private static final String CONF_NAME_FAILURE_BACKOFF = "failureBackoff";
+
+    private static final String CONF_NAME_FAILURE_MAX_BACKOFF = "failureMaxBackoff";
+
+    private static final long DEFAULT_FAILURE_BACKOFF = 1000L;
+
+    private static final long DEFAULT_FAILURE_MAX_BACKOFF = 600000L;
+
     static final String LOCAL_REPO_PREFIX_DIR = ".remoteRepositoryFilters";
 
     private final String name;
 
+    private final List<RuleSource> ruleSources;
+
     protected RemoteRepositoryFilterSourceSupport(String name) {
+        this(name, Collections.emptyList());
+    }
+
+    protected RemoteRepositoryFilterSourceSupport(String name, List<RuleSource> ruleSources) {
         this.name = requireNonNull(name);
+        this.ruleSources = requireNonNull(ruleSources);
     }
 
     /**
@@ -76,6 +127,50 @@ public abstract class RemoteRepositoryFilterSourceSupport extends ComponentSuppo
         return ConfigUtils.getBoolean(session, true, CONFIG_PROP_PREFIX + this.name);
     }
 
+    /**
+     * Returns refresh state of filter: should rules be reloaded for every session?
+     * <p>
+     * Default is {@code false}.
+     */
+    protected boolean isRefresh(RepositorySystemSession session) {
+        return ConfigUtils.getBoolean(session, false, configPropKey(CONF_NAME_REFRESH));
+    }
+
+    /**
+     * Returns minimize state of filter: should identical subtrees of loaded rules be shared?
+     * <p>
+     * Default is {@code false}.
+     */
+    protected boolean isMinimize(RepositorySystemSession session) {
+        return ConfigUtils.getBoolean(session, false, configPropKey(CONF_NAME_MINIMIZE));
+    }
+
+    /**
+     * Runs given preload (like starting loads of rules of remote repositories of session) once per session: filters
+     * are asked for repeatedly (like for every batch of {@link DefaultBatchEvaluator}), while session remote
+     * repositories do not change.
+     */
+    protected void preloadOnce(RepositorySystemSession session, Runnable preload) {
+        AtomicBoolean preloaded = (AtomicBoolean) session.getData()
+                .computeIfAbsent(
+                        RemoteRepositoryFilterSourceSupport.class.getName() + ".preloaded." + name, AtomicBoolean::new);
+        if (preloaded.compareAndSet(false, true)) {
+            preload.run();
+        }
+    }
+
+    /**
+     * Returns policy applied when rules of this filter fail to load: the sentinel (accepting all) or failed rules
+     * (rejecting all) are served, until load is retried.
+     */
+    <T> RuleLoader.FailurePolicy<T> failurePolicy(RepositorySystemSession session, T sentinel, T failed) {
+        return new RuleLoader.FailurePolicy<>(
+                name,
+                ConfigUtils.getLong(session, DEFAULT_FAILURE_BACKOFF, configPropKey(CONF_NAME_FAILURE_BACKOFF)),
+                ConfigUtils.getLong(session, DEFAULT_FAILURE_MAX_BACKOFF, configPropKey(CONF_NAME_FAILURE_MAX_BACKOFF)),
+                ConfigUtils.getBoolean(session, true, configPropKey(CONF_NAME_ACCEPT_ON_FAILURE)) ? sentinel : failed);
+    }
+
     /**
      * Uses common {@link DirectoryUtils#resolveDirectory(RepositorySystemSession, String, String, boolean)} to
      * calculate (and maybe create) basedir for this implementation, never returns {@code null}. The returned
@@ -86,14 +181,199 @@ public abstract class RemoteRepositoryFilterSourceSupport extends ComponentSuppo
      * @return The {@link Path} of basedir, never {@code null}.
      */
     protected Path getBasedir(RepositorySystemSession session, boolean mayCreate) {
+        return getBasedir(session, name, mayCreate);
+    }
+
+    /**
+     * Same as {@link #getBasedir(RepositorySystemSession, boolean)} but for filter of given name.
+     */
+    static Path getBasedir(RepositorySystemSession session, String name, boolean mayCreate) {
         try {
             return DirectoryUtils.resolveDirectory(
-                    session, LOCAL_REPO_PREFIX_DIR, configPropKey(CONF_NAME_BASEDIR), mayCreate);
+                    session, LOCAL_REPO_PREFIX_DIR, CONFIG_PROP_PREFIX + name + "." + CONF_NAME_BASEDIR, mayCreate);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
+    /**
+     * Parses loaded rule content.
+     *
+     * @param <T> the type of parsed rules
+     */
+    @FunctionalInterface
+    protected interface RuleParser<T> {
+        T parse(RuleContent content) throws IOException;
+    }
+
+    /**
+     * Loads rules of this filter for given remote repository asynchronously: consults {@link RuleSource}s in order of
+     * their priority, and parses the first content found on loader thread. Completes with sentinel if no source
+     * provided rules.
+     */
+    protected <T> CompletableFuture<T> loadRules(
+            RepositorySystemSession session, RemoteRepository remoteRepository, T sentinel, RuleParser<T> parser) {
+        return RuleLoader.load(ruleSources, session, name, remoteRepository)
+                .thenApplyAsync(
+                        content -> {
+                            if (!content.isPresent()) {
+                                logger.debug("No {} rules for remote repository {}", name, remoteRepository.getId());
+                                return sentinel;
+                            }
+                            Object event = HeimdallEvents.beginRuleLoad(
+                                    name,
+                                    remoteRepository.getId(),
+                                    content.get().origin());
+                            RuleMemory.Ledger ledger = RuleMemory.open();
+                            boolean loaded = false;
+                            try {
+                                T rules = parser.parse(content.get());
+                                RuleMemory.attach(rules, ledger);
+                                loaded = true;
+                                return rules;
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            } finally {
+                                RuleMemory.close(ledger);
+                                if (!loaded) {
+                                    ledger.release();
+                                }
+                                HeimdallEvents.endRuleLoad(event);
+                            }
+                        },
+                        RuleLoader.executor(remoteRepository));
+    }
+
+    /**
+     * Reads compiled rule content into buffer.
+     */
+    protected static ByteBuffer compiledRules(RuleContent content) throws IOException {
+        Optional<Path> path = content.path();
+        if (path.isPresent()) {
+            return ByteBuffer.wrap(Files.readAllBytes(path.get()));
+        }
+        try (InputStream inputStream = content.openStream()) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            J8Utils.transferTo(inputStream, outputStream);
+            return ByteBuffer.wrap(outputStream.toByteArray());
+        }
+    }
+
+    /**
+     * Maps rule content into buffer: rule files are memory mapped (and accounted off heap, see {@link RuleMemory}),
+     * other content is read into heap.
+     */
+    protected static ByteBuffer mappedRules(RuleContent content) throws IOException {
+        Optional<Path> path = content.path();
+        if (path.isPresent()) {
+            try (FileChannel channel = FileChannel.open(path.get())) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                RuleMemory.addOffHeap(buffer.capacity());
+                return buffer;
+            }
+        }
+        ByteBuffer buffer = compiledRules(content);
+        RuleMemory.forceReserve(buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * Opens a reader of text rule content, caller must close it.
+     */
+    protected static BufferedReader textRules(RuleContent content) throws IOException {
+        return new BufferedReader(new InputStreamReader(content.openStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Accounts loaded rule tree against rule memory budget (see {@link RuleMemory}). If tree fits into budget, it is
+     * returned as is. Otherwise, the tree is moved off heap: encoded (or if content is a compiled file, memory mapped)
+     * and replaced with view querying it in place. Trees containing patterns cannot be moved off heap, and are kept
+     * on heap (over budget).
+     */
+    protected <T> T fitMemoryBudget(
+            RepositorySystemSession session,
+            RemoteRepository remoteRepository,
+            RuleContent content,
+            T tree,
+            RuleTreeStats stats,
+            Supplier<byte[]> encoder,
+            Function<ByteBuffer, T> view)
+            throws IOException {
+        long budget = RuleMemory.budget(session);
+        if (RuleMemory.tryReserve(stats.getEstimatedBytes(), budget)) {
+            logger.info(
+                    "Heimdall {} rules of remote repository {} use ~{} KiB heap ({}); rules total {} KiB heap of {} KiB budget",
+                    name,
+                    remoteRepository.getId(),
+                    stats.getEstimatedBytes() / 1024,
+                    stats,
+                    RuleMemory.onHeap() / 1024,
+                    budget / 1024);
+            return tree;
+        }
+        if (stats.getPatterns() > 0) {
+            RuleMemory.forceReserve(stats.getEstimatedBytes());
+            logger.warn(
+                    "Heimdall {} rules of remote repository {} exceed rule memory budget of {} KiB, but contain patterns; kept on heap (~{} KiB)",
+                    name,
+                    remoteRepository.getId(),
+                    budget / 1024,
+                    stats.getEstimatedBytes() / 1024);
+            return tree;
+        }
+        ByteBuffer buffer;
+        Optional<Path> path = content.path();
+        if (content.compiled() && path.isPresent()) {
+            try (FileChannel channel = FileChannel.open(path.get())) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+        } else {
+            byte[] encoded = encoder.get();
+            buffer = ByteBuffer.allocateDirect(encoded.length);
+            buffer.put(encoded);
+            buffer.flip();
+        }
+        RuleMemory.addOffHeap(buffer.capacity());
+        logger.info(
+                "Heimdall {} rules of remote repository {} exceed rule memory budget of {} KiB; moved off heap ({} KiB); rules total {} KiB off heap",
+                name,
+                remoteRepository.getId(),
+                budget / 1024,
+                buffer.capacity() / 1024,
+                RuleMemory.offHeap() / 1024);
+        return view.apply(buffer);
+    }
+
+    /**
+     * Evaluates given artifacts against given remote repositories (see {@link DefaultBatchEvaluator}): clears the verdict
+     * {@code verdicts[artifact][repository]} of every pair this filter does not accept. Artifacts are sorted by
+     * coordinates. Batch evaluation records no decisions: this implementation asks the session filter for every pair
+     * as a recheck (see {@link Recheck}), subclasses may share work, and keep their verdicts in
+     * {@link ArtifactVerdicts} of session.
+     */
+    protected void acceptArtifacts(
+            RepositorySystemSession session,
+            List<RemoteRepository> remoteRepositories,
+            List<Artifact> artifacts,
+            boolean[][] verdicts) {
+        RemoteRepositoryFilter filter = getRemoteRepositoryFilter(session);
+        if (filter == null) {
+            return;
+        }
+        Recheck.quietly(() -> {
+            for (int r = 0; r < remoteRepositories.size(); r++) {
+                for (int a = 0; a < artifacts.size(); a++) {
+                    if (verdicts[a][r]
+                            && !filter.acceptArtifact(remoteRepositories.get(r), artifacts.get(a))
+                                    .isAccepted()) {
+                        verdicts[a][r] = false;
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
     /**
      * Simple {@link RemoteRepositoryFilter.Result} immutable implementation.
      */
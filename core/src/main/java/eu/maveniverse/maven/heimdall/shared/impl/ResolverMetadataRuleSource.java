@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.RuleSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.MetadataRequest;
+import org.eclipse.aether.resolution.MetadataResult;
+
+/**
+ * Rule source resolving prefixes published by remote repository itself (the {@code .meta/prefixes.txt} file) using
+ * Resolver, hence the file is cached in local repository. Serves prefixes only, and has highest priority. The delta
+ * {@code .meta/prefixes.delta} is resolved lazily, only when prefixes are refreshed incrementally. Processes sharing
+ * local repository may resolve prefixes (and compile their shared snapshot) one at a time, if enabled (see
+ * {@link SharedRules}).
+ */
+@Singleton
+@Named(ResolverMetadataRuleSource.NAME)
+public final class ResolverMetadataRuleSource implements RuleSource {
+    public static final String NAME = "metadata";
+
+    public static final int PRIORITY = 30;
+
+    private static final String PREFIX_FILE_PATH = ".meta/prefixes.txt";
+
+    private static final String PREFIX_DELTA_FILE_PATH = ".meta/prefixes.delta";
+
+    private final RepositorySystem repositorySystem;
+
+    @Inject
+    public ResolverMetadataRuleSource(RepositorySystem repositorySystem) {
+        this.repositorySystem = requireNonNull(repositorySystem);
+    }
+
+    @Override
+    public int priority() {
+        return PRIORITY;
+    }
+
+    @Override
+    public CompletableFuture<Optional<RuleContent>> load(
+            RepositorySystemSession session, String filter, RemoteRepository remoteRepository) {
+        if (!PrefixesRemoteRepositoryFilterSource.NAME.equals(filter)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return RuleLoader.supplyAsync(() -> resolvePrefixes(session, remoteRepository));
+    }
+
+    /**
+     * Resolves prefixes holding the shared lock (see {@link SharedRules}), so that only one process sharing local
+     * repository downloads them, while others find them cached. Shared snapshot of prefixes is compiled holding the
+     * same lock, so that others find it compiled from the prefixes they find cached.
+     */
+    private Optional<RuleContent> resolvePrefixes(RepositorySystemSession session, RemoteRepository remoteRepository) {
+        if (!SharedRules.isEnabled(session)) {
+            return prefixes(session, remoteRepository);
+        }
+        SharedRules.Compiler compiler = PrefixesRemoteRepositoryFilterSource.sharedCompiler(session);
+        try {
+            return SharedRules.locked(session, PrefixesRemoteRepositoryFilterSource.NAME, remoteRepository, () -> {
+                Optional<RuleContent> prefixes = prefixes(session, remoteRepository);
+                if (compiler == null || !prefixes.isPresent()) {
+                    return prefixes;
+                }
+                return Optional.of(SharedRules.snapshot(
+                        session,
+                        PrefixesRemoteRepositoryFilterSource.NAME,
+                        remoteRepository,
+                        prefixes.get(),
+                        compiler));
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Optional<RuleContent> prefixes(RepositorySystemSession session, RemoteRepository remoteRepository) {
+        MetadataResult result = resolve(session, remoteRepository, PREFIX_FILE_PATH);
+        if (!result.isResolved()) {
+            return Optional.empty();
+        }
+        return Optional.of(RuleContent.ofPath(result.getMetadata().getFile().toPath(), false)
+                .withDelta(() -> {
+                    MetadataResult delta = resolve(session, remoteRepository, PREFIX_DELTA_FILE_PATH);
+                    return delta.isResolved()
+                            ? Files.newInputStream(delta.getMetadata().getFile().toPath())
+                            : null;
+                }));
+    }
+
+    private MetadataResult resolve(RepositorySystemSession session, RemoteRepository remoteRepository, String path) {
+        MetadataRequest request = new MetadataRequest(new DefaultMetadata(path, Metadata.Nature.RELEASE_OR_SNAPSHOT));
+        request.setRepository(remoteRepository);
+        request.setDeleteLocalCopyIfMissing(true);
+        request.setFavorLocalRepository(true);
+        Object event = HeimdallEvents.beginFetch();
+        MetadataResult result = repositorySystem
+                .resolveMetadata(session, Collections.singleton(request))
+                .get(0);
+        HeimdallEvents.endFetch(event, remoteRepository.getId(), path, outcome(result));
+        return result;
+    }
+
+    private static String outcome(MetadataResult result) {
+        if (result.isResolved()) {
+            return result.isUpdated() ? "downloaded" : "cached";
+        }
+        if (result.isMissing()) {
+            return "not found";
+        }
+        return "failed: " + result.getException();
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.GroupTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.PrefixTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeCodec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local rule daemon: a long-running process holding rules of many remote repositories, that Maven processes of the
+ * host query instead of loading the rules themselves (see {@link RuleDaemonClient}). It is started as
+ * {@code java -cp ... eu.maveniverse.maven.heimdall.shared.impl.RuleDaemon [port] [basedir] [localRepository]}, and
+ * listens on loopback address only, on given port (defaults to {@value #DEFAULT_PORT}). It serves rules files under
+ * given basedir (defaults to "${localRepository}/.remoteRepositoryFilters") or under given local repository (defaults
+ * to "~/.m2/repository", where prefixes published by remote repositories are cached) only: real path of file must be
+ * under one of them.
+ * <p>
+ * On start, daemon writes a random token into "${basedir}/daemon-${port}.token" file, readable by owner only (where
+ * file system supports POSIX permissions): clients must send it first on each connection, otherwise daemon closes the
+ * connection. The file is deleted when daemon is closed. Daemon serves at most {@value #MAX_CONNECTIONS} connections
+ * at once (others are closed), and closes connections idle for {@value #IDLE_TIMEOUT} millis.
+ * <p>
+ * Clients name the rules file (text or compiled) they would load, so daemon holds one tree per file, shared by all
+ * processes using it. Files are checked for change at most once a second, and reloaded when changed. Protocol is
+ * binary, a request per round-trip on persistent connections: a request is the operation ({@link #OP_PREFIXES} or
+ * {@link #OP_GROUP_IDS}), the rules file path, whether file is compiled, and a batch of at most {@value #MAX_ITEMS}
+ * items (prefixes items are either a path or "groupId", "artifactId" and "version" coordinates, group items are group
+ * IDs). Response is {@link #STATUS_OK}, rule count and a verdict byte per item ({@link #FALSE}, {@link #TRUE} or
+ * {@link #UNDECIDED} if coordinates do not decide), or {@link #STATUS_ERROR} and a generic message (details are logged
+ * by daemon only). A request without items loads the rules.
+ */
+public final class RuleDaemon implements Closeable {
+    public static final int DEFAULT_PORT = 18950;
+
+    static final byte OP_PREFIXES = 1;
+
+    static final byte OP_GROUP_IDS = 2;
+
+    static final byte ITEM_PATH = 0;
+
+    static final byte ITEM_COORDINATES = 1;
+
+    static final byte STATUS_OK = 0;
+
+    static final byte STATUS_ERROR = 1;
+
+    static final byte FALSE = 0;
+
+    static final byte TRUE = 1;
+
+    static final byte UNDECIDED = 2;
+
+    static final int MAX_ITEMS = 65536;
+
+    static final int MAX_CONNECTIONS = 64;
+
+    static final int IDLE_TIMEOUT = 60000;
+
+    private static final String ERROR_MESSAGE = "Rules could not be loaded, see daemon log";
+
+    private static final long CHECK_MILLIS = 1000L;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RuleDaemon.class);
+
+    private final Path basedir;
+    private final Path localRepository;
+    private final int idleTimeout;
+    private final ServerSocket serverSocket;
+    private final byte[] token;
+    private final Path tokenFile;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, Rules> rules;
+    private final Set<Socket> sockets;
+
+    public RuleDaemon(int port, Path basedir, Path localRepository) throws IOException {
+        this(port, basedir, localRepository, MAX_CONNECTIONS, IDLE_TIMEOUT);
+    }
+
+    RuleDaemon(int port, Path basedir, Path localRepository, int maxConnections, int idleTimeout) throws IOException {
+        this.basedir = Files.createDirectories(basedir).toRealPath();
+        this.localRepository = Files.createDirectories(localRepository).toRealPath();
+        this.idleTimeout = idleTimeout;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder();
+        for (byte b : random) {
+            hex.append(String.format("%02x", b));
+        }
+        this.token = hex.toString().getBytes(StandardCharsets.UTF_8);
+        this.tokenFile = tokenFile(this.basedir, serverSocket.getLocalPort());
+        try {
+            writeToken(tokenFile, token);
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                0, maxConnections, IDLE_TIMEOUT, TimeUnit.MILLISECONDS, new SynchronousQueue<>(), r -> {
+                    Thread thread = new Thread(r, "heimdall-daemon-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.rules = new ConcurrentHashMap<>();
+        this.sockets = ConcurrentHashMap.newKeySet();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Path localRepository =
+                args.length > 2 ? Paths.get(args[2]) : Paths.get(System.getProperty("user.home"), ".m2", "repository");
+        Path basedir = args.length > 1
+                ? Paths.get(args[1])
+                : localRepository.resolve(RemoteRepositoryFilterSourceSupport.LOCAL_REPO_PREFIX_DIR);
+        try (RuleDaemon daemon = new RuleDaemon(port, basedir, localRepository)) {
+            LOGGER.info(
+                    "Heimdall rule daemon listening on {}, serving rules under {} and {}",
+                    daemon.serverSocket.getLocalSocketAddress(),
+                    daemon.basedir,
+                    daemon.localRepository);
+            daemon.serve();
+        }
+    }
+
+    /**
+     * The token file of daemon listening on given port, in given basedir.
+     */
+    static Path tokenFile(Path basedir, int port) {
+        return basedir.resolve("daemon-" + port + ".token");
+    }
+
+    /**
+     * Writes token into file readable by owner only: the file is created with owner only permissions, and moved in
+     * place.
+     */
+    private static void writeToken(Path file, byte[] token) throws IOException {
+        Path temp;
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            temp = Files.createTempFile(
+                    file.getParent(),
+                    "daemon",
+                    ".tmp",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            temp = Files.createTempFile(file.getParent(), "daemon", ".tmp");
+        }
+        try {
+            Files.write(temp, token);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * The port daemon listens on.
+     */
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until closed. Closing daemon closes open connections as well.
+     */
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            try {
+                executor.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn(
+                        "Heimdall rule daemon rejected connection from {}: too many connections",
+                        socket.getRemoteSocketAddress());
+                socket.close();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        Files.deleteIfExists(tokenFile);
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(Socket socket) {
+        sockets.add(socket);
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            s.setTcpNoDelay(true);
+            s.setSoTimeout(idleTimeout);
+            if (!MessageDigest.isEqual(token, in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+                LOGGER.debug(
+                        "Heimdall rule daemon rejected connection from {}: invalid token", s.getRemoteSocketAddress());
+                return;
+            }
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                } catch (SocketTimeoutException e) {
+                    LOGGER.debug("Heimdall rule daemon closed idle connection from {}", s.getRemoteSocketAddress());
+                    return;
+                }
+                respond(op, in, out);
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Heimdall rule daemon connection failed", e);
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+
+    private void respond(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        if (op != OP_PREFIXES && op != OP_GROUP_IDS) {
+            throw new IOException("Unknown operation: " + op);
+        }
+        String path = in.readUTF();
+        boolean compiled = in.readBoolean();
+        int count = in.readInt();
+        if (count < 0 || count > MAX_ITEMS) {
+            throw new IOException("Invalid item count: " + count);
+        }
+        Object[] items = new Object[count];
+        for (int i = 0; i < count; i++) {
+            if (op == OP_GROUP_IDS) {
+                items[i] = in.readUTF();
+            } else if (in.readByte() == ITEM_PATH) {
+                items[i] = in.readUTF();
+            } else {
+                items[i] = new String[] {in.readUTF(), in.readUTF(), in.readUTF()};
+            }
+        }
+        Rules loaded;
+        try {
+            loaded = rules(op, served(path), compiled);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Heimdall rule daemon could not load {}: {}", path, e.toString());
+            out.writeByte(STATUS_ERROR);
+            out.writeUTF(ERROR_MESSAGE);
+            return;
+        }
+        out.writeByte(STATUS_OK);
+        out.writeInt(loaded.count);
+        for (Object item : items) {
+            out.writeByte(verdict(loaded.tree, item));
+        }
+    }
+
+    private static byte verdict(Object tree, Object item) {
+        Boolean accepted;
+        if (tree instanceof GroupTree) {
+            accepted = ((GroupTree) tree).acceptedGroupId((String) item);
+        } else if (item instanceof String) {
+            accepted = ((PrefixTree) tree).acceptedPath((String) item);
+        } else {
+            String[] c = (String[]) item;
+            accepted = ((PrefixTree) tree).acceptedCoordinates(c[0], c[1], c[2]);
+        }
+        return accepted == null ? UNDECIDED : accepted ? TRUE : FALSE;
+    }
+
+    /**
+     * Returns real path of given rules file, that must be under basedir or local repository (links are resolved, so
+     * they cannot point out of them).
+     */
+    private Path served(String path) throws IOException {
+        Path file = Paths.get(path);
+        if (!file.isAbsolute()) {
+            throw new IOException("Not an absolute path: " + path);
+        }
+        Path real = file.toRealPath();
+        if (!real.startsWith(basedir) && !real.startsWith(localRepository)) {
+            throw new IOException("Not under " + basedir + " nor " + localRepository + ": " + path);
+        }
+        return real;
+    }
+
+    /**
+     * Returns rules of given file, loading them if not loaded yet, or if file changed since they were loaded.
+     */
+    private Rules rules(byte op, Path path, boolean compiled) throws IOException {
+        String key = op + (compiled ? ":bin:" : ":txt:") + path;
+        Rules current = rules.get(key);
+        long now = System.currentTimeMillis();
+        if (current != null && now - current.checkedAt < CHECK_MILLIS) {
+            return current;
+        }
+        String stamp = stamp(path);
+        if (current != null && current.stamp.equals(stamp)) {
+            current.checkedAt = now;
+            return current;
+        }
+        Rules loaded = new Rules(load(op, path, compiled), stamp, now);
+        rules.put(key, loaded);
+        LOGGER.info("Heimdall rule daemon loaded {} rules from {}", loaded.count, path);
+        return loaded;
+    }
+
+    private static String stamp(Path path) throws IOException {
+        return Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis();
+    }
+
+    /**
+     * Loads rules of given file in process: used by daemon, and by clients once daemon is gone.
+     */
+    static Rules load(byte op, Path path, boolean compiled) throws IOException {
+        if (compiled) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+            Object tree =
+                    op == OP_GROUP_IDS ? RuleTreeCodec.decodeGroupTree(buffer) : RuleTreeCodec.decodePrefixTree(buffer);
+            return new Rules(tree, RuleTreeCodec.ruleCount(buffer));
+        }
+        try (Stream<String> lines = Files.lines(path, StandardCharsets.UTF_8)) {
+            if (op == OP_GROUP_IDS) {
+                GroupTree groupTree = new GroupTree("");
+                return new Rules(groupTree, groupTree.loadNodes(lines));
+            } else {
+                PrefixTree prefixTree = new PrefixTree("");
+                return new Rules(prefixTree, prefixTree.loadNodes(lines));
+            }
+        }
+    }
+
+    /**
+     * Loaded rules: the tree and count of rules.
+     */
+    static final class Rules {
+        final Object tree;
+        final int count;
+        private final String stamp;
+        private volatile long checkedAt;
+
+        private Rules(Object tree, int count) {
+            this(tree, count, "", 0L);
+        }
+
+        private Rules(Rules rules, String stamp, long checkedAt) {
+            this(rules.tree, rules.count, stamp, checkedAt);
+        }
+
+        private Rules(Object tree, int count, String stamp, long checkedAt) {
+            this.tree = tree;
+            this.count = count;
+            this.stamp = stamp;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
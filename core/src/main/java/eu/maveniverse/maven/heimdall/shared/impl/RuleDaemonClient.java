@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.GroupTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.PrefixTree;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.util.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client of local {@link RuleDaemon}: filter sources ask it for thin trees, that answer from daemon (in batches, when
+ * evaluated in batch) and cache verdicts locally, instead of loading rules in process. If daemon is not reachable when
+ * rules are loaded, filter sources load them in process as usual; if daemon goes away later, thin trees load their
+ * rules in process on first failed query, and if that fails too, the failure policy of filter applies.
+ * <p>
+ * Daemon is not used by default, enable it with {@code heimdall.daemon.enabled} property. Daemon port is set with
+ * {@code heimdall.daemon.port} (defaults to {@value RuleDaemon#DEFAULT_PORT}), connect and read timeout with
+ * {@code heimdall.daemon.timeout} (defaults to 1000 millis), and count of verdicts cached per tree with
+ * {@code heimdall.daemon.cacheSize} (defaults to 16384, least recently used verdicts are evicted). Pooled connections
+ * closed by daemon meanwhile (as idle) are retried once on a new connection. The token of daemon is read from its token file in
+ * {@code heimdall.daemon.basedir} (defaults to "${localRepo}/.remoteRepositoryFilters"), that must be the basedir
+ * daemon was started with.
+ */
+final class RuleDaemonClient {
+    static final String CONFIG_ENABLED = SessionConfig.KEY_PREFIX + "daemon.enabled";
+
+    static final String CONFIG_PORT = SessionConfig.KEY_PREFIX + "daemon.port";
+
+    static final String CONFIG_TIMEOUT = SessionConfig.KEY_PREFIX + "daemon.timeout";
+
+    static final String CONFIG_CACHE_SIZE = SessionConfig.KEY_PREFIX + "daemon.cacheSize";
+
+    private static final int DEFAULT_TIMEOUT = 1000;
+
+    private static final int DEFAULT_CACHE_SIZE = 16384;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RuleDaemonClient.class);
+
+    /**
+     * Clients per daemon port: connections are pooled per process, and reused across sessions.
+     */
+    private static final ConcurrentHashMap<Integer, RuleDaemonClient> CLIENTS = new ConcurrentHashMap<>();
+
+    private final int port;
+    private final Path tokenFile;
+    private final int timeout;
+    private final int cacheSize;
+    private final ConcurrentLinkedQueue<Connection> idle;
+
+    RuleDaemonClient(int port, Path tokenFile, int timeout, int cacheSize) {
+        this.port = port;
+        this.tokenFile = tokenFile;
+        this.timeout = timeout;
+        this.cacheSize = cacheSize;
+        this.idle = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Returns the client of daemon configured in given session, or {@code null} if daemon is not used.
+     */
+    static RuleDaemonClient mayGetClient(RepositorySystemSession session) {
+        requireNonNull(session, "session");
+        if (!ConfigUtils.getBoolean(session, false, CONFIG_ENABLED)) {
+            return null;
+        }
+        return CLIENTS.computeIfAbsent(
+                ConfigUtils.getInteger(session, RuleDaemon.DEFAULT_PORT, CONFIG_PORT),
+                p -> new RuleDaemonClient(
+                        p,
+                        RuleDaemon.tokenFile(
+                                RemoteRepositoryFilterSourceSupport.getBasedir(session, "daemon", false), p),
+                        ConfigUtils.getInteger(session, DEFAULT_TIMEOUT, CONFIG_TIMEOUT),
+                        ConfigUtils.getInteger(session, DEFAULT_CACHE_SIZE, CONFIG_CACHE_SIZE)));
+    }
+
+    /**
+     * Returns thin prefix tree of given rules (that must be backed by a file) served by daemon, or empty optional if
+     * daemon is not reachable or could not load them. Given function is applied if rules fail to load in process once
+     * daemon is gone, and returns fallback of failure policy (sentinel accepting all, or failed rules rejecting all).
+     */
+    Optional<PrefixTree> prefixTree(
+            RemoteRepository remoteRepository, RuleContent content, Function<Throwable, PrefixTree> failed) {
+        return probe(RuleDaemon.OP_PREFIXES, remoteRepository, content)
+                .map(path -> new DaemonPrefixTree(remoteRepository, path, content.compiled(), failed));
+    }
+
+    /**
+     * Returns thin group tree of given rules (that must be backed by a file) served by daemon, or empty optional if
+     * daemon is not reachable or could not load them. Given function is applied if rules fail to load in process once
+     * daemon is gone, and returns fallback of failure policy (sentinel accepting all, or failed rules rejecting all).
+     */
+    Optional<GroupTree> groupTree(
+            RemoteRepository remoteRepository, RuleContent content, Function<Throwable, GroupTree> failed) {
+        return probe(RuleDaemon.OP_GROUP_IDS, remoteRepository, content)
+                .map(path -> new DaemonGroupTree(remoteRepository, path, content.compiled(), failed));
+    }
+
+    private Optional<Path> probe(byte op, RemoteRepository remoteRepository, RuleContent content) {
+        Path path = content.path()
+                .orElseThrow(() -> new IllegalArgumentException("Not a file: " + content))
+                .toAbsolutePath();
+        try {
+            int rules = exchange(op, path, content.compiled(), Collections.emptyList(), (in, count) -> count);
+            LOGGER.info(
+                    "Heimdall uses {} rules of remote repository {} served by rule daemon on port {}",
+                    rules,
+                    remoteRepository.getId(),
+                    port);
+            return Optional.of(path);
+        } catch (IOException e) {
+            LOGGER.info(
+                    "Heimdall rule daemon on port {} not usable for remote repository {} ({}); loading rules in process",
+                    port,
+                    remoteRepository.getId(),
+                    e.toString());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Queries daemon for verdicts of given items, a byte per item (see {@link RuleDaemon}), in batches of at most
+     * {@value RuleDaemon#MAX_ITEMS} items.
+     */
+    private byte[] query(byte op, Path path, boolean compiled, List<?> items) throws IOException {
+        byte[] verdicts = new byte[items.size()];
+        for (int from = 0; from < verdicts.length; from += RuleDaemon.MAX_ITEMS) {
+            List<?> batch = items.subList(from, Math.min(from + RuleDaemon.MAX_ITEMS, verdicts.length));
+            int offset = from;
+            exchange(op, path, compiled, batch, (in, count) -> {
+                in.readFully(verdicts, offset, batch.size());
+                return null;
+            });
+        }
+        return verdicts;
+    }
+
+    private <R> R exchange(byte op, Path path, boolean compiled, List<?> items, Response<R> response)
+            throws IOException {
+        Connection connection = idle.poll();
+        if (connection != null) {
+            try {
+                return exchange(connection, op, path, compiled, items, response);
+            } catch (Failed e) {
+                throw e;
+            } catch (IOException e) {
+                // requests have no side effects: daemon may have closed pooled connection, retry on new one
+                LOGGER.debug("Heimdall rule daemon pooled connection failed, retrying", e);
+            }
+        }
+        return exchange(connect(), op, path, compiled, items, response);
+    }
+
+    private <R> R exchange(
+            Connection connection, byte op, Path path, boolean compiled, List<?> items, Response<R> response)
+            throws IOException {
+        boolean reusable = false;
+        try {
+            DataOutputStream out = connection.out;
+            out.writeByte(op);
+            out.writeUTF(path.toString());
+            out.writeBoolean(compiled);
+            out.writeInt(items.size());
+            for (Object item : items) {
+                if (item instanceof String) {
+                    if (op == RuleDaemon.OP_PREFIXES) {
+                        out.writeByte(RuleDaemon.ITEM_PATH);
+                    }
+                    out.writeUTF((String) item);
+                } else {
+                    String[] c = (String[]) item;
+                    out.writeByte(RuleDaemon.ITEM_COORDINATES);
+                    out.writeUTF(c[0]);
+                    out.writeUTF(c[1]);
+                    out.writeUTF(c[2]);
+                }
+            }
+            out.flush();
+            DataInputStream in = connection.in;
+            if (in.readByte() != RuleDaemon.STATUS_OK) {
+                String message = in.readUTF();
+                reusable = true;
+                throw new Failed("Rule daemon failed: " + message);
+            }
+            R result = response.read(in, in.readInt());
+            reusable = true;
+            return result;
+        } finally {
+            if (reusable) {
+                idle.offer(connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), timeout);
+            socket.setSoTimeout(timeout);
+            socket.setTcpNoDelay(true);
+            Connection connection = new Connection(socket);
+            connection.out.writeUTF(new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8).trim());
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Failure reported by daemon (as opposed to failed connection).
+     */
+    private static final class Failed extends IOException {
+        private Failed(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Reads successful response, given count of rules.
+     *
+     * @param <R> the type of result
+     */
+    @FunctionalInterface
+    private interface Response<R> {
+        R read(DataInputStream in, int count) throws IOException;
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Verdicts cached locally, and rules loaded in process once daemon fails.
+     */
+    private final class Remote {
+        private final byte op;
+        private final RemoteRepository remoteRepository;
+        private final Path path;
+        private final boolean compiled;
+        private final Function<Throwable, ?> failed;
+        private final LruCache<String, Byte> verdicts;
+        private volatile Object fallback;
+
+        private Remote(
+                byte op,
+                RemoteRepository remoteRepository,
+                Path path,
+                boolean compiled,
+                Function<Throwable, ?> failed) {
+            this.op = op;
+            this.remoteRepository = remoteRepository;
+            this.path = path;
+            this.compiled = compiled;
+            this.failed = failed;
+            this.verdicts = new LruCache<>(cacheSize);
+        }
+
+        /**
+         * Returns verdict of given item (keyed by given key), or {@code -1} once daemon failed: then
+         * {@link #fallback()} must be used.
+         */
+        private byte verdict(Object item, String key) {
+            Byte verdict = verdicts.get(key);
+            if (verdict != null) {
+                return verdict;
+            }
+            byte[] queried = verdicts(Collections.singletonList(item), Collections.singletonList(key));
+            return queried != null ? queried[0] : -1;
+        }
+
+        /**
+         * Returns verdicts of given items (keyed by given keys), querying daemon for those not cached in one
+         * round-trip, or {@code null} once daemon failed: then {@link #fallback()} must be used.
+         */
+        private byte[] verdicts(List<?> items, List<String> keys) {
+            if (fallback != null) {
+                return null;
+            }
+            byte[] result = new byte[items.size()];
+            List<Object> missing = new ArrayList<>();
+            List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < result.length; i++) {
+                Byte verdict = verdicts.get(keys.get(i));
+                if (verdict != null) {
+                    result[i] = verdict;
+                } else {
+                    missing.add(items.get(i));
+                    indexes.add(i);
+                }
+            }
+            if (!missing.isEmpty()) {
+                byte[] queried;
+                try {
+                    queried = query(op, path, compiled, missing);
+                } catch (IOException e) {
+                    fail(e);
+                    return null;
+                }
+                for (int i = 0; i < queried.length; i++) {
+                    int index = indexes.get(i);
+                    result[index] = queried[i];
+                    verdicts.put(keys.get(index), queried[i]);
+                }
+            }
+            return result;
+        }
+
+        private synchronized void fail(IOException e) {
+            if (fallback == null) {
+                LOGGER.warn(
+                        "Heimdall rule daemon on port {} failed for remote repository {} ({}); loading rules in process",
+                        port,
+                        remoteRepository.getId(),
+                        e.toString());
+                try {
+                    fallback = RuleDaemon.load(op, path, compiled).tree;
+                } catch (IOException | RuntimeException ex) {
+                    Object policy = failed.apply(ex);
+                    fallback = policy == GroupTree.SENTINEL || policy == PrefixTree.SENTINEL;
+                }
+            }
+        }
+
+        /**
+         * Returns rules loaded in process, or verdict of failure policy ({@link Boolean}) if they failed to load.
+         */
+        private Object fallback() {
+            return fallback;
+        }
+    }
+
+    private static Boolean decoded(byte verdict) {
+        return verdict == RuleDaemon.UNDECIDED ? null : verdict == RuleDaemon.TRUE;
+    }
+
+    /**
+     * Prefix tree answering from daemon.
+     */
+    private final class DaemonPrefixTree extends PrefixTree {
+        private final Remote remote;
+
+        private DaemonPrefixTree(
+                RemoteRepository remoteRepository, Path path, boolean compiled, Function<Throwable, ?> failed) {
+            super("");
+            this.remote = new Remote(RuleDaemon.OP_PREFIXES, remoteRepository, path, compiled, failed);
+        }
+
+        @Override
+        public boolean acceptedPath(String path) {
+            byte[] verdicts = remote.verdicts(Collections.singletonList(path), Collections.singletonList("p" + path));
+            if (verdicts != null) {
+                return verdicts[0] == RuleDaemon.TRUE;
+            }
+            Object fallback = remote.fallback();
+            return fallback instanceof Boolean ? (Boolean) fallback : ((PrefixTree) fallback).acceptedPath(path);
+        }
+
+        @Override
+        public Boolean acceptedCoordinates(String groupId, String artifactId, String version) {
+            byte verdict = remote.verdict(
+                    new String[] {groupId, artifactId, version}, "c" + groupId + ":" + artifactId + ":" + version);
+            if (verdict >= 0) {
+                return decoded(verdict);
+            }
+            Object fallback = remote.fallback();
+            return fallback instanceof Boolean
+                    ? (Boolean) fallback
+                    : ((PrefixTree) fallback).acceptedCoordinates(groupId, artifactId, version);
+        }
+
+        @Override
+        public Boolean[] acceptedCoordinates(List<String[]> coordinates) {
+            List<String> keys = new ArrayList<>(coordinates.size());
+            for (String[] c : coordinates) {
+                keys.add("c" + c[0] + ":" + c[1] + ":" + c[2]);
+            }
+            byte[] verdicts = remote.verdicts(coordinates, keys);
+            if (verdicts == null) {
+                Object fallback = remote.fallback();
+                if (!(fallback instanceof Boolean)) {
+                    return ((PrefixTree) fallback).acceptedCoordinates(coordinates);
+                }
+                Boolean[] result = new Boolean[coordinates.size()];
+                Arrays.fill(result, fallback);
+                return result;
+            }
+            Boolean[] result = new Boolean[verdicts.length];
+            for (int i = 0; i < verdicts.length; i++) {
+                result[i] = decoded(verdicts[i]);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Group tree answering from daemon.
+     */
+    private final class DaemonGroupTree extends GroupTree {
+        private final Remote remote;
+
+        private DaemonGroupTree(
+                RemoteRepository remoteRepository, Path path, boolean compiled, Function<Throwable, ?> failed) {
+            super("");
+            this.remote = new Remote(RuleDaemon.OP_GROUP_IDS, remoteRepository, path, compiled, failed);
+        }
+
+        @Override
+        public boolean acceptedGroupId(String groupId) {
+            byte verdict = remote.verdict(groupId, groupId);
+            if (verdict >= 0) {
+                return verdict == RuleDaemon.TRUE;
+            }
+            Object fallback = remote.fallback();
+            return fallback instanceof Boolean ? (Boolean) fallback : ((GroupTree) fallback).acceptedGroupId(groupId);
+        }
+
+        @Override
+        public boolean[] acceptedGroupIds(List<String> groupIds) {
+            byte[] verdicts = remote.verdicts(groupIds, groupIds);
+            if (verdicts == null) {
+                Object fallback = remote.fallback();
+                if (!(fallback instanceof Boolean)) {
+                    return ((GroupTree) fallback).acceptedGroupIds(groupIds);
+                }
+                boolean[] result = new boolean[groupIds.size()];
+                Arrays.fill(result, (Boolean) fallback);
+                return result;
+            }
+            boolean[] result = new boolean[verdicts.length];
+            for (int i = 0; i < verdicts.length; i++) {
+                result[i] = verdicts[i] == RuleDaemon.TRUE;
+            }
+            return result;
+        }
+    }
+}
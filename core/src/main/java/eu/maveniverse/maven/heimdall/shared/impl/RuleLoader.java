@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.RuleSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Asynchronous per remote repository cache of loaded rules. Loads run on daemon loader threads, and callers join
+ * them. Loader threads may issue resolution requests themselves (like resolving rules from remote repository): they
+ * see rules of the remote repository they load for (of any filter) not present while loading, and join loads of other
+ * remote repositories, unless that would wait for the repository they load for (or load of unknown repository), that
+ * is, unless it could deadlock.
+ * <p>
+ * Rules replaced by reload, or dropped, have their memory released (see {@link RuleMemory}).
+ * <p>
+ * Failed loads are cached as well: the fallback of {@link FailurePolicy} is served until the load is retried, with
+ * exponential backoff. The first failure of each remote repository is logged as warning, later ones on debug level.
+ *
+ * @param <T> the type of loaded rules
+ */
+final class RuleLoader<T> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RuleLoader.class);
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+            r -> new LoaderThread(r, "heimdall-rule-loader-" + THREAD_COUNTER.incrementAndGet()));
+
+    /**
+     * The remote repository current thread loads rules for, if known.
+     */
+    private static final ThreadLocal<RemoteRepository> LOADING = new ThreadLocal<>();
+
+    /**
+     * Remote repositories being loaded, and the ones their loads wait for (as they may load the same, once per
+     * waiting thread).
+     */
+    private static final HashMap<RemoteRepository, List<RemoteRepository>> AWAITS = new HashMap<>();
+
+    private final T sentinel;
+
+    private final ConcurrentHashMap<RemoteRepository, CompletableFuture<T>> rules;
+
+    private final Set<RemoteRepository> refreshing;
+
+    private final ConcurrentHashMap<RemoteRepository, Failure<T>> failures;
+
+    private final Set<RemoteRepository> reported;
+
+    RuleLoader(T sentinel) {
+        this.sentinel = requireNonNull(sentinel);
+        this.rules = new ConcurrentHashMap<>();
+        this.refreshing = ConcurrentHashMap.newKeySet();
+        this.failures = new ConcurrentHashMap<>();
+        this.reported = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Starts loading of rules for given remote repository, if not already started (nor backing off failed load).
+     */
+    void preload(RemoteRepository remoteRepository, Function<RemoteRepository, CompletableFuture<T>> loader) {
+        if (backingOff(remoteRepository) == null) {
+            rules.computeIfAbsent(remoteRepository, r -> start(r, loader));
+        }
+    }
+
+    /**
+     * Starts reloading of rules for given remote repository, if they are loaded and not already being reloaded. While
+     * reloading, the previously loaded rules are served, and they are replaced once reload completes successfully.
+     * If rules are not loaded, this method is same as {@link #preload(RemoteRepository, Function)}.
+     */
+    void refresh(RemoteRepository remoteRepository, Function<RemoteRepository, CompletableFuture<T>> loader) {
+        CompletableFuture<T> current = rules.get(remoteRepository);
+        if (current == null || !current.isDone() || current.isCompletedExceptionally()) {
+            preload(remoteRepository, loader);
+            return;
+        }
+        if (refreshing.add(remoteRepository)) {
+            start(remoteRepository, loader).whenComplete((value, failure) -> {
+                if (failure == null
+                        && rules.replace(remoteRepository, current, CompletableFuture.completedFuture(value))) {
+                    released(current, value);
+                }
+                refreshing.remove(remoteRepository);
+            });
+        }
+    }
+
+    /**
+     * Returns the rules for given remote repository, loading them if needed. If invoked on loader thread loading rules
+     * for given remote repository (or for unknown one, or one the load of given remote repository waits for), and
+     * rules are not yet loaded, sentinel is returned. If load fails, or failed load is backing off, fallback of given
+     * failure policy is returned.
+     */
+    T get(
+            RemoteRepository remoteRepository,
+            Function<RemoteRepository, CompletableFuture<T>> loader,
+            Supplier<FailurePolicy<T>> failurePolicy) {
+        if (isLoaderThread()) {
+            CompletableFuture<T> future = rules.get(remoteRepository);
+            if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+                return future.join();
+            }
+            RemoteRepository loading = LOADING.get();
+            if (loading == null || !await(loading, remoteRepository)) {
+                return sentinel;
+            }
+            try {
+                return join(remoteRepository, loader, failurePolicy);
+            } finally {
+                awaited(loading, remoteRepository);
+            }
+        }
+        return join(remoteRepository, loader, failurePolicy);
+    }
+
+    /**
+     * Joins the load of rules for given remote repository, starting it if needed.
+     */
+    private T join(
+            RemoteRepository remoteRepository,
+            Function<RemoteRepository, CompletableFuture<T>> loader,
+            Supplier<FailurePolicy<T>> failurePolicy) {
+        CompletableFuture<T> future = rules.get(remoteRepository);
+        if (future == null) {
+            Failure<T> failure = backingOff(remoteRepository);
+            if (failure != null) {
+                return failure.fallback;
+            }
+            future = rules.computeIfAbsent(remoteRepository, r -> start(r, loader));
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // record failure before dropping the load: callers not finding it must find the backoff
+            T fallback = failed(remoteRepository, future, e.getCause() != null ? e.getCause() : e, failurePolicy);
+            rules.remove(remoteRepository, future);
+            return fallback;
+        }
+    }
+
+    /**
+     * Records that load for given remote repository waits for load of given other one, unless the other one (maybe
+     * transitively) waits for it.
+     */
+    private static boolean await(RemoteRepository loading, RemoteRepository awaited) {
+        synchronized (AWAITS) {
+            if (awaits(awaited, loading, new HashSet<>())) {
+                return false;
+            }
+            AWAITS.computeIfAbsent(loading, r -> new ArrayList<>()).add(awaited);
+            return true;
+        }
+    }
+
+    private static void awaited(RemoteRepository loading, RemoteRepository awaited) {
+        synchronized (AWAITS) {
+            List<RemoteRepository> awaits = AWAITS.get(loading);
+            awaits.remove(awaited);
+            if (awaits.isEmpty()) {
+                AWAITS.remove(loading);
+            }
+        }
+    }
+
+    private static boolean awaits(RemoteRepository from, RemoteRepository to, Set<RemoteRepository> visited) {
+        if (from.equals(to)) {
+            return true;
+        }
+        if (visited.add(from)) {
+            for (RemoteRepository next : AWAITS.getOrDefault(from, Collections.emptyList())) {
+                if (awaits(next, to, visited)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fails rules of given remote repository that turned out unusable once loaded (like rules served by daemon that
+     * went away, and failed to load in process): they are dropped, retried once backoff elapses, and meanwhile the
+     * fallback of given failure policy is returned.
+     */
+    T invalidate(RemoteRepository remoteRepository, Throwable cause, Supplier<FailurePolicy<T>> failurePolicy) {
+        CompletableFuture<T> future = rules.get(remoteRepository);
+        // record failure before dropping the rules: callers not finding rules must find the backoff
+        T fallback =
+                failed(remoteRepository, future != null ? future : new CompletableFuture<>(), cause, failurePolicy);
+        if (future != null && rules.remove(remoteRepository, future)) {
+            released(future, null);
+        }
+        return fallback;
+    }
+
+    /**
+     * Releases memory of rules of given future (if loaded), that were replaced with given rules.
+     */
+    private void released(CompletableFuture<T> future, T replacement) {
+        if (future.isDone() && !future.isCompletedExceptionally()) {
+            T previous = future.join();
+            if (previous != replacement) {
+                RuleMemory.release(previous);
+            }
+        }
+    }
+
+    /**
+     * Starts load: failure to start it fails the load, and successful load resets the backoff.
+     */
+    private CompletableFuture<T> start(
+            RemoteRepository remoteRepository, Function<RemoteRepository, CompletableFuture<T>> loader) {
+        CompletableFuture<T> future;
+        try {
+            future = loader.apply(remoteRepository);
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        return future.whenComplete((value, failure) -> {
+            if (failure == null) {
+                failures.remove(remoteRepository);
+            }
+        });
+    }
+
+    /**
+     * Returns failure of given remote repository, if it is backing off.
+     */
+    private Failure<T> backingOff(RemoteRepository remoteRepository) {
+        Failure<T> failure = failures.get(remoteRepository);
+        return failure != null && failure.retryAt - System.nanoTime() > 0 ? failure : null;
+    }
+
+    /**
+     * Records failed load (once per load, as many callers may join it), and returns the fallback.
+     */
+    private T failed(
+            RemoteRepository remoteRepository,
+            CompletableFuture<T> future,
+            Throwable cause,
+            Supplier<FailurePolicy<T>> failurePolicy) {
+        Failure<T> previous = failures.get(remoteRepository);
+        if (previous != null && previous.future == future) {
+            return previous.fallback;
+        }
+        FailurePolicy<T> policy = failurePolicy.get();
+        Failure<T> failure = new Failure<>(future, previous != null ? previous.attempts + 1 : 1, policy);
+        boolean recorded = previous != null
+                ? failures.replace(remoteRepository, previous, failure)
+                : failures.putIfAbsent(remoteRepository, failure) == null;
+        if (!recorded) {
+            Failure<T> current = failures.get(remoteRepository);
+            return current != null ? current.fallback : failure.fallback;
+        }
+        long backoff = TimeUnit.NANOSECONDS.toMillis(failure.retryAt - System.nanoTime());
+        if (reported.add(remoteRepository)) {
+            LOGGER.warn(
+                    "Heimdall failed to load {} rules for remote repository {}: {}; {} until retry in {} ms",
+                    policy.filter,
+                    remoteRepository.getId(),
+                    cause.toString(),
+                    policy.fallback == sentinel ? "accepting all" : "rejecting all",
+                    backoff);
+        } else {
+            LOGGER.debug(
+                    "Heimdall failed to load {} rules for remote repository {} ({} attempts); retry in {} ms",
+                    policy.filter,
+                    remoteRepository.getId(),
+                    failure.attempts,
+                    backoff,
+                    cause);
+        }
+        return failure.fallback;
+    }
+
+    /**
+     * Consults rule sources in order of descending priority, and completes with content of first source providing
+     * content, or empty.
+     */
+    static CompletableFuture<Optional<RuleContent>> load(
+            List<RuleSource> ruleSources,
+            RepositorySystemSession session,
+            String filter,
+            RemoteRepository remoteRepository) {
+        ArrayList<RuleSource> sources = new ArrayList<>(ruleSources);
+        sources.sort(Comparator.comparingInt(RuleSource::priority).reversed());
+        CompletableFuture<Optional<RuleContent>> result = CompletableFuture.completedFuture(Optional.empty());
+        for (RuleSource source : sources) {
+            result = result.thenCompose(content -> content.isPresent()
+                    ? CompletableFuture.completedFuture(content)
+                    : loading(remoteRepository, () -> source.load(session, filter, remoteRepository)));
+        }
+        return result;
+    }
+
+    /**
+     * Runs given supplier on loader thread, loading for the same remote repository as current thread, if any (like
+     * when invoked by {@link RuleSource}).
+     */
+    static <R> CompletableFuture<R> supplyAsync(Supplier<R> supplier) {
+        RemoteRepository remoteRepository = LOADING.get();
+        return CompletableFuture.supplyAsync(() -> loading(remoteRepository, supplier), EXECUTOR);
+    }
+
+    /**
+     * The executor running loads for given remote repository.
+     */
+    static Executor executor(RemoteRepository remoteRepository) {
+        return command -> EXECUTOR.execute(() -> loading(remoteRepository, () -> {
+            command.run();
+            return null;
+        }));
+    }
+
+    /**
+     * Runs given supplier as loading rules for given remote repository (or unknown one, if {@code null}).
+     */
+    private static <R> R loading(RemoteRepository remoteRepository, Supplier<R> supplier) {
+        RemoteRepository previous = LOADING.get();
+        LOADING.set(remoteRepository);
+        try {
+            return supplier.get();
+        } finally {
+            LOADING.set(previous);
+        }
+    }
+
+    /**
+     * Is current thread a loader thread?
+     */
+    static boolean isLoaderThread() {
+        return Thread.currentThread() instanceof LoaderThread;
+    }
+
+    /**
+     * What to serve when load of rules fails: the fallback (sentinel accepting all, or rules rejecting all), and the
+     * backoff (doubled with each failed attempt, up to maximum) before load is retried.
+     *
+     * @param <T> the type of loaded rules
+     */
+    static final class FailurePolicy<T> {
+        private final String filter;
+        private final long backoffMillis;
+        private final long maxBackoffMillis;
+        private final T fallback;
+
+        FailurePolicy(String filter, long backoffMillis, long maxBackoffMillis, T fallback) {
+            this.filter = requireNonNull(filter);
+            this.backoffMillis = Math.max(0L, backoffMillis);
+            this.maxBackoffMillis = Math.max(this.backoffMillis, maxBackoffMillis);
+            this.fallback = requireNonNull(fallback);
+        }
+
+        private long backoffNanos(int attempts) {
+            long backoff = backoffMillis << Math.min(attempts - 1, 30);
+            return TimeUnit.MILLISECONDS.toNanos(backoff < 0 ? maxBackoffMillis : Math.min(backoff, maxBackoffMillis));
+        }
+    }
+
+    private static final class Failure<T> {
+        private final CompletableFuture<T> future;
+        private final int attempts;
+        private final long retryAt;
+        private final T fallback;
+
+        private Failure(CompletableFuture<T> future, int attempts, FailurePolicy<T> policy) {
+            this.future = future;
+            this.attempts = attempts;
+            this.retryAt = System.nanoTime() + policy.backoffNanos(attempts);
+            this.fallback = policy.fallback;
+        }
+    }
+
+    private static final class LoaderThread extends Thread {
+        private LoaderThread(Runnable runnable, String name) {
+            super(runnable, name);
+            setDaemon(true);
+        }
+    }
+}
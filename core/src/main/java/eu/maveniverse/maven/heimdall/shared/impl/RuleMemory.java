@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.util.ConfigUtils;
+
+/**
+ * JVM-wide accounting of memory used by loaded rules. Rules are cached by (singleton) filter sources for the lifetime
+ * of JVM, hence the accounting is global as well: in daemon-like environments many sessions share same rules.
+ * <p>
+ * Memory is accounted to the tree it is used by: reservations made while a tree is loaded (on loader thread, see
+ * {@link #open()}) are {@link #attach(Object, Ledger) attached} to the loaded tree, and are released once
+ * {@link RuleLoader} drops or replaces the tree (see {@link #release(Object)}).
+ * <p>
+ * The heap budget is set with {@code heimdall.memoryBudget} (in bytes), and defaults to quarter of max heap.
+ */
+final class RuleMemory {
+    private RuleMemory() {}
+
+    static final String CONFIG_BUDGET = "heimdall.memoryBudget";
+
+    private static final AtomicLong ON_HEAP = new AtomicLong();
+
+    private static final AtomicLong OFF_HEAP = new AtomicLong();
+
+    private static final ThreadLocal<Ledger> LEDGER = new ThreadLocal<>();
+
+    private static final Map<Object, Ledger> LEDGERS = Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Returns the rule heap budget in bytes.
+     */
+    static long budget(RepositorySystemSession session) {
+        long budget = ConfigUtils.getLong(session, -1L, CONFIG_BUDGET);
+        return budget < 0 ? Runtime.getRuntime().maxMemory() / 4 : budget;
+    }
+
+    /**
+     * Reserves given bytes of heap, if it fits into budget.
+     */
+    static boolean tryReserve(long bytes, long budget) {
+        long used;
+        do {
+            used = ON_HEAP.get();
+            if (used + bytes > budget) {
+                return false;
+            }
+        } while (!ON_HEAP.compareAndSet(used, used + bytes));
+        Ledger ledger = LEDGER.get();
+        if (ledger != null) {
+            ledger.heap.addAndGet(bytes);
+        }
+        return true;
+    }
+
+    /**
+     * Reserves given bytes of heap regardless of budget.
+     */
+    static void forceReserve(long bytes) {
+        ON_HEAP.addAndGet(bytes);
+        Ledger ledger = LEDGER.get();
+        if (ledger != null) {
+            ledger.heap.addAndGet(bytes);
+        }
+    }
+
+    static void addOffHeap(long bytes) {
+        OFF_HEAP.addAndGet(bytes);
+        Ledger ledger = LEDGER.get();
+        if (ledger != null) {
+            ledger.offHeap.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Opens ledger of tree being loaded on current thread: reservations made on current thread are recorded into it,
+     * until it is {@link #close(Ledger) closed}.
+     */
+    static Ledger open() {
+        Ledger ledger = new Ledger();
+        LEDGER.set(ledger);
+        return ledger;
+    }
+
+    /**
+     * Closes given ledger of current thread.
+     */
+    static void close(Ledger ledger) {
+        if (LEDGER.get() == ledger) {
+            LEDGER.remove();
+        }
+    }
+
+    /**
+     * Returns consumer reserving heap regardless of budget, accounted to ledger of current thread (if any) from any
+     * thread: for trees loading their parts lazily.
+     */
+    static LongConsumer forceReserver() {
+        Ledger ledger = LEDGER.get();
+        return ledger != null ? ledger::forceReserve : RuleMemory::forceReserve;
+    }
+
+    /**
+     * Attaches given ledger to loaded tree: reservations are released with the tree. If tree has a ledger already
+     * (like unchanged tree returned again), reservations are added to it.
+     */
+    static void attach(Object tree, Ledger ledger) {
+        if (ledger.heap.get() != 0 || ledger.offHeap.get() != 0) {
+            LEDGERS.merge(tree, ledger, Ledger::add);
+        }
+    }
+
+    /**
+     * Releases memory accounted to given tree, that is not used anymore.
+     */
+    static void release(Object tree) {
+        Ledger ledger = LEDGERS.remove(tree);
+        if (ledger != null) {
+            ledger.release();
+        }
+    }
+
+    static long onHeap() {
+        return ON_HEAP.get();
+    }
+
+    static long offHeap() {
+        return OFF_HEAP.get();
+    }
+
+    /**
+     * Memory accounted to a tree: heap reservations and off heap buffers. Segmented trees keep reserving as they load
+     * their segments.
+     */
+    static final class Ledger {
+        private final AtomicLong heap = new AtomicLong();
+        private final AtomicLong offHeap = new AtomicLong();
+
+        private Ledger() {}
+
+        /**
+         * Reserves given bytes of heap regardless of budget, accounted to this ledger (from any thread).
+         */
+        void forceReserve(long bytes) {
+            ON_HEAP.addAndGet(bytes);
+            heap.addAndGet(bytes);
+        }
+
+        /**
+         * Releases memory of this ledger (but not reservations made by it later).
+         */
+        void release() {
+            ON_HEAP.addAndGet(-heap.getAndSet(0));
+            OFF_HEAP.addAndGet(-offHeap.getAndSet(0));
+        }
+
+        private Ledger add(Ledger other) {
+            heap.addAndGet(other.heap.getAndSet(0));
+            offHeap.addAndGet(other.offHeap.getAndSet(0));
+            return this;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.Session;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.GroupTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.PrefixTree;
+import eu.maveniverse.maven.shared.core.fs.FileUtils;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opt-in shadow evaluation of candidate rules: filter decisions are evaluated again against candidate groupId and
+ * prefix rules "${heimdall.basedir}/shadow/groupId-${repository.id}.txt" and "prefixes-${repository.id}.txt", and
+ * the decisions candidate rules disagree with are aggregated. On {@link Session} close they are written to
+ * "${heimdall.basedir}/shadow/report-${timestamp}.txt" file, that tells what rolling the candidate rules out would
+ * change: artifacts they would reject (stricter) or accept (looser).
+ * <p>
+ * Resolver threads only enqueue decisions into a bounded queue: a single low priority daemon thread loads candidate
+ * rules and evaluates decisions. When the queue is full, decisions are dropped (and counted), and on session close
+ * decisions still queued are dropped as well, so shadow evaluation never slows the build down.
+ * <p>
+ * Shadow evaluation is disabled by default, enable it with {@code heimdall.shadow.enabled} property. Queue capacity
+ * is set with {@code heimdall.shadow.queueSize}, and defaults to 8192.
+ */
+public final class ShadowRules {
+    public static final String CONFIG_ENABLED = SessionConfig.KEY_PREFIX + "shadow.enabled";
+
+    public static final String CONFIG_QUEUE_SIZE = SessionConfig.KEY_PREFIX + "shadow.queueSize";
+
+    public static final int DEFAULT_QUEUE_SIZE = 8192;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShadowRules.class);
+
+    private static final Object MISSING = new Object();
+
+    private final long startMillis;
+    private final Path directory;
+    private final ArrayBlockingQueue<Decision> queue;
+    private final LongAdder evaluated;
+    private final LongAdder dropped;
+    private final ConcurrentHashMap<String, Object> candidates;
+    private final ConcurrentHashMap<Disagreement, LongAdder> disagreements;
+    private final Thread worker;
+
+    ShadowRules(Path directory, int queueSize) {
+        this.startMillis = System.currentTimeMillis();
+        this.directory = requireNonNull(directory);
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.evaluated = new LongAdder();
+        this.dropped = new LongAdder();
+        this.candidates = new ConcurrentHashMap<>();
+        this.disagreements = new ConcurrentHashMap<>();
+        this.worker = new Thread(this::work, "heimdall-shadow");
+        this.worker.setDaemon(true);
+        this.worker.setPriority(Thread.MIN_PRIORITY);
+        this.worker.start();
+    }
+
+    /**
+     * Returns the shadow rules of given Heimdall session, creating them if needed, or {@code null} if shadow
+     * evaluation is disabled.
+     */
+    public static ShadowRules mayGetShadow(Session session) {
+        requireNonNull(session, "session");
+        Map<String, String> properties = session.config().effectiveProperties();
+        if (!Boolean.parseBoolean(properties.getOrDefault(CONFIG_ENABLED, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        return (ShadowRules) session.config().session().getData().computeIfAbsent(ShadowRules.class, () -> {
+            ShadowRules shadow = new ShadowRules(
+                    session.config().basedir().resolve("shadow"),
+                    Integer.parseInt(properties.getOrDefault(CONFIG_QUEUE_SIZE, Integer.toString(DEFAULT_QUEUE_SIZE))));
+            session.registerOnCloseHook(shadow::close);
+            return shadow;
+        });
+    }
+
+    /**
+     * Enqueues decision of groupId filter.
+     */
+    void groupId(String repositoryId, String groupId, boolean accepted) {
+        offer(new Decision(
+                GroupIdRemoteRepositoryFilterSource.NAME, repositoryId, groupId, null, null, () -> groupId, accepted));
+    }
+
+    /**
+     * Enqueues decision of prefixes filter. The coordinates may be {@code null}, and the path is built on shadow
+     * thread.
+     */
+    void prefix(
+            String repositoryId,
+            String groupId,
+            String artifactId,
+            String version,
+            Supplier<String> path,
+            boolean accepted) {
+        offer(new Decision(
+                PrefixesRemoteRepositoryFilterSource.NAME, repositoryId, groupId, artifactId, version, path, accepted));
+    }
+
+    private void offer(Decision decision) {
+        if (Recheck.active()) {
+            return;
+        }
+        if (!queue.offer(decision)) {
+            dropped.increment();
+        }
+    }
+
+    private void work() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Decision decision = queue.take();
+                try {
+                    evaluate(decision);
+                } catch (RuntimeException e) {
+                    LOGGER.debug("Heimdall shadow evaluation of {} failed", decision.subject.get(), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    private void evaluate(Decision decision) {
+        Object candidate = candidates.computeIfAbsent(decision.filter + "-" + decision.repositoryId, this::load);
+        if (candidate == MISSING) {
+            return;
+        }
+        boolean accepted;
+        if (candidate instanceof GroupTree) {
+            accepted = ((GroupTree) candidate).acceptedGroupId(decision.groupId);
+        } else {
+            PrefixTree prefixTree = (PrefixTree) candidate;
+            Boolean coordinates = decision.groupId != null
+                    ? prefixTree.acceptedCoordinates(decision.groupId, decision.artifactId, decision.version)
+                    : null;
+            accepted = coordinates != null ? coordinates : prefixTree.acceptedPath(decision.subject.get());
+        }
+        evaluated.increment();
+        if (accepted != decision.accepted) {
+            disagreements
+                    .computeIfAbsent(
+                            new Disagreement(
+                                    decision.filter, decision.repositoryId, decision.subject.get(), decision.accepted),
+                            k -> new LongAdder())
+                    .increment();
+        }
+    }
+
+    /**
+     * Loads candidate rules of given "${filter}-${repository.id}", runs on shadow thread.
+     */
+    private Object load(String name) {
+        Path file = directory.resolve(name + FileRuleSource.TEXT_SUFFIX);
+        if (!Files.isReadable(file)) {
+            return MISSING;
+        }
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            if (name.startsWith(GroupIdRemoteRepositoryFilterSource.NAME + "-")) {
+                GroupTree groupTree = new GroupTree("");
+                LOGGER.info("Heimdall loaded {} shadow rules from {}", groupTree.loadNodes(lines), file);
+                return groupTree;
+            } else {
+                PrefixTree prefixTree = new PrefixTree("");
+                LOGGER.info("Heimdall loaded {} shadow rules from {}", prefixTree.loadNodes(lines), file);
+                return prefixTree;
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Heimdall could not load shadow rules from {}: {}", file, e.toString());
+            return MISSING;
+        }
+    }
+
+    /**
+     * Returns the count of decisions evaluated so far.
+     */
+    long evaluated() {
+        return evaluated.sum();
+    }
+
+    /**
+     * Stops shadow thread (dropping decisions still queued), and writes the report.
+     */
+    void close() {
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropped.add(queue.size());
+        queue.clear();
+        report();
+    }
+
+    private void report() {
+        if (evaluated.sum() == 0 && dropped.sum() == 0) {
+            return;
+        }
+        List<Map.Entry<Disagreement, LongAdder>> entries = new ArrayList<>(disagreements.entrySet());
+        entries.sort(Comparator.comparing((Map.Entry<Disagreement, LongAdder> e) -> e.getKey().filter)
+                .thenComparing(e -> e.getKey().repositoryId)
+                .thenComparing(e -> e.getKey().accepted ? 0 : 1)
+                .thenComparing(e -> e.getKey().subject));
+        List<String> lines = new ArrayList<>();
+        lines.add("# Heimdall shadow rules report");
+        lines.add("# " + evaluated.sum() + " decisions evaluated, " + dropped.sum() + " dropped, " + entries.size()
+                + " disagreements");
+        lines.add("# stricter: active rules accept, candidate rules reject; looser: the other way around");
+        for (Map.Entry<Disagreement, LongAdder> entry : entries) {
+            Disagreement disagreement = entry.getKey();
+            lines.add(disagreement.filter + " " + disagreement.repositoryId + " "
+                    + (disagreement.accepted ? "stricter " : "looser ") + disagreement.subject + " "
+                    + entry.getValue().sum());
+        }
+        try {
+            Path file = directory.resolve("report-"
+                    + DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+                            .withZone(ZoneOffset.UTC)
+                            .format(Instant.ofEpochMilli(startMillis))
+                    + FileRuleSource.TEXT_SUFFIX);
+            Files.createDirectories(directory);
+            FileUtils.writeFile(file, p -> Files.write(p, lines, StandardCharsets.UTF_8));
+            LOGGER.info(
+                    "Heimdall shadow rules disagreed on {} of {} decisions ({} dropped); report written to {}",
+                    entries.stream().mapToLong(e -> e.getValue().sum()).sum(),
+                    evaluated.sum(),
+                    dropped.sum(),
+                    file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static final class Decision {
+        private final String filter;
+        private final String repositoryId;
+        private final String groupId;
+        private final String artifactId;
+        private final String version;
+        private final Supplier<String> subject;
+        private final boolean accepted;
+
+        private Decision(
+                String filter,
+                String repositoryId,
+                String groupId,
+                String artifactId,
+                String version,
+                Supplier<String> subject,
+                boolean accepted) {
+            this.filter = filter;
+            this.repositoryId = repositoryId;
+            this.groupId = groupId;
+            this.artifactId = artifactId;
+            this.version = version;
+            this.subject = subject;
+            this.accepted = accepted;
+        }
+    }
+
+    /**
+     * Decision candidate rules disagree with: the subject (group ID or path) and verdict of active rules.
+     */
+    private static final class Disagreement {
+        private final String filter;
+        private final String repositoryId;
+        private final String subject;
+        private final boolean accepted;
+
+        private Disagreement(String filter, String repositoryId, String subject, boolean accepted) {
+            this.filter = filter;
+            this.repositoryId = repositoryId;
+            this.subject = subject;
+            this.accepted = accepted;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Disagreement)) {
+                return false;
+            }
+            Disagreement that = (Disagreement) o;
+            return accepted == that.accepted
+                    && filter.equals(that.filter)
+                    && repositoryId.equals(that.repositoryId)
+                    && subject.equals(that.subject);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((filter.hashCode() * 31 + repositoryId.hashCode()) * 31 + subject.hashCode()) * 31
+                    + Boolean.hashCode(accepted);
+        }
+    }
+}
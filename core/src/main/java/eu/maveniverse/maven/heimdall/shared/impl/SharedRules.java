@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.shared.core.fs.FileUtils;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.util.ConfigUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordination of processes sharing local repository (like parallel builds on CI agents): rules of a remote repository
+ * are fetched and compiled by one process holding the lock "${basedir}/shared/${filter}-${repository.id}.lock", while
+ * others wait for it, and then use the fetched file (from local repository) and the shared compiled snapshot
+ * "${basedir}/shared/${filter}-${repository.id}.bin". The snapshot is stamped with the text rules it was compiled from,
+ * and it is recompiled once they change.
+ * <p>
+ * Locks are released by the OS when holder process dies. A holder that hangs is handled with lock timeout: waiting
+ * processes give up after {@code heimdall.shared.lockTimeout} millis (defaults to 10000), and proceed without the lock.
+ * Coordination is disabled by default (no locks nor snapshots are written), enable it with
+ * {@code heimdall.shared.enabled} property.
+ */
+final class SharedRules {
+    static final String CONFIG_ENABLED = SessionConfig.KEY_PREFIX + "shared.enabled";
+
+    static final String CONFIG_LOCK_TIMEOUT = SessionConfig.KEY_PREFIX + "shared.lockTimeout";
+
+    private static final long DEFAULT_LOCK_TIMEOUT = 10000L;
+
+    private static final long POLL_MILLIS = 50L;
+
+    private static final String DIRECTORY = "shared";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedRules.class);
+
+    /**
+     * An action run under lock.
+     *
+     * @param <R> the type of result
+     */
+    @FunctionalInterface
+    interface Action<R> {
+        R run() throws IOException;
+    }
+
+    /**
+     * Compiles text rules.
+     */
+    @FunctionalInterface
+    interface Compiler {
+        byte[] compile(RuleContent text) throws IOException;
+    }
+
+    private SharedRules() {}
+
+    /**
+     * Is coordination enabled?
+     */
+    static boolean isEnabled(RepositorySystemSession session) {
+        return ConfigUtils.getBoolean(session, false, CONFIG_ENABLED);
+    }
+
+    /**
+     * Runs given action holding the lock of given filter and remote repository (or without it, if lock times out).
+     */
+    static <R> R locked(
+            RepositorySystemSession session, String filter, RemoteRepository remoteRepository, Action<R> action)
+            throws IOException {
+        Path lockFile = directory(session, filter).resolve(filter + "-" + remoteRepository.getId() + ".lock");
+        long timeout = ConfigUtils.getLong(session, DEFAULT_LOCK_TIMEOUT, CONFIG_LOCK_TIMEOUT);
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = acquire(channel, timeout);
+            if (lock == null) {
+                LOGGER.warn(
+                        "Heimdall {} rules lock of remote repository {} not acquired in {} ms; proceeding without it",
+                        filter,
+                        remoteRepository.getId(),
+                        timeout);
+            }
+            try {
+                return action.run();
+            } finally {
+                if (lock != null) {
+                    lock.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shared compiled snapshot of given text rules (that must be backed by a file), compiling it with
+     * given compiler if it is missing or stale. Must be invoked holding the lock.
+     */
+    static RuleContent snapshot(
+            RepositorySystemSession session,
+            String filter,
+            RemoteRepository remoteRepository,
+            RuleContent text,
+            Compiler compiler)
+            throws IOException {
+        Path textFile = text.path().orElseThrow(() -> new IllegalArgumentException("Not a file: " + text));
+        Path directory = directory(session, filter);
+        Path snapshot = directory.resolve(filter + "-" + remoteRepository.getId() + FileRuleSource.COMPILED_SUFFIX);
+        Path stampFile = directory.resolve(filter + "-" + remoteRepository.getId() + ".stamp");
+        String stamp = textFile.toAbsolutePath() + "\n" + Files.size(textFile) + "\n"
+                + Files.getLastModifiedTime(textFile).toMillis() + "\n";
+        if (Files.isReadable(snapshot)
+                && Files.isReadable(stampFile)
+                && stamp.equals(new String(Files.readAllBytes(stampFile), StandardCharsets.UTF_8))) {
+            LOGGER.debug("Using shared {} rules snapshot {} of {}", filter, snapshot, text);
+            return RuleContent.ofPath(snapshot, true);
+        }
+        byte[] compiled = compiler.compile(text);
+        FileUtils.writeFile(snapshot, p -> Files.write(p, compiled));
+        FileUtils.writeFile(stampFile, p -> Files.write(p, stamp.getBytes(StandardCharsets.UTF_8)));
+        LOGGER.debug("Compiled shared {} rules snapshot {} of {}", filter, snapshot, text);
+        return RuleContent.ofPath(snapshot, true);
+    }
+
+    private static Path directory(RepositorySystemSession session, String filter) throws IOException {
+        Path directory = RemoteRepositoryFilterSourceSupport.getBasedir(session, filter, true)
+                .resolve(DIRECTORY);
+        Files.createDirectories(directory);
+        return directory;
+    }
+
+    /**
+     * Polls for the lock until timeout, returns {@code null} if lock was not acquired.
+     */
+    private static FileLock acquire(FileChannel channel, long timeoutMillis) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (true) {
+            try {
+                FileLock lock = channel.tryLock();
+                if (lock != null) {
+                    return lock;
+                }
+            } catch (OverlappingFileLockException e) {
+                // held by other thread of this process
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                return null;
+            }
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for lock");
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.Session;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.GroupTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.PrefixTree;
+import eu.maveniverse.maven.shared.core.fs.FileUtils;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per session analysis of wasted requests: downloads of artifacts and metadata that failed on remote repository (and
+ * were not filtered out). On {@link Session} close it reports the estimated time lost to each remote repository, and
+ * for repositories that had "not found" misses, it writes suggested rules that would have prevented them into
+ * "${heimdall.basedir}/suggestions/groupId-${repository.id}.txt" and "prefixes-${repository.id}.txt" files. The
+ * suggestions allow what the repository did serve in the session, hence they should be reviewed before use.
+ * <p>
+ * All the data structures are lock-free (or use fine-grained concurrent maps), so recording adds no contention to
+ * parallel downloads. The analyzer is disabled by default, enable it with {@code heimdall.analyzer.enabled} property.
+ */
+public final class WastedRequestAnalyzer {
+    public static final String CONFIG_ENABLED = SessionConfig.KEY_PREFIX + "analyzer.enabled";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WastedRequestAnalyzer.class);
+
+    private final ConcurrentHashMap<String, Long> started;
+
+    private final ConcurrentHashMap<String, RepositoryStats> repositories;
+
+    WastedRequestAnalyzer() {
+        this.started = new ConcurrentHashMap<>();
+        this.repositories = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the analyzer of given Heimdall session, creating it if needed, or {@code null} if analyzer is disabled.
+     */
+    public static WastedRequestAnalyzer mayGetAnalyzer(Session session) {
+        requireNonNull(session, "session");
+        Object analyzer = session.config().session().getData().get(WastedRequestAnalyzer.class);
+        if (analyzer != null) {
+            return (WastedRequestAnalyzer) analyzer;
+        }
+        if (!Boolean.parseBoolean(
+                session.config().effectiveProperties().getOrDefault(CONFIG_ENABLED, Boolean.FALSE.toString()))) {
+            return null;
+        }
+        return (WastedRequestAnalyzer)
+                session.config().session().getData().computeIfAbsent(WastedRequestAnalyzer.class, () -> {
+                    WastedRequestAnalyzer result = new WastedRequestAnalyzer();
+                    session.registerOnCloseHook(
+                            () -> result.report(session.config().basedir().resolve("suggestions")));
+                    return result;
+                });
+    }
+
+    /**
+     * Marks start of download identified by given key.
+     */
+    void started(String key) {
+        started.put(key, System.nanoTime());
+    }
+
+    /**
+     * Marks end of download identified by given key, and returns its duration in nanoseconds.
+     */
+    long finished(String key) {
+        Long start = started.remove(key);
+        return start != null ? System.nanoTime() - start : 0L;
+    }
+
+    /**
+     * Records download served by remote repository. The group ID and prefix may be {@code null}.
+     */
+    void served(String repositoryId, String groupId, String prefix) {
+        RepositoryStats stats = stats(repositoryId);
+        if (groupId != null) {
+            stats.servedGroupIds.add(groupId);
+        }
+        if (prefix != null) {
+            stats.servedPrefixes.add(prefix);
+        }
+    }
+
+    /**
+     * Records download not found in remote repository. The group ID and prefix may be {@code null}, if no rule could
+     * prevent the request.
+     */
+    void missed(String repositoryId, String groupId, String prefix, long nanos) {
+        RepositoryStats stats = stats(repositoryId);
+        stats.notFound.increment();
+        stats.nanos.add(nanos);
+        if (groupId != null) {
+            count(stats.missedGroupIds, groupId);
+        }
+        if (prefix != null) {
+            count(stats.missedPrefixes, prefix);
+        }
+    }
+
+    /**
+     * Records download failed for other reason than being not found.
+     */
+    void failed(String repositoryId, long nanos) {
+        RepositoryStats stats = stats(repositoryId);
+        stats.failed.increment();
+        stats.nanos.add(nanos);
+    }
+
+    private static void count(ConcurrentHashMap<String, LongAdder> counters, String key) {
+        LongAdder counter = counters.get(key);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    private RepositoryStats stats(String repositoryId) {
+        RepositoryStats stats = repositories.get(repositoryId);
+        return stats != null ? stats : repositories.computeIfAbsent(repositoryId, k -> new RepositoryStats());
+    }
+
+    /**
+     * Logs time lost per remote repository, and writes suggested rules into given directory.
+     */
+    void report(Path directory) {
+        List<Map.Entry<String, RepositoryStats>> wasted = new ArrayList<>();
+        for (Map.Entry<String, RepositoryStats> entry : repositories.entrySet()) {
+            if (entry.getValue().notFound.sum() + entry.getValue().failed.sum() > 0) {
+                wasted.add(entry);
+            }
+        }
+        if (wasted.isEmpty()) {
+            return;
+        }
+        wasted.sort(Comparator.comparingLong((Map.Entry<String, RepositoryStats> e) ->
+                        e.getValue().nanos.sum())
+                .reversed());
+        for (Map.Entry<String, RepositoryStats> entry : wasted) {
+            String repositoryId = entry.getKey();
+            RepositoryStats stats = entry.getValue();
+            LOGGER.info(
+                    "Heimdall: remote repository {} wasted {} requests ({} not found, {} failed), ~{} ms lost",
+                    repositoryId,
+                    stats.notFound.sum() + stats.failed.sum(),
+                    stats.notFound.sum(),
+                    stats.failed.sum(),
+                    TimeUnit.NANOSECONDS.toMillis(stats.nanos.sum()));
+            try {
+                suggestGroupIds(directory, repositoryId, stats);
+                suggestPrefixes(directory, repositoryId, stats);
+            } catch (IOException e) {
+                LOGGER.warn(
+                        "Heimdall could not write suggested rules for remote repository {} into {}: {}",
+                        repositoryId,
+                        directory,
+                        e.toString());
+            }
+        }
+    }
+
+    private void suggestGroupIds(Path directory, String repositoryId, RepositoryStats stats) throws IOException {
+        TreeSet<String> rules = new TreeSet<>(stats.servedGroupIds);
+        GroupTree groupTree = new GroupTree("");
+        groupTree.loadNodes(rules.stream());
+        long prevented = stats.missedGroupIds.entrySet().stream()
+                .filter(e -> !groupTree.acceptedGroupId(e.getKey()))
+                .mapToLong(e -> e.getValue().sum())
+                .sum();
+        write(directory, "groupId-" + repositoryId + ".txt", repositoryId, rules, prevented, stats);
+    }
+
+    private void suggestPrefixes(Path directory, String repositoryId, RepositoryStats stats) throws IOException {
+        TreeSet<String> rules = new TreeSet<>(stats.servedPrefixes);
+        PrefixTree prefixTree = new PrefixTree("");
+        prefixTree.loadNodes(rules.stream());
+        long prevented = stats.missedPrefixes.entrySet().stream()
+                .filter(e -> !prefixTree.acceptedPath(e.getKey()))
+                .mapToLong(e -> e.getValue().sum())
+                .sum();
+        write(directory, "prefixes-" + repositoryId + ".txt", repositoryId, rules, prevented, stats);
+    }
+
+    private void write(
+            Path directory, String name, String repositoryId, Set<String> rules, long prevented, RepositoryStats stats)
+            throws IOException {
+        if (prevented == 0) {
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add("# Heimdall suggested rules for remote repository " + repositoryId);
+        lines.add("# Would have prevented " + prevented + " of " + stats.notFound.sum()
+                + " not found requests; review before use");
+        lines.addAll(rules);
+        Path file = directory.resolve(name);
+        FileUtils.writeFile(file, p -> Files.write(p, lines, StandardCharsets.UTF_8));
+        LOGGER.info(
+                "Heimdall: suggested rules for remote repository {} written to {} ({} rules)",
+                repositoryId,
+                file,
+                rules.size());
+    }
+
+    private static final class RepositoryStats {
+        private final LongAdder notFound = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final Set<String> servedGroupIds = ConcurrentHashMap.newKeySet();
+        private final Set<String> servedPrefixes = ConcurrentHashMap.newKeySet();
+        private final ConcurrentHashMap<String, LongAdder> missedGroupIds = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, LongAdder> missedPrefixes = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.Session;
+import eu.maveniverse.maven.heimdall.shared.SessionUtils;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.impl.RemoteRepositoryFilterManager;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+
+/**
+ * Repository listener feeding {@link WastedRequestAnalyzer} of Heimdall session with downloads from remote
+ * repositories.
+ * <p>
+ * Resolver reports downloads rejected by remote repository filter as "not found", so failed downloads are checked
+ * against session filter, and those filtered out are not counted as wasted (they never hit the network). The check is
+ * a {@link Recheck}: it is not recorded as another decision.
+ */
+@Singleton
+@Named
+public final class WastedRequestListener extends AbstractRepositoryListener {
+    private final Provider<RemoteRepositoryFilterManager> remoteRepositoryFilterManager;
+
+    @Inject
+    public WastedRequestListener(Provider<RemoteRepositoryFilterManager> remoteRepositoryFilterManager) {
+        this.remoteRepositoryFilterManager = remoteRepositoryFilterManager;
+    }
+
+    @Override
+    public void artifactDownloading(RepositoryEvent event) {
+        if (event.getRepository() instanceof RemoteRepository) {
+            WastedRequestAnalyzer analyzer = mayGetAnalyzer(event.getSession());
+            if (analyzer != null) {
+                analyzer.started(key(event));
+            }
+        }
+    }
+
+    @Override
+    public void artifactDownloaded(RepositoryEvent event) {
+        if (event.getRepository() instanceof RemoteRepository) {
+            WastedRequestAnalyzer analyzer = mayGetAnalyzer(event.getSession());
+            if (analyzer != null) {
+                long nanos = analyzer.finished(key(event));
+                RemoteRepository remoteRepository = (RemoteRepository) event.getRepository();
+                Artifact artifact = event.getArtifact();
+                String groupId = artifact.getGroupId();
+                String prefix = "/" + groupId.replace('.', '/') + "/" + artifact.getArtifactId();
+                if (event.getException() == null) {
+                    analyzer.served(remoteRepository.getId(), groupId, prefix);
+                } else if (event.getException() instanceof ArtifactNotFoundException) {
+                    if (Recheck.accepted(
+                            remoteRepositoryFilterManager.get(), event.getSession(), remoteRepository, artifact)) {
+                        analyzer.missed(remoteRepository.getId(), groupId, prefix, nanos);
+                    }
+                } else {
+                    analyzer.failed(remoteRepository.getId(), nanos);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void metadataDownloading(RepositoryEvent event) {
+        if (event.getRepository() instanceof RemoteRepository) {
+            WastedRequestAnalyzer analyzer = mayGetAnalyzer(event.getSession());
+            if (analyzer != null) {
+                analyzer.started(key(event));
+            }
+        }
+    }
+
+    @Override
+    public void metadataDownloaded(RepositoryEvent event) {
+        if (event.getRepository() instanceof RemoteRepository) {
+            WastedRequestAnalyzer analyzer = mayGetAnalyzer(event.getSession());
+            if (analyzer != null) {
+                long nanos = analyzer.finished(key(event));
+                RemoteRepository remoteRepository = (RemoteRepository) event.getRepository();
+                Metadata metadata = event.getMetadata();
+                // root metadata (like prefixes file) is not prevented by any rule
+                String groupId = metadata.getGroupId().isEmpty() ? null : metadata.getGroupId();
+                String prefix = null;
+                if (groupId != null) {
+                    prefix = "/" + groupId.replace('.', '/')
+                            + (metadata.getArtifactId().isEmpty() ? "" : "/" + metadata.getArtifactId());
+                }
+                if (event.getException() == null) {
+                    analyzer.served(remoteRepository.getId(), groupId, prefix);
+                } else if (event.getException() instanceof MetadataNotFoundException) {
+                    if (Recheck.accepted(
+                            remoteRepositoryFilterManager.get(), event.getSession(), remoteRepository, metadata)) {
+                        analyzer.missed(remoteRepository.getId(), groupId, prefix, nanos);
+                    }
+                } else {
+                    analyzer.failed(remoteRepository.getId(), nanos);
+                }
+            }
+        }
+    }
+
+    private static WastedRequestAnalyzer mayGetAnalyzer(RepositorySystemSession session) {
+        Optional<Session> so = SessionUtils.mayGetSession(session);
+        return so.map(WastedRequestAnalyzer::mayGetAnalyzer).orElse(null);
+    }
+
+    private static String key(RepositoryEvent event) {
+        return event.getRepository().getId() + ":"
+                + (event.getArtifact() != null ? event.getArtifact() : event.getMetadata());
+    }
+}
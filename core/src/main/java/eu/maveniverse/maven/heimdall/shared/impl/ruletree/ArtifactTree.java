@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import org.eclipse.aether.util.version.GenericVersionScheme;
+import org.eclipse.aether.version.InvalidVersionSpecificationException;
+import org.eclipse.aether.version.Version;
+import org.eclipse.aether.version.VersionConstraint;
+import org.eclipse.aether.version.VersionScheme;
+
+/**
+ * Artifact tree for full Maven coordinates: a layered tree of groupId elements, then artifactId, then version
+ * constraints, then classifier and finally extension.
+ * <p>
+ * Rule format is {@code [!]groupId:artifactId[:version[:classifier[:extension]]]}, where omitted trailing fields
+ * match anything, and any field may be {@code *} to match anything as well. The groupId field matches groupId
+ * exactly (not the groupIds below it), the version field is a version or version range (matched against artifact
+ * base version), and empty classifier field matches the main artifact only. Example rules:
+ * <ul>
+ *     <li>{@code com.acme:special-lib} allows all the versions and classifiers of {@code com.acme:special-lib}</li>
+ *     <li>{@code !*:*:*:sources} disallows the {@code sources} classifier of all artifacts</li>
+ *     <li>{@code !org.foo:bar:[1.0,2.0)::jar} disallows the main JARs of {@code org.foo:bar} versions 1.x</li>
+ * </ul>
+ * If any exclusion matches, the artifact is not allowed. Otherwise, if rules contain any allowing rule, then the
+ * artifact is allowed only if an allowing rule matches it. Otherwise, (only exclusions present) the artifact is
+ * allowed.
+ * <p>
+ * GroupId elements are {@link Node}s keyed by {@link Symbols}, as in other trees, but patterns are not supported. The
+ * artifact base version is parsed only if a rule having version constraint is reached.
+ */
+public class ArtifactTree {
+    public static final ArtifactTree SENTINEL = new ArtifactTree();
+
+    private static final String MOD_EXCLUSION = "!";
+    private static final String ANY = "*";
+
+    private static final int NONE = 0;
+    private static final int ALLOW = 1;
+    private static final int DENY = 2;
+
+    private static final VersionScheme VERSION_SCHEME = new GenericVersionScheme();
+
+    private final GroupNode groups = new GroupNode("");
+    private final Level<Versions> anyGroup = new Level<>();
+    private boolean hasAllowRules;
+
+    public int loadNodes(Stream<String> linesStream) {
+        AtomicInteger counter = new AtomicInteger(0);
+        linesStream.forEach(line -> {
+            line = line.trim();
+            if (!line.startsWith("#") && !line.isEmpty()) {
+                counter.incrementAndGet();
+                addRule(line);
+            }
+        });
+        return counter.get();
+    }
+
+    private void addRule(String line) {
+        String rule = line;
+        boolean allow = true;
+        if (rule.startsWith(MOD_EXCLUSION)) {
+            allow = false;
+            rule = rule.substring(MOD_EXCLUSION.length());
+        }
+        String[] fields = rule.split(":", -1);
+        if (fields.length < 2 || fields.length > 5) {
+            throw new IllegalArgumentException("Invalid artifact rule '" + line + "'");
+        }
+        String groupId = fields[0];
+        String artifactId = fields[1];
+        String version = fields.length > 2 ? fields[2] : ANY;
+        String classifier = fields.length > 3 ? fields[3] : ANY;
+        String extension = fields.length > 4 ? fields[4] : ANY;
+        if (groupId.isEmpty() || artifactId.isEmpty() || version.isEmpty() || extension.isEmpty()) {
+            throw new IllegalArgumentException("Invalid artifact rule '" + line + "': empty field");
+        }
+        VersionConstraint constraint = null;
+        if (!ANY.equals(version)) {
+            try {
+                constraint = VERSION_SCHEME.parseVersionConstraint(version);
+            } catch (InvalidVersionSpecificationException e) {
+                throw new IllegalArgumentException("Invalid artifact rule '" + line + "': " + e.getMessage(), e);
+            }
+        }
+
+        Level<Versions> artifacts = anyGroup;
+        if (!ANY.equals(groupId)) {
+            GroupNode node = groups;
+            for (String element : Node.elements(groupId, '.')) {
+                if (SegmentPatterns.isPattern(element)) {
+                    throw new IllegalArgumentException(
+                            "Invalid artifact rule '" + line + "': groupId patterns are not supported");
+                }
+                GroupNode sibling = (GroupNode) node.getSibling(element);
+                if (sibling == null) {
+                    sibling = new GroupNode(element);
+                    node.putSibling(sibling);
+                }
+                node = sibling;
+            }
+            artifacts = node.artifacts;
+        }
+        Versions versions = artifacts.computeIfAbsent(artifactId, Versions::new);
+        Level<Integer> extensions = versions.classifiers(constraint).computeIfAbsent(classifier, Level::new);
+        if (ANY.equals(extension)) {
+            extensions.any = (extensions.any == null ? NONE : extensions.any) | (allow ? ALLOW : DENY);
+        } else {
+            extensions.exact.merge(extension, allow ? ALLOW : DENY, (a, b) -> a | b);
+        }
+        versions.hasAllow |= allow;
+        hasAllowRules |= allow;
+    }
+
+    public boolean acceptedArtifact(
+            String groupId, String artifactId, String baseVersion, String classifier, String extension) {
+        Versions any = anyGroup.exact.get(artifactId);
+        Versions anyAny = anyGroup.any;
+        Versions exact = null;
+        Versions exactAny = null;
+        GroupNode group = group(groupId);
+        if (group != null) {
+            exact = group.artifacts.exact.get(artifactId);
+            exactAny = group.artifacts.any;
+        }
+        Version version = null;
+        if (constrained(any) || constrained(anyAny) || constrained(exact) || constrained(exactAny)) {
+            try {
+                version = VERSION_SCHEME.parseVersion(baseVersion);
+            } catch (InvalidVersionSpecificationException e) {
+                // no version constraint will match it
+            }
+        }
+        return decide(matchVersions(any, version, classifier, extension)
+                | matchVersions(anyAny, version, classifier, extension)
+                | matchVersions(exact, version, classifier, extension)
+                | matchVersions(exactAny, version, classifier, extension));
+    }
+
+    /**
+     * Metadata may lack artifactId (G level metadata), and version is not known: exclusions apply only if they
+     * exclude any version, classifier and extension, while any allowing rule for given G or GA applies.
+     */
+    public boolean acceptedMetadata(String groupId, String artifactId) {
+        if (groupId.isEmpty()) {
+            return true;
+        }
+        int verdict = matchMetadata(anyGroup, artifactId);
+        GroupNode group = group(groupId);
+        if (group != null) {
+            verdict |= matchMetadata(group.artifacts, artifactId);
+        }
+        return decide(verdict);
+    }
+
+    private boolean decide(int verdict) {
+        if ((verdict & DENY) != 0) {
+            return false;
+        }
+        return (verdict & ALLOW) != 0 || !hasAllowRules;
+    }
+
+    /**
+     * Returns the node of given groupId, or {@code null} if no rule is for it.
+     */
+    private GroupNode group(String groupId) {
+        Node node = groups;
+        int start = 0;
+        while (start < groupId.length()) {
+            int end = groupId.indexOf('.', start);
+            if (end < 0) {
+                end = groupId.length();
+            }
+            if (end > start) {
+                node = node.getSibling(groupId.substring(start, end));
+                if (node == null) {
+                    return null;
+                }
+            }
+            start = end + 1;
+        }
+        return (GroupNode) node;
+    }
+
+    private static boolean constrained(Versions versions) {
+        return versions != null && versions.constrained;
+    }
+
+    private static int matchMetadata(Level<Versions> artifacts, String artifactId) {
+        int verdict = NONE;
+        if (artifactId.isEmpty()) {
+            for (Versions versions : artifacts.exact.values()) {
+                verdict |= versions.hasAllow ? ALLOW : NONE;
+            }
+        } else {
+            verdict |= matchAnyVersion(artifacts.exact.get(artifactId));
+        }
+        return verdict | matchAnyVersion(artifacts.any);
+    }
+
+    private static int matchVersions(Versions versions, Version version, String classifier, String extension) {
+        if (versions == null) {
+            return NONE;
+        }
+        int verdict = NONE;
+        for (VersionRule rule : versions.rules) {
+            if (rule.constraint == null || (version != null && rule.constraint.containsVersion(version))) {
+                verdict |= matchExtensions(rule.classifiers.exact.get(classifier), extension);
+                verdict |= matchExtensions(rule.classifiers.any, extension);
+            }
+        }
+        return verdict;
+    }
+
+    private static int matchExtensions(Level<Integer> extensions, String extension) {
+        if (extensions == null) {
+            return NONE;
+        }
+        Integer exact = extensions.exact.get(extension);
+        return (exact != null ? exact : NONE) | (extensions.any != null ? extensions.any : NONE);
+    }
+
+    private static int matchAnyVersion(Versions versions) {
+        if (versions == null) {
+            return NONE;
+        }
+        int verdict = versions.hasAllow ? ALLOW : NONE;
+        for (VersionRule rule : versions.rules) {
+            if (rule.constraint == null && rule.classifiers.any != null && rule.classifiers.any.any != null) {
+                verdict |= rule.classifiers.any.any & DENY;
+            }
+        }
+        return verdict;
+    }
+
+    public void dump(String prefix) {
+        dumpArtifacts(prefix, ANY, anyGroup);
+        dumpGroups(prefix, "", groups);
+    }
+
+    private static void dumpGroups(String prefix, String groupId, GroupNode node) {
+        if (!groupId.isEmpty()) {
+            dumpArtifacts(prefix, groupId, node.artifacts);
+        }
+        node.siblings().forEach((k, v) -> dumpGroups(prefix, groupId.isEmpty() ? k : groupId + "." + k, (GroupNode) v));
+    }
+
+    private static void dumpArtifacts(String prefix, String groupId, Level<Versions> artifacts) {
+        artifacts.forEach((artifactId, versions) -> {
+            for (VersionRule rule : versions.rules) {
+                String version = rule.constraint == null ? ANY : rule.constraint.toString();
+                rule.classifiers.forEach((classifier, extensions) -> extensions.forEach(
+                        (extension, verdict) -> System.out.println(prefix + ((verdict & DENY) != 0 ? "-" : "+")
+                                + groupId + ":" + artifactId + ":" + version + ":" + classifier + ":" + extension)));
+            }
+        });
+    }
+
+    /**
+     * A groupId element: the artifacts of groupId ending with it.
+     */
+    private static final class GroupNode extends Node {
+        private final Level<Versions> artifacts = new Level<>();
+
+        private GroupNode(String name) {
+            super(name, false, null);
+        }
+    }
+
+    /**
+     * One layer of the tree: exact matches and optional "any" ({@code *}) match.
+     */
+    private static final class Level<T> {
+        private final HashMap<String, T> exact = new HashMap<>();
+        private T any;
+
+        private T computeIfAbsent(String key, Supplier<T> supplier) {
+            if (ANY.equals(key)) {
+                if (any == null) {
+                    any = supplier.get();
+                }
+                return any;
+            }
+            return exact.computeIfAbsent(key, k -> supplier.get());
+        }
+
+        private void forEach(BiConsumer<String, T> consumer) {
+            exact.forEach(consumer);
+            if (any != null) {
+                consumer.accept(ANY, any);
+            }
+        }
+    }
+
+    /**
+     * The version layer: list of version constraints in order of appearance.
+     */
+    private static final class Versions {
+        private final List<VersionRule> rules = new ArrayList<>(1);
+        private boolean hasAllow;
+        private boolean constrained;
+
+        private Level<Level<Integer>> classifiers(VersionConstraint constraint) {
+            for (VersionRule rule : rules) {
+                if (Objects.equals(rule.constraint, constraint)) {
+                    return rule.classifiers;
+                }
+            }
+            VersionRule rule = new VersionRule(constraint);
+            rules.add(rule);
+            constrained |= constraint != null;
+            return rule.classifiers;
+        }
+    }
+
+    /**
+     * Version constraint ({@code null} meaning "any version") with classifiers and extensions below it.
+     */
+    private static final class VersionRule {
+        private final VersionConstraint constraint;
+        private final Level<Level<Integer>> classifiers = new Level<>();
+
+        private VersionRule(VersionConstraint constraint) {
+            this.constraint = constraint;
+        }
+    }
+}
@@ -7,31 +7,72 @@
  */
 package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
 
-import static java.util.stream.Collectors.toList;
-
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 /**
- * Group tree for Maven groupIDs: if you step on a path you "inherit" the access (allow).
+ * Group tree for Maven groupIDs: if you step on a path you "inherit" the access (allow). Intermediate nodes (created
+ * for deeper rules, without rule of their own) do not change inherited access, so adding a rule never changes answers
+ * outside of its own subtree.
+ * <p>
+ * Group elements may be patterns as well, like {@code com.*.internal} or {@code org.{apache|codehaus}.mojo}, see
+ * {@link SegmentPatterns} for supported syntax. Plain elements have precedence over patterns, and if multiple
+ * patterns match, exclusions have precedence over allowing ones.
  */
 public class GroupTree extends Node {
     public static final GroupTree SENTINEL = new GroupTree("sentinel");
 
-    private static final String MOD_EXCLUSION = "!";
-    private static final String MOD_STOP = "=";
+    static final String MOD_EXCLUSION = "!";
+    static final String MOD_STOP = "=";
 
     private static List<String> elementsOfGroup(final String groupId) {
-        return Arrays.stream(groupId.split("\\.")).filter(e -> !e.isEmpty()).collect(toList());
+        return elements(groupId, '.');
     }
 
     public GroupTree(String name) {
         super(name, false, null);
     }
 
+    private GroupTree(GroupTree groupTree) {
+        super(groupTree);
+    }
+
+    @Override
+    protected GroupTree copy() {
+        return new GroupTree(this);
+    }
+
+    @Override
+    protected boolean ruleStop(String line) {
+        if (line.startsWith(MOD_EXCLUSION)) {
+            line = line.substring(MOD_EXCLUSION.length());
+        }
+        return line.startsWith(MOD_STOP);
+    }
+
+    @Override
+    protected Boolean ruleAllow(String line) {
+        return !line.startsWith(MOD_EXCLUSION);
+    }
+
+    /**
+     * Returns copy-on-write updated tree, see {@link Node#update(RuleLines, RuleLines)}.
+     */
+    @Override
+    public GroupTree update(RuleLines previous, RuleLines current) {
+        return (GroupTree) super.update(previous, current);
+    }
+
+    /**
+     * Shares identical subtrees of loaded tree, see {@link Node#minimize()}.
+     */
+    @Override
+    public void minimize() {
+        super.minimize();
+    }
+
     public int loadNodes(Stream<String> linesStream) {
         AtomicInteger counter = new AtomicInteger(0);
         linesStream.forEach(line -> {
@@ -55,12 +96,28 @@ public class GroupTree extends Node {
                 currentNode.addSibling(groupElements.get(groupElements.size() - 1), stop, allow);
             }
         });
+        compile(false);
         return counter.get();
     }
 
+    /**
+     * Batch variant of {@link #acceptedGroupId(String)}. Group IDs should be sorted: equal neighbours are evaluated
+     * once.
+     */
+    public boolean[] acceptedGroupIds(List<String> groupIds) {
+        boolean[] result = new boolean[groupIds.size()];
+        String previous = null;
+        for (int i = 0; i < result.length; i++) {
+            String groupId = groupIds.get(i);
+            result[i] = groupId.equals(previous) ? result[i - 1] : acceptedGroupId(groupId);
+            previous = groupId;
+        }
+        return result;
+    }
+
     public boolean acceptedGroupId(String groupId) {
         final List<String> current = new ArrayList<>();
-        final List<String> groupElements = elementsOfGroup(groupId);
+        final List<String> groupElements = split(groupId, '.');
         Boolean accepted = null;
         Node currentNode = this;
         for (String groupElement : groupElements) {
@@ -69,6 +126,10 @@ public class GroupTree extends Node {
             if (currentNode == null) {
                 break;
             }
+            if (currentNode.isAllow() == null) {
+                // intermediate node without rule: keep inherited verdict
+                continue;
+            }
             if (currentNode.isStop() && groupElements.equals(current)) {
                 accepted = currentNode.isAllow();
             } else if (!currentNode.isStop()) {
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.util.function.IntFunction;
+
+/**
+ * Compact open addressing (linear probing) map of symbol ids to nodes. Keys are positive ints, {@link Symbols#NONE}
+ * marks free slots. Not thread safe: trees are built by one thread and are read only once published.
+ */
+final class IntNodeMap {
+    @FunctionalInterface
+    interface Visitor {
+        void visit(int key, Node value);
+    }
+
+    @FunctionalInterface
+    interface Replacer {
+        Node replace(int key, Node value);
+    }
+
+    private int[] keys;
+    private Node[] values;
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Capacity of map (count of slots).
+     */
+    int capacity() {
+        return keys == null ? 0 : keys.length;
+    }
+
+    Node get(int key) {
+        if (keys == null || key == Symbols.NONE) {
+            return null;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (true) {
+            int k = keys[i];
+            if (k == key) {
+                return values[i];
+            }
+            if (k == Symbols.NONE) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    Node computeIfAbsent(int key, IntFunction<Node> function) {
+        Node value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    void put(int key, Node value) {
+        if (keys == null) {
+            keys = new int[2];
+            values = new Node[2];
+        } else if ((size + 1) * 4 > keys.length * 3) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != Symbols.NONE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == Symbols.NONE) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+    }
+
+    /**
+     * Removes mapping of given key, if present.
+     */
+    void remove(int key) {
+        if (keys == null || key == Symbols.NONE) {
+            return;
+        }
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == Symbols.NONE) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = Symbols.NONE;
+        values[i] = null;
+        size--;
+        // backward shift of the rest of cluster, to keep probing sequences unbroken
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            int k = keys[j];
+            if (k == Symbols.NONE) {
+                return;
+            }
+            int home = hash(k) & mask;
+            boolean reachable = i <= j ? (home > i && home <= j) : (home > i || home <= j);
+            if (!reachable) {
+                keys[i] = k;
+                values[i] = values[j];
+                keys[j] = Symbols.NONE;
+                values[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    void clear() {
+        keys = null;
+        values = null;
+        size = 0;
+    }
+
+    /**
+     * Returns a (shallow) copy of this map.
+     */
+    IntNodeMap copy() {
+        IntNodeMap copy = new IntNodeMap();
+        if (keys != null) {
+            copy.keys = keys.clone();
+            copy.values = values.clone();
+            copy.size = size;
+        }
+        return copy;
+    }
+
+    void forEach(Visitor visitor) {
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != Symbols.NONE) {
+                    visitor.visit(keys[i], values[i]);
+                }
+            }
+        }
+    }
+
+    void replaceAll(Replacer replacer) {
+        if (keys != null) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != Symbols.NONE) {
+                    values[i] = replacer.replace(keys[i], values[i]);
+                }
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Node[] oldValues = values;
+        keys = new int[capacity];
+        values = new Node[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != Symbols.NONE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -7,30 +7,87 @@
  */
 package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A tree structure with rules.
+ * <p>
+ * Besides plain siblings, a node may have pattern siblings (see {@link SegmentPatterns}). Once tree is loaded, it
+ * must be compiled: compilation merges pattern subtrees into every plain sibling they match (so a plain hit needs
+ * no pattern matching at all), and compiles pattern siblings of a node into one DFA. When a segment is not a plain
+ * sibling but matches more than one pattern, the matched subtrees are merged lazily, and the merged node is cached.
+ * Hence, the tree walks as one deterministic automaton, and lookup is linear in input length. Merging copies only the
+ * nodes present in more than one merged subtree, all the other nodes are shared (so compiled tree is a DAG, and its
+ * size is not multiplied by count of plain siblings a pattern matches).
+ * <p>
+ * Plain sibling names are not stored in nodes: they are {@link Symbols}, shared by all the loaded trees, siblings are
+ * keyed by symbol ids, and lookup turns every input segment into id once, and then compares ints only. Patterns are not symbols, they are
+ * kept by pattern siblings only.
  */
 class Node {
-    private final String name;
+    private final Symbols.Symbol name;
     private final boolean stop;
     private final Boolean allow;
-    private final HashMap<String, Node> siblings;
+    private final IntNodeMap siblings;
+    private PatternSiblings patternSiblings;
+    private boolean compiled;
 
     protected Node(String name, boolean stop, Boolean allow) {
+        this(Symbols.intern(name), stop, allow);
+    }
+
+    private Node(Symbols.Symbol name, boolean stop, Boolean allow) {
         this.name = name;
         this.stop = stop;
         this.allow = allow;
-        this.siblings = new HashMap<>();
+        this.siblings = new IntNodeMap();
+    }
+
+    /**
+     * Copy constructor: the copy has its own sibling maps, but shares the siblings.
+     */
+    protected Node(Node node) {
+        this(node, node.stop, node.allow);
+    }
+
+    private Node(Node node, boolean stop, Boolean allow) {
+        this.name = node.name;
+        this.stop = stop;
+        this.allow = allow;
+        this.siblings = node.siblings.copy();
+        this.patternSiblings = node.patternSiblings;
+    }
+
+    /**
+     * Returns a copy of this node, see {@link #Node(Node)}. Subclasses must return instance of their own type.
+     */
+    protected Node copy() {
+        return new Node(this);
+    }
+
+    /**
+     * Returns a new node having the name of this node, given rule and no siblings.
+     */
+    Node blank(boolean stop, Boolean allow) {
+        return new Node(name, stop, allow);
     }
 
     public String getName() {
-        return name;
+        return name.name;
     }
 
     public boolean isLeaf() {
-        return siblings.isEmpty();
+        return siblings.isEmpty() && patternSiblings == null;
     }
 
     public boolean isStop() {
@@ -41,23 +98,474 @@ class Node {
         return allow;
     }
 
+    /**
+     * Adds sibling, or returns existing one. If existing sibling is intermediate (has no rule) and rule is added,
+     * the sibling is replaced with one carrying the rule, hence order of rules does not matter.
+     */
     protected Node addSibling(String name, boolean stop, Boolean allow) {
-        return siblings.computeIfAbsent(name, n -> new Node(n, stop, allow));
+        compiled = false;
+        if (SegmentPatterns.isPattern(name)) {
+            if (patternSiblings == null) {
+                patternSiblings = new PatternSiblings();
+            }
+            Node existing = patternSiblings.nodes.get(name);
+            if (existing == null || (existing.allow == null && allow != null)) {
+                Node node = existing == null
+                        ? new PatternNode(name, stop, allow)
+                        : new PatternNode((PatternNode) existing, stop, allow);
+                patternSiblings.nodes.put(name, node);
+                return node;
+            }
+            return existing;
+        }
+        Symbols.Symbol symbol = Symbols.intern(name);
+        Node existing = siblings.get(symbol.id);
+        if (existing == null || (existing.allow == null && allow != null)) {
+            Node node = existing == null ? new Node(symbol, stop, allow) : new Node(existing, stop, allow);
+            siblings.put(symbol.id, node);
+            return node;
+        }
+        return existing;
+    }
+
+    /**
+     * Adds given node as sibling, replacing existing one of same name: the node is shared, not copied.
+     */
+    protected void putSibling(Node node) {
+        compiled = false;
+        if (node instanceof PatternNode) {
+            if (patternSiblings == null) {
+                patternSiblings = new PatternSiblings();
+            }
+            patternSiblings.nodes.put(node.getName(), node);
+        } else {
+            siblings.put(node.name.id, node);
+        }
+    }
+
+    /**
+     * Plain siblings of this node, keyed by name (a copy).
+     */
+    Map<String, Node> siblings() {
+        LinkedHashMap<String, Node> result = new LinkedHashMap<>();
+        siblings.forEach((k, v) -> result.put(v.getName(), v));
+        return result;
+    }
+
+    /**
+     * Capacity of plain siblings map.
+     */
+    int siblingsCapacity() {
+        return siblings.capacity();
+    }
+
+    /**
+     * Pattern siblings of this node, keyed by pattern.
+     */
+    Map<String, Node> patternSiblings() {
+        return patternSiblings == null ? Collections.emptyMap() : patternSiblings.nodes;
     }
 
     protected Node getSibling(String name) {
-        return siblings.get(name);
+        Node sibling = siblings.get(Symbols.lookup(name));
+        if (sibling == null && patternSiblings != null) {
+            sibling = patternSiblings.match(name);
+        }
+        return sibling;
+    }
+
+    /**
+     * Compiles this node and all the nodes below, each once (nodes may be shared). If {@code leafWins} is
+     * {@code true}, when merging nodes, a leaf (that accepts all below it) wins over node with siblings.
+     */
+    protected void compile(boolean leafWins) {
+        if (compiled) {
+            return;
+        }
+        compiled = true;
+        if (patternSiblings != null) {
+            patternSiblings.compile(leafWins);
+            siblings.replaceAll((k, v) -> {
+                List<Node> matched = patternSiblings.matching(v.getName());
+                if (matched.isEmpty()) {
+                    return v;
+                }
+                matched.add(0, v);
+                return merge(matched, leafWins);
+            });
+            for (Node node : patternSiblings.nodes.values()) {
+                node.compile(leafWins);
+            }
+        }
+        siblings.forEach((k, v) -> v.compile(leafWins));
+    }
+
+    /**
+     * Minimizes compiled tree below this node into a DAG: identical subtrees (same names and rules, all the way down)
+     * are replaced with one shared instance, hence no answer changes. Nodes having pattern siblings are mutable (they
+     * cache merged nodes), and are not shared. Minimized tree may still be updated, as updates are copy-on-write.
+     */
+    protected void minimize() {
+        minimize(new HashMap<>());
+    }
+
+    private void minimize(HashMap<Shape, Node> shapes) {
+        siblings.replaceAll((k, v) -> {
+            v.minimize(shapes);
+            if (v.getClass() != Node.class || v.patternSiblings != null) {
+                return v;
+            }
+            Node canonical = shapes.putIfAbsent(new Shape(v), v);
+            return canonical != null ? canonical : v;
+        });
+    }
+
+    /**
+     * Truncates compiled tree below this node to given depth: nodes at that depth lose all nodes below them, and
+     * become leaves. Must be invoked before tree is minimized or updated (as they share nodes).
+     */
+    protected void truncate(int depth) {
+        if (depth == 0) {
+            siblings.clear();
+            patternSiblings = null;
+            return;
+        }
+        siblings.forEach((k, v) -> v.truncate(depth - 1));
+        if (patternSiblings != null) {
+            for (Node node : patternSiblings.nodes.values()) {
+                node.truncate(depth - 1);
+            }
+            patternSiblings.merged.clear();
+        }
+    }
+
+    /**
+     * Returns the rule stop flag of given rule line, used by {@link #update(RuleLines, RuleLines)}.
+     */
+    protected boolean ruleStop(String line) {
+        return false;
+    }
+
+    /**
+     * Returns the rule allow flag of given rule line, used by {@link #update(RuleLines, RuleLines)}.
+     */
+    protected Boolean ruleAllow(String line) {
+        return null;
+    }
+
+    /**
+     * Returns tree having the difference of given rule lines applied to this tree, that must be loaded from
+     * previous rule lines. The update is copy-on-write: this tree is unchanged, and only the nodes on paths of
+     * changed rules are copied, all the other nodes are shared. Hence, cost of update is proportional to the size
+     * of change, not to the size of tree. Trees having patterns cannot be updated.
+     */
+    protected Node update(RuleLines previous, RuleLines current) {
+        if (patternSiblings != null || previous.hasPatterns() || current.hasPatterns()) {
+            throw new IllegalArgumentException("Rules having patterns cannot be updated");
+        }
+        Set<Node> fresh = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<String, String> before = previous.rules();
+        Map<String, String> after = current.rules();
+        Node result = this;
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey())) {
+                List<String> path = previous.elements(entry.getValue());
+                if (!path.isEmpty()) {
+                    result = result.without(path, 0, current, fresh);
+                }
+            }
+        }
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            String line = entry.getValue();
+            if (!line.equals(before.get(entry.getKey()))) {
+                List<String> path = current.elements(line);
+                if (!path.isEmpty()) {
+                    result = result.with(path, 0, ruleStop(line), ruleAllow(line), fresh);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns this node if it was created by ongoing update, or its copy.
+     */
+    private Node mutable(Set<Node> fresh) {
+        if (fresh.contains(this)) {
+            return this;
+        }
+        Node copy = copy();
+        fresh.add(copy);
+        return copy;
+    }
+
+    /**
+     * Sets the rule of node on given path, creating intermediate nodes as needed.
+     */
+    private Node with(List<String> path, int index, boolean stop, Boolean allow, Set<Node> fresh) {
+        Symbols.Symbol symbol = Symbols.intern(path.get(index));
+        int id = symbol.id;
+        Node child = siblings.get(id);
+        Node updated;
+        if (index == path.size() - 1) {
+            updated = child == null ? new Node(symbol, stop, allow) : new Node(child, stop, allow);
+            fresh.add(updated);
+        } else {
+            if (child == null) {
+                child = new Node(symbol, false, null);
+                fresh.add(child);
+            }
+            updated = child.with(path, index + 1, stop, allow, fresh);
+        }
+        Node result = mutable(fresh);
+        result.siblings.put(id, updated);
+        return result;
+    }
+
+    /**
+     * Removes the rule of node on given path. Nodes left without siblings and without rule are removed.
+     */
+    private Node without(List<String> path, int index, RuleLines current, Set<Node> fresh) {
+        int id = Symbols.lookup(path.get(index));
+        Node child = siblings.get(id);
+        if (child == null) {
+            return this;
+        }
+        Node updated;
+        if (index == path.size() - 1) {
+            updated = new Node(child, false, null);
+            fresh.add(updated);
+        } else {
+            updated = child.without(path, index + 1, current, fresh);
+            if (updated == child) {
+                return this;
+            }
+        }
+        Node result = mutable(fresh);
+        if (updated.isLeaf() && updated.allow == null && !current.isRule(path.subList(0, index + 1))) {
+            result.siblings.remove(id);
+        } else {
+            result.siblings.put(id, updated);
+        }
+        return result;
+    }
+
+    /**
+     * Merges passed in nodes of same name (first has the highest precedence) into new node having that name. The
+     * merged node "flags" are taken from first node having rule (allow flag) set, and it has union of siblings of all
+     * nodes. Siblings present in one of the nodes only are shared, not copied, and a node present more than once
+     * (as merged subtrees share nodes) is merged once: merging a single node returns the node itself.
+     */
+    private static Node merge(List<Node> nodes, boolean leafWins) {
+        ArrayList<Node> distinct = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (distinct.stream().noneMatch(n -> n == node)) {
+                distinct.add(node);
+            }
+        }
+        if (distinct.size() == 1) {
+            return distinct.get(0);
+        }
+        nodes = distinct;
+        Node rule = nodes.stream().filter(n -> n.allow != null).findFirst().orElse(null);
+        Node first = nodes.get(0);
+        Node result = rule != null ? first.blank(rule.stop, rule.allow) : first.blank(false, null);
+        if (leafWins && nodes.stream().anyMatch(Node::isLeaf)) {
+            return result;
+        }
+        LinkedHashMap<Integer, List<Node>> siblings = new LinkedHashMap<>();
+        LinkedHashMap<String, List<Node>> patterns = new LinkedHashMap<>();
+        for (Node node : nodes) {
+            node.siblings.forEach((k, v) ->
+                    siblings.computeIfAbsent(k, n -> new ArrayList<>()).add(v));
+            if (node.patternSiblings != null) {
+                node.patternSiblings.nodes.forEach((k, v) ->
+                        patterns.computeIfAbsent(k, n -> new ArrayList<>()).add(v));
+            }
+        }
+        siblings.forEach((k, v) -> result.siblings.put(k, merge(v, leafWins)));
+        if (!patterns.isEmpty()) {
+            result.patternSiblings = new PatternSiblings();
+            patterns.forEach((k, v) -> result.patternSiblings.nodes.put(k, merge(v, leafWins)));
+        }
+        return result;
     }
 
     @Override
     public String toString() {
-        return (allow != null ? (allow ? "+" : "-") : "?") + (stop ? "=" : "") + name;
+        return (allow != null ? (allow ? "+" : "-") : "?") + (stop ? "=" : "") + getName();
     }
 
     public void dump(String prefix) {
         System.out.println(prefix + this);
-        for (Node node : siblings.values()) {
-            node.dump(prefix + "  ");
+        siblings.forEach((k, v) -> v.dump(prefix + "  "));
+        if (patternSiblings != null) {
+            for (Node node : patternSiblings.nodes.values()) {
+                node.dump(prefix + "  ");
+            }
+        }
+    }
+
+    /**
+     * Splits rule input on separator, ignoring empty elements. Separators within curly braces (regular expression
+     * patterns) are not considered.
+     */
+    static List<String> elements(String input, char separator) {
+        ArrayList<String> result = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && depth > 0) {
+                depth--;
+            } else if (c == separator && depth == 0) {
+                if (i > start) {
+                    result.add(input.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        if (input.length() > start) {
+            result.add(input.substring(start));
+        }
+        return result;
+    }
+
+    /**
+     * Splits looked up input (a path or groupId) on separator, ignoring empty elements. Unlike rules, input has no
+     * patterns: curly braces are plain characters.
+     */
+    static List<String> split(String input, char separator) {
+        ArrayList<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = input.indexOf(separator); i >= 0; i = input.indexOf(separator, start)) {
+            if (i > start) {
+                result.add(input.substring(start, i));
+            }
+            start = i + 1;
+        }
+        if (input.length() > start) {
+            result.add(input.substring(start));
+        }
+        return result;
+    }
+
+    /**
+     * Shape of a minimized node: its name, rule and siblings (compared by identity, as they are minimized already).
+     */
+    private static final class Shape {
+        private final Node node;
+        private final int hash;
+
+        private Shape(Node node) {
+            this.node = node;
+            int[] hash = {Objects.hash(node.name, node.stop, node.allow)};
+            node.siblings.forEach((k, v) -> hash[0] += k * 31 ^ System.identityHashCode(v));
+            this.hash = hash[0];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Shape)) {
+                return false;
+            }
+            Node other = ((Shape) o).node;
+            if (node.name != other.name
+                    || node.stop != other.stop
+                    || !Objects.equals(node.allow, other.allow)
+                    || node.siblings.size() != other.siblings.size()) {
+                return false;
+            }
+            boolean[] same = {true};
+            node.siblings.forEach((k, v) -> same[0] &= other.siblings.get(k) == v);
+            return same[0];
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A pattern sibling: its name is the pattern, that is not a symbol.
+     */
+    private static final class PatternNode extends Node {
+        private final String pattern;
+
+        private PatternNode(String pattern, boolean stop, Boolean allow) {
+            super((Symbols.Symbol) null, stop, allow);
+            this.pattern = pattern;
+        }
+
+        private PatternNode(PatternNode node, boolean stop, Boolean allow) {
+            super(node, stop, allow);
+            this.pattern = node.pattern;
+        }
+
+        @Override
+        protected Node copy() {
+            return new PatternNode(this, isStop(), isAllow());
+        }
+
+        @Override
+        Node blank(boolean stop, Boolean allow) {
+            return new PatternNode(pattern, stop, allow);
+        }
+
+        @Override
+        public String getName() {
+            return pattern;
+        }
+    }
+
+    /**
+     * The pattern siblings of a node: the nodes, the compiled DFA and cache of lazily merged nodes.
+     */
+    private static final class PatternSiblings {
+        private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>();
+        private final ConcurrentHashMap<BitSet, Node> merged = new ConcurrentHashMap<>();
+        private SegmentPatterns patterns;
+        private Node[] indexed;
+        private boolean leafWins;
+
+        private void compile(boolean leafWins) {
+            this.leafWins = leafWins;
+            this.indexed = nodes.values().toArray(new Node[0]);
+            this.patterns = SegmentPatterns.compile(new ArrayList<>(nodes.keySet()));
+            this.merged.clear();
+        }
+
+        /**
+         * Returns the list of matching nodes ordered by precedence: explicit exclusions first.
+         */
+        private List<Node> matching(String segment) {
+            ArrayList<Node> result = new ArrayList<>();
+            BitSet matched = patterns.match(segment);
+            if (matched != null) {
+                for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+                    result.add(indexed[i]);
+                }
+                result.sort((a, b) -> Boolean.compare(!Boolean.FALSE.equals(a.allow), !Boolean.FALSE.equals(b.allow)));
+            }
+            return result;
+        }
+
+        private Node match(String segment) {
+            BitSet matched = patterns.match(segment);
+            if (matched == null) {
+                return null;
+            }
+            if (matched.cardinality() == 1) {
+                return indexed[matched.nextSetBit(0)];
+            }
+            return this.merged.computeIfAbsent(matched, m -> {
+                Node node = merge(matching(segment), leafWins);
+                node.compile(leafWins);
+                return node;
+            });
         }
     }
 }
@@ -7,27 +7,65 @@
  */
 package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
 
-import static java.util.stream.Collectors.toList;
-
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 /**
  * Prefix tree for paths: if you step on a path that exists, you are good to go.
+ * <p>
+ * Path elements may be patterns as well, like {@code org/apache/maven-*} or {@code org/{codehaus|mojohaus}},
+ * see {@link SegmentPatterns} for supported syntax.
  */
 public class PrefixTree extends Node {
     public static final PrefixTree SENTINEL = new PrefixTree("sentinel");
 
     private static List<String> elementsOfPath(final String path) {
-        return Arrays.stream(path.split("/")).filter(e -> !e.isEmpty()).collect(toList());
+        return elements(path, '/');
     }
 
     public PrefixTree(String name) {
         super(name, false, null);
     }
 
+    private PrefixTree(PrefixTree prefixTree) {
+        super(prefixTree);
+    }
+
+    @Override
+    protected PrefixTree copy() {
+        return new PrefixTree(this);
+    }
+
+    /**
+     * Returns copy-on-write updated tree, see {@link Node#update(RuleLines, RuleLines)}.
+     */
+    @Override
+    public PrefixTree update(RuleLines previous, RuleLines current) {
+        return (PrefixTree) super.update(previous, current);
+    }
+
+    /**
+     * Shares identical subtrees of loaded tree, see {@link Node#minimize()}.
+     */
+    @Override
+    public void minimize() {
+        super.minimize();
+    }
+
+    /**
+     * Truncates loaded tree to given depth (count of path elements), see {@link Node#truncate(int)}: same as if
+     * every rule was cut to that depth. Truncated tree accepts all it did before (and more).
+     */
+    public void truncate(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Depth must be positive: " + maxDepth);
+        }
+        super.truncate(maxDepth);
+    }
+
     public int loadNodes(Stream<String> linesStream) {
         AtomicInteger counter = new AtomicInteger(0);
         linesStream.forEach(line -> {
@@ -39,18 +77,100 @@ public class PrefixTree extends Node {
                 }
             }
         });
+        compile(true);
         return counter.get();
     }
 
     public boolean acceptedPath(String path) {
-        final List<String> pathElements = elementsOfPath(path);
+        return Boolean.TRUE.equals(walk(split(path, '/')));
+    }
+
+    /**
+     * Walks the tree from coordinates, as laid out by Maven 2 repository layout ("groupId" segments, "artifactId"
+     * and "version", empty ones are skipped), without building the path. Returns {@code true} or {@code false} if
+     * coordinates decide the answer, and {@code null} if the answer depends on the rest of the path (the file name):
+     * then {@link #acceptedPath(String)} must be used. Coordinates having "/" are not supported, and
+     * {@code null} is returned for them as well.
+     */
+    public Boolean acceptedCoordinates(String groupId, String artifactId, String version) {
+        List<String> elements = elementsOfCoordinates(groupId, artifactId, version);
+        return elements != null ? walk(elements) : null;
+    }
+
+    /**
+     * Batch variant of {@link #acceptedCoordinates(String, String, String)}, for coordinates given as arrays of
+     * "groupId", "artifactId" and "version". Coordinates should be sorted, so that neighbours share descents: walk of
+     * each coordinates resumes from the deepest node it shares with the previous ones.
+     */
+    public Boolean[] acceptedCoordinates(List<String[]> coordinates) {
+        Boolean[] result = new Boolean[coordinates.size()];
+        // nodes.get(i) is the inner node reached by first i elements of previous coordinates
+        ArrayList<Node> nodes = new ArrayList<>();
+        nodes.add(this);
+        List<String> previous = Collections.emptyList();
+        for (int i = 0; i < result.length; i++) {
+            String[] c = coordinates.get(i);
+            List<String> elements = elementsOfCoordinates(c[0], c[1], c[2]);
+            if (elements == null) {
+                continue;
+            }
+            int shared = 0;
+            int max = Math.min(Math.min(nodes.size() - 1, elements.size()), previous.size());
+            while (shared < max && elements.get(shared).equals(previous.get(shared))) {
+                shared++;
+            }
+            nodes.subList(shared + 1, nodes.size()).clear();
+            Node currentNode = nodes.get(shared);
+            for (int j = shared; j < elements.size(); j++) {
+                currentNode = currentNode.getSibling(elements.get(j));
+                if (currentNode == null) {
+                    result[i] = false;
+                    break;
+                }
+                if (currentNode.isLeaf()) {
+                    result[i] = true;
+                    break;
+                }
+                nodes.add(currentNode);
+            }
+            previous = elements;
+        }
+        return result;
+    }
+
+    /**
+     * Walks given path elements until a leaf is reached: returns {@code true} if it was, {@code false} if some
+     * element has no node, and {@code null} if elements end on inner node.
+     */
+    protected Boolean walk(List<String> elements) {
         Node currentNode = this;
-        for (String pathElement : pathElements) {
-            currentNode = currentNode.getSibling(pathElement);
-            if (currentNode == null || currentNode.isLeaf()) {
-                break;
+        for (String element : elements) {
+            currentNode = currentNode.getSibling(element);
+            if (currentNode == null) {
+                return false;
             }
+            if (currentNode.isLeaf()) {
+                return true;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> elementsOfCoordinates(String groupId, String artifactId, String version) {
+        if (!plain(groupId) || !plain(artifactId) || !plain(version)) {
+            return null;
         }
-        return currentNode != null && currentNode.isLeaf();
+        List<String> elements = split(groupId, '.');
+        if (!artifactId.isEmpty()) {
+            elements.add(artifactId);
+        }
+        if (!version.isEmpty()) {
+            elements.add(version);
+        }
+        return elements;
+    }
+
+    private static boolean plain(String coordinate) {
+        return coordinate.indexOf('/') < 0;
     }
 }
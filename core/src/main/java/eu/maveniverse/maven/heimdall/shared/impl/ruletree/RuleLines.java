@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * The effective rules of a rule file: rule lines keyed by the path they apply to (first rule of a path wins, as in
+ * trees). Used to refresh trees incrementally: the difference of two rule lines is applied to a copy-on-write tree
+ * (see {@link PrefixTree#update(RuleLines, RuleLines)} and {@link GroupTree#update(RuleLines, RuleLines)}).
+ * <p>
+ * Rule lines may be amended with delta lines: {@code +rule} adds (or replaces) the rule, {@code -rule} removes the
+ * rule of path. Comments and empty lines are ignored, as in rule files.
+ */
+public final class RuleLines {
+    private static final String DELTA_ADD = "+";
+    private static final String DELTA_REMOVE = "-";
+
+    private final char separator;
+    private final LinkedHashMap<String, String> rules;
+    private final boolean patterns;
+
+    private RuleLines(char separator, LinkedHashMap<String, String> rules) {
+        this.separator = separator;
+        this.rules = rules;
+        this.patterns = rules.keySet().stream()
+                .anyMatch(key -> Node.elements(key, separator).stream().anyMatch(SegmentPatterns::isPattern));
+    }
+
+    public static RuleLines ofPrefixes(Stream<String> lines) {
+        return of('/', lines);
+    }
+
+    public static RuleLines ofGroupIds(Stream<String> lines) {
+        return of('.', lines);
+    }
+
+    private static RuleLines of(char separator, Stream<String> lines) {
+        LinkedHashMap<String, String> rules = new LinkedHashMap<>();
+        lines.map(String::trim)
+                .filter(line -> !line.startsWith("#") && !line.isEmpty())
+                .forEach(line -> rules.putIfAbsent(key(line, separator), line));
+        return new RuleLines(separator, rules);
+    }
+
+    /**
+     * Returns new rule lines with given delta lines applied.
+     */
+    public RuleLines withDelta(Stream<String> delta) {
+        LinkedHashMap<String, String> result = new LinkedHashMap<>(rules);
+        delta.map(String::trim)
+                .filter(line -> !line.startsWith("#") && !line.isEmpty())
+                .forEach(line -> {
+                    if (line.startsWith(DELTA_ADD)) {
+                        String rule = line.substring(DELTA_ADD.length()).trim();
+                        result.put(key(rule, separator), rule);
+                    } else if (line.startsWith(DELTA_REMOVE)) {
+                        result.remove(key(line.substring(DELTA_REMOVE.length()).trim(), separator));
+                    } else {
+                        throw new IllegalArgumentException("Invalid delta line: " + line);
+                    }
+                });
+        return new RuleLines(separator, result);
+    }
+
+    /**
+     * Number of rules.
+     */
+    public int size() {
+        return rules.size();
+    }
+
+    /**
+     * Do rules contain patterns? Trees with patterns are not updated incrementally.
+     */
+    public boolean hasPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Returns the count of rules added, removed or changed since given previous rule lines.
+     */
+    public int changes(RuleLines previous) {
+        int changes = 0;
+        for (String key : previous.rules.keySet()) {
+            if (!rules.containsKey(key)) {
+                changes++;
+            }
+        }
+        for (Map.Entry<String, String> entry : rules.entrySet()) {
+            if (!Objects.equals(entry.getValue(), previous.rules.get(entry.getKey()))) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * The rule lines, in order.
+     */
+    public Stream<String> lines() {
+        return rules.values().stream();
+    }
+
+    Map<String, String> rules() {
+        return Collections.unmodifiableMap(rules);
+    }
+
+    char separator() {
+        return separator;
+    }
+
+    /**
+     * Is there a rule for path of given elements?
+     */
+    boolean isRule(List<String> elements) {
+        return rules.containsKey(String.join(String.valueOf(separator), elements));
+    }
+
+    /**
+     * Returns the elements of path that the rule applies to.
+     */
+    List<String> elements(String line) {
+        return Node.elements(path(line, separator), separator);
+    }
+
+    private static String key(String line, char separator) {
+        return String.join(String.valueOf(separator), Node.elements(path(line, separator), separator));
+    }
+
+    private static String path(String line, char separator) {
+        if (separator == '.') {
+            if (line.startsWith(GroupTree.MOD_EXCLUSION)) {
+                line = line.substring(GroupTree.MOD_EXCLUSION.length());
+            }
+            if (line.startsWith(GroupTree.MOD_STOP)) {
+                line = line.substring(GroupTree.MOD_STOP.length());
+            }
+        }
+        return line;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Normalizes rule lines: drops comments and empty lines, normalizes separators, sorts, deduplicates and removes
+ * redundant rules (rules whose removal does not change any answer of the tree). Normalized rules load into a tree
+ * answering same as the tree of original rules.
+ */
+public final class RuleNormalizer {
+    private RuleNormalizer() {}
+
+    private static final String MOD_EXCLUSION = "!";
+    private static final String MOD_STOP = "=";
+
+    /**
+     * Normalizes prefix lines: every prefix is in form of {@code /a/b/c}, sorted and deduplicated. Prefixes having a
+     * longer prefix below them are removed (like {@code /a/b} when {@code /a/b/c} is present): in {@link PrefixTree}
+     * only leaves allow everything below them, so the longer prefix turns the shorter one into inner node anyway.
+     */
+    public static List<String> normalizePrefixes(Stream<String> lines) {
+        TreeSet<String> prefixes = new TreeSet<>();
+        lines.map(String::trim)
+                .filter(l -> !l.startsWith("#") && !l.isEmpty())
+                .map(l -> "/" + String.join("/", Node.elements(l, '/')))
+                .filter(l -> !"/".equals(l))
+                .forEach(prefixes::add);
+        ArrayList<String> result = new ArrayList<>(prefixes.size());
+        for (String prefix : prefixes) {
+            // prefixes below this one are not necessarily next to it ("/a/b-c" sorts before "/a/b/c")
+            String below = prefixes.ceiling(prefix + "/");
+            if (below == null || !below.startsWith(prefix + "/")) {
+                result.add(prefix);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Normalizes groupId lines: modifiers are kept, groupIds are normalized and rules are sorted by groupId (so parent
+     * rules always precede child rules). If same groupId has multiple rules, the first one is kept, as in
+     * {@link GroupTree}. Rules that result in same verdict as inherited from their parent rule are removed. If any
+     * rule contains a pattern, redundant rule removal is skipped, as patterns may change inheritance.
+     */
+    public static List<String> normalizeGroupIds(Stream<String> lines) {
+        TreeMap<String, GroupRule> rules = new TreeMap<>();
+        lines.map(String::trim).filter(l -> !l.startsWith("#") && !l.isEmpty()).forEach(l -> {
+            GroupRule rule = new GroupRule(l);
+            if (!rule.groupId.isEmpty()) {
+                rules.putIfAbsent(rule.groupId, rule);
+            }
+        });
+        boolean patterns = rules.keySet().stream().anyMatch(SegmentPatterns::isPattern);
+        HashMap<String, Boolean> inheriting = new HashMap<>();
+        for (GroupRule rule : rules.values()) {
+            if (!rule.stop) {
+                inheriting.put(rule.groupId, rule.allow);
+            }
+        }
+        ArrayList<String> result = new ArrayList<>(rules.size());
+        for (GroupRule rule : rules.values()) {
+            if (patterns || rule.allow != inherited(inheriting, rule.groupId)) {
+                result.add(rule.toString());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The verdict inherited from nearest parent inheriting rule, or {@code false} if none.
+     */
+    private static boolean inherited(HashMap<String, Boolean> inheriting, String groupId) {
+        int idx = groupId.lastIndexOf('.');
+        while (idx > 0) {
+            groupId = groupId.substring(0, idx);
+            Boolean allow = inheriting.get(groupId);
+            if (allow != null) {
+                return allow;
+            }
+            idx = groupId.lastIndexOf('.');
+        }
+        return false;
+    }
+
+    private static final class GroupRule {
+        private final String groupId;
+        private final boolean allow;
+        private final boolean stop;
+
+        private GroupRule(String line) {
+            boolean allow = true;
+            if (line.startsWith(MOD_EXCLUSION)) {
+                allow = false;
+                line = line.substring(MOD_EXCLUSION.length());
+            }
+            boolean stop = false;
+            if (line.startsWith(MOD_STOP)) {
+                stop = true;
+                line = line.substring(MOD_STOP.length());
+            }
+            this.groupId = String.join(".", Node.elements(line, '.'));
+            this.allow = allow;
+            this.stop = stop;
+        }
+
+        @Override
+        public String toString() {
+            return (allow ? "" : MOD_EXCLUSION) + (stop ? MOD_STOP : "") + groupId;
+        }
+    }
+}
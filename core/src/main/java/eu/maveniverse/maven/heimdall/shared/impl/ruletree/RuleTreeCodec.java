@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary codec of compiled rule trees. The format is laid out so it is queryable in place (without decoding): the
+ * header is followed by deduplicated strings and node records, where nodes are written children first, and the header
+ * points at the root node record.
+ * <p>
+ * Header (20 bytes): magic {@code HMDL} (int), format version (byte), tree kind (byte), reserved (short), rule count
+ * (int), node count (int), root node offset (int).
+ * <p>
+ * String: length (int) followed by UTF-16 chars.
+ * <p>
+ * Node record: flags (byte), name offset (int), plain sibling count (int), pattern sibling count (int), followed by
+ * sibling node offsets (int each), plain siblings first and sorted by name, then pattern siblings in rule order.
+ * <p>
+ * All integers are big endian.
+ * <p>
+ * Trees without patterns can be queried in place, see {@link #prefixTreeView(ByteBuffer)} and
+ * {@link #groupTreeView(ByteBuffer)}: these keep no rules on heap, the buffer may be direct or memory mapped.
+ */
+public final class RuleTreeCodec {
+    private RuleTreeCodec() {}
+
+    public static final int MAGIC = 0x484D444C;
+
+    public static final byte VERSION = 1;
+
+    public static final byte KIND_PREFIXES = 0;
+
+    public static final byte KIND_GROUP_ID = 1;
+
+    static final int HEADER_SIZE = 20;
+
+    static final int OFFSET_KIND = 5;
+
+    static final int OFFSET_RULE_COUNT = 8;
+
+    static final int OFFSET_NODE_COUNT = 12;
+
+    static final int OFFSET_ROOT = 16;
+
+    static final byte FLAG_STOP = 1;
+
+    static final byte FLAG_ALLOW_SET = 2;
+
+    static final byte FLAG_ALLOW = 4;
+
+    public static byte[] encode(PrefixTree prefixTree, int ruleCount) {
+        return encode(KIND_PREFIXES, prefixTree, ruleCount);
+    }
+
+    public static byte[] encode(GroupTree groupTree, int ruleCount) {
+        return encode(KIND_GROUP_ID, groupTree, ruleCount);
+    }
+
+    public static PrefixTree decodePrefixTree(ByteBuffer buffer) {
+        checkHeader(buffer, KIND_PREFIXES);
+        PrefixTree prefixTree = new PrefixTree("");
+        decodeSiblings(buffer, buffer.getInt(OFFSET_ROOT), prefixTree, new HashMap<>());
+        prefixTree.compile(true);
+        return prefixTree;
+    }
+
+    public static GroupTree decodeGroupTree(ByteBuffer buffer) {
+        checkHeader(buffer, KIND_GROUP_ID);
+        GroupTree groupTree = new GroupTree("");
+        decodeSiblings(buffer, buffer.getInt(OFFSET_ROOT), groupTree, new HashMap<>());
+        groupTree.compile(false);
+        return groupTree;
+    }
+
+    /**
+     * Returns a prefix tree querying encoded tree in place. Encoded tree must not contain patterns.
+     */
+    public static PrefixTree prefixTreeView(ByteBuffer buffer) {
+        checkHeader(buffer, KIND_PREFIXES);
+        return new PrefixTreeView(buffer);
+    }
+
+    /**
+     * Returns a group tree querying encoded tree in place. Encoded tree must not contain patterns.
+     */
+    public static GroupTree groupTreeView(ByteBuffer buffer) {
+        checkHeader(buffer, KIND_GROUP_ID);
+        return new GroupTreeView(buffer);
+    }
+
+    /**
+     * Returns the count of rules the encoded tree was created from.
+     */
+    public static int ruleCount(ByteBuffer buffer) {
+        return buffer.getInt(OFFSET_RULE_COUNT);
+    }
+
+    private static byte[] encode(byte kind, Node root, int ruleCount) {
+        try {
+            Encoder encoder = new Encoder();
+            encoder.out.writeInt(MAGIC);
+            encoder.out.writeByte(VERSION);
+            encoder.out.writeByte(kind);
+            encoder.out.writeShort(0);
+            encoder.out.writeInt(ruleCount);
+            encoder.out.writeInt(0);
+            encoder.out.writeInt(0);
+            int rootOffset = encoder.write(root);
+            encoder.out.flush();
+            ByteBuffer result = ByteBuffer.wrap(encoder.bytes.toByteArray());
+            result.putInt(OFFSET_NODE_COUNT, encoder.nodes.size() - 1);
+            result.putInt(OFFSET_ROOT, rootOffset);
+            return result.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void checkHeader(ByteBuffer buffer, byte kind) {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a compiled rule tree");
+        }
+        if (buffer.get(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported compiled rule tree version " + buffer.get(4));
+        }
+        if (buffer.get(OFFSET_KIND) != kind) {
+            throw new IllegalArgumentException("Unexpected compiled rule tree kind " + buffer.get(OFFSET_KIND));
+        }
+    }
+
+    /**
+     * Decodes siblings of node at given offset into given node. Nodes shared by encoded tree (at same offset) are
+     * decoded once, and are shared by decoded tree as well.
+     */
+    private static void decodeSiblings(ByteBuffer buffer, int offset, Node node, HashMap<Integer, Node> decoded) {
+        int siblings = buffer.getInt(offset + 5) + buffer.getInt(offset + 9);
+        for (int i = 0; i < siblings; i++) {
+            int siblingOffset = buffer.getInt(offset + 13 + i * 4);
+            Node sibling = decoded.get(siblingOffset);
+            if (sibling != null) {
+                node.putSibling(sibling);
+                continue;
+            }
+            byte flags = buffer.get(siblingOffset);
+            Boolean allow = (flags & FLAG_ALLOW_SET) != 0 ? (flags & FLAG_ALLOW) != 0 : null;
+            sibling =
+                    node.addSibling(string(buffer, buffer.getInt(siblingOffset + 1)), (flags & FLAG_STOP) != 0, allow);
+            decodeSiblings(buffer, siblingOffset, sibling, decoded);
+            decoded.put(siblingOffset, sibling);
+        }
+    }
+
+    /**
+     * Returns the offset of plain sibling node having given name, or -1 if not found (binary search).
+     */
+    static int sibling(ByteBuffer buffer, int offset, String name) {
+        int low = 0;
+        int high = buffer.getInt(offset + 5) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int siblingOffset = buffer.getInt(offset + 13 + mid * 4);
+            int cmp = compare(buffer, buffer.getInt(siblingOffset + 1), name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return siblingOffset;
+            }
+        }
+        return -1;
+    }
+
+    static boolean isLeafNode(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + 5) == 0 && buffer.getInt(offset + 9) == 0;
+    }
+
+    /**
+     * Compares string at given offset with given string, same as {@link String#compareTo(String)}.
+     */
+    private static int compare(ByteBuffer buffer, int offset, String string) {
+        int length = buffer.getInt(offset);
+        int min = Math.min(length, string.length());
+        for (int i = 0; i < min; i++) {
+            char c = buffer.getChar(offset + 4 + i * 2);
+            if (c != string.charAt(i)) {
+                return c - string.charAt(i);
+            }
+        }
+        return length - string.length();
+    }
+
+    static String string(ByteBuffer buffer, int offset) {
+        int length = buffer.getInt(offset);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar(offset + 4 + i * 2);
+        }
+        return new String(chars);
+    }
+
+    private static final class Encoder {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final HashMap<String, Integer> strings = new HashMap<>();
+        private final IdentityHashMap<Node, Integer> nodes = new IdentityHashMap<>();
+
+        private int write(Node node) throws IOException {
+            Integer offset = nodes.get(node);
+            if (offset != null) {
+                return offset;
+            }
+            ArrayList<Map.Entry<String, Node>> plain =
+                    new ArrayList<>(node.siblings().entrySet());
+            plain.sort(Map.Entry.comparingByKey());
+            List<Integer> offsets = new ArrayList<>();
+            for (Map.Entry<String, Node> entry : plain) {
+                offsets.add(write(entry.getValue()));
+            }
+            for (Node pattern : node.patternSiblings().values()) {
+                offsets.add(write(pattern));
+            }
+            int nameOffset = write(node.getName());
+            byte flags = 0;
+            if (node.isStop()) {
+                flags |= FLAG_STOP;
+            }
+            if (node.isAllow() != null) {
+                flags |= FLAG_ALLOW_SET;
+                if (node.isAllow()) {
+                    flags |= FLAG_ALLOW;
+                }
+            }
+            offset = out.size();
+            out.writeByte(flags);
+            out.writeInt(nameOffset);
+            out.writeInt(plain.size());
+            out.writeInt(node.patternSiblings().size());
+            for (int siblingOffset : offsets) {
+                out.writeInt(siblingOffset);
+            }
+            nodes.put(node, offset);
+            return offset;
+        }
+
+        private int write(String string) throws IOException {
+            Integer offset = strings.get(string);
+            if (offset == null) {
+                offset = out.size();
+                out.writeInt(string.length());
+                out.writeChars(string);
+                strings.put(string, offset);
+            }
+            return offset;
+        }
+    }
+
+    private static final class PrefixTreeView extends PrefixTree {
+        private final ByteBuffer buffer;
+        private final int root;
+
+        private PrefixTreeView(ByteBuffer buffer) {
+            super("");
+            this.buffer = buffer;
+            this.root = buffer.getInt(OFFSET_ROOT);
+        }
+
+        @Override
+        public PrefixTree update(RuleLines previous, RuleLines current) {
+            throw new UnsupportedOperationException("Compiled rules cannot be updated");
+        }
+
+        @Override
+        protected Boolean walk(List<String> elements) {
+            int current = root;
+            for (String element : elements) {
+                current = sibling(buffer, current, element);
+                if (current < 0) {
+                    return false;
+                }
+                if (isLeafNode(buffer, current)) {
+                    return true;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Compiled tree is walked for each coordinates.
+         */
+        @Override
+        public Boolean[] acceptedCoordinates(List<String[]> coordinates) {
+            Boolean[] result = new Boolean[coordinates.size()];
+            for (int i = 0; i < result.length; i++) {
+                String[] c = coordinates.get(i);
+                result[i] = acceptedCoordinates(c[0], c[1], c[2]);
+            }
+            return result;
+        }
+    }
+
+    private static final class GroupTreeView extends GroupTree {
+        private final ByteBuffer buffer;
+        private final int root;
+
+        private GroupTreeView(ByteBuffer buffer) {
+            super("");
+            this.buffer = buffer;
+            this.root = buffer.getInt(OFFSET_ROOT);
+        }
+
+        @Override
+        public GroupTree update(RuleLines previous, RuleLines current) {
+            throw new UnsupportedOperationException("Compiled rules cannot be updated");
+        }
+
+        @Override
+        public boolean acceptedGroupId(String groupId) {
+            List<String> elements = Node.split(groupId, '.');
+            boolean accepted = false;
+            int current = root;
+            for (int i = 0; i < elements.size(); i++) {
+                current = sibling(buffer, current, elements.get(i));
+                if (current < 0) {
+                    break;
+                }
+                byte flags = buffer.get(current);
+                if ((flags & FLAG_ALLOW_SET) != 0 && ((flags & FLAG_STOP) == 0 || i == elements.size() - 1)) {
+                    accepted = (flags & FLAG_ALLOW) != 0;
+                }
+            }
+            return accepted;
+        }
+    }
+}
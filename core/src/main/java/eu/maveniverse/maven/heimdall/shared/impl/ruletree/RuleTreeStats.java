@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Statistics of a rule tree: node count, leaf count, depth and estimated heap footprint. The heap estimate assumes
+ * 64-bit JVM with compressed oops, and is meant for comparison and reporting only. Plain segment names live in the
+ * JVM-wide symbol table shared by all trees, hence they are not accounted to any tree.
+ */
+public final class RuleTreeStats {
+    private static final long NODE_BYTES = 32;
+    private static final long STRING_BYTES = 24;
+    private static final long HASH_MAP_BYTES = 48;
+    private static final long HASH_MAP_ENTRY_BYTES = 32;
+    private static final long INT_NODE_MAP_BYTES = 24;
+
+    private final long nodes;
+    private final long leaves;
+    private final int depth;
+    private final long patterns;
+    private final long estimatedBytes;
+
+    private RuleTreeStats(long nodes, long leaves, int depth, long patterns, long estimatedBytes) {
+        this.nodes = nodes;
+        this.leaves = leaves;
+        this.depth = depth;
+        this.patterns = patterns;
+        this.estimatedBytes = estimatedBytes;
+    }
+
+    public static RuleTreeStats of(PrefixTree prefixTree) {
+        return of((Node) prefixTree);
+    }
+
+    public static RuleTreeStats of(GroupTree groupTree) {
+        return of((Node) groupTree);
+    }
+
+    static RuleTreeStats of(Node root) {
+        Collector collector = new Collector();
+        collector.visit(root, 0);
+        return new RuleTreeStats(
+                collector.nodes, collector.leaves, collector.depth, collector.patterns, collector.bytes);
+    }
+
+    /**
+     * Number of nodes, excluding root.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getLeaves() {
+        return leaves;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Number of pattern nodes.
+     */
+    public long getPatterns() {
+        return patterns;
+    }
+
+    /**
+     * Estimated retained heap size of tree in bytes.
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "nodes=" + nodes + ", leaves=" + leaves + ", depth=" + depth + ", estimatedHeap="
+                + (estimatedBytes / 1024) + "KiB";
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static long stringBytes(String string) {
+        return STRING_BYTES + align(16 + string.length());
+    }
+
+    private static long intNodeMapBytes(int capacity) {
+        if (capacity == 0) {
+            return INT_NODE_MAP_BYTES;
+        }
+        return INT_NODE_MAP_BYTES + 2 * align(16 + 4L * capacity);
+    }
+
+    private static long hashMapBytes(int size) {
+        if (size == 0) {
+            return HASH_MAP_BYTES;
+        }
+        int capacity = 16;
+        while (size > capacity * 3 / 4) {
+            capacity *= 2;
+        }
+        return HASH_MAP_BYTES + align(16 + 4L * capacity) + HASH_MAP_ENTRY_BYTES * size;
+    }
+
+    private static final class Collector {
+        private final Set<Node> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        private long nodes;
+        private long leaves;
+        private int depth;
+        private long patterns;
+        private long bytes;
+
+        private void visit(Node node, int level) {
+            if (!visited.add(node)) {
+                return;
+            }
+            if (level > 0) {
+                nodes++;
+            }
+            if (node.isLeaf()) {
+                leaves++;
+            }
+            depth = Math.max(depth, level);
+            bytes += NODE_BYTES + intNodeMapBytes(node.siblingsCapacity());
+            Map<String, Node> patterns = node.patternSiblings();
+            if (!patterns.isEmpty()) {
+                this.patterns += patterns.size();
+                bytes += hashMapBytes(patterns.size());
+                for (String pattern : patterns.keySet()) {
+                    bytes += stringBytes(pattern);
+                }
+            }
+            node.siblings().values().forEach(n -> visit(n, level + 1));
+            patterns.values().forEach(n -> visit(n, level + 1));
+        }
+    }
+}
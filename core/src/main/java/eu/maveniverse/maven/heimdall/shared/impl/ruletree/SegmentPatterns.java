@@ -0,0 +1,504 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * A set of segment patterns compiled into one single DFA. Supported patterns are globs (with {@code *} matching any
+ * sequence of characters, {@code ?} matching one character and {@code [a-z]} or {@code [!a-z]} matching character
+ * classes) and, opt-in, a regular expression subset enclosed in curly braces (like {@code {maven-.*-plugin}}), that
+ * supports literals, {@code .}, character classes, grouping, alternation and the {@code *}, {@code +} and {@code ?}
+ * quantifiers.
+ * <p>
+ * All patterns of the set are compiled (using subset construction) into one DFA whose accepting states carry the
+ * indexes of matched patterns, hence matching a segment is linear in segment length, no matter how many patterns
+ * are in the set.
+ */
+final class SegmentPatterns {
+    /**
+     * The limit of DFA states, to not let a pathological pattern set explode.
+     */
+    private static final int MAX_STATES = 4096;
+
+    private static final int MAX_CHAR = Character.MAX_VALUE;
+
+    /**
+     * Returns {@code true} if passed in segment is a pattern, not a plain segment.
+     */
+    static boolean isPattern(String segment) {
+        if (segment.length() > 1 && segment.startsWith("{") && segment.endsWith("}")) {
+            return true;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*' || c == '?' || c == '[') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compiles passed in patterns into one DFA. Index of the pattern in the list is the bit set in match result.
+     */
+    static SegmentPatterns compile(List<String> patterns) {
+        requireNonNull(patterns, "patterns");
+        NState start = new NState();
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            Frag frag;
+            try {
+                if (pattern.startsWith("{") && pattern.endsWith("}")) {
+                    frag = new RegexParser(pattern.substring(1, pattern.length() - 1)).parse();
+                } else {
+                    frag = glob(pattern);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid pattern '" + pattern + "': " + e.getMessage(), e);
+            }
+            NState accept = new NState();
+            accept.accept = i;
+            frag.out.eps.add(accept);
+            start.eps.add(frag.in);
+        }
+        return new SegmentPatterns(start);
+    }
+
+    private final int[] boundaries;
+    private final int[] asciiIntervals;
+    private final int[][] transitions;
+    private final BitSet[] accepts;
+
+    private SegmentPatterns(NState start) {
+        ArrayList<NState> states = new ArrayList<>();
+        number(start, states);
+
+        TreeSet<Integer> points = new TreeSet<>();
+        points.add(0);
+        points.add(MAX_CHAR + 1);
+        for (NState state : states) {
+            if (state.ranges != null) {
+                for (int i = 0; i < state.ranges.length; i += 2) {
+                    points.add(state.ranges[i]);
+                    points.add(state.ranges[i + 1] + 1);
+                }
+            }
+        }
+        this.boundaries = points.stream().mapToInt(Integer::intValue).toArray();
+        int intervals = boundaries.length - 1;
+        this.asciiIntervals = new int[128];
+        for (char c = 0; c < 128; c++) {
+            asciiIntervals[c] = interval(c);
+        }
+
+        ArrayList<int[]> dfaTransitions = new ArrayList<>();
+        ArrayList<BitSet> dfaAccepts = new ArrayList<>();
+        HashMap<BitSet, Integer> dfaStates = new HashMap<>();
+        ArrayList<BitSet> work = new ArrayList<>();
+        BitSet initial = closure(states, singleton(start));
+        dfaStates.put(initial, 0);
+        work.add(initial);
+        for (int current = 0; current < work.size(); current++) {
+            BitSet set = work.get(current);
+            int[] row = new int[intervals];
+            BitSet accept = new BitSet();
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                if (states.get(s).accept >= 0) {
+                    accept.set(states.get(s).accept);
+                }
+            }
+            for (int interval = 0; interval < intervals; interval++) {
+                int c = boundaries[interval];
+                BitSet next = new BitSet();
+                for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                    NState state = states.get(s);
+                    if (state.ranges != null && state.matches(c)) {
+                        next.set(state.next.id);
+                    }
+                }
+                if (next.isEmpty()) {
+                    row[interval] = -1;
+                } else {
+                    next = closure(states, next);
+                    Integer target = dfaStates.get(next);
+                    if (target == null) {
+                        if (work.size() >= MAX_STATES) {
+                            throw new IllegalArgumentException("Patterns too complex: " + MAX_STATES + " states");
+                        }
+                        target = work.size();
+                        dfaStates.put(next, target);
+                        work.add(next);
+                    }
+                    row[interval] = target;
+                }
+            }
+            dfaTransitions.add(row);
+            dfaAccepts.add(accept.isEmpty() ? null : accept);
+        }
+        this.transitions = dfaTransitions.toArray(new int[0][]);
+        this.accepts = dfaAccepts.toArray(new BitSet[0]);
+    }
+
+    /**
+     * Matches the segment against all patterns at once. Returns the set of matched pattern indexes, or {@code null}
+     * if none of the patterns matched. The returned bit set must not be modified.
+     */
+    BitSet match(String segment) {
+        int state = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            state = transitions[state][c < 128 ? asciiIntervals[c] : interval(c)];
+            if (state < 0) {
+                return null;
+            }
+        }
+        return accepts[state];
+    }
+
+    /**
+     * Returns the count of DFA states.
+     */
+    int states() {
+        return transitions.length;
+    }
+
+    private int interval(int c) {
+        int idx = Arrays.binarySearch(boundaries, c);
+        return idx >= 0 ? idx : -idx - 2;
+    }
+
+    private static void number(NState start, List<NState> states) {
+        ArrayList<NState> work = new ArrayList<>();
+        start.id = 0;
+        states.add(start);
+        work.add(start);
+        while (!work.isEmpty()) {
+            NState state = work.remove(work.size() - 1);
+            List<NState> targets = new ArrayList<>(state.eps);
+            if (state.next != null) {
+                targets.add(state.next);
+            }
+            for (NState target : targets) {
+                if (target.id < 0) {
+                    target.id = states.size();
+                    states.add(target);
+                    work.add(target);
+                }
+            }
+        }
+    }
+
+    private static BitSet singleton(NState state) {
+        BitSet result = new BitSet();
+        result.set(state.id);
+        return result;
+    }
+
+    private static BitSet closure(List<NState> states, BitSet set) {
+        BitSet result = (BitSet) set.clone();
+        ArrayList<NState> work = new ArrayList<>();
+        for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+            work.add(states.get(s));
+        }
+        while (!work.isEmpty()) {
+            NState state = work.remove(work.size() - 1);
+            for (NState target : state.eps) {
+                if (!result.get(target.id)) {
+                    result.set(target.id);
+                    work.add(target);
+                }
+            }
+        }
+        return result;
+    }
+
+    // NFA (Thompson construction)
+
+    private static final class NState {
+        private int id = -1;
+        private int accept = -1;
+        private int[] ranges;
+        private NState next;
+        private final List<NState> eps = new ArrayList<>(2);
+
+        private boolean matches(int c) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (c >= ranges[i] && c <= ranges[i + 1]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Frag {
+        private final NState in;
+        private final NState out;
+
+        private Frag(NState in, NState out) {
+            this.in = in;
+            this.out = out;
+        }
+    }
+
+    private static Frag chars(int[] ranges) {
+        NState in = new NState();
+        NState out = new NState();
+        in.ranges = ranges;
+        in.next = out;
+        return new Frag(in, out);
+    }
+
+    private static Frag empty() {
+        NState state = new NState();
+        return new Frag(state, state);
+    }
+
+    private static Frag concat(Frag a, Frag b) {
+        a.out.eps.add(b.in);
+        return new Frag(a.in, b.out);
+    }
+
+    private static Frag alternate(List<Frag> frags) {
+        NState in = new NState();
+        NState out = new NState();
+        for (Frag frag : frags) {
+            in.eps.add(frag.in);
+            frag.out.eps.add(out);
+        }
+        return new Frag(in, out);
+    }
+
+    private static Frag star(Frag frag) {
+        NState in = new NState();
+        NState out = new NState();
+        in.eps.add(frag.in);
+        in.eps.add(out);
+        frag.out.eps.add(frag.in);
+        frag.out.eps.add(out);
+        return new Frag(in, out);
+    }
+
+    private static Frag plus(Frag frag) {
+        NState out = new NState();
+        frag.out.eps.add(frag.in);
+        frag.out.eps.add(out);
+        return new Frag(frag.in, out);
+    }
+
+    private static Frag optional(Frag frag) {
+        NState in = new NState();
+        NState out = new NState();
+        in.eps.add(frag.in);
+        in.eps.add(out);
+        frag.out.eps.add(out);
+        return new Frag(in, out);
+    }
+
+    private static final int[] ANY = {0, MAX_CHAR};
+
+    private static int[] literal(char c) {
+        return new int[] {c, c};
+    }
+
+    private static Frag glob(String pattern) {
+        Frag result = empty();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            switch (c) {
+                case '*':
+                    result = concat(result, star(chars(ANY)));
+                    break;
+                case '?':
+                    result = concat(result, chars(ANY));
+                    break;
+                case '[':
+                    int[] end = new int[1];
+                    result = concat(result, chars(charClass(pattern, i + 1, '!', end)));
+                    i = end[0];
+                    break;
+                case '\\':
+                    if (i + 1 >= pattern.length()) {
+                        throw new IllegalArgumentException("dangling escape");
+                    }
+                    result = concat(result, chars(literal(pattern.charAt(++i))));
+                    break;
+                default:
+                    result = concat(result, chars(literal(c)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses character class starting at {@code from} (just after opening bracket), stores the index of closing
+     * bracket into {@code end[0]} and returns sorted and merged ranges.
+     */
+    private static int[] charClass(String pattern, int from, char negation, int[] end) {
+        int i = from;
+        boolean negated = false;
+        if (i < pattern.length() && (pattern.charAt(i) == negation || pattern.charAt(i) == '^')) {
+            negated = true;
+            i++;
+        }
+        ArrayList<int[]> ranges = new ArrayList<>();
+        boolean first = true;
+        while (true) {
+            if (i >= pattern.length()) {
+                throw new IllegalArgumentException("unterminated character class");
+            }
+            char c = pattern.charAt(i);
+            if (c == ']' && !first) {
+                break;
+            }
+            first = false;
+            if (c == '\\' && i + 1 < pattern.length()) {
+                c = pattern.charAt(++i);
+            }
+            char to = c;
+            if (i + 2 < pattern.length() && pattern.charAt(i + 1) == '-' && pattern.charAt(i + 2) != ']') {
+                to = pattern.charAt(i + 2);
+                i += 2;
+                if (to < c) {
+                    throw new IllegalArgumentException("invalid range " + c + "-" + to);
+                }
+            }
+            ranges.add(new int[] {c, to});
+            i++;
+        }
+        end[0] = i;
+        ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+        ArrayList<int[]> merged = new ArrayList<>();
+        for (int[] range : ranges) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range.clone());
+            }
+        }
+        if (negated) {
+            ArrayList<int[]> complement = new ArrayList<>();
+            int next = 0;
+            for (int[] range : merged) {
+                if (range[0] > next) {
+                    complement.add(new int[] {next, range[0] - 1});
+                }
+                next = range[1] + 1;
+            }
+            if (next <= MAX_CHAR) {
+                complement.add(new int[] {next, MAX_CHAR});
+            }
+            merged = complement;
+        }
+        if (merged.isEmpty()) {
+            throw new IllegalArgumentException("empty character class");
+        }
+        int[] result = new int[merged.size() * 2];
+        for (int j = 0; j < merged.size(); j++) {
+            result[j * 2] = merged.get(j)[0];
+            result[j * 2 + 1] = merged.get(j)[1];
+        }
+        return result;
+    }
+
+    /**
+     * Recursive descent parser of the supported regular expression subset.
+     */
+    private static final class RegexParser {
+        private final String pattern;
+        private int pos;
+
+        private RegexParser(String pattern) {
+            this.pattern = pattern;
+        }
+
+        private Frag parse() {
+            Frag result = alternation();
+            if (pos < pattern.length()) {
+                throw new IllegalArgumentException("unexpected '" + pattern.charAt(pos) + "' at " + pos);
+            }
+            return result;
+        }
+
+        private Frag alternation() {
+            ArrayList<Frag> alternatives = new ArrayList<>();
+            alternatives.add(concatenation());
+            while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+                pos++;
+                alternatives.add(concatenation());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : alternate(alternatives);
+        }
+
+        private Frag concatenation() {
+            Frag result = empty();
+            while (pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+                result = concat(result, repetition());
+            }
+            return result;
+        }
+
+        private Frag repetition() {
+            Frag result = atom();
+            while (pos < pattern.length()) {
+                char c = pattern.charAt(pos);
+                if (c == '*') {
+                    result = star(result);
+                } else if (c == '+') {
+                    result = plus(result);
+                } else if (c == '?') {
+                    result = optional(result);
+                } else {
+                    break;
+                }
+                pos++;
+            }
+            return result;
+        }
+
+        private Frag atom() {
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case '(':
+                    Frag group = alternation();
+                    if (pos >= pattern.length() || pattern.charAt(pos) != ')') {
+                        throw new IllegalArgumentException("unterminated group");
+                    }
+                    pos++;
+                    return group;
+                case '[':
+                    int[] end = new int[1];
+                    int[] ranges = charClass(pattern, pos, '^', end);
+                    pos = end[0] + 1;
+                    return chars(ranges);
+                case '.':
+                    return chars(ANY);
+                case '\\':
+                    if (pos >= pattern.length()) {
+                        throw new IllegalArgumentException("dangling escape");
+                    }
+                    return chars(literal(pattern.charAt(pos++)));
+                case '*':
+                case '+':
+                case '?':
+                    throw new IllegalArgumentException("dangling quantifier '" + c + "' at " + (pos - 1));
+                default:
+                    return chars(literal(c));
+            }
+        }
+    }
+}
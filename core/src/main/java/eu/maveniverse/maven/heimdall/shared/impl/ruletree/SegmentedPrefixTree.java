@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Prefix tree loaded lazily from prefix file content. Indexing is one pass over the content, that records offsets of
+ * rule lines per first path segment (4 bytes per line). When a lookup reaches a first segment for the first time, its
+ * lines are hashed on second segment, and then only the lines of second segments that lookups reach are parsed
+ * (published with {@link ConcurrentHashMap#putIfAbsent(Object, Object)}: racing threads may parse same lines twice,
+ * but all of them use the subtree published first). Hence, load time and memory are proportional to parts of the tree
+ * in use, and not to the size of repository (Central prefixes have more than 12000 rules below "com" alone).
+ * <p>
+ * A first segment having pattern as second segment is parsed whole. If a first segment is a pattern, it could match
+ * any other, so the content cannot be segmented (see {@link #index(ByteBuffer, LongConsumer)}). Segmented trees cannot
+ * be updated nor encoded: they are rebuilt instead.
+ */
+public final class SegmentedPrefixTree extends PrefixTree {
+    private final Map<String, Segment> segments;
+    private final int rules;
+
+    private SegmentedPrefixTree(Map<String, Segment> segments, int rules) {
+        super("");
+        this.segments = segments;
+        this.rules = rules;
+    }
+
+    /**
+     * Indexes given UTF-8 prefix file content (that must not change while tree is in use). Given consumer receives
+     * estimated heap bytes of index, and of every loaded subtree. Returns empty optional, if content cannot be segmented.
+     */
+    public static Optional<SegmentedPrefixTree> index(ByteBuffer content, LongConsumer onLoad) {
+        ByteBuffer buffer = content.duplicate();
+        LinkedHashMap<String, Builder> builders = new LinkedHashMap<>();
+        int rules = 0;
+        int limit = buffer.limit();
+        int pos = buffer.position();
+        while (pos < limit) {
+            int eol = lineEnd(buffer, pos);
+            int start = skip(buffer, pos, eol);
+            if (start < eol && buffer.get(start) != '#') {
+                rules++;
+                int first = segmentStart(buffer, start, eol);
+                int firstEnd = segmentEnd(buffer, first, eol);
+                if (firstEnd > first) {
+                    if (isPattern(buffer, first, firstEnd)) {
+                        return Optional.empty();
+                    }
+                    String name = string(buffer, first, firstEnd);
+                    Builder builder = builders.get(name);
+                    if (builder == null) {
+                        builder = new Builder();
+                        builders.put(name, builder);
+                    }
+                    int second = segmentStart(buffer, firstEnd, eol);
+                    int secondEnd = segmentEnd(buffer, second, eol);
+                    if (secondEnd > second) {
+                        builder.add(pos);
+                        builder.patterns |= isPattern(buffer, second, secondEnd);
+                    }
+                }
+            }
+            pos = eol + 1;
+        }
+        HashMap<String, Segment> segments = new HashMap<>();
+        long offsets = 0;
+        for (Map.Entry<String, Builder> entry : builders.entrySet()) {
+            segments.put(entry.getKey(), entry.getValue().build(entry.getKey(), buffer, onLoad));
+            offsets += entry.getValue().size;
+        }
+        onLoad.accept(4L * offsets);
+        return Optional.of(new SegmentedPrefixTree(segments, rules));
+    }
+
+    /**
+     * Count of rules in content.
+     */
+    public int rules() {
+        return rules;
+    }
+
+    /**
+     * Count of first segments.
+     */
+    public int segments() {
+        return segments.size();
+    }
+
+    /**
+     * Count of subtrees (second segments, or whole first segments) parsed so far.
+     */
+    public int loadedSubtrees() {
+        int result = 0;
+        for (Segment segment : segments.values()) {
+            result += segment.loaded.size();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return segments.isEmpty();
+    }
+
+    @Override
+    protected Node getSibling(String name) {
+        return segments.get(name);
+    }
+
+    @Override
+    protected PrefixTree copy() {
+        throw new UnsupportedOperationException("Segmented prefix tree cannot be copied");
+    }
+
+    @Override
+    public PrefixTree update(RuleLines previous, RuleLines current) {
+        throw new UnsupportedOperationException("Segmented prefix tree cannot be updated");
+    }
+
+    @Override
+    public int loadNodes(Stream<String> linesStream) {
+        throw new UnsupportedOperationException("Segmented prefix tree is loaded from its content");
+    }
+
+    @Override
+    public void dump(String prefix) {
+        System.out.println(prefix + this + " (" + loadedSubtrees() + " subtrees loaded)");
+        for (Segment segment : segments.values()) {
+            if (!segment.loaded.isEmpty()) {
+                System.out.println(prefix + "  " + segment);
+                for (Node node : segment.loaded.values()) {
+                    node.dump(prefix + "    ");
+                }
+            }
+        }
+    }
+
+    /**
+     * Lines of a first segment, during indexing.
+     */
+    private static final class Builder {
+        private int[] lines = new int[4];
+        private int size;
+        private boolean patterns;
+
+        private void add(int line) {
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+            }
+            lines[size++] = line;
+        }
+
+        private Segment build(String name, ByteBuffer buffer, LongConsumer onLoad) {
+            return new Segment(name, buffer, Arrays.copyOf(lines, size), patterns, onLoad);
+        }
+    }
+
+    /**
+     * First segment: a node that parses its subtrees on demand. It holds offsets of its rules having two or more
+     * segments only: if there are none, it is a leaf (same as in eagerly loaded tree, where rules below a segment
+     * make it not a leaf, even if the segment itself is a rule).
+     */
+    private static final class Segment extends Node {
+        private static final String WHOLE = "";
+
+        private final ByteBuffer buffer;
+        private final int[] lines;
+        private final boolean patterns;
+        private final LongConsumer onLoad;
+        private final ConcurrentHashMap<String, Node> loaded;
+        private volatile Hashes hashes;
+
+        private Segment(String name, ByteBuffer buffer, int[] lines, boolean patterns, LongConsumer onLoad) {
+            super(name, false, null);
+            this.buffer = buffer;
+            this.lines = lines;
+            this.patterns = patterns;
+            this.onLoad = onLoad;
+            this.loaded = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return lines.length == 0;
+        }
+
+        @Override
+        protected Node getSibling(String name) {
+            if (patterns) {
+                return whole().getSibling(name);
+            }
+            Node node = loaded.get(name);
+            if (node == null) {
+                Hashes hashes = hashes();
+                byte[] key = name.getBytes(StandardCharsets.UTF_8);
+                List<String> matched = new ArrayList<>();
+                for (int i = hashes.heads[hashes.bucket(hash(key, 0, key.length))]; i >= 0; i = hashes.next[i]) {
+                    int line = lines[i];
+                    int eol = lineEnd(buffer, line);
+                    int first = segmentStart(buffer, skip(buffer, line, eol), eol);
+                    int second = segmentStart(buffer, segmentEnd(buffer, first, eol), eol);
+                    if (sameBytes(buffer, second, segmentEnd(buffer, second, eol), key)) {
+                        matched.add(string(buffer, line, eol));
+                    }
+                }
+                if (matched.isEmpty()) {
+                    return null;
+                }
+                node = publish(name, parse(matched.stream()).getSibling(name));
+            }
+            return node;
+        }
+
+        private Node whole() {
+            Node node = loaded.get(WHOLE);
+            if (node == null) {
+                node = publish(WHOLE, parse(Arrays.stream(lines).mapToObj(l -> string(buffer, l, lineEnd(buffer, l)))));
+            }
+            return node;
+        }
+
+        private Node parse(Stream<String> ruleLines) {
+            PrefixTree prefixTree = new PrefixTree("");
+            prefixTree.loadNodes(ruleLines);
+            return prefixTree.getSibling(getName());
+        }
+
+        private Node publish(String name, Node node) {
+            Node existing = loaded.putIfAbsent(name, node);
+            if (existing != null) {
+                return existing;
+            }
+            onLoad.accept(RuleTreeStats.of(node).getEstimatedBytes());
+            return node;
+        }
+
+        private Hashes hashes() {
+            Hashes result = hashes;
+            if (result == null) {
+                result = new Hashes(lines.length);
+                for (int i = 0; i < lines.length; i++) {
+                    int eol = lineEnd(buffer, lines[i]);
+                    int first = segmentStart(buffer, skip(buffer, lines[i], eol), eol);
+                    int second = segmentStart(buffer, segmentEnd(buffer, first, eol), eol);
+                    result.add(i, hash(buffer, second, segmentEnd(buffer, second, eol)));
+                }
+                hashes = result;
+                onLoad.accept(4L * (result.heads.length + result.next.length));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Chained hash table of line indexes, keyed by hash of second segment.
+     */
+    private static final class Hashes {
+        private final int[] heads;
+        private final int[] next;
+
+        private Hashes(int size) {
+            this.heads = new int[Integer.highestOneBit(Math.max(1, size) * 2 - 1)];
+            Arrays.fill(heads, -1);
+            this.next = new int[size];
+        }
+
+        private int bucket(int hash) {
+            return hash & (heads.length - 1);
+        }
+
+        private void add(int index, int hash) {
+            int bucket = bucket(hash);
+            next[index] = heads[bucket];
+            heads[bucket] = index;
+        }
+    }
+
+    private static int lineEnd(ByteBuffer buffer, int pos) {
+        int limit = buffer.limit();
+        while (pos < limit && buffer.get(pos) != '\n') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skip(ByteBuffer buffer, int pos, int end) {
+        while (pos < end && buffer.get(pos) <= ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int segmentStart(ByteBuffer buffer, int pos, int end) {
+        while (pos < end && buffer.get(pos) == '/') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int segmentEnd(ByteBuffer buffer, int pos, int end) {
+        while (pos < end && buffer.get(pos) != '/' && buffer.get(pos) > ' ') {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean isPattern(ByteBuffer buffer, int start, int end) {
+        if (buffer.get(start) == '{') {
+            return true;
+        }
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '*' || b == '?' || b == '[') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean sameBytes(ByteBuffer buffer, int start, int end, byte[] bytes) {
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (buffer.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(ByteBuffer buffer, int start, int end) {
+        while (end > start && buffer.get(end - 1) <= ' ') {
+            end--;
+        }
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(end);
+        slice.position(start);
+        byte[] bytes = new byte[end - start];
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * JVM-wide symbol table of rule segments: every distinct segment (like {@code org} or {@code apache}) is stored once
+ * and is given a small positive int id, that all the loaded trees use instead of strings. Symbols are interned only
+ * when rules are loaded, lookups of input segments never grow the table.
+ * <p>
+ * The table is weak: nodes hold their {@link Symbol}, and symbols used by no node anymore (as trees using them were
+ * unloaded) are evicted once garbage collected, and their ids are reused. As plain siblings of a node are keyed by ids
+ * of their own symbols, an id is never reused while some tree still has it.
+ */
+final class Symbols {
+    private Symbols() {}
+
+    /**
+     * The id of no symbol.
+     */
+    static final int NONE = 0;
+
+    private static final Object LOCK = new Object();
+
+    private static final ConcurrentHashMap<String, Ref> IDS = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<Symbol> COLLECTED = new ReferenceQueue<>();
+
+    private static final ArrayDeque<Integer> FREE = new ArrayDeque<>();
+
+    private static int count;
+
+    /**
+     * An interned segment.
+     */
+    static final class Symbol {
+        final String name;
+        final int id;
+
+        private Symbol(String name, int id) {
+            this.name = name;
+            this.id = id;
+        }
+    }
+
+    private static final class Ref extends WeakReference<Symbol> {
+        private final String name;
+        private final int id;
+
+        private Ref(Symbol symbol) {
+            super(symbol, COLLECTED);
+            this.name = symbol.name;
+            this.id = symbol.id;
+        }
+    }
+
+    /**
+     * Returns the symbol of given segment, adding it to table if needed.
+     */
+    static Symbol intern(String segment) {
+        Ref ref = IDS.get(segment);
+        Symbol symbol = ref != null ? ref.get() : null;
+        if (symbol != null) {
+            return symbol;
+        }
+        synchronized (LOCK) {
+            evict();
+            ref = IDS.get(segment);
+            symbol = ref != null ? ref.get() : null;
+            if (symbol == null) {
+                Integer free = FREE.poll();
+                symbol = new Symbol(segment, free != null ? free : ++count);
+                IDS.put(segment, new Ref(symbol));
+            }
+            return symbol;
+        }
+    }
+
+    /**
+     * Evicts collected symbols, and frees their ids. Must be invoked holding the lock.
+     */
+    private static void evict() {
+        Ref ref;
+        while ((ref = (Ref) COLLECTED.poll()) != null) {
+            IDS.remove(ref.name, ref);
+            FREE.push(ref.id);
+        }
+    }
+
+    /**
+     * Returns the id of given segment, or {@link #NONE} if segment is not in table (hence is not used by any rule).
+     */
+    static int lookup(String segment) {
+        Ref ref = IDS.get(segment);
+        Symbol symbol = ref != null ? ref.get() : null;
+        return symbol != null ? symbol.id : NONE;
+    }
+
+    /**
+     * Returns the count of symbols, including collected ones not evicted yet.
+     */
+    static int size() {
+        return IDS.size();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.util.function.Supplier;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of Heimdall, Java 11 implementation (see Java 8 one for API). When JFR does not record,
+ * {@link Event#isEnabled()} is constant {@code false} and event instances do not escape, hence JIT removes them.
+ */
+final class HeimdallEvents {
+    private static final ThreadLocal<RuleLoadEvent> RULE_LOAD = new ThreadLocal<>();
+
+    private HeimdallEvents() {}
+
+    static Object beginRuleLoad(String filter, String repository, String source) {
+        RuleLoadEvent event = new RuleLoadEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.filter = filter;
+        event.repository = repository;
+        event.source = source;
+        event.begin();
+        RULE_LOAD.set(event);
+        return event;
+    }
+
+    static void ruleCounts(long rules, long nodes) {
+        RuleLoadEvent event = RULE_LOAD.get();
+        if (event != null) {
+            event.rules = rules;
+            event.nodes = nodes;
+        }
+    }
+
+    static void endRuleLoad(Object event) {
+        if (event != null) {
+            RULE_LOAD.remove();
+            ((RuleLoadEvent) event).commit();
+        }
+    }
+
+    static Object beginFetch() {
+        RulesFetchEvent event = new RulesFetchEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endFetch(Object event, String repository, String path, String outcome) {
+        if (event != null) {
+            RulesFetchEvent fetch = (RulesFetchEvent) event;
+            fetch.repository = repository;
+            fetch.path = path;
+            fetch.outcome = outcome;
+            fetch.commit();
+        }
+    }
+
+    static Object beginDecision() {
+        if (Recheck.active()) {
+            return null;
+        }
+        DecisionEvent event = new DecisionEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endDecision(Object event, String filter, String repository, Object subject, boolean accepted) {
+        if (event != null) {
+            DecisionEvent decision = (DecisionEvent) event;
+            decision.end();
+            if (decision.shouldCommit()) {
+                decision.filter = filter;
+                decision.repository = repository;
+                decision.subject = String.valueOf(
+                        subject instanceof Supplier ? ((Supplier<?>) subject).get() : subject);
+                decision.accepted = accepted;
+                decision.commit();
+            }
+        }
+    }
+
+    @Name("eu.maveniverse.heimdall.RuleLoad")
+    @Label("Heimdall Rule Load")
+    @Description("Rules of a filter loaded for remote repository")
+    @Category({"Maven", "Heimdall"})
+    static final class RuleLoadEvent extends Event {
+        @Label("Filter")
+        String filter;
+
+        @Label("Repository")
+        String repository;
+
+        @Label("Source")
+        @Description("Origin of rule content: file, classpath resource or metadata fetched from remote repository")
+        String source;
+
+        @Label("Rules")
+        long rules;
+
+        @Label("Nodes")
+        long nodes;
+    }
+
+    @Name("eu.maveniverse.heimdall.RulesFetch")
+    @Label("Heimdall Rules Fetch")
+    @Description("Rules (like prefixes file) fetched from remote repository metadata")
+    @Category({"Maven", "Heimdall"})
+    static final class RulesFetchEvent extends Event {
+        @Label("Repository")
+        String repository;
+
+        @Label("Path")
+        String path;
+
+        @Label("Outcome")
+        String outcome;
+    }
+
+    @Name("eu.maveniverse.heimdall.Decision")
+    @Label("Heimdall Decision")
+    @Description("Filter decision on artifact or metadata; only slow ones (like waiting for rule load) by default")
+    @Category({"Maven", "Heimdall"})
+    @Threshold("100 us")
+    static final class DecisionEvent extends Event {
+        @Label("Filter")
+        String filter;
+
+        @Label("Repository")
+        String repository;
+
+        @Label("Subject")
+        String subject;
+
+        @Label("Accepted")
+        boolean accepted;
+    }
+}
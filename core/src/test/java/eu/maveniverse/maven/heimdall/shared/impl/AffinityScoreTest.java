@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.impl.AffinityRemoteRepositoryFilterSource.Score;
+import eu.maveniverse.maven.heimdall.shared.impl.AffinityRemoteRepositoryFilterSource.Stored;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AffinityScoreTest {
+    private static final long DAY = 24L * 60L * 60L * 1000L;
+
+    @Test
+    void thresholdTest() {
+        Score score = new Score();
+        score.miss(1000L);
+        score.miss(1000L);
+        Assertions.assertFalse(score.learned(3));
+        Assertions.assertTrue(score.accepted(3, DAY, 1000L));
+        score.miss(1000L);
+        Assertions.assertTrue(score.learned(3));
+        Assertions.assertFalse(score.accepted(3, DAY, 1000L));
+    }
+
+    @Test
+    void hitTest() {
+        Score score = new Score();
+        for (int i = 0; i < 10; i++) {
+            score.miss(1000L);
+        }
+        score.hit();
+        Assertions.assertFalse(score.learned(3));
+        Assertions.assertTrue(score.accepted(3, DAY, 1000L));
+    }
+
+    @Test
+    void probeTest() {
+        Score score = new Score();
+        score.miss(1000L);
+        Assertions.assertFalse(score.accepted(1, DAY, 1000L + DAY - 1));
+        // one probe per interval since last miss
+        Assertions.assertTrue(score.accepted(1, DAY, 1000L + DAY));
+        Assertions.assertFalse(score.accepted(1, DAY, 1000L + DAY));
+        // next probe is an interval since last probe, even if probe was not recorded as miss
+        Assertions.assertFalse(score.accepted(1, DAY, 1000L + 2 * DAY - 1));
+        Assertions.assertTrue(score.accepted(1, DAY, 1000L + 2 * DAY));
+        // a miss postpones next probe
+        score.miss(1000L + 3 * DAY);
+        Assertions.assertFalse(score.accepted(1, DAY, 1000L + 3 * DAY + 1));
+        Assertions.assertTrue(score.learned(1));
+    }
+
+    @Test
+    void persistedTest(@TempDir Path temp) throws IOException {
+        Score score = new Score();
+        Assertions.assertNull(score.flush());
+        score.miss(1000L);
+        score.miss(2000L);
+        Stored delta = score.flush();
+        Assertions.assertNotNull(delta);
+        Assertions.assertEquals(0, delta.hits);
+        Assertions.assertEquals(2, delta.misses);
+        Assertions.assertEquals(2000L, delta.lastMiss);
+        // flushed counts stay in effect
+        Assertions.assertNull(score.flush());
+        Assertions.assertTrue(score.learned(2));
+
+        Map<String, Stored> stored = new HashMap<>();
+        stored.put("org.foo", new Stored(1, 1, 500L));
+        stored.merge("org.foo", delta, Stored::merge);
+        stored.put("com.bar", delta);
+        Path file = temp.resolve("affinity-central.bin");
+        AffinityRemoteRepositoryFilterSource.write(file, stored);
+        Map<String, Stored> read = AffinityRemoteRepositoryFilterSource.read(file);
+        Assertions.assertEquals(stored.keySet(), read.keySet());
+        Assertions.assertEquals(1, read.get("org.foo").hits);
+        Assertions.assertEquals(3, read.get("org.foo").misses);
+        Assertions.assertEquals(2000L, read.get("org.foo").lastMiss);
+
+        // restored scores decide like before, in next session
+        Score restored = new Score();
+        restored.restore(read.get("com.bar"));
+        Assertions.assertTrue(restored.learned(2));
+        Assertions.assertFalse(restored.accepted(2, DAY, 2000L + DAY - 1));
+        Assertions.assertTrue(restored.accepted(2, DAY, 2000L + DAY));
+        Score served = new Score();
+        served.restore(read.get("org.foo"));
+        Assertions.assertFalse(served.learned(2));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ArtifactVerdictsTest {
+    private final RemoteRepository central =
+            new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2/").build();
+
+    private final RemoteRepository other =
+            new RemoteRepository.Builder("other", "default", "https://example.com/maven2/").build();
+
+    private final Artifact artifact = new DefaultArtifact("org.apache:a:1.0");
+
+    @Test
+    void sessionTest() {
+        RepositorySystemSession session = new DefaultRepositorySystemSession();
+        // no batch evaluation in session: nothing to answer from
+        Assertions.assertNull(ArtifactVerdicts.mayGet(session));
+        ArtifactVerdicts verdicts = ArtifactVerdicts.get(session);
+        Assertions.assertSame(verdicts, ArtifactVerdicts.get(session));
+        Assertions.assertSame(verdicts, ArtifactVerdicts.mayGet(session));
+    }
+
+    @Test
+    void cachedTest() {
+        ArtifactVerdicts verdicts = new ArtifactVerdicts(16);
+        Object rules = new Object();
+        verdicts.put("groupId", central, rules, artifact, true);
+        verdicts.put("prefixes", central, rules, artifact, false);
+        Assertions.assertEquals(Boolean.TRUE, verdicts.get("groupId", central, rules, artifact));
+        Assertions.assertEquals(Boolean.FALSE, verdicts.get("prefixes", central, rules, artifact));
+        Assertions.assertNull(verdicts.get("groupId", other, rules, artifact));
+        Assertions.assertNull(verdicts.get("groupId", central, rules, new DefaultArtifact("org.apache:a:2.0")));
+        // reloaded rules start over
+        Assertions.assertNull(verdicts.get("groupId", central, new Object(), artifact));
+    }
+
+    @Test
+    void evictedTest() {
+        ArtifactVerdicts verdicts = new ArtifactVerdicts(1);
+        Object rules = new Object();
+        verdicts.put("groupId", central, rules, artifact, true);
+        verdicts.put("groupId", other, rules, artifact, true);
+        Assertions.assertEquals(1, verdicts.size());
+        Assertions.assertNull(verdicts.get("groupId", central, rules, artifact));
+        Assertions.assertEquals(Boolean.TRUE, verdicts.get("groupId", other, rules, artifact));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DecisionTraceTest {
+    private static List<DecisionTraceDecoder.Record> decode(DecisionTrace trace, long[] total) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+        List<DecisionTraceDecoder.Record> records = new ArrayList<>();
+        total[0] = DecisionTraceDecoder.decode(new ByteArrayInputStream(out.toByteArray()), records::add);
+        return records;
+    }
+
+    private static List<String> coordinates(List<DecisionTraceDecoder.Record> records) {
+        List<String> result = new ArrayList<>();
+        for (DecisionTraceDecoder.Record record : records) {
+            result.add(record.getCoordinate());
+        }
+        return result;
+    }
+
+    @Test
+    void roundTripTest() throws IOException {
+        DecisionTrace trace = new DecisionTrace(16, DecisionTrace.DEFAULT_MAX_COORDINATES);
+        trace.record("central", DecisionTrace.FILTER_GROUP_ID, "org.apache", true);
+        trace.record("other", DecisionTrace.FILTER_PREFIXES, "/com/foo", false);
+        trace.record("central", DecisionTrace.FILTER_ARTIFACT, "org.apache:a:1.0", true);
+
+        long[] total = new long[1];
+        List<DecisionTraceDecoder.Record> records = decode(trace, total);
+        Assertions.assertEquals(3L, total[0]);
+        Assertions.assertEquals(3, records.size());
+
+        DecisionTraceDecoder.Record first = records.get(0);
+        Assertions.assertEquals(GroupIdRemoteRepositoryFilterSource.NAME, first.getFilter());
+        Assertions.assertEquals("central", first.getRepositoryId());
+        Assertions.assertEquals("org.apache", first.getCoordinate());
+        Assertions.assertTrue(first.isAccepted());
+        Assertions.assertTrue(
+                first.getThread().startsWith(Thread.currentThread().getName() + "#"));
+
+        DecisionTraceDecoder.Record second = records.get(1);
+        Assertions.assertEquals(PrefixesRemoteRepositoryFilterSource.NAME, second.getFilter());
+        Assertions.assertEquals("other", second.getRepositoryId());
+        Assertions.assertEquals("/com/foo", second.getCoordinate());
+        Assertions.assertFalse(second.isAccepted());
+
+        Assertions.assertEquals(
+                ArtifactRemoteRepositoryFilterSource.NAME, records.get(2).getFilter());
+        Assertions.assertFalse(
+                records.get(1).getTimestamp().isAfter(records.get(2).getTimestamp()));
+    }
+
+    @Test
+    void wrapAroundTest() throws IOException {
+        DecisionTrace trace = new DecisionTrace(4, DecisionTrace.DEFAULT_MAX_COORDINATES);
+        for (int i = 0; i < 6; i++) {
+            trace.record("central", DecisionTrace.FILTER_GROUP_ID, "g" + i, true);
+        }
+        long[] total = new long[1];
+        List<DecisionTraceDecoder.Record> records = decode(trace, total);
+        Assertions.assertEquals(6L, total[0]);
+        Assertions.assertEquals(Arrays.asList("g2", "g3", "g4", "g5"), coordinates(records));
+    }
+
+    @Test
+    void overflowTest() throws IOException {
+        DecisionTrace trace = new DecisionTrace(16, 3);
+        for (int i = 0; i < 5; i++) {
+            trace.record("central", DecisionTrace.FILTER_GROUP_ID, "g" + i, true);
+        }
+        // interned coordinates are still resolved after overflow
+        trace.record("central", DecisionTrace.FILTER_GROUP_ID, "g1", true);
+        long[] total = new long[1];
+        List<DecisionTraceDecoder.Record> records = decode(trace, total);
+        Assertions.assertEquals(
+                Arrays.asList("g0", "g1", DecisionTrace.OVERFLOW, DecisionTrace.OVERFLOW, DecisionTrace.OVERFLOW, "g1"),
+                coordinates(records));
+    }
+
+    @Test
+    void recheckNotRecordedTest() throws IOException {
+        DecisionTrace trace = new DecisionTrace(16, DecisionTrace.DEFAULT_MAX_COORDINATES);
+        trace.record("central", DecisionTrace.FILTER_GROUP_ID, "g0", true);
+        Recheck.quietly(() -> {
+            trace.record("central", DecisionTrace.FILTER_GROUP_ID, "g1", true);
+            return null;
+        });
+        long[] total = new long[1];
+        Assertions.assertEquals(Arrays.asList("g0"), coordinates(decode(trace, total)));
+        Assertions.assertEquals(1L, total[0]);
+    }
+
+    @Test
+    void dumpTest(@TempDir Path directory) throws IOException {
+        DecisionTrace trace = new DecisionTrace(16, DecisionTrace.DEFAULT_MAX_COORDINATES);
+        trace.record("central", DecisionTrace.FILTER_GROUP_ID, "g0", false);
+        Path file = trace.dump(directory);
+        List<DecisionTraceDecoder.Record> records = new ArrayList<>();
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            Assertions.assertEquals(1L, DecisionTraceDecoder.decode(inputStream, records::add));
+        }
+        Assertions.assertEquals(1, records.size());
+        Assertions.assertTrue(records.get(0).toString().endsWith(" central REJECTED g0"));
+    }
+
+    @Test
+    void notTraceTest() {
+        Assertions.assertThrows(
+                IOException.class,
+                () -> DecisionTraceDecoder.decode(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5}), r -> {}));
+    }
+}
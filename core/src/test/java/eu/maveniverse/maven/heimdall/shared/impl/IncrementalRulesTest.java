@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.GroupTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleLines;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeStats;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class IncrementalRulesTest {
+    private final RemoteRepository central =
+            new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2/").build();
+
+    private final RemoteRepository other =
+            new RemoteRepository.Builder("other", "default", "https://example.com/maven2/").build();
+
+    /**
+     * How trees were made: "parsed" (base content), "built" (full reload) or "updated" (incrementally).
+     */
+    private final List<String> made = new ArrayList<>();
+
+    private final IncrementalRules<GroupTree> incremental = new IncrementalRules<>(
+            "groupId",
+            lines -> {
+                made.add("parsed");
+                return RuleLines.ofGroupIds(lines);
+            },
+            lines -> {
+                made.add("built");
+                GroupTree groupTree = new GroupTree("");
+                groupTree.loadNodes(lines.lines());
+                return groupTree;
+            },
+            (tree, previous, current) -> {
+                made.add("updated");
+                return tree.update(previous, current);
+            },
+            RuleTreeStats::of);
+
+    private static RuleContent content(String text, String delta) {
+        RuleContent content = RuleContent.ofOpener(
+                "test", false, () -> new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        return delta == null
+                ? content
+                : content.withDelta(() -> new ByteArrayInputStream(delta.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private GroupTree load(String text, String delta) throws IOException {
+        return incremental.load(central, content(text, delta), (tree, stats, rules) -> tree);
+    }
+
+    @Test
+    void unchangedTest() throws IOException {
+        GroupTree first = load("org.apache\ncom.foo\n", null);
+        Assertions.assertSame(first, load("org.apache\ncom.foo\n", null));
+        Assertions.assertEquals(Arrays.asList("parsed", "built"), made);
+    }
+
+    @Test
+    void appendOnlyTest() throws IOException {
+        GroupTree first = load("org.apache\ncom.foo\n", null);
+        GroupTree appended = load("org.apache\ncom.foo\norg.codehaus\n", null);
+        Assertions.assertNotSame(first, appended);
+        Assertions.assertEquals(Arrays.asList("parsed", "built", "parsed", "updated"), made);
+        Assertions.assertTrue(appended.acceptedGroupId("org.apache.maven"));
+        Assertions.assertTrue(appended.acceptedGroupId("com.foo"));
+        Assertions.assertTrue(appended.acceptedGroupId("org.codehaus.mojo"));
+        // copy-on-write: loaded tree is unchanged
+        Assertions.assertFalse(first.acceptedGroupId("org.codehaus.mojo"));
+
+        // appended by delta: base is not parsed again
+        GroupTree delta = load("org.apache\ncom.foo\norg.codehaus\n", "+eu.maveniverse\n");
+        Assertions.assertEquals(Arrays.asList("parsed", "built", "parsed", "updated", "updated"), made);
+        Assertions.assertTrue(delta.acceptedGroupId("eu.maveniverse"));
+        Assertions.assertTrue(delta.acceptedGroupId("org.codehaus"));
+    }
+
+    @Test
+    void deletionTest() throws IOException {
+        GroupTree first = load("org.apache\ncom.foo\norg.codehaus\n", null);
+        GroupTree deleted = load("org.apache\norg.codehaus\n", null);
+        Assertions.assertEquals(Arrays.asList("parsed", "built", "parsed", "updated"), made);
+        Assertions.assertFalse(deleted.acceptedGroupId("com.foo"));
+        Assertions.assertTrue(deleted.acceptedGroupId("org.apache"));
+        Assertions.assertTrue(first.acceptedGroupId("com.foo"));
+
+        // deleted by delta
+        GroupTree delta = load("org.apache\norg.codehaus\n", "-org.codehaus\n");
+        Assertions.assertEquals(Arrays.asList("parsed", "built", "parsed", "updated", "updated"), made);
+        Assertions.assertFalse(delta.acceptedGroupId("org.codehaus"));
+        Assertions.assertTrue(delta.acceptedGroupId("org.apache"));
+    }
+
+    @Test
+    void digestMismatchTest() throws IOException {
+        load("org.apache\n", "+com.foo\n");
+        // base changed under unchanged delta: base is parsed again, and delta applied on it
+        GroupTree changed = load("org.codehaus\n", "+com.foo\n");
+        Assertions.assertEquals(Arrays.asList("parsed", "built", "parsed", "updated"), made);
+        Assertions.assertFalse(changed.acceptedGroupId("org.apache"));
+        Assertions.assertTrue(changed.acceptedGroupId("org.codehaus"));
+        Assertions.assertTrue(changed.acceptedGroupId("com.foo"));
+    }
+
+    @Test
+    void fullReloadTest() throws IOException {
+        load("org.apache\n", null);
+        // rules with patterns are not updated, but reloaded in full
+        GroupTree patterns = load("org.apache\norg.{codehaus|mojohaus}\n", null);
+        Assertions.assertEquals(Arrays.asList("parsed", "built", "parsed", "built"), made);
+        Assertions.assertTrue(patterns.acceptedGroupId("org.mojohaus"));
+        GroupTree plain = load("org.apache\n", null);
+        Assertions.assertEquals(Arrays.asList("parsed", "built", "parsed", "built", "parsed", "built"), made);
+        Assertions.assertFalse(plain.acceptedGroupId("org.mojohaus"));
+
+        // tree moved off heap (fitter returned view) is not updated either
+        made.clear();
+        GroupTree view = new GroupTree("");
+        Assertions.assertSame(
+                view, incremental.load(other, content("org.codehaus\n", null), (tree, stats, rules) -> view));
+        incremental.load(other, content("org.codehaus\ncom.foo\n", null), (tree, stats, rules) -> tree);
+        Assertions.assertEquals(Arrays.asList("parsed", "built", "parsed", "built"), made);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MetadataVerdictsTest {
+    private final RemoteRepository central =
+            new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2/").build();
+
+    private final List<String> decided = new ArrayList<>();
+
+    private final List<String> recorded = new ArrayList<>();
+
+    /**
+     * Accepts "org.apache" groups, records decisions the same as filters do (not on recheck).
+     */
+    private final Function<Metadata, RemoteRepositoryFilter.Result> decide = m -> {
+        if (!Recheck.active()) {
+            decided.add(m.getGroupId() + ":" + m.getArtifactId());
+        }
+        return new RemoteRepositoryFilterSourceSupport.SimpleResult(
+                m.getGroupId().startsWith("org.apache"), "test");
+    };
+
+    private final MetadataVerdicts.Recorder recorder =
+            (m, accepted) -> recorded.add(m.getGroupId() + ":" + m.getArtifactId() + "=" + accepted);
+
+    private static Metadata g(String groupId) {
+        return new DefaultMetadata(groupId, MetadataVerdicts.MAVEN_METADATA_XML, Metadata.Nature.RELEASE_OR_SNAPSHOT);
+    }
+
+    private static Metadata ga(String groupId, String artifactId) {
+        return new DefaultMetadata(
+                groupId, artifactId, MetadataVerdicts.MAVEN_METADATA_XML, Metadata.Nature.RELEASE_OR_SNAPSHOT);
+    }
+
+    @Test
+    void cachedTest() {
+        MetadataVerdicts verdicts = new MetadataVerdicts("test");
+        Object rules = new Object();
+        List<String> plugins = Collections.singletonList("org.apache.maven.plugins");
+        Assertions.assertTrue(verdicts.accept(central, rules, plugins, ga("org.apache", "a"), decide, recorder)
+                .isAccepted());
+        Assertions.assertFalse(verdicts.accept(central, rules, plugins, ga("com.foo", "b"), decide, recorder)
+                .isAccepted());
+        Assertions.assertTrue(verdicts.accept(central, rules, plugins, ga("org.apache", "a"), decide, recorder)
+                .isAccepted());
+        Assertions.assertTrue(verdicts.accept(central, rules, plugins, g("org.apache.maven.plugins"), decide, recorder)
+                .isAccepted());
+        // plugin groups are computed quietly: first request of plugin group is recorded as cached verdict
+        Assertions.assertEquals(Arrays.asList("org.apache:a", "com.foo:b"), decided);
+        Assertions.assertEquals(Arrays.asList("org.apache:a=true", "org.apache.maven.plugins:=true"), recorded);
+        // version level is not cached
+        Assertions.assertNull(verdicts.accept(
+                central,
+                rules,
+                plugins,
+                new DefaultMetadata(
+                        "org.apache",
+                        "a",
+                        "1.0-SNAPSHOT",
+                        MetadataVerdicts.MAVEN_METADATA_XML,
+                        Metadata.Nature.SNAPSHOT),
+                decide,
+                recorder));
+    }
+
+    @Test
+    void pluginGroupsTest() {
+        MetadataVerdicts verdicts = new MetadataVerdicts("test");
+        Object rules = new Object();
+        verdicts.accept(
+                central,
+                rules,
+                Collections.singletonList("org.apache.plugins"),
+                ga("org.apache", "a"),
+                decide,
+                recorder);
+        // other session having other plugin groups: plugin groups are computed again, other verdicts are kept
+        Assertions.assertFalse(verdicts.accept(
+                        central, rules, Collections.singletonList("com.plugins"), g("com.plugins"), decide, recorder)
+                .isAccepted());
+        verdicts.accept(
+                central, rules, Collections.singletonList("com.plugins"), ga("org.apache", "a"), decide, recorder);
+        Assertions.assertEquals(Collections.singletonList("org.apache:a"), decided);
+        Assertions.assertEquals(Arrays.asList("com.plugins:=false", "org.apache:a=true"), recorded);
+    }
+
+    @Test
+    void alternatingPluginGroupsTest() {
+        MetadataVerdicts verdicts = new MetadataVerdicts("test");
+        Object rules = new Object();
+        List<String> computed = new ArrayList<>();
+        Function<Metadata, RemoteRepositoryFilter.Result> counting = m -> {
+            if (Recheck.active()) {
+                computed.add(m.getGroupId());
+            }
+            return decide.apply(m);
+        };
+        List<String> first = Collections.singletonList("org.apache.plugins");
+        List<String> second = Collections.singletonList("com.plugins");
+        for (int i = 0; i < 3; i++) {
+            verdicts.accept(central, rules, first, g("org.apache.plugins"), counting, recorder);
+            verdicts.accept(central, rules, second, g("com.plugins"), counting, recorder);
+        }
+        // sessions having different plugin groups take turns: each plugin groups are computed once
+        Assertions.assertEquals(Arrays.asList("org.apache.plugins", "com.plugins"), computed);
+    }
+
+    @Test
+    void evictionTest() {
+        MetadataVerdicts verdicts = new MetadataVerdicts("test");
+        Object rules = new Object();
+        List<String> plugins = Collections.emptyList();
+        verdicts.accept(central, rules, plugins, ga("org.apache", "a"), decide, recorder);
+        for (int i = 0; i < 5000; i++) {
+            verdicts.accept(central, rules, plugins, ga("com.foo", "b" + i), decide, recorder);
+            verdicts.accept(central, rules, plugins, ga("org.apache", "a"), decide, recorder);
+        }
+        // full cache evicts least recently used verdicts only: recently used one is kept
+        Assertions.assertEquals(5001, decided.size());
+        Assertions.assertEquals(
+                1, decided.stream().filter("org.apache:a"::equals).count());
+    }
+
+    @Test
+    void rulesChangedTest() {
+        MetadataVerdicts verdicts = new MetadataVerdicts("test");
+        List<String> plugins = Collections.emptyList();
+        verdicts.accept(central, new Object(), plugins, ga("org.apache", "a"), decide, recorder);
+        verdicts.accept(central, new Object(), plugins, ga("org.apache", "a"), decide, recorder);
+        Assertions.assertEquals(Arrays.asList("org.apache:a", "org.apache:a"), decided);
+        Assertions.assertEquals(Collections.emptyList(), recorded);
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.GroupTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.PrefixTree;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RuleDaemonTest {
+    private static final List<String> PREFIXES =
+            Arrays.asList("/org/apache/maven", "/org/{codehaus|mojohaus}/mojo", "/eu/maveniverse");
+
+    private static final List<String> GROUP_IDS = Arrays.asList("org.apache", "!org.apache.internal", "=com.foo");
+
+    private final RemoteRepository central =
+            new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2/").build();
+
+    @TempDir
+    Path directory;
+
+    private Path localRepository;
+
+    private Path elsewhere;
+
+    private Path basedir;
+
+    private RuleDaemon daemon;
+
+    private RuleDaemonClient client;
+
+    @BeforeEach
+    void start() throws IOException {
+        localRepository = directory.resolve("repository");
+        elsewhere = Files.createDirectories(directory.resolve("elsewhere"));
+        basedir = localRepository.resolve(RemoteRepositoryFilterSourceSupport.LOCAL_REPO_PREFIX_DIR);
+        daemon = new RuleDaemon(0, basedir, localRepository, 4, 500);
+        Thread thread = new Thread(() -> {
+            try {
+                daemon.serve();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        client = new RuleDaemonClient(daemon.port(), RuleDaemon.tokenFile(basedir, daemon.port()), 5000, 16);
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        daemon.close();
+    }
+
+    private static Path write(Path file, List<String> lines) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static List<String[]> coordinates() {
+        List<String[]> coordinates = new ArrayList<>();
+        for (String groupId : Arrays.asList("org.apache.maven", "org.apache.foo", "org.codehaus", "eu.maveniverse")) {
+            for (String artifactId : Arrays.asList("", "mojo", "heimdall")) {
+                coordinates.add(new String[] {groupId, artifactId, "1.0"});
+            }
+        }
+        return coordinates;
+    }
+
+    private static List<String> groupIds() {
+        return Arrays.asList(
+                "com.foo", "com.foo.bar", "org.apache", "org.apache.internal", "org.apache.maven", "org.codehaus");
+    }
+
+    private static void assertSameAnswers(PrefixTree expected, PrefixTree actual) {
+        List<String[]> coordinates = coordinates();
+        Boolean[] batch = actual.acceptedCoordinates(coordinates);
+        for (int i = 0; i < batch.length; i++) {
+            String[] c = coordinates.get(i);
+            String message = String.join(":", c);
+            Assertions.assertEquals(expected.acceptedCoordinates(c[0], c[1], c[2]), batch[i], message);
+            Assertions.assertEquals(
+                    expected.acceptedCoordinates(c[0], c[1], c[2]), actual.acceptedCoordinates(c[0], c[1], c[2]));
+        }
+        for (String path : Arrays.asList("/org/apache/maven/foo", "/org/mojohaus/mojo/foo", "/org/apache/foo")) {
+            Assertions.assertEquals(expected.acceptedPath(path), actual.acceptedPath(path), path);
+        }
+    }
+
+    private static void assertSameAnswers(GroupTree expected, GroupTree actual) {
+        List<String> groupIds = groupIds();
+        boolean[] batch = actual.acceptedGroupIds(groupIds);
+        for (int i = 0; i < batch.length; i++) {
+            Assertions.assertEquals(expected.acceptedGroupId(groupIds.get(i)), batch[i], groupIds.get(i));
+            Assertions.assertEquals(expected.acceptedGroupId(groupIds.get(i)), actual.acceptedGroupId(groupIds.get(i)));
+        }
+    }
+
+    private static PrefixTree prefixTree() {
+        PrefixTree prefixTree = new PrefixTree("");
+        prefixTree.loadNodes(PREFIXES.stream());
+        return prefixTree;
+    }
+
+    private static GroupTree groupTree() {
+        GroupTree groupTree = new GroupTree("");
+        groupTree.loadNodes(GROUP_IDS.stream());
+        return groupTree;
+    }
+
+    @Test
+    void roundTripTest() throws IOException {
+        Path prefixes = write(basedir.resolve("prefixes-central.txt"), PREFIXES);
+        Path groupIds = write(basedir.resolve("groupId-central.txt"), GROUP_IDS);
+
+        Optional<PrefixTree> prefixTree =
+                client.prefixTree(central, RuleContent.ofPath(prefixes, false), e -> PrefixTree.SENTINEL);
+        Assertions.assertTrue(prefixTree.isPresent());
+        // twice: second answers are from local verdict cache
+        assertSameAnswers(prefixTree(), prefixTree.get());
+        assertSameAnswers(prefixTree(), prefixTree.get());
+
+        Optional<GroupTree> groupTree =
+                client.groupTree(central, RuleContent.ofPath(groupIds, false), e -> GroupTree.SENTINEL);
+        Assertions.assertTrue(groupTree.isPresent());
+        assertSameAnswers(groupTree(), groupTree.get());
+        assertSameAnswers(groupTree(), groupTree.get());
+    }
+
+    @Test
+    void localRepositoryServedTest() throws IOException {
+        // prefixes published by remote repository, cached in local repository
+        Path prefixes = write(localRepository.resolve(".meta").resolve("prefixes-central.txt"), PREFIXES);
+        Optional<PrefixTree> prefixTree =
+                client.prefixTree(central, RuleContent.ofPath(prefixes, false), e -> PrefixTree.SENTINEL);
+        Assertions.assertTrue(prefixTree.isPresent());
+        assertSameAnswers(prefixTree(), prefixTree.get());
+    }
+
+    @Test
+    void outsideNotServedTest() throws IOException {
+        Path prefixes = write(elsewhere.resolve("prefixes-central.txt"), PREFIXES);
+        Assertions.assertFalse(client.prefixTree(central, RuleContent.ofPath(prefixes, false), e -> PrefixTree.SENTINEL)
+                .isPresent());
+        // path traversal out of basedir
+        Path traversal = basedir.resolve(basedir.relativize(prefixes));
+        Assertions.assertTrue(Files.isRegularFile(traversal));
+        Assertions.assertFalse(
+                client.prefixTree(central, RuleContent.ofPath(traversal, false), e -> PrefixTree.SENTINEL)
+                        .isPresent());
+    }
+
+    @Test
+    void invalidTokenTest() throws IOException {
+        Path prefixes = write(basedir.resolve("prefixes-central.txt"), PREFIXES);
+        Path tokenFile = write(directory.resolve("invalid.token"), Collections.singletonList("invalid"));
+        RuleDaemonClient invalid = new RuleDaemonClient(daemon.port(), tokenFile, 5000, 16);
+        Assertions.assertFalse(
+                invalid.prefixTree(central, RuleContent.ofPath(prefixes, false), e -> PrefixTree.SENTINEL)
+                        .isPresent());
+        // but valid token is accepted
+        Assertions.assertTrue(client.prefixTree(central, RuleContent.ofPath(prefixes, false), e -> PrefixTree.SENTINEL)
+                .isPresent());
+    }
+
+    @Test
+    void idleClosedTest() throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.port())) {
+            socket.setSoTimeout(5000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeUTF(new String(
+                    Files.readAllBytes(RuleDaemon.tokenFile(basedir, daemon.port())), StandardCharsets.UTF_8));
+            out.flush();
+            // idle longer than timeout of daemon: closed
+            long start = System.currentTimeMillis();
+            Assertions.assertEquals(-1, socket.getInputStream().read());
+            Assertions.assertTrue(System.currentTimeMillis() - start >= 400);
+        }
+    }
+
+    @Test
+    void pooledConnectionRetriedTest() throws IOException, InterruptedException {
+        Path groupIds = write(basedir.resolve("groupId-central.txt"), GROUP_IDS);
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        GroupTree groupTree = client.groupTree(central, RuleContent.ofPath(groupIds, false), e -> {
+                    failed.set(e);
+                    return GroupTree.SENTINEL;
+                })
+                .orElseThrow(AssertionError::new);
+        // pooled connection is closed by daemon as idle
+        Thread.sleep(1100);
+        // but daemon is still used: rules changed meanwhile are seen
+        Assertions.assertFalse(groupTree().acceptedGroupId("com.bar"));
+        write(groupIds, Collections.singletonList("com.bar"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("com.bar"));
+        Assertions.assertNull(failed.get());
+    }
+
+    @Test
+    void fallbackTest() throws IOException {
+        Path prefixes = write(basedir.resolve("prefixes-central.txt"), PREFIXES);
+        Path groupIds = write(basedir.resolve("groupId-central.txt"), GROUP_IDS);
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        PrefixTree prefixTree = client.prefixTree(central, RuleContent.ofPath(prefixes, false), e -> {
+                    failed.set(e);
+                    return PrefixTree.SENTINEL;
+                })
+                .orElseThrow(AssertionError::new);
+        GroupTree groupTree = client.groupTree(central, RuleContent.ofPath(groupIds, false), e -> {
+                    failed.set(e);
+                    return GroupTree.SENTINEL;
+                })
+                .orElseThrow(AssertionError::new);
+
+        // daemon goes away: rules are loaded in process
+        daemon.close();
+        assertSameAnswers(prefixTree(), prefixTree);
+        assertSameAnswers(groupTree(), groupTree);
+        Assertions.assertNull(failed.get());
+
+        // daemon is not reachable for new rules
+        Assertions.assertFalse(client.prefixTree(central, RuleContent.ofPath(prefixes, false), e -> PrefixTree.SENTINEL)
+                .isPresent());
+    }
+
+    @Test
+    void fallbackFailedTest() throws IOException {
+        Path groupIds = write(basedir.resolve("groupId-central.txt"), GROUP_IDS);
+        AtomicReference<Throwable> failed = new AtomicReference<>();
+        GroupTree groupTree = client.groupTree(central, RuleContent.ofPath(groupIds, false), e -> {
+                    failed.set(e);
+                    return GroupTree.SENTINEL;
+                })
+                .orElseThrow(AssertionError::new);
+
+        // daemon goes away, and rules cannot be loaded in process: failure policy applies (sentinel accepts all)
+        daemon.close();
+        Files.delete(groupIds);
+        Assertions.assertTrue(groupTree.acceptedGroupId("com.bar"));
+        for (boolean accepted : groupTree.acceptedGroupIds(groupIds())) {
+            Assertions.assertTrue(accepted);
+        }
+        Assertions.assertNotNull(failed.get());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RuleLoaderTest {
+    private static final String SENTINEL = "sentinel";
+
+    private static final String FAILED = "failed";
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final RemoteRepository central =
+            new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2/").build();
+
+    private final RemoteRepository other =
+            new RemoteRepository.Builder("other", "default", "https://example.com/maven2/").build();
+
+    private static RuleLoader.FailurePolicy<String> policy(long backoff) {
+        return new RuleLoader.FailurePolicy<>("test", backoff, backoff, FAILED);
+    }
+
+    private static Function<RemoteRepository, CompletableFuture<String>> loader(
+            AtomicInteger loads, String... results) {
+        return r -> {
+            int load = loads.getAndIncrement();
+            String result = results[Math.min(load, results.length - 1)];
+            CompletableFuture<String> future = new CompletableFuture<>();
+            if (result == null) {
+                future.completeExceptionally(new IllegalStateException("load " + load + " failed"));
+            } else {
+                future.complete(result);
+            }
+            return future;
+        };
+    }
+
+    @Test
+    void cachedTest() {
+        RuleLoader<String> rules = new RuleLoader<>(SENTINEL);
+        AtomicInteger loads = new AtomicInteger();
+        Assertions.assertEquals("rules", rules.get(central, loader(loads, "rules"), () -> policy(DAY)));
+        Assertions.assertEquals("rules", rules.get(central, loader(loads, "other"), () -> policy(DAY)));
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void backoffTest() {
+        RuleLoader<String> rules = new RuleLoader<>(SENTINEL);
+        AtomicInteger loads = new AtomicInteger();
+        Function<RemoteRepository, CompletableFuture<String>> loader = loader(loads, null, "rules");
+        Assertions.assertEquals(FAILED, rules.get(central, loader, () -> policy(DAY)));
+        // backing off: fallback is served without loading, and preload does not start load either
+        Assertions.assertEquals(FAILED, rules.get(central, loader, () -> policy(DAY)));
+        rules.preload(central, loader);
+        Assertions.assertEquals(FAILED, rules.get(central, loader, () -> policy(DAY)));
+        Assertions.assertEquals(1, loads.get());
+    }
+
+    @Test
+    void retryTest() {
+        RuleLoader<String> rules = new RuleLoader<>(SENTINEL);
+        AtomicInteger loads = new AtomicInteger();
+        Function<RemoteRepository, CompletableFuture<String>> loader = loader(loads, null, "rules");
+        Assertions.assertEquals(FAILED, rules.get(central, loader, () -> policy(0L)));
+        // no backoff: retried on next get, and successful load is cached
+        Assertions.assertEquals("rules", rules.get(central, loader, () -> policy(0L)));
+        Assertions.assertEquals("rules", rules.get(central, loader, () -> policy(0L)));
+        Assertions.assertEquals(2, loads.get());
+    }
+
+    @Test
+    void sentinelOnLoaderThreadTest() {
+        RuleLoader<String> rules = new RuleLoader<>(SENTINEL);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        rules.preload(central, r -> pending);
+        Assertions.assertEquals(
+                SENTINEL,
+                RuleLoader.supplyAsync(() -> rules.get(central, r -> pending, () -> policy(DAY)))
+                        .join());
+        pending.complete("rules");
+        Assertions.assertEquals(
+                "rules",
+                RuleLoader.supplyAsync(() -> rules.get(central, r -> pending, () -> policy(DAY)))
+                        .join());
+    }
+
+    @Test
+    void sentinelOfLoadedRepositoryTest() {
+        RuleLoader<String> rules = new RuleLoader<>(SENTINEL);
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        rules.preload(central, r -> pending);
+        Assertions.assertEquals(
+                SENTINEL,
+                CompletableFuture.supplyAsync(
+                                () -> rules.get(central, r -> pending, () -> policy(DAY)), RuleLoader.executor(central))
+                        .join());
+        // loader thread of other repository joins the load
+        CompletableFuture<String> joined = CompletableFuture.supplyAsync(
+                () -> rules.get(central, r -> pending, () -> policy(DAY)), RuleLoader.executor(other));
+        Assertions.assertThrows(TimeoutException.class, () -> joined.get(100, TimeUnit.MILLISECONDS));
+        pending.complete("rules");
+        Assertions.assertEquals("rules", joined.join());
+    }
+
+    @Test
+    void awaitCycleTest() throws Exception {
+        RuleLoader<String> rules = new RuleLoader<>(SENTINEL);
+        CompletableFuture<String> centralPending = new CompletableFuture<>();
+        CompletableFuture<String> otherPending = new CompletableFuture<>();
+        // load of central asks for rules of other, and load of other for rules of central: one of them sees sentinel
+        CompletableFuture<String> centralAsks = CompletableFuture.supplyAsync(
+                () -> rules.get(other, r -> otherPending, () -> policy(DAY)), RuleLoader.executor(central));
+        CompletableFuture<String> otherAsks = CompletableFuture.supplyAsync(
+                () -> rules.get(central, r -> centralPending, () -> policy(DAY)), RuleLoader.executor(other));
+        Assertions.assertEquals(
+                SENTINEL, CompletableFuture.anyOf(centralAsks, otherAsks).get(10, TimeUnit.SECONDS));
+        centralPending.complete("central");
+        otherPending.complete("other");
+        // the other one joined the load
+        if (SENTINEL.equals(centralAsks.join())) {
+            Assertions.assertEquals("central", otherAsks.join());
+        } else {
+            Assertions.assertEquals("other", centralAsks.join());
+            Assertions.assertEquals(SENTINEL, otherAsks.join());
+        }
+    }
+
+    @Test
+    void refreshTest() {
+        RuleLoader<String> rules = new RuleLoader<>(SENTINEL);
+        AtomicInteger loads = new AtomicInteger();
+        Function<RemoteRepository, CompletableFuture<String>> loader = loader(loads, "rules", null, "reloaded");
+        Assertions.assertEquals("rules", rules.get(central, loader, () -> policy(0L)));
+        // failed reload keeps serving loaded rules
+        rules.refresh(central, loader);
+        Assertions.assertEquals("rules", rules.get(central, loader, () -> policy(0L)));
+        rules.refresh(central, loader);
+        Assertions.assertEquals("reloaded", rules.get(central, loader, () -> policy(0L)));
+        Assertions.assertEquals(3, loads.get());
+    }
+
+    @Test
+    void invalidateTest() {
+        RuleLoader<String> rules = new RuleLoader<>(SENTINEL);
+        AtomicInteger loads = new AtomicInteger();
+        Function<RemoteRepository, CompletableFuture<String>> loader = loader(loads, "rules", "reloaded");
+        Assertions.assertEquals("rules", rules.get(central, loader, () -> policy(DAY)));
+        Assertions.assertEquals(
+                FAILED, rules.invalidate(central, new IllegalStateException("unusable"), () -> policy(DAY)));
+        Assertions.assertEquals(FAILED, rules.get(central, loader, () -> policy(DAY)));
+        Assertions.assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.util.function.LongConsumer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RuleMemoryTest {
+    @Test
+    void releaseTest() throws InterruptedException {
+        Object tree = new Object();
+        long onHeap = RuleMemory.onHeap();
+        long offHeap = RuleMemory.offHeap();
+        RuleMemory.Ledger ledger = RuleMemory.open();
+        LongConsumer lazy;
+        try {
+            Assertions.assertTrue(RuleMemory.tryReserve(100, Long.MAX_VALUE));
+            RuleMemory.forceReserve(10);
+            RuleMemory.addOffHeap(1000);
+            lazy = RuleMemory.forceReserver();
+            RuleMemory.attach(tree, ledger);
+        } finally {
+            RuleMemory.close(ledger);
+        }
+        // lazily loaded parts are accounted to tree from any thread
+        Thread thread = new Thread(() -> lazy.accept(1));
+        thread.start();
+        thread.join();
+        Assertions.assertEquals(onHeap + 111, RuleMemory.onHeap());
+        Assertions.assertEquals(offHeap + 1000, RuleMemory.offHeap());
+
+        // reservations out of ledger are not accounted to tree
+        RuleMemory.forceReserve(5);
+        RuleMemory.release(tree);
+        Assertions.assertEquals(onHeap + 5, RuleMemory.onHeap());
+        Assertions.assertEquals(offHeap, RuleMemory.offHeap());
+        // released once
+        RuleMemory.release(tree);
+        Assertions.assertEquals(onHeap + 5, RuleMemory.onHeap());
+    }
+}
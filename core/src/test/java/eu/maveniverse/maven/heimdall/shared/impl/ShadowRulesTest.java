@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.Session;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.heimdall.shared.SessionUtils;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ShadowRulesTest {
+    private final RemoteRepository central =
+            new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2/").build();
+
+    private static Path write(Path file, String... lines) throws IOException {
+        Files.createDirectories(file.getParent());
+        return Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void disagreementTest(@TempDir Path directory) throws Exception {
+        Path basedir = directory.resolve("heimdall");
+        Path rules = directory.resolve("rules");
+        // candidate rules drop "com.foo" and add "org.codehaus"
+        write(rules.resolve("groupId-central.txt"), "org.apache", "com.foo");
+        write(basedir.resolve("shadow").resolve("groupId-central.txt"), "org.apache", "org.codehaus");
+
+        DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+        LocalRepository localRepository =
+                new LocalRepository(directory.resolve("repository").toFile());
+        // only the local repository itself is used
+        session.setLocalRepositoryManager((LocalRepositoryManager) Proxy.newProxyInstance(
+                LocalRepositoryManager.class.getClassLoader(),
+                new Class<?>[] {LocalRepositoryManager.class},
+                (proxy, method, args) -> {
+                    if ("getRepository".equals(method.getName())) {
+                        return localRepository;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+        session.setUserProperty(ShadowRules.CONFIG_ENABLED, "true");
+        session.setConfigProperty(
+                "heimdall." + GroupIdRemoteRepositoryFilterSource.NAME + ".basedir", rules.toString());
+        Session heimdallSession = SessionUtils.lazyInit(
+                session,
+                () -> new DefaultSession(SessionConfig.defaults(session, Collections.singletonList(central))
+                        .basedir(basedir)
+                        .build()));
+
+        RemoteRepositoryFilter filter = new GroupIdRemoteRepositoryFilterSource(
+                        Collections.singletonList(new FileRuleSource()))
+                .getRemoteRepositoryFilter(session);
+        // primary verdicts are returned, whatever candidate rules say
+        Assertions.assertTrue(filter.acceptArtifact(central, new DefaultArtifact("org.apache:a:1.0"))
+                .isAccepted());
+        Assertions.assertTrue(filter.acceptArtifact(central, new DefaultArtifact("com.foo:b:1.0"))
+                .isAccepted());
+        Assertions.assertFalse(filter.acceptArtifact(central, new DefaultArtifact("org.codehaus:c:1.0"))
+                .isAccepted());
+        Assertions.assertFalse(filter.acceptArtifact(central, new DefaultArtifact("org.other:d:1.0"))
+                .isAccepted());
+
+        ShadowRules shadow = ShadowRules.mayGetShadow(heimdallSession);
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (shadow.evaluated() < 4) {
+            Assertions.assertTrue(System.currentTimeMillis() < deadline, "decisions not evaluated");
+            Thread.sleep(10);
+        }
+        heimdallSession.close();
+
+        List<Path> reports;
+        try (Stream<Path> files = Files.list(basedir.resolve("shadow"))) {
+            reports = files.filter(p -> p.getFileName().toString().startsWith("report-"))
+                    .collect(Collectors.toList());
+        }
+        Assertions.assertEquals(1, reports.size());
+        List<String> report = Files.readAllLines(reports.get(0), StandardCharsets.UTF_8);
+        Assertions.assertEquals("# 4 decisions evaluated, 0 dropped, 2 disagreements", report.get(1));
+        // only the mismatches are reported
+        Assertions.assertEquals(
+                Arrays.asList("groupId central stricter com.foo 1", "groupId central looser org.codehaus 1"),
+                report.subList(3, report.size()));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.RuleContent;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SharedRulesTest {
+    private static final RemoteRepository CENTRAL =
+            new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2/").build();
+
+    private static final String FILTER = PrefixesRemoteRepositoryFilterSource.NAME;
+
+    private static RepositorySystemSession session(Path basedir) {
+        DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+        LocalRepository localRepository = new LocalRepository(basedir.toFile());
+        // only the local repository itself is used
+        session.setLocalRepositoryManager((LocalRepositoryManager) Proxy.newProxyInstance(
+                LocalRepositoryManager.class.getClassLoader(),
+                new Class<?>[] {LocalRepositoryManager.class},
+                (proxy, method, args) -> {
+                    if ("getRepository".equals(method.getName())) {
+                        return localRepository;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }));
+        session.setConfigProperty("heimdall." + FILTER + ".basedir", basedir.toString());
+        session.setConfigProperty(SharedRules.CONFIG_ENABLED, "true");
+        session.setConfigProperty(SharedRules.CONFIG_LOCK_TIMEOUT, "30000");
+        return session;
+    }
+
+    private static Path textFile(Path basedir) {
+        return basedir.resolve("prefixes-central.txt");
+    }
+
+    private static byte[] compile(RuleContent text) throws IOException {
+        return Files.readAllBytes(text.path().orElseThrow(AssertionError::new));
+    }
+
+    /**
+     * The other process: "fetches" prefixes and compiles their snapshot holding the lock, slowly, once asked to.
+     */
+    public static void main(String[] args) throws Exception {
+        Path basedir = Paths.get(args[0]);
+        Path locked = basedir.resolve("locked");
+        Path go = basedir.resolve("go");
+        SharedRules.locked(session(basedir), FILTER, CENTRAL, () -> {
+            Files.createFile(locked);
+            try {
+                long deadline = System.currentTimeMillis() + 30000L;
+                while (!Files.exists(go) && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            Files.write(textFile(basedir), Arrays.asList("/org/fetched"), StandardCharsets.UTF_8);
+            return SharedRules.snapshot(
+                    session(basedir),
+                    FILTER,
+                    CENTRAL,
+                    RuleContent.ofPath(textFile(basedir), false),
+                    SharedRulesTest::compile);
+        });
+    }
+
+    @Test
+    void crossProcessTest(@TempDir Path basedir) throws Exception {
+        Process other = new ProcessBuilder(
+                        Paths.get(System.getProperty("java.home"), "bin", "java")
+                                .toString(),
+                        "-cp",
+                        System.getProperty("java.class.path"),
+                        SharedRulesTest.class.getName(),
+                        basedir.toString())
+                .inheritIO()
+                .start();
+        try {
+            long deadline = System.currentTimeMillis() + 30000L;
+            while (!Files.exists(basedir.resolve("locked"))) {
+                Assertions.assertTrue(other.isAlive(), "other process exited");
+                Assertions.assertTrue(System.currentTimeMillis() < deadline, "other process did not lock");
+                Thread.sleep(10);
+            }
+            Files.createFile(basedir.resolve("go"));
+
+            // this process waits for other: finds prefixes fetched, and snapshot compiled from them
+            List<String> compiled = new ArrayList<>();
+            RuleContent snapshot = SharedRules.locked(session(basedir), FILTER, CENTRAL, () -> {
+                Assertions.assertTrue(Files.exists(textFile(basedir)));
+                return SharedRules.snapshot(
+                        session(basedir), FILTER, CENTRAL, RuleContent.ofPath(textFile(basedir), false), t -> {
+                            compiled.add(t.origin());
+                            return compile(t);
+                        });
+            });
+            Assertions.assertTrue(compiled.isEmpty(), "snapshot compiled again: " + compiled);
+            Assertions.assertTrue(snapshot.compiled());
+            Assertions.assertEquals("/org/fetched", new String(compile(snapshot), StandardCharsets.UTF_8).trim());
+
+            Assertions.assertTrue(other.waitFor(30, TimeUnit.SECONDS));
+            Assertions.assertEquals(0, other.exitValue());
+        } finally {
+            other.destroyForcibly();
+        }
+    }
+
+    @Test
+    void staleSnapshotTest(@TempDir Path basedir) throws IOException {
+        List<String> compiled = new ArrayList<>();
+        SharedRules.Compiler compiler = t -> {
+            compiled.add(new String(compile(t), StandardCharsets.UTF_8).trim());
+            return compile(t);
+        };
+        Path text = Files.write(textFile(basedir), Arrays.asList("/org/a"), StandardCharsets.UTF_8);
+        RuleContent first =
+                SharedRules.snapshot(session(basedir), FILTER, CENTRAL, RuleContent.ofPath(text, false), compiler);
+        // other session (as if of other process) uses snapshot as is
+        RuleContent second =
+                SharedRules.snapshot(session(basedir), FILTER, CENTRAL, RuleContent.ofPath(text, false), compiler);
+        Assertions.assertEquals(first.path(), second.path());
+        Assertions.assertEquals(Arrays.asList("/org/a"), compiled);
+
+        // text prefixes changed: snapshot is stale, and recompiled
+        Files.write(text, Arrays.asList("/org/a", "/org/b"), StandardCharsets.UTF_8);
+        RuleContent third =
+                SharedRules.snapshot(session(basedir), FILTER, CENTRAL, RuleContent.ofPath(text, false), compiler);
+        Assertions.assertEquals(Arrays.asList("/org/a", "/org/a\n/org/b"), compiled);
+        Assertions.assertEquals("/org/a\n/org/b", new String(compile(third), StandardCharsets.UTF_8).trim());
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WastedRequestAnalyzerTest {
+    @Test
+    void suggestionsTest(@TempDir Path directory) throws IOException {
+        WastedRequestAnalyzer analyzer = new WastedRequestAnalyzer();
+        analyzer.served("central", "org.apache", "/org/apache/a");
+        analyzer.served("central", "org.apache.maven", "/org/apache/maven/b");
+        analyzer.missed("central", "com.foo", "/com/foo/x", 1000L);
+        analyzer.missed("central", "com.foo", "/com/foo/x", 1000L);
+        // served group, but missed artifact: prefixes would prevent it, groupIds would not
+        analyzer.missed("central", "org.apache", "/org/apache/c", 1000L);
+        // no rule prevents it
+        analyzer.missed("central", null, null, 1000L);
+        analyzer.report(directory);
+
+        Assertions.assertEquals(
+                Arrays.asList(
+                        "# Heimdall suggested rules for remote repository central",
+                        "# Would have prevented 2 of 4 not found requests; review before use",
+                        "org.apache",
+                        "org.apache.maven"),
+                Files.readAllLines(directory.resolve("groupId-central.txt"), StandardCharsets.UTF_8));
+        Assertions.assertEquals(
+                Arrays.asList(
+                        "# Heimdall suggested rules for remote repository central",
+                        "# Would have prevented 3 of 4 not found requests; review before use",
+                        "/org/apache/a",
+                        "/org/apache/maven/b"),
+                Files.readAllLines(directory.resolve("prefixes-central.txt"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void nothingPreventedTest(@TempDir Path directory) throws IOException {
+        WastedRequestAnalyzer analyzer = new WastedRequestAnalyzer();
+        // failures are reported, but no rule prevents them
+        analyzer.served("central", "org.apache", "/org/apache/a");
+        analyzer.failed("central", 1000L);
+        analyzer.missed("central", "org.apache", null, 1000L);
+        // served only: nothing wasted
+        analyzer.served("other", "com.foo", "/com/foo/x");
+        analyzer.report(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            Assertions.assertEquals(0L, files.count());
+        }
+    }
+
+    @Test
+    void durationTest() {
+        WastedRequestAnalyzer analyzer = new WastedRequestAnalyzer();
+        Assertions.assertEquals(0L, analyzer.finished("central:org.apache:a:jar:1.0"));
+        analyzer.started("central:org.apache:a:jar:1.0");
+        Assertions.assertTrue(analyzer.finished("central:org.apache:a:jar:1.0") >= 0L);
+        // finished once
+        Assertions.assertEquals(0L, analyzer.finished("central:org.apache:a:jar:1.0"));
+    }
+}
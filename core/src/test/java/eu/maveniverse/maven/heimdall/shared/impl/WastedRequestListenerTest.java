@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl;
+
+import eu.maveniverse.maven.heimdall.shared.Session;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.heimdall.shared.SessionUtils;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.metadata.DefaultMetadata;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
+import org.eclipse.aether.transfer.ArtifactNotFoundException;
+import org.eclipse.aether.transfer.ArtifactTransferException;
+import org.eclipse.aether.transfer.MetadataNotFoundException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WastedRequestListenerTest {
+    private final RemoteRepository central =
+            new RemoteRepository.Builder("central", "default", "https://repo.maven.apache.org/maven2/").build();
+
+    private final RemoteRepository other =
+            new RemoteRepository.Builder("other", "default", "https://example.com/maven2/").build();
+
+    /**
+     * Filters out "com.filtered" group: resolver reports these as not found, too.
+     */
+    private final RemoteRepositoryFilter filter = new RemoteRepositoryFilter() {
+        @Override
+        public Result acceptArtifact(RemoteRepository remoteRepository, Artifact artifact) {
+            return new RemoteRepositoryFilterSourceSupport.SimpleResult(
+                    !"com.filtered".equals(artifact.getGroupId()), "test");
+        }
+
+        @Override
+        public Result acceptMetadata(RemoteRepository remoteRepository, Metadata metadata) {
+            return new RemoteRepositoryFilterSourceSupport.SimpleResult(
+                    !"com.filtered".equals(metadata.getGroupId()), "test");
+        }
+    };
+
+    private final WastedRequestListener listener = new WastedRequestListener(() -> session -> filter);
+
+    private DefaultRepositorySystemSession session;
+
+    private void downloaded(RemoteRepository remoteRepository, Artifact artifact, Exception exception) {
+        listener.artifactDownloading(
+                new RepositoryEvent.Builder(session, RepositoryEvent.EventType.ARTIFACT_DOWNLOADING)
+                        .setRepository(remoteRepository)
+                        .setArtifact(artifact)
+                        .build());
+        listener.artifactDownloaded(new RepositoryEvent.Builder(session, RepositoryEvent.EventType.ARTIFACT_DOWNLOADED)
+                .setRepository(remoteRepository)
+                .setArtifact(artifact)
+                .setException(exception)
+                .build());
+    }
+
+    private void downloaded(RemoteRepository remoteRepository, Metadata metadata, Exception exception) {
+        listener.metadataDownloading(
+                new RepositoryEvent.Builder(session, RepositoryEvent.EventType.METADATA_DOWNLOADING)
+                        .setRepository(remoteRepository)
+                        .setMetadata(metadata)
+                        .build());
+        listener.metadataDownloaded(new RepositoryEvent.Builder(session, RepositoryEvent.EventType.METADATA_DOWNLOADED)
+                .setRepository(remoteRepository)
+                .setMetadata(metadata)
+                .setException(exception)
+                .build());
+    }
+
+    private static Metadata metadata(String groupId, String artifactId) {
+        return new DefaultMetadata(groupId, artifactId, "maven-metadata.xml", Metadata.Nature.RELEASE_OR_SNAPSHOT);
+    }
+
+    @Test
+    void transferEventsTest(@TempDir Path basedir) throws Exception {
+        session = new DefaultRepositorySystemSession();
+        session.setUserProperty(WastedRequestAnalyzer.CONFIG_ENABLED, "true");
+        Session heimdallSession = SessionUtils.lazyInit(
+                session,
+                () -> new DefaultSession(SessionConfig.defaults(session, Arrays.asList(central, other))
+                        .basedir(basedir)
+                        .build()));
+
+        Artifact a = new DefaultArtifact("org.apache:a:1.0");
+        Artifact x = new DefaultArtifact("com.foo:x:1.0");
+        Artifact y = new DefaultArtifact("com.filtered:y:1.0");
+        downloaded(central, a, null);
+        downloaded(central, metadata("org.apache.maven", ""), null);
+        downloaded(central, x, new ArtifactNotFoundException(x, central));
+        downloaded(central, metadata("com.foo", "x"), new MetadataNotFoundException(metadata("com.foo", "x"), central));
+        // filtered out: never hit the network
+        downloaded(central, y, new ArtifactNotFoundException(y, central));
+        // root metadata: no rule prevents it
+        downloaded(central, metadata("", ""), new MetadataNotFoundException(metadata("", ""), central));
+        // failed, not missed
+        downloaded(central, a, new ArtifactTransferException(a, central, "connection reset"));
+        // served by other repository
+        downloaded(other, x, null);
+        heimdallSession.close();
+
+        Path suggestions = basedir.resolve("suggestions");
+        try (Stream<Path> files = Files.list(suggestions)) {
+            Assertions.assertEquals(
+                    Arrays.asList("groupId-central.txt", "prefixes-central.txt"),
+                    files.map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+        Assertions.assertEquals(
+                Arrays.asList(
+                        "# Heimdall suggested rules for remote repository central",
+                        "# Would have prevented 2 of 3 not found requests; review before use",
+                        "org.apache",
+                        "org.apache.maven"),
+                Files.readAllLines(suggestions.resolve("groupId-central.txt"), StandardCharsets.UTF_8));
+        List<String> prefixes = Files.readAllLines(suggestions.resolve("prefixes-central.txt"), StandardCharsets.UTF_8);
+        Assertions.assertEquals("# Would have prevented 2 of 3 not found requests; review before use", prefixes.get(1));
+        Assertions.assertEquals(Arrays.asList("/org/apache/a", "/org/apache/maven"), prefixes.subList(2, 4));
+    }
+
+    @Test
+    void disabledTest(@TempDir Path basedir) {
+        session = new DefaultRepositorySystemSession();
+        // no Heimdall session: events are ignored
+        downloaded(central, new DefaultArtifact("com.foo:x:1.0"), null);
+        // Heimdall session, but analyzer not enabled: no analyzer is created
+        SessionUtils.lazyInit(
+                session,
+                () -> new DefaultSession(SessionConfig.defaults(session, Collections.singletonList(central))
+                        .basedir(basedir)
+                        .build()));
+        Artifact x = new DefaultArtifact("com.foo:x:1.0");
+        downloaded(central, x, new ArtifactNotFoundException(x, central));
+        Assertions.assertNull(session.getData().get(WastedRequestAnalyzer.class));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ArtifactTreeTest {
+    @Test
+    void simpleTest() {
+        ArtifactTree artifactTree = new ArtifactTree();
+        int ruleCount = artifactTree.loadNodes(Stream.of(
+                "# some comment", // comment; ignored
+                "com.acme:special-lib", // only com.acme:special-lib (any V, C and E)
+                "", // empty line; ignored
+                "org.foo:*", // all artifacts of org.foo
+                "!org.foo:bar:[1.0,2.0)::jar", // but not main JARs of org.foo:bar 1.x
+                "!*:*:*:sources", // never sources
+                "!*:*:*:javadoc")); // never javadoc
+        Assertions.assertEquals(5, ruleCount);
+
+        artifactTree.dump("");
+
+        Assertions.assertTrue(artifactTree.acceptedArtifact("com.acme", "special-lib", "1.0", "", "jar"));
+        Assertions.assertTrue(artifactTree.acceptedArtifact("com.acme", "special-lib", "1.0", "", "pom"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("com.acme", "special-lib", "1.0", "sources", "jar"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("com.acme", "other-lib", "1.0", "", "jar"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("com.acme.sub", "special-lib", "1.0", "", "jar"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("com", "special-lib", "1.0", "", "jar"));
+
+        Assertions.assertTrue(artifactTree.acceptedArtifact("org.foo", "baz", "1.0", "", "jar"));
+        Assertions.assertTrue(artifactTree.acceptedArtifact("org.foo", "bar", "2.0", "", "jar"));
+        Assertions.assertTrue(artifactTree.acceptedArtifact("org.foo", "bar", "1.5", "", "pom"));
+        Assertions.assertTrue(artifactTree.acceptedArtifact("org.foo", "bar", "1.5", "tests", "jar"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("org.foo", "bar", "1.5", "", "jar"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("org.foo", "bar", "1.5-SNAPSHOT", "", "jar"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("org.foo", "bar", "2.0", "javadoc", "jar"));
+
+        Assertions.assertTrue(artifactTree.acceptedMetadata("", ""));
+        Assertions.assertTrue(artifactTree.acceptedMetadata("com.acme", ""));
+        Assertions.assertTrue(artifactTree.acceptedMetadata("com.acme", "special-lib"));
+        Assertions.assertFalse(artifactTree.acceptedMetadata("com.acme", "other-lib"));
+        Assertions.assertTrue(artifactTree.acceptedMetadata("org.foo", "bar"));
+        Assertions.assertFalse(artifactTree.acceptedMetadata("org.bar", ""));
+    }
+
+    @Test
+    void exclusionsOnlyTest() {
+        ArtifactTree artifactTree = new ArtifactTree();
+        int ruleCount = artifactTree.loadNodes(Stream.of("!*:*:*:sources", "!org.foo:*"));
+        Assertions.assertEquals(2, ruleCount);
+
+        Assertions.assertTrue(artifactTree.acceptedArtifact("com.acme", "lib", "1.0", "", "jar"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("com.acme", "lib", "1.0", "sources", "jar"));
+        Assertions.assertFalse(artifactTree.acceptedArtifact("org.foo", "lib", "1.0", "", "jar"));
+
+        Assertions.assertTrue(artifactTree.acceptedMetadata("com.acme", ""));
+        Assertions.assertTrue(artifactTree.acceptedMetadata("com.acme", "lib"));
+        Assertions.assertFalse(artifactTree.acceptedMetadata("org.foo", ""));
+        Assertions.assertFalse(artifactTree.acceptedMetadata("org.foo", "lib"));
+    }
+
+    @Test
+    void invalidTest() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class, () -> new ArtifactTree().loadNodes(Stream.of("com.acme")));
+        Assertions.assertThrows(
+                IllegalArgumentException.class, () -> new ArtifactTree().loadNodes(Stream.of("com.acme:lib:[1.0")));
+        Assertions.assertThrows(
+                IllegalArgumentException.class, () -> new ArtifactTree().loadNodes(Stream.of("com.*:lib")));
+    }
+}
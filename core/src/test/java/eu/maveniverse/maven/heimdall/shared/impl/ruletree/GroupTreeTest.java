@@ -7,6 +7,9 @@
  */
 package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -49,4 +52,181 @@ public class GroupTreeTest {
         Assertions.assertFalse(groupTree.acceptedGroupId("com.foo.bar"));
         Assertions.assertTrue(groupTree.acceptedGroupId("com.foo.bar.maven"));
     }
+
+    @Test
+    void patternTest() {
+        GroupTree groupTree = new GroupTree("test");
+        int ruleCount = groupTree.loadNodes(Stream.of(
+                "com.*.internal", // com.<anything>.internal and everything below
+                "!com.acme.internal", // but not com.acme.internal
+                "org.{apache|codehaus}.mojo", // opt-in regular expression
+                "io.netty",
+                "!io.*", // plain element have precedence over pattern
+                "net.foo-*",
+                "!net.*-bar")); // exclusion wins over allow
+        Assertions.assertEquals(7, ruleCount);
+
+        groupTree.dump("");
+
+        Assertions.assertFalse(groupTree.acceptedGroupId("com"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("com.foo"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("com.foo.internal"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("com.foo.internal.bar"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("com.acme.internal"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("com.acme.internal.bar"));
+
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.apache.mojo"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.codehaus.mojo"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("org.mojohaus.mojo"));
+
+        Assertions.assertTrue(groupTree.acceptedGroupId("io.netty"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("io.vertx"));
+
+        Assertions.assertTrue(groupTree.acceptedGroupId("net.foo-baz"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("net.foo-bar"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("net.bar"));
+    }
+
+    @Test
+    void updateTest() {
+        RuleLines previous = RuleLines.ofGroupIds(
+                Stream.of("org.apache", "!org.apache.maven.internal", "=eu.maveniverse", "com.foo", "com.foo.bar"));
+        RuleLines current = previous.withDelta(
+                Stream.of("-com.foo", "-!org.apache.maven.internal", "+!org.apache", "+org.apache.maven", "+net.bar"));
+        GroupTree groupTree = new GroupTree("");
+        groupTree.loadNodes(previous.lines());
+        GroupTree updated = groupTree.update(previous, current);
+        GroupTree expected = new GroupTree("");
+        expected.loadNodes(current.lines());
+        Assertions.assertEquals(5, current.changes(previous));
+
+        for (String groupId : Arrays.asList(
+                "org",
+                "org.apache",
+                "org.apache.commons",
+                "org.apache.maven",
+                "org.apache.maven.internal",
+                "eu.maveniverse",
+                "eu.maveniverse.maven",
+                "com.foo",
+                "com.foo.bar",
+                "com.foo.bar.baz",
+                "net.bar")) {
+            Assertions.assertEquals(expected.acceptedGroupId(groupId), updated.acceptedGroupId(groupId), groupId);
+        }
+        // copy-on-write: original tree is unchanged
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.apache.commons"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("org.apache.maven.internal"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("com.foo"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("net.bar"));
+    }
+
+    @Test
+    void minimizeTest() {
+        RuleLines rules = RuleLines.ofGroupIds(Stream.of(
+                "org.apache.maven.plugins",
+                "org.codehaus.mojo",
+                "org.codehaus.maven.plugins",
+                "com.foo.maven.plugins",
+                "!com.foo.internal",
+                "!net.bar.internal",
+                "=eu.maveniverse",
+                "=eu.maveniverse.maven"));
+        GroupTree groupTree = new GroupTree("");
+        groupTree.loadNodes(rules.lines());
+        GroupTree minimized = new GroupTree("");
+        minimized.loadNodes(rules.lines());
+        minimized.minimize();
+
+        // three "maven.plugins" subtrees and two "internal" leaves are shared
+        Assertions.assertEquals(
+                RuleTreeStats.of(groupTree).getNodes() - 5,
+                RuleTreeStats.of(minimized).getNodes());
+        for (String groupId : Arrays.asList(
+                "org.apache.maven.plugins",
+                "org.apache.maven",
+                "org.codehaus.maven.plugins.foo",
+                "org.codehaus.mojo",
+                "com.foo.maven.plugins",
+                "com.foo.internal",
+                "net.bar.internal",
+                "net.bar",
+                "eu.maveniverse.maven",
+                "eu.maveniverse.maven.foo")) {
+            Assertions.assertEquals(groupTree.acceptedGroupId(groupId), minimized.acceptedGroupId(groupId), groupId);
+        }
+
+        // copy-on-write update of shared subtree leaves other paths to it unchanged
+        RuleLines current = rules.withDelta(Stream.of("+!org.codehaus.maven.plugins.internal"));
+        GroupTree updated = minimized.update(rules, current);
+        Assertions.assertFalse(updated.acceptedGroupId("org.codehaus.maven.plugins.internal"));
+        Assertions.assertTrue(updated.acceptedGroupId("org.apache.maven.plugins.internal"));
+        Assertions.assertTrue(minimized.acceptedGroupId("org.codehaus.maven.plugins.internal"));
+    }
+
+    @Test
+    void ruleOrderTest() {
+        GroupTree groupTree = new GroupTree("test");
+        groupTree.loadNodes(Stream.of("!org.apache.maven.internal", "org.apache"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.apache.maven"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("org.apache.maven.internal"));
+    }
+
+    @Test
+    void intermediateNodeTest() {
+        GroupTree groupTree = new GroupTree("");
+        groupTree.loadNodes(Stream.of(
+                "org.apache", "!org.apache.maven.internal", "com.foo", "com.foo.bar", "=net.bar", "net.bar.baz.qux"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.apache"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.apache.foo"));
+        // intermediate node (without rule) keeps verdict inherited from org.apache (baseline reset it)
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.apache.maven"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.apache.maven.plugins"));
+        // unchanged: rules below intermediate node, rules inheriting as usual, and stop rules not inherited
+        Assertions.assertFalse(groupTree.acceptedGroupId("org.apache.maven.internal"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("org.apache.maven.internal.foo"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("com.foo.baz"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("com.foo.bar.baz"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("net.bar"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("net.bar.baz"));
+        Assertions.assertTrue(groupTree.acceptedGroupId("net.bar.baz.qux"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("org"));
+    }
+
+    @Test
+    void batchGroupIdsTest() {
+        GroupTree groupTree = new GroupTree("");
+        groupTree.loadNodes(Stream.of("org.apache.maven", "!org.apache.maven.foo", "=eu.maveniverse"));
+        List<String> groupIds = Arrays.asList(
+                "eu.maveniverse",
+                "eu.maveniverse",
+                "eu.maveniverse.maven",
+                "org.apache.maven",
+                "org.apache.maven.foo",
+                "org.apache.maven.foo",
+                "org.apache.maven.plugins");
+        boolean[] batch = groupTree.acceptedGroupIds(groupIds);
+        Assertions.assertEquals(groupIds.size(), batch.length);
+        for (int i = 0; i < batch.length; i++) {
+            Assertions.assertEquals(groupTree.acceptedGroupId(groupIds.get(i)), batch[i], groupIds.get(i));
+        }
+    }
+
+    @Test
+    void bracesLookupTest() {
+        GroupTree groupTree = new GroupTree("");
+        groupTree.loadNodes(Stream.of("org", "!org.*.apache"));
+        // braces of looked up groupId are plain characters: it is split on every dot
+        Assertions.assertTrue(groupTree.acceptedGroupId("org.{x"));
+        Assertions.assertFalse(groupTree.acceptedGroupId("org.{x.apache"));
+        Assertions.assertFalse(groupTree.acceptedGroupIds(Arrays.asList("org.{x.apache"))[0]);
+
+        GroupTree plain = new GroupTree("");
+        plain.loadNodes(Stream.of("org.apache", "!org.apache.internal"));
+        GroupTree view = RuleTreeCodec.groupTreeView(ByteBuffer.wrap(RuleTreeCodec.encode(plain, 2)));
+        for (String groupId : Arrays.asList("org.apache.{x.y", "org.{apache.x}", "org.apache.{x}.internal")) {
+            Assertions.assertEquals(plain.acceptedGroupId(groupId), view.acceptedGroupId(groupId), groupId);
+        }
+        Assertions.assertFalse(view.acceptedGroupId("org.apache.internal.{x.y}"));
+    }
 }
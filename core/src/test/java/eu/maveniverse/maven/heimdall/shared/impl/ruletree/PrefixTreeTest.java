@@ -7,6 +7,12 @@
  */
 package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -32,4 +38,268 @@ public class PrefixTreeTest {
         Assertions.assertFalse(prefixTree.acceptedPath("/com/maveniverse/maven"));
         Assertions.assertFalse(prefixTree.acceptedPath("/com/foo/maven"));
     }
+
+    @Test
+    void patternTest() {
+        PrefixTree prefixTree = new PrefixTree("test");
+        int ruleCount = prefixTree.loadNodes(
+                Stream.of("/org/apache/*/maven-*", "/org/apache/maven/plugins", "/org/{codehaus|mojohaus}/mojo"));
+        Assertions.assertEquals(3, ruleCount);
+
+        prefixTree.dump("");
+
+        Assertions.assertFalse(prefixTree.acceptedPath("/org/apache/foo"));
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/apache/foo/maven-core/1.0"));
+        Assertions.assertFalse(prefixTree.acceptedPath("/org/apache/foo/core/1.0"));
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/apache/maven/plugins/maven-foo-plugin/1.0"));
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/apache/maven/maven-core/1.0"));
+
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/codehaus/mojo/foo/1.0"));
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/mojohaus/mojo/foo/1.0"));
+        Assertions.assertFalse(prefixTree.acceptedPath("/org/codehaus/plexus/foo/1.0"));
+    }
+
+    @Test
+    void patternMergeSharedTest() {
+        List<String> rules = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            rules.add("/a" + i + "/x");
+            rules.add("/*/y/z" + i);
+        }
+        rules.add("/{a1|a2}/y/w");
+        PrefixTree prefixTree = new PrefixTree("");
+        prefixTree.loadNodes(rules.stream());
+        // pattern subtree is shared by plain siblings it is merged into, not copied into each of them
+        long nodes = RuleTreeStats.of(prefixTree).getNodes();
+        Assertions.assertTrue(nodes < 1000, Long.toString(nodes));
+        Assertions.assertEquals(Symbols.NONE, Symbols.lookup("{a1|a2}"));
+
+        PrefixTree decoded =
+                RuleTreeCodec.decodePrefixTree(ByteBuffer.wrap(RuleTreeCodec.encode(prefixTree, rules.size())));
+        Assertions.assertEquals(nodes, RuleTreeStats.of(decoded).getNodes());
+        for (PrefixTree tree : Arrays.asList(prefixTree, decoded)) {
+            Assertions.assertTrue(tree.acceptedPath("/a5/x/1.0"));
+            Assertions.assertTrue(tree.acceptedPath("/a5/y/z7/1.0"));
+            Assertions.assertTrue(tree.acceptedPath("/b/y/z99/1.0"));
+            Assertions.assertTrue(tree.acceptedPath("/a2/y/w/1.0"));
+            Assertions.assertTrue(tree.acceptedPath("/a2/y/z3/1.0"));
+            Assertions.assertFalse(tree.acceptedPath("/a3/y/w/1.0"));
+            Assertions.assertFalse(tree.acceptedPath("/a5/q"));
+            Assertions.assertFalse(tree.acceptedPath("/b/x"));
+        }
+    }
+
+    @Test
+    void symbolsTest() {
+        PrefixTree first = new PrefixTree("first");
+        first.loadNodes(Stream.of("/org/apache/maven"));
+        PrefixTree second = new PrefixTree("second");
+        second.loadNodes(Stream.of("/org/apache/commons"));
+        int symbols = Symbols.size();
+        Assertions.assertEquals(Symbols.intern("apache").id, Symbols.lookup("apache"));
+
+        Assertions.assertFalse(first.acceptedPath("/org/apache/unknown-segment-never-interned"));
+        Assertions.assertTrue(second.acceptedPath("/org/apache/commons/lang"));
+        Assertions.assertEquals(Symbols.NONE, Symbols.lookup("unknown-segment-never-interned"));
+        Assertions.assertEquals(symbols, Symbols.size());
+    }
+
+    @Test
+    void symbolsEvictedTest() throws InterruptedException {
+        PrefixTree kept = new PrefixTree("kept");
+        kept.loadNodes(Stream.of("/org/kept-segment"));
+        PrefixTree dropped = new PrefixTree("dropped");
+        dropped.loadNodes(Stream.of("/org/dropped-segment"));
+        Assertions.assertNotEquals(Symbols.NONE, Symbols.lookup("dropped-segment"));
+
+        dropped = null;
+        for (int i = 0; i < 100 && Symbols.lookup("dropped-segment") != Symbols.NONE; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(Symbols.NONE, Symbols.lookup("dropped-segment"));
+        // symbols of live trees are kept, and evicted segments are interned again when loaded again
+        Assertions.assertTrue(kept.acceptedPath("/org/kept-segment/foo"));
+        PrefixTree reloaded = new PrefixTree("reloaded");
+        reloaded.loadNodes(Stream.of("/org/dropped-segment"));
+        Assertions.assertTrue(reloaded.acceptedPath("/org/dropped-segment/foo"));
+        Assertions.assertFalse(kept.acceptedPath("/org/dropped-segment/foo"));
+    }
+
+    @Test
+    void updateTest() {
+        RuleLines previous =
+                RuleLines.ofPrefixes(Stream.of("/org/apache/maven", "/org/apache/commons", "/eu/maveniverse", "/com"));
+        RuleLines current = RuleLines.ofPrefixes(
+                Stream.of("/org/apache/maven", "/eu/maveniverse", "/eu/maveniverse/maven", "/com/foo", "/net/bar"));
+        PrefixTree prefixTree = new PrefixTree("");
+        prefixTree.loadNodes(previous.lines());
+        PrefixTree updated = prefixTree.update(previous, current);
+        PrefixTree expected = new PrefixTree("");
+        expected.loadNodes(current.lines());
+
+        for (String path : Arrays.asList(
+                "/org/apache/maven/foo",
+                "/org/apache/commons/foo",
+                "/org/apache",
+                "/eu/maveniverse/foo",
+                "/eu/maveniverse/maven/foo",
+                "/com/bar",
+                "/com/foo/bar",
+                "/net/bar/baz")) {
+            Assertions.assertEquals(expected.acceptedPath(path), updated.acceptedPath(path), path);
+        }
+        Assertions.assertEquals(
+                RuleTreeStats.of(expected).getNodes(), RuleTreeStats.of(updated).getNodes());
+        // copy-on-write: original tree is unchanged
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/apache/commons/foo"));
+        Assertions.assertTrue(prefixTree.acceptedPath("/com/bar"));
+        Assertions.assertFalse(prefixTree.acceptedPath("/net/bar/baz"));
+
+        Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> updated.update(current, current.withDelta(Stream.of("+/org/{codehaus|mojohaus}"))));
+    }
+
+    @Test
+    void segmentedTest() {
+        String content = String.join(
+                "\r\n",
+                "## repository-prefixes/2.0",
+                "/org/apache/maven",
+                "/org/{codehaus|mojohaus}",
+                "/com/foo/bar",
+                "# interleaved",
+                "/eu/maveniverse",
+                "/org/ow2",
+                "",
+                "/com/acme");
+        AtomicLong loaded = new AtomicLong();
+        SegmentedPrefixTree segmented = SegmentedPrefixTree.index(
+                        ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8)), loaded::addAndGet)
+                .orElseThrow(AssertionError::new);
+        PrefixTree expected = new PrefixTree("");
+        int rules = expected.loadNodes(Arrays.stream(content.split("\r\n")));
+        Assertions.assertEquals(rules, segmented.rules());
+        Assertions.assertEquals(3, segmented.segments());
+        Assertions.assertEquals(0, segmented.loadedSubtrees());
+
+        for (String path : Arrays.asList(
+                "/net/foo",
+                "/org/apache/maven/foo",
+                "/org/apache/commons",
+                "/org/codehaus/foo",
+                "/org/ow2/foo",
+                "/org",
+                "/com/foo/bar/baz",
+                "/com/acme/foo",
+                "/com/bar")) {
+            Assertions.assertEquals(expected.acceptedPath(path), segmented.acceptedPath(path), path);
+        }
+        // "org" has pattern on second segment: loaded whole; "com/foo" and "com/acme" only; "eu" not at all
+        Assertions.assertEquals(3, segmented.loadedSubtrees());
+        Assertions.assertTrue(loaded.get() > 0);
+
+        Assertions.assertFalse(SegmentedPrefixTree.index(
+                        ByteBuffer.wrap("/org/apache\n/{org|com}/foo\n".getBytes(StandardCharsets.UTF_8)), b -> {})
+                .isPresent());
+    }
+
+    @Test
+    void coordinatesTest() {
+        PrefixTree prefixTree = new PrefixTree("");
+        prefixTree.loadNodes(Stream.of(
+                "/org/apache/maven",
+                "/org/{codehaus|mojohaus}/mojo",
+                "/com/foo/bar/1.0/bar-1.0.jar",
+                "/eu/maveniverse"));
+        // compiled rules cannot have patterns
+        PrefixTree plain = new PrefixTree("");
+        plain.loadNodes(Stream.of("/org/apache/maven", "/com/foo/bar/1.0/bar-1.0.jar", "/eu/maveniverse"));
+        PrefixTree view = RuleTreeCodec.prefixTreeView(ByteBuffer.wrap(RuleTreeCodec.encode(plain, 3)));
+
+        Assertions.assertEquals(Boolean.TRUE, prefixTree.acceptedCoordinates("org.apache.maven", "maven-core", "1.0"));
+        Assertions.assertEquals(Boolean.TRUE, prefixTree.acceptedCoordinates("org.codehaus.mojo", "foo", "1.0"));
+        Assertions.assertEquals(Boolean.FALSE, prefixTree.acceptedCoordinates("org.apache", "commons", "1.0"));
+        Assertions.assertEquals(Boolean.FALSE, prefixTree.acceptedCoordinates("net.foo", "foo", "1.0"));
+        // metadata: empty coordinates are skipped
+        Assertions.assertEquals(Boolean.TRUE, prefixTree.acceptedCoordinates("eu.maveniverse", "", ""));
+        Assertions.assertNull(prefixTree.acceptedCoordinates("org.apache", "", ""));
+        // answer depends on file name
+        Assertions.assertNull(prefixTree.acceptedCoordinates("com.foo", "bar", "1.0"));
+        Assertions.assertEquals(Boolean.FALSE, prefixTree.acceptedCoordinates("com.foo", "bar", "2.0"));
+        // not plain coordinates
+        Assertions.assertNull(prefixTree.acceptedCoordinates("org/apache", "maven", "1.0"));
+
+        Assertions.assertEquals(Boolean.TRUE, view.acceptedCoordinates("org.apache.maven", "maven-core", "1.0"));
+        Assertions.assertEquals(Boolean.FALSE, view.acceptedCoordinates("org.apache", "commons", "1.0"));
+        Assertions.assertNull(view.acceptedCoordinates("com.foo", "bar", "1.0"));
+        Assertions.assertTrue(view.acceptedPath("/com/foo/bar/1.0/bar-1.0.jar"));
+        Assertions.assertFalse(view.acceptedPath("/com/foo/bar/1.0"));
+    }
+
+    @Test
+    void bracesLookupTest() {
+        PrefixTree prefixTree = new PrefixTree("");
+        prefixTree.loadNodes(Stream.of("/org/*/apache"));
+        // braces of looked up path are plain characters: it is split on every slash
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/{x/apache/maven"));
+        Assertions.assertFalse(prefixTree.acceptedPath("/org/{x/maven}"));
+        Assertions.assertEquals(Boolean.TRUE, prefixTree.acceptedCoordinates("org.{x", "apache", "1.0"));
+        Assertions.assertEquals(Boolean.FALSE, prefixTree.acceptedCoordinates("org.{x", "maven}", "1.0"));
+    }
+
+    @Test
+    void batchCoordinatesTest() {
+        PrefixTree prefixTree = new PrefixTree("");
+        prefixTree.loadNodes(Stream.of(
+                "/org/apache/maven",
+                "/org/apache/commons/commons-lang3",
+                "/org/{codehaus|mojohaus}/mojo",
+                "/com/foo/bar/1.0/bar-1.0.jar",
+                "/eu/maveniverse"));
+        List<String[]> coordinates = Arrays.asList(
+                new String[] {"com.foo", "bar", "1.0"},
+                new String[] {"com.foo", "bar", "2.0"},
+                new String[] {"eu.maveniverse", "heimdall", "1.0"},
+                new String[] {"org.apache.commons", "commons-io", "2.0"},
+                new String[] {"org.apache.commons", "commons-lang3", "3.0"},
+                new String[] {"org.apache.maven", "maven-core", "3.9.9"},
+                new String[] {"org.apache.maven", "maven-core", "4.0.0"},
+                new String[] {"org/apache", "maven", "1.0"},
+                new String[] {"org.codehaus.mojo", "foo", "1.0"},
+                new String[] {"org.codehaus.plexus", "plexus-utils", "1.0"});
+        Boolean[] batch = prefixTree.acceptedCoordinates(coordinates);
+        Assertions.assertEquals(coordinates.size(), batch.length);
+        for (int i = 0; i < batch.length; i++) {
+            String[] c = coordinates.get(i);
+            Assertions.assertEquals(prefixTree.acceptedCoordinates(c[0], c[1], c[2]), batch[i], String.join(":", c));
+        }
+    }
+
+    @Test
+    void truncateTest() {
+        PrefixTree prefixTree = new PrefixTree("");
+        prefixTree.loadNodes(Stream.of(
+                "/org/apache/maven/maven-core",
+                "/org/apache/commons/commons-lang3",
+                "/org/{codehaus|mojohaus}/mojo/exec-maven-plugin",
+                "/eu/maveniverse"));
+        long nodes = RuleTreeStats.of(prefixTree).getNodes();
+        Assertions.assertFalse(prefixTree.acceptedPath("/org/apache/maven/maven-model"));
+        Assertions.assertFalse(prefixTree.acceptedPath("/org/codehaus/mojo/foo"));
+
+        prefixTree.truncate(3);
+        Assertions.assertTrue(RuleTreeStats.of(prefixTree).getNodes() < nodes);
+        // accepts all it did before
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/apache/maven/maven-core/1.0/maven-core-1.0.jar"));
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/mojohaus/mojo/exec-maven-plugin/maven-metadata.xml"));
+        Assertions.assertTrue(prefixTree.acceptedPath("/eu/maveniverse/heimdall"));
+        // and more, but only below the depth
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/apache/maven/maven-model"));
+        Assertions.assertTrue(prefixTree.acceptedPath("/org/codehaus/mojo/foo"));
+        Assertions.assertFalse(prefixTree.acceptedPath("/org/apache/foo/bar"));
+        Assertions.assertFalse(prefixTree.acceptedPath("/org/sonatype/mojo/bar"));
+        Assertions.assertFalse(prefixTree.acceptedPath("/com/foo"));
+    }
 }
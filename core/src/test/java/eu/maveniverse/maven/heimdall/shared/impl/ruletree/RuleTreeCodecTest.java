@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class RuleTreeCodecTest {
+    @Test
+    void normalizePrefixesTest() {
+        List<String> prefixes = RuleNormalizer.normalizePrefixes(Stream.of(
+                "# comment",
+                "/org/apache/maven",
+                "org//apache",
+                "/com/foo/",
+                "",
+                "/com/foo",
+                "/com/foo-bar",
+                "/com/foo/bar"));
+        // shorter prefixes having longer ones below them are redundant
+        Assertions.assertEquals(Arrays.asList("/com/foo-bar", "/com/foo/bar", "/org/apache/maven"), prefixes);
+    }
+
+    @Test
+    void normalizePrefixesSameAnswersTest() {
+        List<String> lines = Arrays.asList(
+                "/com/foo",
+                "/com/foo/bar",
+                "/com/foo-bar",
+                "org//apache/",
+                "/org/apache/maven",
+                "/org",
+                "/net/{a|b}",
+                "/net/a/c");
+        PrefixTree original = new PrefixTree("");
+        original.loadNodes(lines.stream());
+        PrefixTree normalized = new PrefixTree("");
+        normalized.loadNodes(RuleNormalizer.normalizePrefixes(lines.stream()).stream());
+        for (String path : Arrays.asList(
+                "/com/foo/bar/x.jar",
+                "/com/foo/baz/x.jar",
+                "/com/foo/x.jar",
+                "/org/apache/maven/x.jar",
+                "/org/apache/commons/x.jar",
+                "/org/x.jar",
+                "/com/foo-bar/x.jar",
+                "/net/a/c/x.jar",
+                "/net/a/d/x.jar",
+                "/net/b/d/x.jar",
+                "/net/x.jar")) {
+            Assertions.assertEquals(original.acceptedPath(path), normalized.acceptedPath(path), path);
+        }
+        Assertions.assertFalse(normalized.acceptedPath("/com/foo/baz/x.jar"));
+    }
+
+    @Test
+    void normalizeGroupIdsTest() {
+        List<String> groupIds = RuleNormalizer.normalizeGroupIds(Stream.of(
+                "org.apache.maven", // redundant: inherits allow from org.apache
+                "org.apache",
+                "!org.apache.maven.internal",
+                "!org.apache.maven.internal.deep", // redundant: inherits deny
+                "!com.foo", // redundant: not allowed anyway
+                "=org.codehaus",
+                "org.codehaus.mojo",
+                "org.apache", // duplicate
+                "!org.apache")); // duplicate, first wins
+        Assertions.assertEquals(
+                Arrays.asList("org.apache", "!org.apache.maven.internal", "=org.codehaus", "org.codehaus.mojo"),
+                groupIds);
+    }
+
+    @Test
+    void prefixTreeRoundTripTest() {
+        PrefixTree prefixTree = new PrefixTree("");
+        int ruleCount = prefixTree.loadNodes(Stream.of("/org/apache", "/eu/maveniverse", "/org/{codehaus|mojohaus}"));
+        ByteBuffer buffer = ByteBuffer.wrap(RuleTreeCodec.encode(prefixTree, ruleCount));
+        Assertions.assertEquals(3, RuleTreeCodec.ruleCount(buffer));
+
+        PrefixTree decoded = RuleTreeCodec.decodePrefixTree(buffer);
+        Assertions.assertTrue(decoded.acceptedPath("/org/apache/maven"));
+        Assertions.assertTrue(decoded.acceptedPath("/eu/maveniverse/maven"));
+        Assertions.assertTrue(decoded.acceptedPath("/org/mojohaus/foo"));
+        Assertions.assertFalse(decoded.acceptedPath("/org/foo"));
+        Assertions.assertFalse(decoded.acceptedPath("/org"));
+        Assertions.assertEquals(
+                RuleTreeStats.of(prefixTree).getNodes(),
+                RuleTreeStats.of(decoded).getNodes());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RuleTreeCodec.decodeGroupTree(buffer));
+    }
+
+    @Test
+    void groupTreeRoundTripTest() {
+        GroupTree groupTree = new GroupTree("");
+        int ruleCount = groupTree.loadNodes(Stream.of("org.apache", "!org.apache.maven.internal", "=org.codehaus"));
+        GroupTree decoded = RuleTreeCodec.decodeGroupTree(ByteBuffer.wrap(RuleTreeCodec.encode(groupTree, ruleCount)));
+        Assertions.assertTrue(decoded.acceptedGroupId("org.apache.maven"));
+        Assertions.assertFalse(decoded.acceptedGroupId("org.apache.maven.internal"));
+        Assertions.assertTrue(decoded.acceptedGroupId("org.codehaus"));
+        Assertions.assertFalse(decoded.acceptedGroupId("org.codehaus.mojo"));
+        Assertions.assertFalse(decoded.acceptedGroupId("com.foo"));
+    }
+
+    @Test
+    void viewTest() {
+        PrefixTree prefixTree = new PrefixTree("");
+        int prefixes = prefixTree.loadNodes(Stream.of("/org/apache", "/eu/maveniverse", "/com/foo/bar"));
+        ByteBuffer prefixBuffer = ByteBuffer.allocateDirect(4096);
+        prefixBuffer.put(RuleTreeCodec.encode(prefixTree, prefixes)).flip();
+        PrefixTree prefixView = RuleTreeCodec.prefixTreeView(prefixBuffer);
+        for (String path : Arrays.asList(
+                "/org", "/org/apache", "/org/apache/maven", "/org/foo", "/com/foo/bar/baz", "/com/foo/baz", "/")) {
+            Assertions.assertEquals(prefixTree.acceptedPath(path), prefixView.acceptedPath(path), path);
+        }
+
+        GroupTree groupTree = new GroupTree("");
+        int groupIds = groupTree.loadNodes(
+                Stream.of("org.apache", "!org.apache.maven.internal", "=org.codehaus", "!=com.foo", "com"));
+        GroupTree groupView = RuleTreeCodec.groupTreeView(ByteBuffer.wrap(RuleTreeCodec.encode(groupTree, groupIds)));
+        for (String groupId : Arrays.asList(
+                "org",
+                "org.apache",
+                "org.apache.maven",
+                "org.apache.maven.internal",
+                "org.apache.maven.internal.foo",
+                "org.codehaus",
+                "org.codehaus.mojo",
+                "com",
+                "com.foo",
+                "com.foo.bar",
+                "net")) {
+            Assertions.assertEquals(groupTree.acceptedGroupId(groupId), groupView.acceptedGroupId(groupId), groupId);
+        }
+    }
+}
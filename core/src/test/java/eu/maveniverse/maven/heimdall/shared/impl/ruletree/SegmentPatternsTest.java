@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.shared.impl.ruletree;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SegmentPatternsTest {
+    @Test
+    void isPattern() {
+        Assertions.assertFalse(SegmentPatterns.isPattern("maven"));
+        Assertions.assertFalse(SegmentPatterns.isPattern("{"));
+        Assertions.assertTrue(SegmentPatterns.isPattern("maven-*"));
+        Assertions.assertTrue(SegmentPatterns.isPattern("maven-?"));
+        Assertions.assertTrue(SegmentPatterns.isPattern("[a-z]aven"));
+        Assertions.assertTrue(SegmentPatterns.isPattern("{maven|plexus}"));
+    }
+
+    @Test
+    void combined() {
+        SegmentPatterns patterns = SegmentPatterns.compile(Arrays.asList(
+                "maven-*", "*-plugin", "{maven-.*-(plugin|extension)}", "v[0-9]?", "[!a-z]*", "{a+b?c*}"));
+
+        Assertions.assertEquals(bits(0, 1, 2), patterns.match("maven-compiler-plugin"));
+        Assertions.assertEquals(bits(0, 2), patterns.match("maven-build-extension"));
+        Assertions.assertEquals(bits(0), patterns.match("maven-core"));
+        Assertions.assertEquals(bits(1), patterns.match("foo-plugin"));
+        Assertions.assertEquals(bits(3), patterns.match("v1x"));
+        Assertions.assertNull(patterns.match("vx"));
+        Assertions.assertEquals(bits(4), patterns.match("1foo"));
+        Assertions.assertEquals(bits(5), patterns.match("aaabccc"));
+        Assertions.assertEquals(bits(5), patterns.match("a"));
+        Assertions.assertNull(patterns.match("abbc"));
+        Assertions.assertNull(patterns.match(""));
+        Assertions.assertNull(patterns.match("plexus"));
+    }
+
+    @Test
+    void invalid() {
+        Assertions.assertThrows(
+                IllegalArgumentException.class, () -> SegmentPatterns.compile(Arrays.asList("foo[a-z")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SegmentPatterns.compile(Arrays.asList("{*a}")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SegmentPatterns.compile(Arrays.asList("{(a}")));
+    }
+
+    private static BitSet bits(int... indexes) {
+        BitSet result = new BitSet();
+        for (int index : indexes) {
+            result.set(index);
+        }
+        return result;
+    }
+}
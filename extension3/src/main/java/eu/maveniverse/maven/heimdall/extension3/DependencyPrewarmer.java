@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.extension3;
+
+import static java.util.Objects.requireNonNull;
+
+import eu.maveniverse.maven.heimdall.shared.BatchEvaluator;
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Extension;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Evaluates filters for artifacts declared by projects of the reactor (dependencies, managed dependencies, build
+ * plugins and extensions) against their remote repositories (project and plugin ones) in batches, so that rules of
+ * these repositories are loaded, and their verdicts are kept in session (see {@link BatchEvaluator}) before
+ * resolution starts. Artifacts of reactor projects and artifacts without version are skipped.
+ * <p>
+ * Prewarming is disabled by default, enable it with {@code heimdall.prewarm} property: then it runs in background, on
+ * a thread per remote repository, after projects are read, in chunks of artifacts: once its future is cancelled (like
+ * by session end), no further chunk is evaluated.
+ */
+@Singleton
+@Named
+public class DependencyPrewarmer {
+    public static final String CONFIG_PREWARM = SessionConfig.KEY_PREFIX + "prewarm";
+
+    /**
+     * Count of artifacts evaluated at once.
+     */
+    static final int CHUNK_SIZE = 256;
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Provider<BatchEvaluator> batchEvaluatorProvider;
+
+    @Inject
+    public DependencyPrewarmer(Provider<BatchEvaluator> batchEvaluatorProvider) {
+        this.batchEvaluatorProvider = requireNonNull(batchEvaluatorProvider);
+    }
+
+    /**
+     * Is prewarming enabled in given session config?
+     */
+    public static boolean isEnabled(SessionConfig sessionConfig) {
+        return Boolean.parseBoolean(
+                sessionConfig.effectiveProperties().getOrDefault(CONFIG_PREWARM, Boolean.FALSE.toString()));
+    }
+
+    /**
+     * Starts prewarming filters for projects of given session, and returns the future completing once done, that
+     * stops prewarming if cancelled.
+     */
+    public CompletableFuture<Void> prewarm(MavenSession session) {
+        requireNonNull(session);
+        RepositorySystemSession repositorySession = session.getRepositorySession();
+        Set<String> reactor = new HashSet<>();
+        for (MavenProject project : session.getProjects()) {
+            reactor.add(project.getGroupId() + ":" + project.getArtifactId());
+        }
+        TreeMap<String, Artifact> artifacts = new TreeMap<>();
+        Set<RemoteRepository> remoteRepositories = new LinkedHashSet<>();
+        for (MavenProject project : session.getProjects()) {
+            for (Dependency dependency : project.getDependencies()) {
+                add(artifacts, reactor, repositorySession, dependency);
+            }
+            if (project.getDependencyManagement() != null) {
+                for (Dependency dependency : project.getDependencyManagement().getDependencies()) {
+                    add(artifacts, reactor, repositorySession, dependency);
+                }
+            }
+            for (Plugin plugin : project.getBuildPlugins()) {
+                add(artifacts, reactor, plugin.getGroupId(), plugin.getArtifactId(), plugin.getVersion());
+            }
+            for (Extension extension : project.getBuildExtensions()) {
+                add(artifacts, reactor, extension.getGroupId(), extension.getArtifactId(), extension.getVersion());
+            }
+            remoteRepositories.addAll(project.getRemoteProjectRepositories());
+            remoteRepositories.addAll(project.getRemotePluginRepositories());
+        }
+        if (artifacts.isEmpty() || remoteRepositories.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Artifact> batch = new ArrayList<>(artifacts.values());
+        BatchEvaluator batchEvaluator = batchEvaluatorProvider.get();
+        ExecutorService executor = Executors.newFixedThreadPool(remoteRepositories.size(), r -> {
+            Thread thread = new Thread(r, "heimdall-prewarm-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        AtomicInteger accepted = new AtomicInteger();
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (RemoteRepository remoteRepository : remoteRepositories) {
+            futures.add(CompletableFuture.runAsync(
+                    () -> {
+                        for (int from = 0; from < batch.size() && !result.isDone(); from += CHUNK_SIZE) {
+                            for (boolean[] row : batchEvaluator.evaluate(
+                                    repositorySession,
+                                    batch.subList(from, Math.min(batch.size(), from + CHUNK_SIZE)),
+                                    Collections.singletonList(remoteRepository))) {
+                                accepted.addAndGet(row[0] ? 1 : 0);
+                            }
+                        }
+                    },
+                    executor));
+        }
+        executor.shutdown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).whenComplete((v, failure) -> {
+            if (result.isCancelled()) {
+                logger.debug("Heimdall prewarm cancelled");
+            } else if (failure != null) {
+                logger.warn("Heimdall prewarm failed", failure);
+                result.completeExceptionally(failure);
+            } else {
+                logger.info(
+                        "Heimdall prewarmed {} artifacts against {} remote repositories ({} of {} accepted) in {} ms",
+                        batch.size(),
+                        remoteRepositories.size(),
+                        accepted.get(),
+                        batch.size() * remoteRepositories.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                result.complete(null);
+            }
+        });
+        return result;
+    }
+
+    private static void add(
+            TreeMap<String, Artifact> artifacts,
+            Set<String> reactor,
+            RepositorySystemSession repositorySession,
+            Dependency dependency) {
+        if (dependency.getVersion() != null
+                && !reactor.contains(dependency.getGroupId() + ":" + dependency.getArtifactId())) {
+            Artifact artifact = RepositoryUtils.toDependency(dependency, repositorySession.getArtifactTypeRegistry())
+                    .getArtifact();
+            artifacts.putIfAbsent(artifact.toString(), artifact);
+        }
+    }
+
+    private static void add(
+            TreeMap<String, Artifact> artifacts,
+            Set<String> reactor,
+            String groupId,
+            String artifactId,
+            String version) {
+        if (version != null && !reactor.contains(groupId + ":" + artifactId)) {
+            Artifact artifact = new DefaultArtifact(groupId, artifactId, "jar", version);
+            artifacts.putIfAbsent(artifact.toString(), artifact);
+        }
+    }
+}
@@ -16,6 +16,7 @@ import eu.maveniverse.maven.heimdall.shared.SessionUtils;
 import eu.maveniverse.maven.heimdall.shared.impl.J8Utils;
 import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Provider;
@@ -28,7 +29,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Lifecycle participant that creates Heimdall session.
+ * Lifecycle participant that creates Heimdall session, and if enabled, starts prewarming filters (see
+ * {@link DependencyPrewarmer}), that is cancelled at session end, if still running.
  */
 @Singleton
 @Named
@@ -37,9 +39,14 @@ public class HeimdallSessionLifecycleParticipant extends AbstractMavenLifecycleP
 
     private final Provider<SessionFactory> sessionFactoryProvider;
 
+    private final Provider<DependencyPrewarmer> dependencyPrewarmerProvider;
+
     @Inject
-    public HeimdallSessionLifecycleParticipant(Provider<SessionFactory> sessionFactoryProvider) {
+    public HeimdallSessionLifecycleParticipant(
+            Provider<SessionFactory> sessionFactoryProvider,
+            Provider<DependencyPrewarmer> dependencyPrewarmerProvider) {
         this.sessionFactoryProvider = requireNonNull(sessionFactoryProvider);
+        this.dependencyPrewarmerProvider = requireNonNull(dependencyPrewarmerProvider);
     }
 
     @Override
@@ -57,6 +64,13 @@ public class HeimdallSessionLifecycleParticipant extends AbstractMavenLifecycleP
                     logger.info("Heimdall {} session created", sc.version());
                     return s;
                 });
+                if (DependencyPrewarmer.isEnabled(sc)) {
+                    session.getRepositorySession()
+                            .getData()
+                            .set(
+                                    DependencyPrewarmer.class,
+                                    dependencyPrewarmerProvider.get().prewarm(session));
+                }
             } else {
                 logger.info("Heimdall {} disabled", sc.version());
             }
@@ -72,6 +86,10 @@ public class HeimdallSessionLifecycleParticipant extends AbstractMavenLifecycleP
     @Override
     public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
         requireNonNull(session);
+        Object prewarm = session.getRepositorySession().getData().get(DependencyPrewarmer.class);
+        if (prewarm instanceof CompletableFuture) {
+            ((CompletableFuture<?>) prewarm).cancel(false);
+        }
         try {
             Optional<Session> ns = SessionUtils.mayGetSession(session.getRepositorySession());
             if (ns.isPresent()) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+
+// Starts stand-in remote repositories on loopback with dynamic ports. Each serves synthetic artifacts of one groupId
+// (with checksums), and publishes its ".meta/prefixes.txt". Every request is delayed by simulated latency, and is
+// counted per invocation (the version in path tells the invocation). The repository URLs in POM are replaced with
+// those of started servers, and the servers and counters are passed to verify.groovy via invoker context.
+
+import com.sun.net.httpserver.HttpServer
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicLong
+
+def latency = 20
+def repositories = ['alpha': 'org/perf/alpha', 'beta': 'org/perf/beta', 'gamma': 'com/perf/gamma']
+
+// empty ZIP: just end of central directory record
+byte[] emptyJar = new byte[22]
+emptyJar[0] = 0x50
+emptyJar[1] = 0x4b
+emptyJar[2] = 0x05
+emptyJar[3] = 0x06
+
+def content
+content = { String prefix, String path ->
+    if (path == '.meta/prefixes.txt') {
+        return ("## repository-prefixes/2.0\n/" + prefix + "\n").getBytes('UTF-8')
+    }
+    if (path.endsWith('.sha1')) {
+        byte[] data = content(prefix, path.substring(0, path.length() - 5))
+        return data == null ? null : MessageDigest.getInstance('SHA-1').digest(data).encodeHex().toString().getBytes('UTF-8')
+    }
+    def matcher = path =~ ('^' + prefix + '/([^/]+)/([^/]+)/([^/]+)-([^/]+)\\.(pom|jar)$')
+    if (!matcher.matches() || matcher.group(1) != matcher.group(3) || matcher.group(2) != matcher.group(4)) {
+        return null
+    }
+    if (matcher.group(5) == 'jar') {
+        return emptyJar
+    }
+    return """<?xml version="1.0" encoding="UTF-8"?>
+<project xmlns="http://maven.apache.org/POM/4.0.0">
+  <modelVersion>4.0.0</modelVersion>
+  <groupId>${prefix.replace('/', '.')}</groupId>
+  <artifactId>${matcher.group(1)}</artifactId>
+  <version>${matcher.group(2)}</version>
+</project>
+""".getBytes('UTF-8')
+}
+
+// local repository outlives invocations: purge synthetic artifacts and cached prefixes of earlier runs
+repositories.values().each { new File(localRepositoryPath, it).deleteDir() }
+new File(localRepositoryPath, '.meta').listFiles()?.findAll { it.name.contains('perf-') }?.each { it.delete() }
+
+// key: "run/repository", value: [requests, notFound, firstNanos, lastNanos]
+def stats = new ConcurrentHashMap<String, List<AtomicLong>>()
+def servers = []
+def pom = new File(basedir, 'pom.xml')
+repositories.each { id, prefix ->
+    def server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+    server.executor = Executors.newCachedThreadPool { r ->
+        def thread = new Thread(r, 'perf-' + id)
+        thread.daemon = true
+        thread
+    }
+    server.createContext('/') { exchange ->
+        try {
+            Thread.sleep(latency)
+            def path = exchange.requestURI.path.substring(1)
+            def version = path =~ '/(1\\.[0-9]+)/'
+            def run = version.find() ? version.group(1) : 'meta'
+            byte[] body = content(prefix, path)
+            def counters = stats.computeIfAbsent(run + '/' + id, k -> [
+                new AtomicLong(), new AtomicLong(), new AtomicLong(Long.MAX_VALUE), new AtomicLong(Long.MIN_VALUE)])
+            long now = System.nanoTime()
+            counters[0].incrementAndGet()
+            if (body == null) {
+                counters[1].incrementAndGet()
+            }
+            counters[2].accumulateAndGet(now, Math::min)
+            counters[3].accumulateAndGet(now, Math::max)
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1)
+            } else if (exchange.requestMethod == 'HEAD') {
+                exchange.sendResponseHeaders(200, -1)
+            } else {
+                exchange.sendResponseHeaders(200, body.length)
+                exchange.responseBody.write(body)
+            }
+        } finally {
+            exchange.close()
+        }
+    }
+    server.start()
+    servers << server
+    pom.text = pom.text.replace(
+            'http://127.0.0.1:0/perf-' + id + '/', 'http://127.0.0.1:' + server.address.port + '/')
+    println "Stand-in repository perf-${id} serving ${prefix} on port ${server.address.port}"
+}
+context.put('perfServers', servers)
+context.put('perfStats', stats)
+return true
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+
+// Stops stand-in repositories started by setup.groovy, reports requests, 404s and resolution time (first to last
+// request) per invocation into perf-results.txt, and fails on request or 404 count regression against
+// perf-baseline.properties (timing is reported, but not asserted). Checks that the wasted request analyzer of
+// unfiltered run suggested rules that would have prevented all the 404s.
+
+def servers = context.get('perfServers')
+def stats = context.get('perfStats')
+servers.each { it.stop(0) }
+
+def baseline = new Properties()
+new File(basedir, 'perf-baseline.properties').withInputStream { baseline.load(it) }
+
+def runs = ['1.1': 'disabled', '1.2': 'groupId', '1.3': 'prefixes']
+def results = [:]
+def report = new StringBuilder()
+runs.each { version, name ->
+    long requests = 0
+    long notFound = 0
+    long first = Long.MAX_VALUE
+    long last = Long.MIN_VALUE
+    stats.each { key, counters ->
+        if (key.startsWith(version + '/')) {
+            requests += counters[0].get()
+            notFound += counters[1].get()
+            first = Math.min(first, counters[2].get())
+            last = Math.max(last, counters[3].get())
+        }
+    }
+    long millis = requests > 0 ? (last - first).intdiv(1000000L) : 0
+    results[name] = [requests: requests, notFound: notFound, millis: millis]
+    report << "${name}: requests=${requests} notFound=${notFound} resolution=${millis}ms\n"
+}
+stats.each { key, counters ->
+    if (key.startsWith('meta/')) {
+        report << "${key}: requests=${counters[0].get()} notFound=${counters[1].get()}\n"
+    }
+}
+new File(basedir, 'perf-results.txt').text = report.toString()
+println report
+
+results.each { name, result ->
+    long maxRequests = Long.parseLong(baseline.getProperty(name + '.requests'))
+    long maxNotFound = Long.parseLong(baseline.getProperty(name + '.notFound'))
+    assert result.requests > 0 : "${name}: no requests recorded"
+    assert result.requests <= maxRequests : "${name}: ${result.requests} requests, baseline ${maxRequests}"
+    assert result.notFound <= maxNotFound : "${name}: ${result.notFound} 404s, baseline ${maxNotFound}"
+}
+// the baseline must leak requests, otherwise this test proves nothing
+assert results.disabled.notFound > 0 : 'disabled: no 404s, stand-in repositories are not exercised'
+// timing is reported only: wall-clock time over simulated latency is too noisy on loaded machines to assert on
+['groupId', 'prefixes'].each { name ->
+    if (results[name].millis > results.disabled.millis) {
+        println "WARNING: ${name}: resolution ${results[name].millis}ms, disabled ${results.disabled.millis}ms"
+    }
+}
+
+def suggestions = new File(basedir, 'target/heimdall/suggestions')
+['perf-alpha': ['org.perf.alpha', 16], 'perf-beta': ['org.perf.beta', 8]].each { id, expected ->
+    def groupIds = new File(suggestions, "groupId-${id}.txt")
+    def prefixes = new File(suggestions, "prefixes-${id}.txt")
+    assert groupIds.isFile() : "${id}: no groupId suggestions"
+    assert prefixes.isFile() : "${id}: no prefixes suggestions"
+    assert groupIds.readLines().findAll { !it.startsWith('#') } == [expected[0]]
+    [groupIds, prefixes].each {
+        assert it.text.contains("Would have prevented ${expected[1]} of ${expected[1]} not found requests") : it
+    }
+}
+// perf-gamma is last repository: it serves all it is asked for
+assert !new File(suggestions, 'groupId-perf-gamma.txt').exists()
+return true
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.plugin;
+
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.GroupTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.PrefixTree;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleNormalizer;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeCodec;
+import eu.maveniverse.maven.heimdall.shared.impl.ruletree.RuleTreeStats;
+import eu.maveniverse.maven.shared.core.fs.FileUtils;
+import eu.maveniverse.maven.shared.plugin.MojoSupport;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Compiles text rule files ({@code groupId-*.txt} and {@code prefixes-*.txt}) found in input directory into
+ * normalized text files (sorted, deduplicated, redundant rules removed) and compiled binary files ({@code *.bin}) in
+ * output directory. Compiled files placed into Heimdall basedir are loaded instead of text files.
+ * <p>
+ * Does not require a project, so it may be invoked as a CLI tool:
+ * {@code mvn eu.maveniverse.maven.heimdall:plugin:compile-rules -Dheimdall.inputDirectory=...}
+ */
+@Mojo(name = "compile-rules", requiresProject = false, threadSafe = true)
+public class CompileRulesMojo extends MojoSupport {
+    private static final String GROUP_ID_PREFIX = "groupId-";
+    private static final String PREFIXES_PREFIX = "prefixes-";
+    private static final String TXT = ".txt";
+    private static final String BIN = ".bin";
+
+    /**
+     * The directory containing text rule files.
+     */
+    @Parameter(property = "heimdall.inputDirectory", defaultValue = "${basedir}", required = true)
+    private File inputDirectory;
+
+    /**
+     * The directory to write normalized and compiled rule files to.
+     */
+    @Parameter(
+            property = "heimdall.outputDirectory",
+            defaultValue = "${project.build.directory}/heimdall",
+            required = true)
+    private File outputDirectory;
+
+    @Override
+    protected void executeMojo() throws MojoExecutionException {
+        Path input = inputDirectory.toPath();
+        Path output = outputDirectory.toPath();
+        if (!Files.isDirectory(input)) {
+            throw new MojoExecutionException("Input directory does not exist: " + input);
+        }
+        try {
+            List<Path> files;
+            try (Stream<Path> stream = Files.list(input)) {
+                files = stream.filter(p -> {
+                            String name = p.getFileName().toString();
+                            return name.endsWith(TXT)
+                                    && (name.startsWith(GROUP_ID_PREFIX) || name.startsWith(PREFIXES_PREFIX));
+                        })
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+            if (files.isEmpty()) {
+                logger.warn("No rule files found in {}", input);
+                return;
+            }
+            Files.createDirectories(output);
+            for (Path file : files) {
+                compile(file, output);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new MojoExecutionException("Failed to compile rules: " + e.getMessage(), e);
+        }
+    }
+
+    private void compile(Path file, Path output) throws IOException {
+        String name = file.getFileName().toString();
+        String baseName = name.substring(0, name.length() - TXT.length());
+        List<String> lines;
+        int rules;
+        RuleTreeStats stats;
+        byte[] compiled;
+        try (Stream<String> input = Files.lines(file, StandardCharsets.UTF_8)) {
+            if (name.startsWith(GROUP_ID_PREFIX)) {
+                lines = RuleNormalizer.normalizeGroupIds(input);
+                GroupTree groupTree = new GroupTree("");
+                rules = groupTree.loadNodes(lines.stream());
+                stats = RuleTreeStats.of(groupTree);
+                compiled = RuleTreeCodec.encode(groupTree, rules);
+            } else {
+                lines = RuleNormalizer.normalizePrefixes(input);
+                PrefixTree prefixTree = new PrefixTree("");
+                rules = prefixTree.loadNodes(lines.stream());
+                stats = RuleTreeStats.of(prefixTree);
+                compiled = RuleTreeCodec.encode(prefixTree, rules);
+            }
+        }
+        FileUtils.writeFile(output.resolve(baseName + TXT), p -> Files.write(p, lines, StandardCharsets.UTF_8));
+        FileUtils.writeFile(output.resolve(baseName + BIN), p -> Files.write(p, compiled));
+        logger.info("Compiled {}: {} rules ({}), {} bytes", name, rules, stats, compiled.length);
+    }
+}
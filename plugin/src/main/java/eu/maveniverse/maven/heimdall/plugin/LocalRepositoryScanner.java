@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.plugin;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Scans a local repository for {@code _remote.repositories} marker files in parallel (using work-stealing
+ * {@link ForkJoinPool}, one task per directory), and derives groupId rules per remote repository from them.
+ * <p>
+ * Derived rules are compacted to the shortest "safe" groupId prefixes: a prefix is safe for a remote repository, if
+ * all the artifacts found below it originate from that remote repository only. Prefixes shorter than minimum depth
+ * are not emitted (unless the groupId itself is shorter), to not make rules over-generic, and groupIds that are
+ * served by given remote repository but are not safe, are emitted as "stop" rules (exact groupId only).
+ */
+final class LocalRepositoryScanner {
+    static final String MARKER = "_remote.repositories";
+
+    private final Path localRepository;
+
+    private final ConcurrentHashMap<String, Set<String>> origins = new ConcurrentHashMap<>();
+
+    private final LongAdder directories = new LongAdder();
+
+    private final LongAdder markers = new LongAdder();
+
+    LocalRepositoryScanner(Path localRepository) {
+        this.localRepository = requireNonNull(localRepository);
+    }
+
+    /**
+     * Scans the local repository using given parallelism.
+     */
+    void scan(int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new ScanTask(localRepository));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    long getDirectories() {
+        return directories.sum();
+    }
+
+    long getMarkers() {
+        return markers.sum();
+    }
+
+    /**
+     * Returns the map of groupId to set of remote repository IDs artifacts of groupId originate from.
+     */
+    Map<String, Set<String>> getOrigins() {
+        return Collections.unmodifiableMap(origins);
+    }
+
+    /**
+     * Returns the compacted groupId rules per remote repository ID, sorted.
+     */
+    Map<String, List<String>> rules(int minDepth) {
+        GroupNode root = new GroupNode(null, "");
+        origins.forEach((groupId, repositories) -> {
+            GroupNode node = root;
+            node.subtree.addAll(repositories);
+            for (String element : groupId.split("\\.")) {
+                node = node.child(element);
+                node.subtree.addAll(repositories);
+            }
+            node.own.addAll(repositories);
+        });
+        TreeMap<String, List<String>> result = new TreeMap<>();
+        for (String repository : root.subtree) {
+            ArrayList<String> rules = new ArrayList<>();
+            root.children.values().forEach(n -> n.collect(repository, 1, minDepth, rules));
+            Collections.sort(rules);
+            result.put(repository, rules);
+        }
+        return result;
+    }
+
+    private void scanMarker(Path marker) {
+        markers.increment();
+        Path artifactDirectory = marker.getParent().getParent();
+        Path groupDirectory = artifactDirectory != null ? artifactDirectory.getParent() : null;
+        // markers not laid out as group/artifact/version below local repository root are not ours
+        if (groupDirectory == null
+                || !groupDirectory.startsWith(localRepository)
+                || groupDirectory.equals(localRepository)) {
+            return;
+        }
+        Path relative = localRepository.relativize(groupDirectory);
+        String groupId = relative.toString().replace(relative.getFileSystem().getSeparator(), ".");
+        try (BufferedReader reader = Files.newBufferedReader(marker, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                int start = line.indexOf('>');
+                int end = line.lastIndexOf('=');
+                if (start > 0 && end > start + 1) {
+                    origins.computeIfAbsent(groupId, k -> ConcurrentHashMap.newKeySet())
+                            .add(line.substring(start + 1, end));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class ScanTask extends RecursiveAction {
+        private final Path directory;
+
+        private ScanTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            directories.increment();
+            ArrayList<ScanTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    if (MARKER.equals(name)) {
+                        scanMarker(path);
+                    } else if (!name.startsWith(".") && Files.isDirectory(path)) {
+                        subtasks.add(new ScanTask(path));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+    private static final class GroupNode {
+        private final GroupNode parent;
+        private final String name;
+        private final TreeMap<String, GroupNode> children = new TreeMap<>();
+        private final TreeSet<String> own = new TreeSet<>();
+        private final TreeSet<String> subtree = new TreeSet<>();
+
+        private GroupNode(GroupNode parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        private GroupNode child(String name) {
+            return children.computeIfAbsent(name, n -> new GroupNode(this, n));
+        }
+
+        private String groupId() {
+            return parent.parent == null ? name : parent.groupId() + "." + name;
+        }
+
+        private void collect(String repository, int depth, int minDepth, List<String> rules) {
+            if (!subtree.contains(repository)) {
+                return;
+            }
+            if (subtree.size() == 1 && (depth >= minDepth || children.isEmpty())) {
+                rules.add(groupId());
+                return;
+            }
+            if (own.contains(repository)) {
+                rules.add("=" + groupId());
+            }
+            children.values().forEach(n -> n.collect(repository, depth + 1, minDepth, rules));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.plugin;
+
+import eu.maveniverse.maven.shared.core.fs.FileUtils;
+import eu.maveniverse.maven.shared.plugin.MojoSupport;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Scans local repository {@code _remote.repositories} marker files, and writes {@code groupId-${repository.id}.txt}
+ * rule files derived from them, compacted to shortest safe groupId prefixes (see {@link LocalRepositoryScanner}).
+ * Existing rule files for scanned remote repositories are overwritten.
+ * <p>
+ * Does not require a project, so it may be invoked as a CLI tool:
+ * {@code mvn eu.maveniverse.maven.heimdall:plugin:scan-local-repository}
+ */
+@Mojo(name = "scan-local-repository", requiresProject = false, threadSafe = true)
+public class ScanLocalRepositoryMojo extends MojoSupport {
+    /**
+     * The local repository to scan.
+     */
+    @Parameter(property = "heimdall.localRepository", defaultValue = "${settings.localRepository}", required = true)
+    private File localRepository;
+
+    /**
+     * The directory to write groupId rule files to. If not set, the default basedir of filters in local repository
+     * is used.
+     */
+    @Parameter(property = "heimdall.outputDirectory")
+    private File outputDirectory;
+
+    /**
+     * The minimum count of groupId elements derived rules should have, unless the groupId itself is shorter.
+     */
+    @Parameter(property = "heimdall.minDepth", defaultValue = "2", required = true)
+    private int minDepth;
+
+    /**
+     * The parallelism of scan, if not positive, the count of available processors is used.
+     */
+    @Parameter(property = "heimdall.parallelism", defaultValue = "0")
+    private int parallelism;
+
+    @Override
+    protected void executeMojo() throws MojoExecutionException {
+        Path localRepository = this.localRepository.toPath().toAbsolutePath();
+        if (!Files.isDirectory(localRepository)) {
+            throw new MojoExecutionException("Local repository does not exist: " + localRepository);
+        }
+        Path output = outputDirectory != null
+                ? outputDirectory.toPath()
+                : localRepository.resolve(".remoteRepositoryFilters");
+
+        long start = System.nanoTime();
+        LocalRepositoryScanner scanner = new LocalRepositoryScanner(localRepository);
+        try {
+            scanner.scan(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        } catch (UncheckedIOException e) {
+            throw new MojoExecutionException("Failed to scan local repository: " + e.getMessage(), e);
+        }
+        logger.info(
+                "Scanned {} directories and {} marker files of {} in {} ms",
+                scanner.getDirectories(),
+                scanner.getMarkers(),
+                localRepository,
+                (System.nanoTime() - start) / 1_000_000);
+
+        try {
+            Files.createDirectories(output);
+            for (Map.Entry<String, List<String>> entry : scanner.rules(minDepth).entrySet()) {
+                Path file = output.resolve("groupId-" + entry.getKey() + ".txt");
+                List<String> lines = new ArrayList<>();
+                lines.add("# Derived from " + localRepository + " by heimdall:scan-local-repository");
+                lines.addAll(entry.getValue());
+                FileUtils.writeFile(file, p -> Files.write(p, lines, StandardCharsets.UTF_8));
+                logger.info(
+                        "Written {} rules for remote repository {} to {}",
+                        entry.getValue().size(),
+                        entry.getKey(),
+                        file);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write rules: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.plugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LocalRepositoryScannerTest {
+    @TempDir
+    Path directory;
+
+    private Path localRepository;
+
+    /**
+     * Writes marker of given artifact, as if downloaded from given remote repositories.
+     */
+    private void artifact(String groupId, String artifactId, String version, String... repositories)
+            throws IOException {
+        Path versionDirectory = Files.createDirectories(localRepository
+                .resolve(groupId.replace('.', '/'))
+                .resolve(artifactId)
+                .resolve(version));
+        marker(versionDirectory, artifactId + "-" + version + ".jar", repositories);
+    }
+
+    private static void marker(Path directory, String file, String... repositories) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(
+                "#NOTE: This is a Maven Resolver internal implementation file, its format can be changed without prior notice.");
+        for (String repository : repositories) {
+            lines.add(file + ">" + repository + "=");
+        }
+        Files.createDirectories(directory);
+        Files.write(directory.resolve(LocalRepositoryScanner.MARKER), lines, StandardCharsets.UTF_8);
+    }
+
+    @BeforeEach
+    void fixture() throws IOException {
+        localRepository = Files.createDirectories(directory.resolve("repository"));
+        artifact("org.apache", "apache", "33", "central");
+        artifact("org.apache.maven", "maven-core", "3.9.9", "central");
+        artifact("org.apache.maven.plugins", "maven-jar-plugin", "3.4.2", "central");
+        // mixed origin group
+        artifact("org.apache.foo", "foo", "1.0", "central", "other");
+        artifact("com.example", "x", "1.0", "other");
+        artifact("com.example.internal", "y", "1.0", "other");
+        // groupId shorter than minimum depth
+        artifact("junit", "junit", "4.13.2", "central");
+        // markers not laid out as group/artifact/version below local repository
+        marker(localRepository, "stray.jar", "central");
+        marker(localRepository.resolve("artifact"), "stray.jar", "central");
+        marker(localRepository.resolve("artifact").resolve("1.0"), "stray.jar", "central");
+        // hidden directories are not scanned
+        artifact(".cache.foo", "bar", "1.0", "central");
+    }
+
+    private LocalRepositoryScanner scan() {
+        LocalRepositoryScanner scanner = new LocalRepositoryScanner(localRepository);
+        scanner.scan(2);
+        return scanner;
+    }
+
+    @Test
+    void originsTest() {
+        LocalRepositoryScanner scanner = scan();
+        Map<String, Set<String>> origins = scanner.getOrigins();
+        Assertions.assertEquals(
+                new HashSet<>(Arrays.asList(
+                        "org.apache",
+                        "org.apache.maven",
+                        "org.apache.maven.plugins",
+                        "org.apache.foo",
+                        "com.example",
+                        "com.example.internal",
+                        "junit")),
+                origins.keySet());
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("central", "other")), origins.get("org.apache.foo"));
+        Assertions.assertEquals(Collections.singleton("other"), origins.get("com.example"));
+        // stray markers are counted, but not used
+        Assertions.assertEquals(10L, scanner.getMarkers());
+    }
+
+    @Test
+    void rulesTest() {
+        Map<String, List<String>> rules = scan().rules(2);
+        Assertions.assertEquals(Arrays.asList("central", "other"), new ArrayList<>(rules.keySet()));
+        // mixed origin groups are stop rules, and so are groups having mixed origin groups below them
+        Assertions.assertEquals(
+                Arrays.asList("=org.apache", "=org.apache.foo", "junit", "org.apache.maven"), rules.get("central"));
+        Assertions.assertEquals(Arrays.asList("=org.apache.foo", "com.example"), rules.get("other"));
+    }
+
+    @Test
+    void minDepthTest() {
+        Assertions.assertEquals(
+                Arrays.asList("=org.apache.foo", "com"), scan().rules(1).get("other"));
+        // own artifacts of group above minimum depth are stop rule, groups below are prefixes
+        Assertions.assertEquals(
+                Arrays.asList("=com.example", "=org.apache.foo", "com.example.internal"),
+                scan().rules(3).get("other"));
+        Assertions.assertEquals(
+                Arrays.asList(
+                        "=org.apache", "=org.apache.foo", "=org.apache.maven", "junit", "org.apache.maven.plugins"),
+                scan().rules(4).get("central"));
+    }
+}
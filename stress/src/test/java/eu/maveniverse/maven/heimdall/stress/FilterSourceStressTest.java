@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.stress;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Stress tests of filter sources, run with {@code -P run-stress}. Run duration (per thread count, in millis), maximum
+ * thread count and reload period are set with {@code stress.duration}, {@code stress.maxThreads} and
+ * {@code stress.reload} properties. Scalability tables are appended to {@code target/stress-results.txt}.
+ */
+public class FilterSourceStressTest {
+    private static final long DURATION = Long.getLong("stress.duration", 2000);
+
+    private static final int MAX_THREADS = Integer.getInteger("stress.maxThreads", 64);
+
+    private static final long RELOAD = Long.getLong("stress.reload", 5);
+
+    @TempDir
+    Path basedir;
+
+    @Test
+    void groupIdInvariants() throws Exception {
+        invariantsUnderReload(StressHarness.Filter.GROUP_ID);
+    }
+
+    @Test
+    void prefixesInvariants() throws Exception {
+        invariantsUnderReload(StressHarness.Filter.PREFIXES);
+    }
+
+    @Test
+    void groupIdScalability() throws Exception {
+        scalability(StressHarness.Filter.GROUP_ID);
+    }
+
+    @Test
+    void prefixesScalability() throws Exception {
+        scalability(StressHarness.Filter.PREFIXES);
+    }
+
+    /**
+     * Readers racing with initial load and continuous reloads never observe a half-built tree.
+     */
+    private void invariantsUnderReload(StressHarness.Filter filter) throws Exception {
+        StressHarness harness = new StressHarness(filter, basedir);
+        StressHarness.Result result = harness.run(MAX_THREADS, DURATION, RELOAD);
+        Assertions.assertTrue(result.violations.isEmpty(), () -> filter + ": " + result.violations);
+        Assertions.assertTrue(result.operations > 0, () -> filter + ": no decisions");
+        Assertions.assertTrue(result.reloads > 0, () -> filter + ": no reloads");
+    }
+
+    /**
+     * Throughput of decisions from 1 to {@code stress.maxThreads} threads, without and with reloads.
+     */
+    private void scalability(StressHarness.Filter filter) throws Exception {
+        StressHarness harness = new StressHarness(filter, basedir);
+        harness.run(1, DURATION, 0); // warm up
+        StringBuilder table = new StringBuilder();
+        table.append(String.format(
+                Locale.ROOT,
+                "%s (%d cpus)%n%8s %14s %8s %14s %8s %8s%n",
+                filter,
+                Runtime.getRuntime().availableProcessors(),
+                "threads",
+                "ops/s",
+                "speedup",
+                "ops/s reload",
+                "speedup",
+                "reloads"));
+        double base = 0;
+        double baseReload = 0;
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            StressHarness.Result steady = harness.run(threads, DURATION, 0);
+            StressHarness.Result reloading = harness.run(threads, DURATION, RELOAD);
+            Assertions.assertTrue(steady.violations.isEmpty(), () -> filter + ": " + steady.violations);
+            Assertions.assertTrue(reloading.violations.isEmpty(), () -> filter + ": " + reloading.violations);
+            if (threads == 1) {
+                base = steady.throughput();
+                baseReload = reloading.throughput();
+            }
+            table.append(String.format(
+                    Locale.ROOT,
+                    "%8d %14.0f %8.2f %14.0f %8.2f %8d%n",
+                    threads,
+                    steady.throughput(),
+                    steady.throughput() / base,
+                    reloading.throughput(),
+                    reloading.throughput() / baseReload,
+                    reloading.reloads));
+        }
+        System.out.println(table);
+        report(table.toString());
+    }
+
+    private static void report(String table) throws IOException {
+        Path target = Paths.get("target");
+        Files.createDirectories(target);
+        Files.write(
+                target.resolve("stress-results.txt"),
+                (table + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2023-2024 Maveniverse Org.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v2.0
+ * which accompanies this distribution, and is available at
+ * https://www.eclipse.org/legal/epl-v20.html
+ */
+package eu.maveniverse.maven.heimdall.stress;
+
+import eu.maveniverse.maven.heimdall.shared.SessionConfig;
+import eu.maveniverse.maven.heimdall.shared.SessionUtils;
+import eu.maveniverse.maven.heimdall.shared.impl.DefaultSession;
+import eu.maveniverse.maven.heimdall.shared.impl.FileRuleSource;
+import eu.maveniverse.maven.heimdall.shared.impl.GroupIdRemoteRepositoryFilterSource;
+import eu.maveniverse.maven.heimdall.shared.impl.PrefixesRemoteRepositoryFilterSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.eclipse.aether.DefaultRepositorySystemSession;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.Artifact;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.metadata.Metadata;
+import org.eclipse.aether.repository.LocalArtifactRegistration;
+import org.eclipse.aether.repository.LocalArtifactRequest;
+import org.eclipse.aether.repository.LocalArtifactResult;
+import org.eclipse.aether.repository.LocalMetadataRegistration;
+import org.eclipse.aether.repository.LocalMetadataRequest;
+import org.eclipse.aether.repository.LocalMetadataResult;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.LocalRepositoryManager;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.spi.connector.checksum.ChecksumAlgorithmFactory;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilter;
+import org.eclipse.aether.spi.connector.filter.RemoteRepositoryFilterSource;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayout;
+import org.eclipse.aether.spi.connector.layout.RepositoryLayoutProvider;
+
+/**
+ * Drives a filter source with many resolver-like threads, while another thread keeps rewriting its rule file and
+ * triggering reloads.
+ * <p>
+ * Rules come in two versions: version A allows "stable" groups, version B allows "stable" and "flip" groups, and
+ * no version allows "absent" groups. Whatever version (or mix of them, during reload) the readers observe, a decision
+ * must never reject a stable artifact nor accept an absent one: that would mean a half-built (or missing) tree was
+ * visible. Every call must return a decision as well.
+ */
+final class StressHarness {
+    static final String REPOSITORY_ID = "stress";
+
+    static final int GROUPS = 512;
+
+    private static final int STABLE = 0;
+
+    private static final int FLIP = 1;
+
+    private static final int ABSENT = 2;
+
+    enum Filter {
+        GROUP_ID(GroupIdRemoteRepositoryFilterSource.NAME) {
+            @Override
+            String rule(String groupId) {
+                return groupId;
+            }
+
+            @Override
+            RemoteRepositoryFilterSource newSource() {
+                return new GroupIdRemoteRepositoryFilterSource(Collections.singletonList(new FileRuleSource()));
+            }
+        },
+        PREFIXES(PrefixesRemoteRepositoryFilterSource.NAME) {
+            @Override
+            String rule(String groupId) {
+                return "/" + groupId.replace('.', '/');
+            }
+
+            @Override
+            RemoteRepositoryFilterSource newSource() {
+                return new PrefixesRemoteRepositoryFilterSource(
+                        new Maven2LayoutProvider(), Collections.singletonList(new FileRuleSource()));
+            }
+        };
+
+        final String name;
+
+        Filter(String name) {
+            this.name = name;
+        }
+
+        abstract String rule(String groupId);
+
+        abstract RemoteRepositoryFilterSource newSource();
+    }
+
+    /**
+     * Outcome of one run.
+     */
+    static final class Result {
+        final int threads;
+        final long operations;
+        final long nanos;
+        final long reloads;
+        final List<String> violations;
+
+        private Result(int threads, long operations, long nanos, long reloads, List<String> violations) {
+            this.threads = threads;
+            this.operations = operations;
+            this.nanos = nanos;
+            this.reloads = reloads;
+            this.violations = violations;
+        }
+
+        double throughput() {
+            return operations * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+    }
+
+    private final Filter filter;
+    private final Path basedir;
+    private final RemoteRepository repository;
+    private final Artifact[][] probes;
+
+    StressHarness(Filter filter, Path basedir) {
+        this.filter = filter;
+        this.basedir = basedir;
+        this.repository = new RemoteRepository.Builder(REPOSITORY_ID, "default", "https://stress.invalid/").build();
+        this.probes = new Artifact[3][GROUPS];
+        for (int i = 0; i < GROUPS; i++) {
+            probes[STABLE][i] = new DefaultArtifact("org.stable.s" + i + ":lib:1.0");
+            probes[FLIP][i] = new DefaultArtifact("org.flip.f" + i + ":lib:1.0");
+            probes[ABSENT][i] = new DefaultArtifact("org.absent.a" + i + ":lib:1.0");
+        }
+    }
+
+    /**
+     * Runs given count of reader threads against a fresh filter source for given time. Readers start all at once,
+     * while the rules are still being loaded. If {@code reloadMillis} is positive, rules are rewritten and reloaded
+     * with that period during the run.
+     */
+    Result run(int threads, long durationMillis, long reloadMillis) throws Exception {
+        writeRules(false);
+        RemoteRepositoryFilterSource source = filter.newSource();
+        RepositorySystemSession session = newSession(reloadMillis > 0);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong operations = new AtomicLong();
+        AtomicLong reloads = new AtomicLong();
+        List<String> violations = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread reader = new Thread(
+                    () -> {
+                        try {
+                            barrier.await();
+                            operations.addAndGet(read(source, session, stop, violations));
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        }
+                    },
+                    "stress-reader-" + t);
+            readers.add(reader);
+            reader.start();
+        }
+        Thread reloader = new Thread(
+                () -> {
+                    try {
+                        boolean flip = false;
+                        while (!stop.get()) {
+                            Thread.sleep(reloadMillis);
+                            flip = !flip;
+                            writeRules(flip);
+                            source.getRemoteRepositoryFilter(session);
+                            reloads.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                },
+                "stress-reloader");
+        barrier.await();
+        long start = System.nanoTime();
+        if (reloadMillis > 0) {
+            reloader.start();
+        }
+        Thread.sleep(durationMillis);
+        stop.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        long nanos = System.nanoTime() - start;
+        if (reloadMillis > 0) {
+            reloader.join();
+            awaitFlip(source, session, violations);
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Stress thread failed", failure.get());
+        }
+        return new Result(threads, operations.get(), nanos, reloads.get(), violations);
+    }
+
+    private long read(
+            RemoteRepositoryFilterSource source,
+            RepositorySystemSession session,
+            AtomicBoolean stop,
+            List<String> violations) {
+        RemoteRepositoryFilter remoteRepositoryFilter = source.getRemoteRepositoryFilter(session);
+        if (remoteRepositoryFilter == null) {
+            violations.add("no filter");
+            return 0;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long operations = 0;
+        while (!stop.get()) {
+            int kind = random.nextInt(3);
+            Artifact artifact = probes[kind][random.nextInt(GROUPS)];
+            RemoteRepositoryFilter.Result result = remoteRepositoryFilter.acceptArtifact(repository, artifact);
+            operations++;
+            if (result == null || result.reasoning() == null) {
+                violations.add("lost decision: " + artifact);
+            } else if (kind == STABLE && !result.isAccepted()) {
+                violations.add("stable rejected: " + artifact + " (" + result.reasoning() + ")");
+            } else if (kind == ABSENT && result.isAccepted()) {
+                violations.add("absent accepted: " + artifact + " (" + result.reasoning() + ")");
+            }
+            if (violations.size() > 100) {
+                break;
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * After reloads stop, the last written version must become visible: reloads must not be lost.
+     */
+    private void awaitFlip(
+            RemoteRepositoryFilterSource source, RepositorySystemSession session, List<String> violations)
+            throws Exception {
+        writeRules(true);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            RemoteRepositoryFilter remoteRepositoryFilter = source.getRemoteRepositoryFilter(session);
+            boolean all = true;
+            for (Artifact artifact : probes[FLIP]) {
+                all &= remoteRepositoryFilter
+                        .acceptArtifact(repository, artifact)
+                        .isAccepted();
+            }
+            if (all) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        violations.add("last reload not visible after 10 seconds");
+    }
+
+    private RepositorySystemSession newSession(boolean refresh) {
+        DefaultRepositorySystemSession session = new DefaultRepositorySystemSession();
+        session.setLocalRepositoryManager(new StubLocalRepositoryManager(new LocalRepository(basedir.toFile())));
+        session.setConfigProperty("heimdall." + filter.name + ".basedir", basedir.toString());
+        session.setConfigProperty("heimdall." + filter.name + ".refresh", Boolean.toString(refresh));
+        SessionConfig sessionConfig = SessionConfig.defaults(session, Collections.singletonList(repository))
+                .basedir(basedir)
+                .build();
+        SessionUtils.lazyInit(session, () -> new DefaultSession(sessionConfig));
+        return session;
+    }
+
+    /**
+     * Writes rules of version A or B, atomically (as any sane tool would do).
+     */
+    private void writeRules(boolean withFlip) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < GROUPS; i++) {
+            lines.add(filter.rule("org.stable.s" + i));
+            if (withFlip) {
+                lines.add(filter.rule("org.flip.f" + i));
+            }
+        }
+        try {
+            Path file = basedir.resolve(filter.name + "-" + REPOSITORY_ID + ".txt");
+            Path tmp = Files.createTempFile(basedir, filter.name, ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Local repository manager providing only local repository (filters use it to resolve their basedir).
+     */
+    private static final class StubLocalRepositoryManager implements LocalRepositoryManager {
+        private final LocalRepository localRepository;
+
+        private StubLocalRepositoryManager(LocalRepository localRepository) {
+            this.localRepository = localRepository;
+        }
+
+        @Override
+        public LocalRepository getRepository() {
+            return localRepository;
+        }
+
+        @Override
+        public String getPathForLocalArtifact(Artifact artifact) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getPathForRemoteArtifact(Artifact artifact, RemoteRepository repository, String context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getPathForLocalMetadata(Metadata metadata) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getPathForRemoteMetadata(Metadata metadata, RemoteRepository repository, String context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LocalArtifactResult find(RepositorySystemSession session, LocalArtifactRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(RepositorySystemSession session, LocalArtifactRegistration request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public LocalMetadataResult find(RepositorySystemSession session, LocalMetadataRequest request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void add(RepositorySystemSession session, LocalMetadataRegistration request) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * Minimal "default" layout, as real one lives in resolver implementation.
+     */
+    private static final class Maven2LayoutProvider implements RepositoryLayoutProvider, RepositoryLayout {
+        @Override
+        public RepositoryLayout newRepositoryLayout(RepositorySystemSession session, RemoteRepository repository) {
+            return this;
+        }
+
+        @Override
+        public List<ChecksumAlgorithmFactory> getChecksumAlgorithmFactories() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean hasChecksums(Artifact artifact) {
+            return false;
+        }
+
+        @Override
+        public URI getLocation(Artifact artifact, boolean upload) {
+            return URI.create(artifact.getGroupId().replace('.', '/') + "/" + artifact.getArtifactId() + "/"
+                    + artifact.getBaseVersion() + "/" + artifact.getArtifactId() + "-" + artifact.getVersion()
+                    + (artifact.getClassifier().isEmpty() ? "" : "-" + artifact.getClassifier()) + "."
+                    + artifact.getExtension());
+        }
+
+        @Override
+        public URI getLocation(Metadata metadata, boolean upload) {
+            StringBuilder path = new StringBuilder();
+            if (!metadata.getGroupId().isEmpty()) {
+                path.append(metadata.getGroupId().replace('.', '/')).append('/');
+                if (!metadata.getArtifactId().isEmpty()) {
+                    path.append(metadata.getArtifactId()).append('/');
+                    if (!metadata.getVersion().isEmpty()) {
+                        path.append(metadata.getVersion()).append('/');
+                    }
+                }
+            }
+            return URI.create(path.append(metadata.getType()).toString());
+        }
+
+        @Override
+        public List<ChecksumLocation> getChecksumLocations(Artifact artifact, boolean upload, URI location) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<ChecksumLocation> getChecksumLocations(Metadata metadata, boolean upload, URI location) {
+            return Collections.emptyList();
+        }
+    }
+}